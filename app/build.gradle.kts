@@ -32,6 +32,10 @@ android {
     buildFeatures {
         viewBinding = true
     }
+    testOptions {
+        // Lets plain JVM tests run code that logs
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
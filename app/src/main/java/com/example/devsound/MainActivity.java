@@ -10,7 +10,9 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -26,31 +28,35 @@ import androidx.core.content.ContextCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
+import androidx.lifecycle.Lifecycle;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.PagerSnapHelper;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.SnapHelper;
 
 import com.example.devsound.adapters.SongSuggestionAdapter;
+import com.example.devsound.art.AlbumArtLoader;
 import com.example.devsound.models.Song;
+import com.example.devsound.playback.PlaybackClock;
 import com.example.devsound.services.MusicService;
 import com.example.devsound.utils.MusicLibrary;
 import com.example.devsound.utils.PlayerManager;
+import com.example.devsound.views.WaveformProgressView;
+import com.example.devsound.views.WaveformScrubView;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.slider.Slider;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends AppCompatActivity
         implements PlayerManager.PlayerCallback, SongSuggestionAdapter.OnSuggestionClickListener {
     private static final String TAG = "MainActivity";
     private static final int REQUEST_PERMISSION_CODE = 123;
     private static final int SUGGESTION_COUNT = 5;
+    // Tracks at least this long get the zoomable scrub view
+    private static final long LONG_TRACK_MS = 10 * 60 * 1000;
 
     // UI Components
     private ImageView albumArtImageView;
@@ -59,6 +65,8 @@ public class MainActivity extends AppCompatActivity
     private TextView currentTimeTextView;
     private TextView totalTimeTextView;
     private Slider songProgressSlider;
+    private WaveformProgressView waveformProgressView;
+    private WaveformScrubView waveformScrubView;
     private FloatingActionButton playPauseButton;
     private MaterialButton previousButton;
     private MaterialButton nextButton;
@@ -75,9 +83,30 @@ public class MainActivity extends AppCompatActivity
     // Player Manager
     private PlayerManager playerManager;
 
-    // Handler for updating progress
+    // Song index received before the service was bound, played once it connects
+    private int pendingSongIndex = -1;
+
     private final Handler handler = new Handler();
-    private ScheduledExecutorService executorService;
+
+    // Progress is extrapolated from the service's position clock on each frame
+    // while playing; nothing runs while paused
+    private PlaybackClock playbackClock = PlaybackClock.STOPPED;
+    private boolean progressUpdatesActive;
+    private boolean progressFramePosted;
+    private long shownSecond = -1;
+    private long shownDuration = -1;
+    // True while a finger is on the slider; the views follow the finger, not the clock
+    private boolean sliderDragging;
+    private final PlayerManager.ClockListener clockListener = clock -> {
+        playbackClock = clock;
+        renderProgress();
+        scheduleProgressFrame();
+    };
+    private final Choreographer.FrameCallback progressFrame = frameTimeNanos -> {
+        progressFramePosted = false;
+        renderProgress();
+        scheduleProgressFrame();
+    };
 
     private final ServiceConnection musicConnection = new ServiceConnection() {
         @Override
@@ -94,8 +123,7 @@ public class MainActivity extends AppCompatActivity
 
                 Log.d(TAG, "Loaded " + songs.size() + " songs from MusicLibrary");
 
-                // Set songs in service and PlayerManager
-                musicService.setSongs(songs);
+                // PlayerManager forwards the list to the service so both share it
                 musicBound = true;
                 playerManager.setSongs(songs);
 
@@ -105,8 +133,12 @@ public class MainActivity extends AppCompatActivity
                 // Load song suggestions
                 loadSuggestions();
 
-                // Check for pending intent handling
-                handleIntent(getIntent());
+                // Play a selection that arrived before the service was bound
+                if (pendingSongIndex >= 0) {
+                    int indexToPlay = pendingSongIndex;
+                    pendingSongIndex = -1;
+                    playerManager.forceSelectSong(indexToPlay);
+                }
 
                 // Check if we have songs and update the UI
                 if (!songs.isEmpty()) {
@@ -230,47 +262,17 @@ public class MainActivity extends AppCompatActivity
             int selectedSongIndex = intent.getIntExtra("SELECTED_SONG_INDEX", -1);
             Log.d(TAG, "Received intent with song index: " + selectedSongIndex);
 
+            // Consume the extra so the same selection is never dispatched twice
+            intent.removeExtra("SELECTED_SONG_INDEX");
+
             if (selectedSongIndex >= 0 && playerManager != null) {
-                // If we're already bound to the service, play the song directly
                 if (musicBound && musicService != null) {
-                    // Set the song in both PlayerManager and MusicService
-                    // Use forceSelectSong to ensure callbacks are triggered even if it's the same
-                    // song
+                    // The service publishes the new state; onSongSelected updates the UI
                     playerManager.forceSelectSong(selectedSongIndex);
-                    musicService.setSong(selectedSongIndex);
-                    musicService.playSong();
-
-                    // Update UI with the selected song
-                    Song selectedSong = playerManager.getSongs().get(selectedSongIndex);
-                    updateUI(selectedSong);
-                    updatePlayPauseButton(true);
-                    startProgressUpdates();
-                    refreshSuggestions();
                 } else {
-                    // Store the index to play when service is bound
+                    // Played from onServiceConnected once the service is bound
                     Log.d(TAG, "Service not bound yet, storing song index for later: " + selectedSongIndex);
-
-                    // Create a handler to retry after service binding
-                    final int indexToPlay = selectedSongIndex;
-                    handler.postDelayed(() -> {
-                        if (musicBound && musicService != null) {
-                            // Use forceSelectSong to ensure callbacks are triggered even if it's the same
-                            // song
-                            playerManager.forceSelectSong(indexToPlay);
-                            musicService.setSong(indexToPlay);
-                            musicService.playSong();
-
-                            Song selectedSong = playerManager.getSongs().get(indexToPlay);
-                            updateUI(selectedSong);
-                            updatePlayPauseButton(true);
-                            startProgressUpdates();
-                            refreshSuggestions();
-                        } else {
-                            Log.e(TAG, "Service still not bound after delay");
-                            Toast.makeText(MainActivity.this, "Music service not available", Toast.LENGTH_SHORT).show();
-                            restartMusicService();
-                        }
-                    }, 1000); // Wait 1 second for service to bind
+                    pendingSongIndex = selectedSongIndex;
                 }
             }
         }
@@ -289,6 +291,8 @@ public class MainActivity extends AppCompatActivity
             currentTimeTextView = findViewById(R.id.currentTimeTextView);
             totalTimeTextView = findViewById(R.id.totalTimeTextView);
             songProgressSlider = findViewById(R.id.songProgressSlider);
+            waveformProgressView = findViewById(R.id.waveformProgressView);
+            waveformScrubView = findViewById(R.id.waveformScrubView);
             playPauseButton = findViewById(R.id.playPauseButton);
             previousButton = findViewById(R.id.previousButton);
             nextButton = findViewById(R.id.nextButton);
@@ -315,16 +319,13 @@ public class MainActivity extends AppCompatActivity
                             Log.d(TAG,
                                     "Toggle play/pause - current state: " + (currentlyPlaying ? "playing" : "paused"));
 
+                            // The button follows the state the service publishes
                             if (currentlyPlaying) {
                                 Log.d(TAG, "Pausing playback");
                                 musicService.pausePlayer();
-                                playerManager.setPlaybackState(false);
-                                updatePlayPauseButton(false); // Update UI immediately
                             } else {
                                 Log.d(TAG, "Starting playback");
                                 musicService.start();
-                                playerManager.setPlaybackState(true);
-                                updatePlayPauseButton(true); // Update UI immediately
                             }
                         } catch (Exception e) {
                             Log.e(TAG, "Error toggling play/pause", e);
@@ -390,16 +391,43 @@ public class MainActivity extends AppCompatActivity
                 });
             }
 
-            // Set up slider
+            // Set up slider: fast seeks follow a drag, a precise one lands on release
             if (songProgressSlider != null) {
+                songProgressSlider.addOnSliderTouchListener(new Slider.OnSliderTouchListener() {
+                    @Override
+                    public void onStartTrackingTouch(@NonNull Slider slider) {
+                        sliderDragging = true;
+                    }
+
+                    @Override
+                    public void onStopTrackingTouch(@NonNull Slider slider) {
+                        sliderDragging = false;
+                        seekFromUser((int) slider.getValue(), true);
+                    }
+                });
                 songProgressSlider.addOnChangeListener((slider, value, fromUser) -> {
-                    if (fromUser && musicBound && musicService != null) {
-                        musicService.seek((int) value);
-                        updateProgressText((int) value, musicService.getDuration());
+                    if (fromUser) {
+                        // Keyboard and accessibility changes arrive without a drag
+                        seekFromUser((int) value, !sliderDragging);
+                    }
+                });
+            }
+
+            // Tapping or dragging on the waveform seeks as well
+            if (waveformProgressView != null) {
+                waveformProgressView.setSeekListener((fraction, finished) -> {
+                    if (musicBound && musicService != null) {
+                        seekFromUser((int) (musicService.getDuration() * fraction), finished);
                     }
                 });
             }
 
+            // The scrub view previews while dragging and seeks precisely when released
+            if (waveformScrubView != null) {
+                waveformScrubView.setScrubListener((positionMs, finished) ->
+                        seekFromUser((int) positionMs, finished));
+            }
+
             // Setup refresh suggestions button
             if (btnRefreshSuggestions != null) {
                 btnRefreshSuggestions.setOnClickListener(v -> refreshSuggestions());
@@ -454,12 +482,6 @@ public class MainActivity extends AppCompatActivity
                 // already selected
                 Log.d(TAG, "Selected suggestion: " + song.getTitle() + " at playlist position " + i);
                 playerManager.forceSelectSong(i);
-
-                // Make sure the service also plays this song
-                if (musicBound && musicService != null) {
-                    musicService.setSong(i);
-                    musicService.playSong();
-                }
                 break;
             }
         }
@@ -548,31 +570,12 @@ public class MainActivity extends AppCompatActivity
 
     private void startProgressUpdates() {
         try {
-            if (executorService == null || executorService.isShutdown()) {
-                executorService = Executors.newSingleThreadScheduledExecutor();
-                executorService.scheduleAtFixedRate(() -> {
-                    if (musicBound && musicService != null) {
-                        try {
-                            int currentPosition = musicService.getCurrentPosition();
-                            int totalDuration = musicService.getDuration();
-
-                            // Update UI on main thread
-                            handler.post(() -> {
-                                try {
-                                    if (songProgressSlider != null) {
-                                        songProgressSlider.setValue(currentPosition);
-                                    }
-                                    updateProgressText(currentPosition, totalDuration);
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error updating progress UI", e);
-                                }
-                            });
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error getting playback position", e);
-                        }
-                    }
-                }, 0, 1000, TimeUnit.MILLISECONDS);
+            if (progressUpdatesActive || !getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.RESUMED)) {
+                return;
             }
+            progressUpdatesActive = true;
+            // Delivers the current clock right away
+            PlayerManager.getInstance().registerClockListener(clockListener);
         } catch (Exception e) {
             Log.e(TAG, "Error starting progress updates", e);
         }
@@ -580,14 +583,91 @@ public class MainActivity extends AppCompatActivity
 
     private void stopProgressUpdates() {
         try {
-            if (executorService != null && !executorService.isShutdown()) {
-                executorService.shutdown();
-            }
+            progressUpdatesActive = false;
+            PlayerManager.getInstance().unregisterClockListener(clockListener);
+            Choreographer.getInstance().removeFrameCallback(progressFrame);
+            progressFramePosted = false;
         } catch (Exception e) {
             Log.e(TAG, "Error stopping progress updates", e);
         }
     }
 
+    private void scheduleProgressFrame() {
+        if (progressUpdatesActive && playbackClock.isRunning() && !progressFramePosted) {
+            progressFramePosted = true;
+            Choreographer.getInstance().postFrameCallback(progressFrame);
+        }
+    }
+
+    /**
+     * Seek for a touch on any of the progress views and move the others along.
+     * Drag positions become cheap coalesced seeks; the final one is precise.
+     */
+    private void seekFromUser(int position, boolean finished) {
+        if (!musicBound || musicService == null) {
+            return;
+        }
+        try {
+            if (finished) {
+                musicService.seek(position);
+            } else {
+                musicService.scrub(position);
+            }
+            int duration = musicService.getDuration();
+            if (songProgressSlider != null && !sliderDragging && position <= songProgressSlider.getValueTo()) {
+                songProgressSlider.setValue(position);
+            }
+            if (waveformProgressView != null && !waveformProgressView.isDragging() && duration > 0) {
+                waveformProgressView.setProgressFraction((float) position / duration);
+            }
+            updateProgressText(position, duration);
+        } catch (Exception e) {
+            Log.e(TAG, "Error seeking", e);
+        }
+    }
+
+    private boolean isUserSeeking() {
+        return sliderDragging
+                || (waveformProgressView != null && waveformProgressView.isDragging())
+                || (waveformScrubView != null && waveformScrubView.isDragging());
+    }
+
+    private void renderProgress() {
+        if (isUserSeeking()) {
+            // The views follow the finger; the clock takes over again on release
+            return;
+        }
+        try {
+            int position = (int) playbackClock.getPositionMs(SystemClock.elapsedRealtime());
+            int duration = (int) playbackClock.getDurationMs();
+            if (duration <= 0 && songProgressSlider != null) {
+                // Not prepared yet: keep the metadata duration set by updateUI
+                duration = (int) songProgressSlider.getValueTo();
+            }
+
+            if (songProgressSlider != null && duration > 0) {
+                if (songProgressSlider.getValueTo() != duration) {
+                    songProgressSlider.setValue(0);
+                    songProgressSlider.setValueTo(duration);
+                }
+                songProgressSlider.setValue(Math.min(position, duration));
+            }
+            if (waveformProgressView != null && duration > 0) {
+                waveformProgressView.setProgressFraction((float) position / duration);
+            }
+            if (waveformScrubView != null) {
+                waveformScrubView.setPosition(position);
+            }
+
+            // The labels only change once a second
+            if (position / 1000 != shownSecond || duration != shownDuration) {
+                updateProgressText(position, duration);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error updating progress UI", e);
+        }
+    }
+
     private void updateProgressText(int currentPosition, int totalDuration) {
         try {
             if (currentTimeTextView != null && totalTimeTextView != null) {
@@ -596,6 +676,8 @@ public class MainActivity extends AppCompatActivity
 
                 currentTimeTextView.setText(currentTime);
                 totalTimeTextView.setText(totalTime);
+                shownSecond = currentPosition / 1000;
+                shownDuration = totalDuration;
             }
         } catch (Exception e) {
             Log.e(TAG, "Error updating progress text", e);
@@ -632,17 +714,27 @@ public class MainActivity extends AppCompatActivity
                 // Try to set album art
                 if (albumArtImageView != null) {
                     try {
-                        albumArtImageView.setImageURI(song.getAlbumArtUri());
-                        // If image is null, set default
-                        if (albumArtImageView.getDrawable() == null) {
-                            albumArtImageView.setImageResource(R.drawable.default_album_art);
-                        }
+                        AlbumArtLoader.getInstance(this).load(song, albumArtImageView);
                     } catch (Exception e) {
                         albumArtImageView.setImageResource(R.drawable.default_album_art);
                         Log.e(TAG, "Error loading album art", e);
                     }
                 }
 
+                // Waveform of the new track; shows a placeholder until it is extracted
+                if (waveformProgressView != null) {
+                    waveformProgressView.setSong(song);
+                    waveformProgressView.setProgress(0);
+                }
+                if (waveformScrubView != null) {
+                    boolean longTrack = song.getDuration() >= LONG_TRACK_MS;
+                    waveformScrubView.setVisibility(longTrack ? View.VISIBLE : View.GONE);
+                    if (longTrack) {
+                        waveformScrubView.setSong(song);
+                        waveformScrubView.setPosition(0);
+                    }
+                }
+
                 // Initialize progress slider
                 if (songProgressSlider != null && musicService != null) {
                     songProgressSlider.setValueFrom(0);
@@ -744,62 +836,24 @@ public class MainActivity extends AppCompatActivity
         Log.d(TAG, "Song selected callback: " + (song != null ? song.getTitle() : "null") + " at position " + position);
 
         try {
-            // Log song details including duration
-            if (song != null) {
-                Log.d(TAG, "Selected song details - Title: " + song.getTitle() +
-                        ", Artist: " + song.getArtist() +
-                        ", Duration: " + song.getDuration() + " ms (" + song.getFormattedDuration() + ")");
-
-                // Verify URI is valid
-                if (song.getUri() == null) {
-                    Log.e(TAG, "Song URI is null");
-                    Toast.makeText(this, "Invalid song URI", Toast.LENGTH_SHORT).show();
-                    return;
-                }
-
-                // Verify file is accessible
-                try {
-                    getContentResolver().openFileDescriptor(song.getUri(), "r").close();
-                    Log.d(TAG, "File access check passed for: " + song.getTitle());
-                } catch (Exception e) {
-                    Log.e(TAG, "File not accessible: " + e.getMessage());
-                    Toast.makeText(this, "Cannot access song file", Toast.LENGTH_SHORT).show();
-                    return;
-                }
-            } else {
+            if (song == null) {
                 Log.e(TAG, "Selected song is null");
-                Toast.makeText(this, "Invalid song selected", Toast.LENGTH_SHORT).show();
                 return;
             }
 
-            if (musicBound && musicService != null) {
-                // Set the song index in the service
-                musicService.setSong(position);
-
-                // Play the song
-                musicService.playSong();
-
-                // Update UI
-                updateUI(song);
-                updatePlayPauseButton(true);
+            // The service has already started preparing this song; only the UI follows
+            updateUI(song);
+            updatePlayPauseButton(playerManager.isPlaying());
 
-                // Start progress updates
+            // Start progress updates
+            if (musicBound) {
                 startProgressUpdates();
-
-                // Refresh song suggestions
-                refreshSuggestions();
-
-                Log.d(TAG, "Started playing song: " + song.getTitle());
-            } else {
-                Log.e(TAG, "Cannot play song - music service not bound or null");
-                Toast.makeText(this, "Music player not ready", Toast.LENGTH_SHORT).show();
-
-                // Try to reconnect to the service
-                restartMusicService();
             }
+
+            // Refresh song suggestions
+            refreshSuggestions();
         } catch (Exception e) {
             Log.e(TAG, "Error handling song selection callback", e);
-            Toast.makeText(this, "Error playing selected song", Toast.LENGTH_SHORT).show();
         }
     }
 
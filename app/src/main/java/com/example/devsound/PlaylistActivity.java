@@ -7,11 +7,13 @@ import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
+import androidx.annotation.NonNull;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
@@ -19,10 +21,13 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.devsound.adapters.RowPreinflater;
 import com.example.devsound.adapters.SongAdapter;
+import com.example.devsound.art.ArtPrefetcher;
 import com.example.devsound.models.Song;
 import com.example.devsound.utils.MusicLibrary;
 import com.example.devsound.utils.PlayerManager;
+import com.example.devsound.views.FastScrollRail;
 import com.google.android.material.button.MaterialButton;
 
 import java.util.ArrayList;
@@ -31,13 +36,20 @@ import java.util.List;
 public class PlaylistActivity extends AppCompatActivity implements SongAdapter.SongClickListener {
     private static final String TAG = "PlaylistActivity";
     private static final int REQUEST_PERMISSION_CODE = 123;
+    // Height of an item_song row; only used to size the first screenful
+    private static final float SONG_ROW_HEIGHT_DP = 80;
+    // Rows kept bound just off screen, so scrolling back does not rebind them
+    private static final int ROW_CACHE_SIZE = 6;
 
     private RecyclerView songsRecyclerView;
+    private FastScrollRail fastScrollRail;
     private LinearLayout noSongsLayout;
     private TextView noSongsTextView;
     private MaterialButton grantPermissionsButton;
     private List<Song> songs;
     private PlayerManager playerManager;
+    private ArtPrefetcher artPrefetcher;
+    private RowPreinflater rowPreinflater;
 
     // Permission request launcher
     private final ActivityResultLauncher<String> requestPermissionLauncher = registerForActivityResult(
@@ -55,11 +67,17 @@ public class PlaylistActivity extends AppCompatActivity implements SongAdapter.S
     protected void onCreate(Bundle savedInstanceState) {
         try {
             super.onCreate(savedInstanceState);
-            setContentView(R.layout.activity_playlist);
 
             // Get the player manager
             playerManager = PlayerManager.getInstance();
 
+            // Inflate the first screen of rows while the layout is set up and the songs are loaded
+            List<Song> known = playerManager.getSongs();
+            if (known == null || known.size() <= SongAdapter.DEFAULT_DRAWN_ROW_THRESHOLD) {
+                rowPreinflater = RowPreinflater.start(this, R.layout.item_song, SONG_ROW_HEIGHT_DP);
+            }
+            setContentView(R.layout.activity_playlist);
+
             // Set up toolbar
             Toolbar toolbar = findViewById(R.id.toolbar);
             if (toolbar != null) {
@@ -72,6 +90,7 @@ public class PlaylistActivity extends AppCompatActivity implements SongAdapter.S
 
             // Initialize views
             songsRecyclerView = findViewById(R.id.songsRecyclerView);
+            fastScrollRail = findViewById(R.id.fastScrollRail);
             noSongsLayout = findViewById(R.id.noSongsLayout);
             noSongsTextView = findViewById(R.id.noSongsTextView);
             grantPermissionsButton = findViewById(R.id.grantPermissionsButton);
@@ -79,6 +98,12 @@ public class PlaylistActivity extends AppCompatActivity implements SongAdapter.S
             // Set up RecyclerView
             if (songsRecyclerView != null) {
                 songsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+                // The list fills the screen whatever its contents
+                songsRecyclerView.setHasFixedSize(true);
+                songsRecyclerView.setItemViewCacheSize(ROW_CACHE_SIZE);
+                songsRecyclerView.setRecycledViewPool(SongAdapter.newRowPool());
+                reportFullyDrawnOnFirstFrame();
+                setupFastScroll();
             }
 
             // Set up permission button
@@ -151,6 +176,9 @@ public class PlaylistActivity extends AppCompatActivity implements SongAdapter.S
                 if (songsRecyclerView != null) {
                     songsRecyclerView.setVisibility(View.GONE);
                 }
+                if (fastScrollRail != null) {
+                    fastScrollRail.setVisibility(View.GONE);
+                }
                 if (noSongsLayout != null) {
                     noSongsLayout.setVisibility(View.VISIBLE);
                 }
@@ -165,8 +193,18 @@ public class PlaylistActivity extends AppCompatActivity implements SongAdapter.S
                 if (songsRecyclerView != null) {
                     // Create and set adapter
                     SongAdapter adapter = new SongAdapter(songs, this);
+                    adapter.setPreinflater(rowPreinflater);
+                    if (fastScrollRail != null) {
+                        adapter.setSectionIndexListener(fastScrollRail::setSectionIndex);
+                    }
                     songsRecyclerView.setAdapter(adapter);
 
+                    // Decode art for the rows a scroll is heading towards
+                    if (artPrefetcher != null) {
+                        artPrefetcher.detach();
+                    }
+                    artPrefetcher = ArtPrefetcher.attach(songsRecyclerView, adapter::getSong);
+
                     // Highlight the current song if any
                     int currentIndex = playerManager.getCurrentSongIndex();
                     if (currentIndex >= 0) {
@@ -188,17 +226,67 @@ public class PlaylistActivity extends AppCompatActivity implements SongAdapter.S
         }
     }
 
+    /**
+     * Jump straight to a letter from the rail, and keep the rail's letter in step with the list
+     */
+    private void setupFastScroll() {
+        if (fastScrollRail == null) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) songsRecyclerView.getLayoutManager();
+        fastScrollRail.setSectionListener(position -> {
+            songsRecyclerView.stopScroll();
+            layoutManager.scrollToPositionWithOffset(position, 0);
+        });
+        songsRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                int first = layoutManager.findFirstVisibleItemPosition();
+                if (first != RecyclerView.NO_POSITION) {
+                    fastScrollRail.setCurrentPosition(first);
+                }
+            }
+        });
+    }
+
+    /**
+     * Marks the activity fully drawn once the list has drawn its first rows,
+     * so the time to a usable list shows up as "Fully drawn" in the log
+     */
+    private void reportFullyDrawnOnFirstFrame() {
+        songsRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (songsRecyclerView.getChildCount() > 0 || songsRecyclerView.getVisibility() != View.VISIBLE) {
+                    songsRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    reportFullyDrawn();
+                }
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (artPrefetcher != null) {
+            artPrefetcher.detach();
+            artPrefetcher = null;
+        }
+        if (rowPreinflater != null) {
+            rowPreinflater.cancel();
+            rowPreinflater = null;
+        }
+        super.onDestroy();
+    }
+
     @Override
     public void onSongClick(int position) {
         try {
             if (songs != null && position >= 0 && position < songs.size()) {
-                // Use PlayerManager to handle the song selection
-                playerManager.selectSong(position);
-
-                Log.d(TAG, "Song selected via PlayerManager: " + songs.get(position).getTitle());
+                Log.d(TAG, "Song selected: " + songs.get(position).getTitle());
                 Toast.makeText(this, "Playing: " + songs.get(position).getTitle(), Toast.LENGTH_SHORT).show();
 
-                // Start the main activity directly instead of now playing activity
+                // MainActivity issues the single play command for this selection
                 Intent intent = new Intent(this, MainActivity.class);
                 intent.putExtra("SELECTED_SONG_INDEX", position);
                 startActivity(intent);
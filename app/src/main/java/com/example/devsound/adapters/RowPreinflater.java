@@ -0,0 +1,112 @@
+package com.example.devsound.adapters;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import androidx.annotation.LayoutRes;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.app.AppCompatDelegate;
+import androidx.core.view.LayoutInflaterCompat;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Inflates a screenful of list rows on a background thread while the
+ * activity is still setting itself up, so the first layout of the list
+ * takes ready views instead of inflating every visible row on the main
+ * thread. Rows are handed out once each; when they run out, the adapter
+ * inflates as usual.
+ *
+ * Rows are inflated through a clone of the activity's inflater, so they get
+ * the same AppCompat and Material widgets and theming as rows the adapter
+ * inflates itself.
+ */
+public class RowPreinflater {
+    private static final String TAG = "RowPreinflater";
+
+    private final ConcurrentLinkedQueue<View> rows = new ConcurrentLinkedQueue<>();
+    private volatile boolean cancelled;
+
+    private RowPreinflater() {
+    }
+
+    /**
+     * Start inflating enough rows of the layout to fill the screen
+     *
+     * @param context the activity the rows will be shown in, for its theme and
+     *                view factory; call after its super.onCreate()
+     * @param rowHeightDp the height of one row, at least roughly
+     */
+    public static RowPreinflater start(Context context, @LayoutRes int layout, float rowHeightDp) {
+        RowPreinflater preinflater = new RowPreinflater();
+        int count = screenful(context, rowHeightDp);
+        LayoutInflater inflater = rowInflater(context);
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            // Gives the rows the layout params of their root's attributes
+            FrameLayout parent = new FrameLayout(context);
+            try {
+                for (int i = 0; i < count && !preinflater.cancelled; i++) {
+                    preinflater.rows.add(inflater.inflate(layout, parent, false));
+                }
+            } catch (RuntimeException e) {
+                // The adapter inflates whatever is missing
+                Log.w(TAG, "Could not pre-inflate rows", e);
+            }
+        }, TAG);
+        thread.start();
+        return preinflater;
+    }
+
+    /**
+     * @return a row inflated ahead of time, or null if there is none left
+     */
+    public View take() {
+        return rows.poll();
+    }
+
+    /**
+     * Stop inflating and drop the rows nobody took
+     */
+    public void cancel() {
+        cancelled = true;
+        rows.clear();
+    }
+
+    static int screenful(Context context, float rowHeightDp) {
+        float rowHeight = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, rowHeightDp,
+                context.getResources().getDisplayMetrics());
+        int screenHeight = context.getResources().getDisplayMetrics().heightPixels;
+        // One more for the row cut off at the bottom
+        return (int) Math.ceil(screenHeight / rowHeight) + 1;
+    }
+
+    /**
+     * @return an inflater of the context's own, with the activity's view factory
+     */
+    private static LayoutInflater rowInflater(Context context) {
+        // The clone keeps the factory AppCompatActivity installed in onCreate
+        LayoutInflater inflater = LayoutInflater.from(context).cloneInContext(context);
+        if (inflater.getFactory2() == null && context instanceof AppCompatActivity) {
+            AppCompatDelegate delegate = ((AppCompatActivity) context).getDelegate();
+            LayoutInflaterCompat.setFactory2(inflater, new LayoutInflater.Factory2() {
+                @Override
+                public View onCreateView(View parent, String name, Context viewContext, AttributeSet attrs) {
+                    return delegate.createView(parent, name, viewContext, attrs);
+                }
+
+                @Override
+                public View onCreateView(String name, Context viewContext, AttributeSet attrs) {
+                    return onCreateView(null, name, viewContext, attrs);
+                }
+            });
+        }
+        return inflater;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.devsound.adapters;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Where each letter starts in a list sorted by title. Built once per list in
+ * a single pass; after that, finding a section's first row or a row's
+ * section takes no walk over the list, so a fast-scroll rail can jump on
+ * every touch event.
+ *
+ * Titles are bucketed by their first letter or digit, with accents dropped
+ * and case folded, so an accented E files under E. Digits and titles with no
+ * letter at all go under "#". Letters without case, as in CJK scripts, are
+ * grouped by script. The media store's collation does not always agree with
+ * these buckets, so a letter that turns up again further down keeps the
+ * position where it first appeared instead of opening a second section.
+ */
+public final class SectionIndex {
+    public static final String OTHER = "#";
+
+    private static final SectionIndex EMPTY = new SectionIndex(new String[0], new int[0], 0);
+
+    private final String[] labels;
+    // First row of each section, ascending
+    private final int[] positions;
+    private final int itemCount;
+
+    private SectionIndex(String[] labels, int[] positions, int itemCount) {
+        this.labels = labels;
+        this.positions = positions;
+        this.itemCount = itemCount;
+    }
+
+    public static SectionIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param titles the titles in the order the list shows them
+     */
+    public static SectionIndex build(List<String> titles) {
+        List<String> labels = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        // Key of each section opened so far
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < titles.size(); i++) {
+            int letter = firstLetterOrDigit(titles.get(i));
+            String label = labelOf(letter);
+            if (seen.add(isUncased(letter) ? Character.UnicodeScript.of(letter).name() : label)) {
+                labels.add(label);
+                positions.add(i);
+            }
+        }
+        int[] starts = new int[positions.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = positions.get(i);
+        }
+        return new SectionIndex(labels.toArray(new String[0]), starts, titles.size());
+    }
+
+    public int getSectionCount() {
+        return labels.length;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public String getLabel(int section) {
+        return labels[section];
+    }
+
+    /**
+     * @return the first row of the section
+     */
+    public int getPosition(int section) {
+        return positions[section];
+    }
+
+    /**
+     * @return the section the row falls in, or -1 for an empty index
+     */
+    public int getSectionForPosition(int position) {
+        if (positions.length == 0) {
+            return -1;
+        }
+        // A few dozen sections at most, so this is a handful of steps
+        int low = 0;
+        int high = positions.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (positions[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the label of the section the title belongs in
+     */
+    static String labelOf(String title) {
+        return labelOf(firstLetterOrDigit(title));
+    }
+
+    private static String labelOf(int letter) {
+        if (letter < 0 || Character.isDigit(letter)) {
+            return OTHER;
+        }
+        if (isUncased(letter)) {
+            // The first title of the script labels the group
+            return new String(Character.toChars(letter));
+        }
+        String base = Normalizer.normalize(new String(Character.toChars(letter)), Normalizer.Form.NFD);
+        return new String(Character.toChars(Character.toUpperCase(base.codePointAt(0))));
+    }
+
+    private static boolean isUncased(int letter) {
+        return letter >= 0 && Character.isLetter(letter)
+                && Character.toUpperCase(letter) == Character.toLowerCase(letter);
+    }
+
+    private static int firstLetterOrDigit(String title) {
+        if (title == null) {
+            return -1;
+        }
+        for (int i = 0; i < title.length(); ) {
+            int c = title.codePointAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                return c;
+            }
+            i += Character.charCount(c);
+        }
+        return -1;
+    }
+}
@@ -1,7 +1,10 @@
 package com.example.devsound.adapters;
 
-import android.content.res.ColorStateList;
+import android.content.Context;
 import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -11,35 +14,213 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.devsound.R;
+import com.example.devsound.art.AlbumArtLoader;
 import com.example.devsound.models.Song;
+import com.example.devsound.views.SongRowView;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * The song list. New lists are diffed against the current one on a
+ * background thread and only the rows that changed are rebound. Rows have
+ * stable ids, and a change of selection only recolors the two rows
+ * involved; their text and art are left alone.
+ *
+ * Binding only assigns values prepared earlier: colors are resolved once,
+ * durations are formatted once per length, and titles and artists are
+ * measured on a background thread for the rows around the ones being bound.
+ *
+ * Each new list also gets a {@link SectionIndex}, built on the same
+ * background thread, for fast scrolling by letter.
+ *
+ * Lists longer than a threshold use {@link SongRowView}, a row drawn by a
+ * single view, instead of inflating item_song, to save measure and layout
+ * time on large libraries.
+ */
 public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder> {
     private static final String TAG = "SongAdapter";
-    private List<Song> songs;
+    // Payload for a rebind that only changes the selection highlight
+    private static final Object PAYLOAD_SELECTION = new Object();
+    // Rows with prepared text; a few screens' worth in either direction
+    private static final int MAX_PREPARED_ROWS = 300;
+    // Rows measured ahead of, and behind, the one being bound
+    private static final int PREPARE_AHEAD = 24;
+    private static final int PREPARE_BEHIND = 8;
+
+    private static final int VIEW_TYPE_INFLATED = 0;
+    private static final int VIEW_TYPE_DRAWN = 1;
+    // A screenful of rows, so a new list rebinds instead of inflating
+    private static final int MAX_POOLED_ROWS = 16;
+    public static final int DEFAULT_DRAWN_ROW_THRESHOLD = 1000;
+
+    private static final DiffUtil.ItemCallback<Song> DIFF = new DiffUtil.ItemCallback<Song>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Song oldItem, @NonNull Song newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Song oldItem, @NonNull Song newItem) {
+            return oldItem.getDateModified() == newItem.getDateModified()
+                    && oldItem.getDuration() == newItem.getDuration()
+                    && Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                    && Objects.equals(oldItem.getArtist(), newItem.getArtist())
+                    && Objects.equals(oldItem.getAlbumArtUri(), newItem.getAlbumArtUri());
+        }
+    };
+
+    private final AsyncListDiffer<Song> differ = new AsyncListDiffer<>(this, DIFF);
     private SongClickListener clickListener;
-    private int selectedPosition = -1; // -1 means no selection
+    private long selectedId = RecyclerView.NO_ID;
+    private int drawnRowThreshold = DEFAULT_DRAWN_ROW_THRESHOLD;
+    private RowPreinflater preinflater;
+    private SectionIndex sectionIndex = SectionIndex.empty();
+    private SectionIndexListener sectionIndexListener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final SongRowTexts rowTexts = new SongRowTexts(MAX_PREPARED_ROWS);
+    private final ThreadPoolExecutor textExecutor;
+    // Songs queued for measuring, so binding the same area twice does not queue them again
+    private final Set<Long> measuring = ConcurrentHashMap.newKeySet();
+
+    // Resolved when the first row is created
+    private boolean colorsResolved;
+    private int colorAccent;
+    private int colorTextPrimary;
+    private int colorTextSecondary;
+    private int colorSelectedItem;
 
     public interface SongClickListener {
         void onSongClick(int position);
     }
 
+    public interface SectionIndexListener {
+        /**
+         * Called on the main thread once the index for the list now shown is ready
+         */
+        void onSectionIndexChanged(SectionIndex index);
+    }
+
     public SongAdapter(List<Song> songs, SongClickListener clickListener) {
-        this.songs = songs;
         this.clickListener = clickListener;
+        textExecutor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, TAG));
+        textExecutor.allowCoreThreadTimeOut(true);
+        setHasStableIds(true);
+        submitList(songs);
+    }
+
+    /**
+     * @return a pool of recycled rows for a song list, kept for one activity, with room for
+     * more rows than RecyclerView's default of five per type
+     */
+    public static RecyclerView.RecycledViewPool newRowPool() {
+        RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+        pool.setMaxRecycledViews(VIEW_TYPE_INFLATED, MAX_POOLED_ROWS);
+        pool.setMaxRecycledViews(VIEW_TYPE_DRAWN, MAX_POOLED_ROWS);
+        return pool;
+    }
+
+    /**
+     * Show a new list. The list is copied, so the caller may keep changing its own.
+     */
+    public void submitList(List<Song> songs) {
+        // The first screen is measured as soon as the list is in place
+        differ.submitList(songs != null ? new ArrayList<>(songs) : null, () -> {
+            prepareAround(0);
+            buildSectionIndex();
+        });
+    }
+
+    /**
+     * @return the section index of the list currently shown; empty until it is built
+     */
+    public SectionIndex getSectionIndex() {
+        return sectionIndex;
+    }
+
+    public void setSectionIndexListener(SectionIndexListener listener) {
+        sectionIndexListener = listener;
+        if (listener != null && sectionIndex.getItemCount() > 0) {
+            listener.onSectionIndexChanged(sectionIndex);
+        }
+    }
+
+    /**
+     * @return the song at the position in the list currently shown, or null
+     */
+    public Song getSong(int position) {
+        List<Song> songs = differ.getCurrentList();
+        return position >= 0 && position < songs.size() ? songs.get(position) : null;
+    }
+
+    /**
+     * Use drawn rows for lists with more songs than this; 0 always uses them,
+     * Integer.MAX_VALUE never does
+     */
+    public void setDrawnRowThreshold(int songs) {
+        if (songs != drawnRowThreshold) {
+            drawnRowThreshold = songs;
+            // Every row may change type
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Take item_song rows from here before inflating new ones
+     */
+    public void setPreinflater(RowPreinflater preinflater) {
+        this.preinflater = preinflater;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return getItemCount() > drawnRowThreshold ? VIEW_TYPE_DRAWN : VIEW_TYPE_INFLATED;
     }
 
     @NonNull
     @Override
     public SongViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         try {
-            View view = LayoutInflater.from(parent.getContext())
-                    .inflate(R.layout.item_song, parent, false);
-            return new SongViewHolder(view);
+            if (viewType == VIEW_TYPE_DRAWN) {
+                if (!colorsResolved) {
+                    resolveColors(parent.getContext());
+                }
+                SongRowView row = new SongRowView(parent.getContext());
+                row.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                        ViewGroup.LayoutParams.WRAP_CONTENT));
+                row.setColors(colorTextPrimary, colorTextSecondary, colorAccent, colorSelectedItem);
+                return new SongViewHolder(row);
+            }
+            View view = preinflater != null ? preinflater.take() : null;
+            if (view == null) {
+                view = LayoutInflater.from(parent.getContext())
+                        .inflate(R.layout.item_song, parent, false);
+            }
+            SongViewHolder holder = new SongViewHolder(view);
+            if (!colorsResolved) {
+                resolveColors(parent.getContext());
+                startMeasuring(holder);
+            }
+            return holder;
         } catch (Exception e) {
             Log.e(TAG, "Error creating view holder", e);
             // Fallback to prevent crash
@@ -48,110 +229,216 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull SongViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && payloads.stream().allMatch(payload -> payload == PAYLOAD_SELECTION)) {
+            Song song = getSong(position);
+            if (song != null) {
+                bindSelection(holder, song.getId() == selectedId);
+            }
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull SongViewHolder holder, int position) {
         try {
-            if (songs == null || position < 0 || position >= songs.size()) {
-                Log.e(TAG, "Invalid song list or position");
+            Song song = getSong(position);
+            if (song == null) {
+                Log.e(TAG, "No song at position " + position);
                 return;
             }
 
-            Song song = songs.get(position);
-            if (song == null) {
-                Log.e(TAG, "Song at position " + position + " is null");
+            SongRowTexts.Row row = rowTexts.getOrPlain(song);
+            if (holder.rowView != null) {
+                holder.rowView.setTexts(row.title, row.artist, row.duration);
+                bindSelection(holder, song.getId() == selectedId);
+                prepareAround(position);
+                AlbumArtLoader.getInstance(holder.itemView.getContext()).load(song, holder.rowView);
                 return;
             }
-
-            // Set title
             if (holder.songTitleTextView != null) {
-                holder.songTitleTextView.setText(song.getTitle() != null ? song.getTitle() : "Unknown Title");
-
-                // Set text color based on selection
-                if (position == selectedPosition) {
-                    holder.songTitleTextView
-                            .setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.colorAccent));
-                } else {
-                    holder.songTitleTextView.setTextColor(
-                            ContextCompat.getColor(holder.itemView.getContext(), R.color.colorTextPrimary));
-                }
+                setText(holder.songTitleTextView, row.title);
             }
-
-            // Set artist
             if (holder.artistNameTextView != null) {
-                holder.artistNameTextView.setText(song.getArtist() != null ? song.getArtist() : "Unknown Artist");
+                setText(holder.artistNameTextView, row.artist);
+            }
+            if (holder.songDurationTextView != null) {
+                holder.songDurationTextView.setText(row.duration);
+            }
+            bindSelection(holder, song.getId() == selectedId);
+            prepareAround(position);
 
-                // Set text color based on selection
-                if (position == selectedPosition) {
-                    holder.artistNameTextView
-                            .setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.colorAccent));
-                } else {
-                    holder.artistNameTextView.setTextColor(
-                            ContextCompat.getColor(holder.itemView.getContext(), R.color.colorTextSecondary));
-                }
+            // Album art is decoded in the background; the row shows the default until then
+            if (holder.albumArtImageView != null) {
+                AlbumArtLoader.getInstance(holder.itemView.getContext()).load(song, holder.albumArtImageView);
             }
+        } catch (Exception e) {
+            Log.e(TAG, "Error binding view holder", e);
+        }
+    }
 
-            // Set duration
-            if (holder.songDurationTextView != null) {
-                holder.songDurationTextView.setText(song.getFormattedDuration());
+    @Override
+    public void onViewRecycled(@NonNull SongViewHolder holder) {
+        super.onViewRecycled(holder);
+        if (holder.rowView != null) {
+            AlbumArtLoader.getInstance(holder.itemView.getContext()).release(holder.rowView);
+        }
+        if (holder.albumArtImageView != null) {
+            AlbumArtLoader.getInstance(holder.itemView.getContext()).release(holder.albumArtImageView);
+        }
+    }
 
-                // Set text color based on selection
-                if (position == selectedPosition) {
-                    holder.songDurationTextView
-                            .setTextColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.colorAccent));
-                } else {
-                    holder.songDurationTextView.setTextColor(
-                            ContextCompat.getColor(holder.itemView.getContext(), R.color.colorTextSecondary));
+    /**
+     * Text colors and background for the selection state; touches nothing else
+     */
+    private void bindSelection(SongViewHolder holder, boolean selected) {
+        if (holder.rowView != null) {
+            holder.rowView.setRowSelected(selected);
+            return;
+        }
+        if (holder.songTitleTextView != null) {
+            holder.songTitleTextView.setTextColor(selected ? colorAccent : colorTextPrimary);
+        }
+        int secondary = selected ? colorAccent : colorTextSecondary;
+        if (holder.artistNameTextView != null) {
+            holder.artistNameTextView.setTextColor(secondary);
+        }
+        if (holder.songDurationTextView != null) {
+            holder.songDurationTextView.setTextColor(secondary);
+        }
+        holder.itemView.setBackgroundColor(selected ? colorSelectedItem : Color.TRANSPARENT);
+    }
+
+    private void resolveColors(Context context) {
+        colorAccent = ContextCompat.getColor(context, R.color.colorAccent);
+        colorTextPrimary = ContextCompat.getColor(context, R.color.colorTextPrimary);
+        colorTextSecondary = ContextCompat.getColor(context, R.color.colorTextSecondary);
+        colorSelectedItem = ContextCompat.getColor(context, R.color.colorSelectedItem);
+        colorsResolved = true;
+    }
+
+    /**
+     * Measure text for the metrics of this row's text views, which all rows share
+     */
+    private void startMeasuring(SongViewHolder holder) {
+        if (holder.songTitleTextView == null || holder.artistNameTextView == null) {
+            return;
+        }
+        PrecomputedTextCompat.Params titleParams = TextViewCompat.getTextMetricsParams(holder.songTitleTextView);
+        PrecomputedTextCompat.Params artistParams = TextViewCompat.getTextMetricsParams(holder.artistNameTextView);
+        rowTexts.setMeasurer((text, field) -> PrecomputedTextCompat.create(text,
+                field == SongRowTexts.FIELD_TITLE ? titleParams : artistParams));
+    }
+
+    /**
+     * Queue the rows around the position for measuring, mostly in the direction the list moves
+     */
+    private void prepareAround(int position) {
+        List<Song> songs = differ.getCurrentList();
+        List<Song> batch = new ArrayList<>();
+        int from = Math.max(0, position - PREPARE_BEHIND);
+        int to = Math.min(songs.size(), position + PREPARE_AHEAD);
+        for (int i = from; i < to; i++) {
+            Song song = songs.get(i);
+            if (!rowTexts.isMeasured(song) && measuring.add(song.getId())) {
+                batch.add(song);
+            }
+        }
+        if (batch.isEmpty() || textExecutor.isShutdown()) {
+            return;
+        }
+        textExecutor.execute(() -> {
+            for (Song song : batch) {
+                try {
+                    rowTexts.measure(song);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Could not measure row for " + song.getTitle(), e);
+                } finally {
+                    measuring.remove(song.getId());
                 }
             }
+        });
+    }
 
-            // Set background color based on selection
-            if (position == selectedPosition) {
-                holder.itemView.setBackgroundColor(
-                        ContextCompat.getColor(holder.itemView.getContext(), R.color.colorSelectedItem));
-            } else {
-                holder.itemView.setBackgroundColor(Color.TRANSPARENT);
+    /**
+     * Index the list just committed, once; lists only change through submitList
+     */
+    private void buildSectionIndex() {
+        List<Song> songs = differ.getCurrentList();
+        textExecutor.execute(() -> {
+            List<String> titles = new ArrayList<>(songs.size());
+            for (Song song : songs) {
+                titles.add(song.getTitle());
             }
-
-            // Try to load album art if available
-            if (holder.albumArtImageView != null) {
-                try {
-                    if (song.getAlbumArtUri() != null) {
-                        holder.albumArtImageView.setImageURI(song.getAlbumArtUri());
-                        // If image is null, set default
-                        if (holder.albumArtImageView.getDrawable() == null) {
-                            holder.albumArtImageView.setImageResource(R.drawable.default_album_art);
-                        }
-                    } else {
-                        holder.albumArtImageView.setImageResource(R.drawable.default_album_art);
+            SectionIndex index = SectionIndex.build(titles);
+            mainHandler.post(() -> {
+                // A newer list may have replaced this one meanwhile
+                if (differ.getCurrentList() == songs) {
+                    sectionIndex = index;
+                    if (sectionIndexListener != null) {
+                        sectionIndexListener.onSectionIndexChanged(index);
                     }
-                } catch (Exception e) {
-                    Log.e(TAG, "Error loading album art", e);
-                    holder.albumArtImageView.setImageResource(R.drawable.default_album_art);
                 }
+            });
+        });
+    }
+
+    private static void setText(TextView view, CharSequence text) {
+        if (text instanceof PrecomputedTextCompat) {
+            try {
+                TextViewCompat.setPrecomputedText(view, (PrecomputedTextCompat) text);
+                return;
+            } catch (IllegalArgumentException e) {
+                // Measured for different text metrics; lay it out again below
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error binding view holder", e);
         }
+        view.setText(text);
     }
 
     public void setSelectedPosition(int position) {
-        int previousSelected = selectedPosition;
-        selectedPosition = position;
+        Song song = getSong(position);
+        long previousId = selectedId;
+        selectedId = song != null ? song.getId() : RecyclerView.NO_ID;
+        if (previousId == selectedId) {
+            return;
+        }
 
-        // Notify specific items changed to avoid full refresh
-        if (previousSelected != -1) {
-            notifyItemChanged(previousSelected);
+        // Only the highlight changes, so the rows are recolored rather than rebound
+        int previousPosition = positionOf(previousId);
+        if (previousPosition != RecyclerView.NO_POSITION) {
+            notifyItemChanged(previousPosition, PAYLOAD_SELECTION);
         }
-        if (selectedPosition != -1) {
-            notifyItemChanged(selectedPosition);
+        if (song != null) {
+            notifyItemChanged(position, PAYLOAD_SELECTION);
         }
 
         Log.d(TAG, "Selected position set to: " + position);
     }
 
+    private int positionOf(long id) {
+        if (id == RecyclerView.NO_ID) {
+            return RecyclerView.NO_POSITION;
+        }
+        List<Song> songs = differ.getCurrentList();
+        for (int i = 0; i < songs.size(); i++) {
+            if (songs.get(i).getId() == id) {
+                return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
     @Override
     public int getItemCount() {
-        return songs != null ? songs.size() : 0;
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        Song song = getSong(position);
+        return song != null ? song.getId() : RecyclerView.NO_ID;
     }
 
     class SongViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
@@ -159,10 +446,17 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
         TextView artistNameTextView;
         TextView songDurationTextView;
         ImageView albumArtImageView;
+        // Set instead of the views above for drawn rows
+        SongRowView rowView;
 
         public SongViewHolder(@NonNull View itemView) {
             super(itemView);
             try {
+                if (itemView instanceof SongRowView) {
+                    rowView = (SongRowView) itemView;
+                    itemView.setOnClickListener(this);
+                    return;
+                }
                 songTitleTextView = itemView.findViewById(R.id.songTitleTextView);
                 artistNameTextView = itemView.findViewById(R.id.artistNameTextView);
                 songDurationTextView = itemView.findViewById(R.id.songDurationTextView);
@@ -185,10 +479,9 @@ public class SongAdapter extends RecyclerView.Adapter<SongAdapter.SongViewHolder
                         // Set the selected position
                         setSelectedPosition(position);
 
-                        if (songs != null && position < songs.size()) {
-                            Song song = songs.get(position);
-                            Log.d(TAG, "Clicked on song: " + (song != null ? song.getTitle() : "null") + " at position "
-                                    + position);
+                        Song song = getSong(position);
+                        if (song != null) {
+                            Log.d(TAG, "Clicked on song: " + song.getTitle() + " at position " + position);
                             clickListener.onSongClick(position);
                         } else {
                             Log.e(TAG, "Invalid song position: " + position);
@@ -0,0 +1,132 @@
+package com.example.devsound.adapters;
+
+import com.example.devsound.models.Song;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The text of song rows, prepared ahead of binding: the title and artist
+ * with their fallbacks, optionally measured for their text views, and the
+ * formatted duration. Rows are kept for the most recently used songs and
+ * rebuilt when a song's file changes. Thread-safe; rows are usually
+ * measured on a background thread and read while binding.
+ */
+final class SongRowTexts {
+    static final int FIELD_TITLE = 0;
+    static final int FIELD_ARTIST = 1;
+
+    interface Measurer {
+        /**
+         * @return the text laid out ahead of time for the given field, or the text itself
+         */
+        CharSequence measure(CharSequence text, int field);
+    }
+
+    static final class Row {
+        final CharSequence title;
+        final CharSequence artist;
+        final String duration;
+        final boolean measured;
+        private final long dateModified;
+
+        Row(CharSequence title, CharSequence artist, String duration, boolean measured, long dateModified) {
+            this.title = title;
+            this.artist = artist;
+            this.duration = duration;
+            this.measured = measured;
+            this.dateModified = dateModified;
+        }
+    }
+
+    private final int maxRows;
+    private final Map<Long, Row> rows;
+    // Formatted durations by whole seconds; a library has far fewer distinct lengths than songs
+    private final Map<Long, String> durations = new HashMap<>();
+    private volatile Measurer measurer;
+
+    SongRowTexts(int maxRows) {
+        this.maxRows = maxRows;
+        rows = new LinkedHashMap<Long, Row>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Row> eldest) {
+                return size() > SongRowTexts.this.maxRows;
+            }
+        };
+    }
+
+    /**
+     * Measure titles and artists from now on; rows prepared before stay as they are
+     */
+    void setMeasurer(Measurer measurer) {
+        this.measurer = measurer;
+    }
+
+    /**
+     * @return the prepared row, or null if the song has none yet or has changed since
+     */
+    synchronized Row get(Song song) {
+        Row row = rows.get(song.getId());
+        return row != null && row.dateModified == song.getDateModified() ? row : null;
+    }
+
+    /**
+     * The row for binding right away: the prepared one if there is one,
+     * otherwise one built now without measuring, which a later call to
+     * {@link #measure} replaces.
+     */
+    Row getOrPlain(Song song) {
+        Row row = get(song);
+        if (row == null) {
+            row = new Row(title(song), artist(song), formatDuration(song.getDuration()), false,
+                    song.getDateModified());
+            put(song, row);
+        }
+        return row;
+    }
+
+    /**
+     * Prepare the row with measured text, unless that was done already. Slow; call off the main thread.
+     */
+    Row measure(Song song) {
+        Row row = get(song);
+        Measurer current = measurer;
+        if ((row != null && row.measured) || current == null) {
+            return row;
+        }
+        row = new Row(current.measure(title(song), FIELD_TITLE), current.measure(artist(song), FIELD_ARTIST),
+                formatDuration(song.getDuration()), true, song.getDateModified());
+        put(song, row);
+        return row;
+    }
+
+    boolean isMeasured(Song song) {
+        Row row = get(song);
+        return row != null && row.measured;
+    }
+
+    synchronized String formatDuration(long durationMs) {
+        long totalSeconds = durationMs / 1000;
+        String text = durations.get(totalSeconds);
+        if (text == null) {
+            long seconds = totalSeconds % 60;
+            text = new StringBuilder(8).append(totalSeconds / 60).append(seconds < 10 ? ":0" : ":")
+                    .append(seconds).toString();
+            durations.put(totalSeconds, text);
+        }
+        return text;
+    }
+
+    private synchronized void put(Song song, Row row) {
+        rows.put(song.getId(), row);
+    }
+
+    private static String title(Song song) {
+        return song.getTitle() != null ? song.getTitle() : "Unknown Title";
+    }
+
+    private static String artist(Song song) {
+        return song.getArtist() != null ? song.getArtist() : "Unknown Artist";
+    }
+}
@@ -10,6 +10,7 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.devsound.R;
+import com.example.devsound.art.AlbumArtLoader;
 import com.example.devsound.models.Song;
 
 import java.util.ArrayList;
@@ -54,6 +55,12 @@ public class SongSuggestionAdapter extends RecyclerView.Adapter<SongSuggestionAd
         holder.bind(song);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull SuggestionViewHolder holder) {
+        super.onViewRecycled(holder);
+        AlbumArtLoader.getInstance(holder.itemView.getContext()).release(holder.albumArtImageView);
+    }
+
     @Override
     public int getItemCount() {
         return suggestions.size();
@@ -83,16 +90,7 @@ public class SongSuggestionAdapter extends RecyclerView.Adapter<SongSuggestionAd
                 titleTextView.setText(song.getTitle());
                 artistTextView.setText(song.getArtist());
 
-                // Set album art
-                if (song.getAlbumArtUri() != null) {
-                    albumArtImageView.setImageURI(song.getAlbumArtUri());
-                    // If image is null, set default
-                    if (albumArtImageView.getDrawable() == null) {
-                        albumArtImageView.setImageResource(R.drawable.default_album_art);
-                    }
-                } else {
-                    albumArtImageView.setImageResource(R.drawable.default_album_art);
-                }
+                AlbumArtLoader.getInstance(itemView.getContext()).load(song, albumArtImageView);
             }
         }
     }
@@ -0,0 +1,194 @@
+package com.example.devsound.analysis;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.devsound.dsp.LoudnessMeter;
+import com.example.devsound.models.Song;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the loudness of every track in the background so playback can
+ * normalize volume. Tracks are decoded in parallel on low-priority threads,
+ * one per spare core; the current and next tracks jump the queue. Each result
+ * is persisted as soon as it is known, so after process death the work
+ * resumes with the tracks that have no record yet.
+ */
+public class LoudnessAnalyzer {
+    private static final String TAG = "LoudnessAnalyzer";
+    private static final String CACHE_FILE = "loudness.cache";
+
+    // ReplayGain 2.0 reference level
+    public static final float TARGET_LUFS = -18f;
+
+    private static final int PRIORITY_LIBRARY = 0;
+    private static final int PRIORITY_PLAYBACK = 1;
+
+    private final PcmDecoder decoder;
+    private final LoudnessCache cache;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Highest priority each song is queued at, so repeated requests do not pile up
+    private final Map<Long, Integer> queued = new ConcurrentHashMap<>();
+    // Songs being decoded right now
+    private final Set<Long> running = ConcurrentHashMap.newKeySet();
+
+    private final class AnalysisTask implements Runnable, Comparable<AnalysisTask> {
+        final Song song;
+        final int priority;
+        final long order = sequence.getAndIncrement();
+
+        AnalysisTask(Song song, int priority) {
+            this.song = song;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(AnalysisTask other) {
+            if (priority != other.priority) {
+                return other.priority - priority;
+            }
+            // Playback requests are newest first, the library scan oldest first
+            return priority == PRIORITY_PLAYBACK
+                    ? Long.compare(other.order, order)
+                    : Long.compare(order, other.order);
+        }
+
+        @Override
+        public void run() {
+            Integer queuedPriority = queued.get(song.getId());
+            if (queuedPriority != null && queuedPriority == priority) {
+                queued.remove(song.getId());
+            }
+            if (cache.contains(song.getId(), song.getDateModified()) || !running.add(song.getId())) {
+                return;
+            }
+            try {
+                analyze(song);
+            } finally {
+                running.remove(song.getId());
+            }
+        }
+    }
+
+    public LoudnessAnalyzer(Context context) {
+        decoder = new PcmDecoder(context.getContentResolver());
+        cache = new LoudnessCache(new File(context.getFilesDir(), CACHE_FILE));
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND
+                            + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+                    r.run();
+                }, "LoudnessAnalyzer-" + threadCount.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the stored measurement for the song, or null if it has not been analyzed yet
+     */
+    public LoudnessCache.Entry getResult(Song song) {
+        return cache.get(song.getId(), song.getDateModified());
+    }
+
+    /**
+     * Queue every song without a stored result, behind anything needed for playback
+     */
+    public void analyzeAll(List<Song> songs) {
+        int pending = 0;
+        for (Song song : songs) {
+            if (enqueue(song, PRIORITY_LIBRARY)) {
+                pending++;
+            }
+        }
+        if (pending > 0) {
+            Log.d(TAG, "Queued " + pending + " of " + songs.size() + " songs for loudness analysis");
+        }
+    }
+
+    /**
+     * Analyze the song ahead of the library scan, e.g. because it is about to play
+     */
+    public void prioritize(Song song) {
+        enqueue(song, PRIORITY_PLAYBACK);
+    }
+
+    public void shutdown() {
+        // Interrupts running decodes; finished results are already on disk
+        executor.shutdownNow();
+        queued.clear();
+    }
+
+    private boolean enqueue(Song song, int priority) {
+        if (song == null || executor.isShutdown() || cache.contains(song.getId(), song.getDateModified())) {
+            return false;
+        }
+        Integer current = queued.get(song.getId());
+        if (current != null && current >= priority) {
+            return false;
+        }
+        queued.put(song.getId(), priority);
+        executor.execute(new AnalysisTask(song, priority));
+        return true;
+    }
+
+    private void analyze(Song song) {
+        long start = SystemClock.elapsedRealtime();
+        final LoudnessMeter[] meter = new LoudnessMeter[1];
+        try {
+            decoder.decode(song, new PcmDecoder.Sink() {
+                private int sampleRate;
+                private int channels;
+
+                @Override
+                public void onFormat(int rate, int channelCount, long durationUs) {
+                    if (rate != sampleRate || channelCount != channels) {
+                        sampleRate = rate;
+                        channels = channelCount;
+                        meter[0] = new LoudnessMeter(rate, channelCount);
+                    }
+                }
+
+                @Override
+                public void onPcm(ByteBuffer pcm, int offset, int size) {
+                    meter[0].addPcm16(pcm, offset, size);
+                }
+            });
+
+            LoudnessCache.Entry entry = new LoudnessCache.Entry(song.getId(), song.getDateModified(),
+                    (float) meter[0].getIntegratedLoudness(), (float) meter[0].getTruePeak());
+            cache.put(entry);
+            Log.d(TAG, "Analyzed " + song.getTitle() + ": " + entry + " in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+        } catch (InterruptedIOException e) {
+            // Shut down; the song is analyzed again next time
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Loudness analysis failed for " + song.getTitle(), e);
+            try {
+                // Remember the failure so the track is not decoded again on every start
+                cache.put(new LoudnessCache.Entry(song.getId(), song.getDateModified(), Float.NaN, 0f));
+            } catch (IOException writeError) {
+                Log.e(TAG, "Error writing loudness cache", writeError);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.devsound.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent loudness results keyed by song id and modification time.
+ *
+ * Results go to an append-only file as soon as each track is analyzed, so
+ * analysis killed with the process resumes with the first track that has no
+ * record. A truncated last record from a crash is ignored on load. The file
+ * is rewritten without superseded records once they outnumber live ones.
+ */
+public class LoudnessCache {
+    private static final int MAGIC = 0x4c4f5544; // "LOUD"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 24;
+
+    public static final class Entry {
+        public final long songId;
+        public final long dateModified;
+        public final float integratedLufs;
+        public final float truePeak;
+
+        public Entry(long songId, long dateModified, float integratedLufs, float truePeak) {
+            this.songId = songId;
+            this.dateModified = dateModified;
+            this.integratedLufs = integratedLufs;
+            this.truePeak = truePeak;
+        }
+
+        /**
+         * Gain that brings the track to the target loudness, limited so the
+         * true peak does not go over full scale
+         */
+        public float getGainDb(float targetLufs) {
+            if (Float.isInfinite(integratedLufs) || Float.isNaN(integratedLufs)) {
+                return 0f;
+            }
+            float gain = targetLufs - integratedLufs;
+            if (truePeak > 0) {
+                gain = Math.min(gain, (float) (-20 * Math.log10(truePeak)));
+            }
+            return gain;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{id=" + songId + ", lufs=" + integratedLufs + ", truePeak=" + truePeak + "}";
+        }
+    }
+
+    private final File file;
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private int recordsInFile;
+    private boolean loaded;
+
+    public LoudnessCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the stored result, or null if the song was never analyzed or has changed since
+     */
+    public synchronized Entry get(long songId, long dateModified) {
+        ensureLoaded();
+        Entry entry = entries.get(songId);
+        return entry != null && entry.dateModified == dateModified ? entry : null;
+    }
+
+    public synchronized boolean contains(long songId, long dateModified) {
+        return get(songId, dateModified) != null;
+    }
+
+    public synchronized int size() {
+        ensureLoaded();
+        return entries.size();
+    }
+
+    /**
+     * Store a result and append it to disk immediately
+     */
+    public synchronized void put(Entry entry) throws IOException {
+        ensureLoaded();
+        entries.put(entry.songId, entry);
+
+        boolean fresh = !file.exists() || file.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if (fresh) {
+                writeHeader(out);
+                recordsInFile = 0;
+            }
+            writeRecord(out, entry);
+        }
+        recordsInFile++;
+
+        if (recordsInFile > 64 && recordsInFile > 2 * entries.size()) {
+            compact();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        recordsInFile = 0;
+        loaded = true;
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        if (file.length() < HEADER_BYTES) {
+            file.delete();
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                // Unknown format: start over
+                entries.clear();
+                file.delete();
+                return;
+            }
+            while (true) {
+                Entry entry = readRecord(in);
+                entries.put(entry.songId, entry);
+                recordsInFile++;
+            }
+        } catch (EOFException e) {
+            // End of file, or a record cut short by a crash; everything before it is intact
+        } catch (IOException e) {
+            entries.clear();
+            recordsInFile = 0;
+            return;
+        }
+
+        // Drop a partial record so the next append starts on a record boundary
+        long validBytes = HEADER_BYTES + (long) recordsInFile * RECORD_BYTES;
+        if (file.length() > validBytes) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validBytes);
+            } catch (IOException e) {
+                file.delete();
+                entries.clear();
+                recordsInFile = 0;
+            }
+        }
+    }
+
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            writeHeader(out);
+            for (Entry entry : entries.values()) {
+                writeRecord(out, entry);
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        recordsInFile = entries.size();
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    private static void writeRecord(DataOutputStream out, Entry entry) throws IOException {
+        out.writeLong(entry.songId);
+        out.writeLong(entry.dateModified);
+        out.writeFloat(entry.integratedLufs);
+        out.writeFloat(entry.truePeak);
+    }
+
+    private static Entry readRecord(DataInputStream in) throws IOException {
+        long songId = in.readLong();
+        long dateModified = in.readLong();
+        float lufs = in.readFloat();
+        float peak = in.readFloat();
+        return new Entry(songId, dateModified, lufs, peak);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.devsound.analysis;
+
+/**
+ * Decoder for MPEG audio frame headers (MPEG 1, 2 and 2.5, layers I-III).
+ * One instance is reused for every frame of a scan, so parsing does not
+ * allocate.
+ */
+public final class Mp3FrameHeader {
+    public static final int HEADER_BYTES = 4;
+
+    private static final int VERSION_2 = 2;
+    private static final int VERSION_1 = 3;
+
+    // kbps by bitrate index: MPEG 1 layers I, II, III, then MPEG 2/2.5 layer I and layers II/III
+    private static final int[][] BITRATES = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},
+    };
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    private int header;
+    private int version;
+    private int layer;
+    private int bitrateKbps;
+    private int sampleRate;
+    private int channels;
+    private int frameBytes;
+    private int samplesPerFrame;
+
+    /**
+     * Decode a big-endian header word
+     *
+     * @return false if the word is not a valid header; the fields are then undefined
+     */
+    public boolean parse(int header) {
+        if ((header & 0xFFE00000) != 0xFFE00000) {
+            return false;
+        }
+        version = (header >>> 19) & 3;
+        int layerBits = (header >>> 17) & 3;
+        int bitrateIndex = (header >>> 12) & 15;
+        int rateIndex = (header >>> 10) & 3;
+        // Free-format and reserved values cannot be framed
+        if (version == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || rateIndex == 3) {
+            return false;
+        }
+        this.header = header;
+        layer = 4 - layerBits;
+        int padding = (header >>> 9) & 1;
+        channels = ((header >>> 6) & 3) == 3 ? 1 : 2;
+
+        int table = version == VERSION_1 ? layer - 1 : (layer == 1 ? 3 : 4);
+        bitrateKbps = BITRATES[table][bitrateIndex];
+        sampleRate = SAMPLE_RATES[rateIndex] >> (version == VERSION_1 ? 0 : version == VERSION_2 ? 1 : 2);
+
+        if (layer == 1) {
+            samplesPerFrame = 384;
+            frameBytes = (12 * bitrateKbps * 1000 / sampleRate + padding) * 4;
+        } else if (layer == 3 && version != VERSION_1) {
+            samplesPerFrame = 576;
+            frameBytes = 72 * bitrateKbps * 1000 / sampleRate + padding;
+        } else {
+            samplesPerFrame = 1152;
+            frameBytes = 144 * bitrateKbps * 1000 / sampleRate + padding;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the other frame can belong to the same stream as the last parsed one
+     */
+    public boolean isCompatible(int other) {
+        // Sync, version, layer and sample rate stay fixed within a stream
+        return (other & 0xFFFE0C00) == (header & 0xFFFE0C00);
+    }
+
+    /**
+     * Offset of a Xing/Info tag from the start of this frame, valid for layer III
+     */
+    public int getXingOffset() {
+        if (version == VERSION_1) {
+            return HEADER_BYTES + (channels == 1 ? 17 : 32);
+        }
+        return HEADER_BYTES + (channels == 1 ? 9 : 17);
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+
+    public int getBitrateKbps() {
+        return bitrateKbps;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getFrameBytes() {
+        return frameBytes;
+    }
+
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    public boolean isMpeg1() {
+        return version == VERSION_1;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.devsound.analysis;
+
+import android.content.ContentResolver;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+
+import com.example.devsound.models.Song;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes a track, or its opening seconds, to 16-bit PCM on the calling
+ * thread, for offline analysis and pre-roll. Uses MediaCodec in synchronous
+ * mode; checks for interruption between buffers so a shut-down executor
+ * stops it promptly.
+ */
+public class PcmDecoder {
+    private static final long TIMEOUT_US = 10000;
+
+    public interface Sink {
+        /**
+         * Called once before any PCM, and again if the output format changes
+         */
+        void onFormat(int sampleRate, int channelCount, long durationUs);
+
+        /**
+         * Interleaved 16-bit samples in native byte order. The buffer is only
+         * valid during the call; position and limit must be left as they are.
+         */
+        void onPcm(ByteBuffer pcm, int offset, int size);
+    }
+
+    private final ContentResolver resolver;
+
+    public PcmDecoder(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    public void decode(Song song, Sink sink) throws IOException {
+        decode(song, sink, Long.MAX_VALUE);
+    }
+
+    /**
+     * Decode from the start until the output reaches the given time, or to the end
+     */
+    public void decode(Song song, Sink sink, long maxTimeUs) throws IOException {
+        if (song.getUri() == null) {
+            throw new IOException("Song URI is null: " + song.getTitle());
+        }
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(song.getUri(), "r")) {
+            if (pfd == null) {
+                throw new IOException("Cannot open " + song.getUri());
+            }
+            extractor.setDataSource(pfd.getFileDescriptor());
+
+            int trackIndex = -1;
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    trackIndex = i;
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) {
+                throw new IOException("No audio track in " + song.getTitle());
+            }
+            extractor.selectTrack(trackIndex);
+
+            long durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                    ? format.getLong(MediaFormat.KEY_DURATION) : 0;
+            sink.onFormat(format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                    format.getInteger(MediaFormat.KEY_CHANNEL_COUNT), durationUs);
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            run(extractor, codec, sink, durationUs, maxTimeUs);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Decoding failed for " + song.getTitle(), e);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    // Never started or already in error
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private static void run(MediaExtractor extractor, MediaCodec codec, Sink sink, long durationUs,
+            long maxTimeUs) throws IOException {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputDone = false;
+
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Decoding cancelled");
+            }
+
+            if (!inputDone) {
+                int inputIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    ByteBuffer input = codec.getInputBuffer(inputIndex);
+                    int size = input != null ? extractor.readSampleData(input, 0) : -1;
+                    if (size < 0) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int outputIndex = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MediaFormat outputFormat = codec.getOutputFormat();
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                        && outputFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                        && outputFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT) {
+                    throw new IOException("Unsupported PCM encoding");
+                }
+                sink.onFormat(outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                        outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT), durationUs);
+            } else if (outputIndex >= 0) {
+                ByteBuffer output = codec.getOutputBuffer(outputIndex);
+                if (output != null && info.size > 0) {
+                    output.order(ByteOrder.nativeOrder());
+                    sink.onPcm(output, info.offset, info.size);
+                }
+                codec.releaseOutputBuffer(outputIndex, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0
+                        || info.presentationTimeUs >= maxTimeUs) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.devsound.analysis;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Table of frame positions in a track: for frames at regular time intervals,
+ * the sample they start at and their byte offset in the file. With it a
+ * player can seek a VBR stream to the exact frame with a binary search
+ * instead of estimating the offset from the average bitrate.
+ *
+ * An empty index records that the track cannot be indexed (not MPEG audio),
+ * so it is not scanned again.
+ */
+public final class SeekIndex {
+    private static final int MAGIC = 0x53494458; // "SIDX"
+    private static final int VERSION = 1;
+
+    public static final SeekIndex EMPTY = new SeekIndex(0, new long[0], new long[0], 0);
+
+    private final int sampleRate;
+    private final long[] samples;
+    private final long[] offsets;
+    private final long totalSamples;
+
+    /**
+     * @param samples      start sample of each indexed frame, ascending
+     * @param offsets      byte offset of each indexed frame, ascending
+     * @param totalSamples samples in the whole stream
+     */
+    public SeekIndex(int sampleRate, long[] samples, long[] offsets, long totalSamples) {
+        if (samples.length != offsets.length) {
+            throw new IllegalArgumentException("Mismatched index arrays");
+        }
+        this.sampleRate = sampleRate;
+        this.samples = samples;
+        this.offsets = offsets;
+        this.totalSamples = totalSamples;
+    }
+
+    public boolean isEmpty() {
+        return samples.length == 0;
+    }
+
+    public int getEntryCount() {
+        return samples.length;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getTimeUs(int entry) {
+        return samples[entry] * 1000000L / sampleRate;
+    }
+
+    public long getOffset(int entry) {
+        return offsets[entry];
+    }
+
+    public long getDurationUs() {
+        return sampleRate > 0 ? totalSamples * 1000000L / sampleRate : 0;
+    }
+
+    /**
+     * @return the last entry at or before the time, or 0 if the time is before the first entry
+     */
+    public int find(long timeUs) {
+        long target = timeUs * sampleRate / 1000000L;
+        int low = 0;
+        int high = samples.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (samples[mid] <= target) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the entry closest to the time
+     */
+    public int findNearest(long timeUs) {
+        int entry = find(timeUs);
+        if (entry + 1 < samples.length
+                && getTimeUs(entry + 1) - timeUs < timeUs - getTimeUs(entry)) {
+            return entry + 1;
+        }
+        return entry;
+    }
+
+    /**
+     * Write the index with delta-coded variable-length entries, about six bytes each
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(sampleRate);
+        out.writeLong(totalSamples);
+        out.writeInt(samples.length);
+        long lastSample = 0;
+        long lastOffset = 0;
+        for (int i = 0; i < samples.length; i++) {
+            writeVarLong(out, samples[i] - lastSample);
+            writeVarLong(out, offsets[i] - lastOffset);
+            lastSample = samples[i];
+            lastOffset = offsets[i];
+        }
+    }
+
+    public static SeekIndex read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unknown seek index format");
+        }
+        int sampleRate = in.readInt();
+        long totalSamples = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > 1 << 20) {
+            throw new IOException("Bad entry count " + count);
+        }
+        long[] samples = new long[count];
+        long[] offsets = new long[count];
+        long sample = 0;
+        long offset = 0;
+        for (int i = 0; i < count; i++) {
+            sample += readVarLong(in);
+            offset += readVarLong(in);
+            samples[i] = sample;
+            offsets[i] = offset;
+        }
+        return new SeekIndex(sampleRate, samples, offsets, totalSamples);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed seek index entry");
+    }
+}
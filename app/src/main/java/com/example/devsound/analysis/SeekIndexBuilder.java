@@ -0,0 +1,152 @@
+package com.example.devsound.analysis;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Builds a {@link SeekIndex} for an MPEG audio file by walking its frame
+ * headers. Nothing is decoded, so an hour-long mix scans in well under a
+ * second. ID3v2 tags and a leading Xing/Info/VBRI frame are skipped the way
+ * the platform extractor skips them, so indexed times match its timestamps.
+ */
+public final class SeekIndexBuilder {
+    public static final long DEFAULT_INTERVAL_US = 1000000L;
+
+    private static final int WINDOW_BYTES = 64 * 1024;
+    // How far past garbage to look for the next frame before giving up
+    private static final int MAX_RESYNC_BYTES = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer window = ByteBuffer.allocate(WINDOW_BYTES);
+    private long windowStart;
+    private int windowLength;
+
+    private SeekIndexBuilder(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return the index, or null if the file is not MPEG audio
+     */
+    public static SeekIndex build(FileChannel channel, long intervalUs) throws IOException {
+        return new SeekIndexBuilder(channel).scan(intervalUs);
+    }
+
+    private SeekIndex scan(long intervalUs) throws IOException {
+        long size = channel.size();
+        long position = skipId3v2();
+        Mp3FrameHeader header = new Mp3FrameHeader();
+        position = findFrame(position, size, header);
+        if (position < 0) {
+            return null;
+        }
+        if (header.getLayer() == 3 && isInfoFrame(position, header)) {
+            position += header.getFrameBytes();
+        }
+
+        int sampleRate = header.getSampleRate();
+        long intervalSamples = Math.max(1, intervalUs * sampleRate / 1000000L);
+        long[] samples = new long[64];
+        long[] offsets = new long[64];
+        int count = 0;
+        long sample = 0;
+        long nextEntry = 0;
+
+        while (position + Mp3FrameHeader.HEADER_BYTES <= size) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException();
+            }
+            int word = readInt(position);
+            if (!header.isCompatible(word) || !header.parse(word)) {
+                long resynced = findFrame(position + 1, size, header);
+                if (resynced < 0) {
+                    break;
+                }
+                position = resynced;
+                continue;
+            }
+            if (sample >= nextEntry) {
+                if (count == samples.length) {
+                    samples = Arrays.copyOf(samples, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                samples[count] = sample;
+                offsets[count] = position;
+                count++;
+                nextEntry += intervalSamples;
+            }
+            sample += header.getSamplesPerFrame();
+            position += header.getFrameBytes();
+        }
+        return new SeekIndex(sampleRate, Arrays.copyOf(samples, count), Arrays.copyOf(offsets, count), sample);
+    }
+
+    private long skipId3v2() throws IOException {
+        long position = 0;
+        // Some files carry several tags back to back
+        while (channel.size() >= position + 10 && byteAt(position) == 'I' && byteAt(position + 1) == 'D'
+                && byteAt(position + 2) == '3') {
+            int flags = byteAt(position + 5);
+            int tagSize = ((byteAt(position + 6) & 0x7F) << 21) | ((byteAt(position + 7) & 0x7F) << 14)
+                    | ((byteAt(position + 8) & 0x7F) << 7) | (byteAt(position + 9) & 0x7F);
+            position += 10 + tagSize + ((flags & 0x10) != 0 ? 10 : 0);
+        }
+        return position;
+    }
+
+    /**
+     * Find the next header followed by another compatible header, leaving it parsed
+     *
+     * @return its position, or -1 if there is none nearby
+     */
+    private long findFrame(long from, long size, Mp3FrameHeader header) throws IOException {
+        long limit = Math.min(size - Mp3FrameHeader.HEADER_BYTES, from + MAX_RESYNC_BYTES);
+        for (long position = from; position <= limit; position++) {
+            if (byteAt(position) != 0xFF || !header.parse(readInt(position))) {
+                continue;
+            }
+            long next = position + header.getFrameBytes();
+            if (next + Mp3FrameHeader.HEADER_BYTES > size) {
+                // A lone frame at the very end; accept it
+                return position;
+            }
+            if (header.isCompatible(readInt(next))) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isInfoFrame(long position, Mp3FrameHeader header) throws IOException {
+        int xing = readInt(position + header.getXingOffset());
+        int vbri = readInt(position + Mp3FrameHeader.HEADER_BYTES + 32);
+        return xing == 0x58696E67 /* Xing */ || xing == 0x496E666F /* Info */ || vbri == 0x56425249 /* VBRI */;
+    }
+
+    private int readInt(long position) throws IOException {
+        return (byteAt(position) << 24) | (byteAt(position + 1) << 16) | (byteAt(position + 2) << 8)
+                | byteAt(position + 3);
+    }
+
+    /**
+     * @return the unsigned byte at the position, or 0 past the end of the file
+     */
+    private int byteAt(long position) throws IOException {
+        if (position < windowStart || position >= windowStart + windowLength) {
+            window.clear();
+            windowStart = position;
+            windowLength = 0;
+            int read;
+            while (window.hasRemaining() && (read = channel.read(window, position + windowLength)) > 0) {
+                windowLength += read;
+            }
+            if (position >= windowStart + windowLength) {
+                return 0;
+            }
+        }
+        return window.get((int) (position - windowStart)) & 0xFF;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.devsound.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Seek indexes on disk, one small file per song, named after the song id and
+ * modification time so an edited track simply misses. The directory is kept
+ * under a byte budget by deleting the least recently used files; reads
+ * refresh a file's timestamp.
+ */
+public class SeekIndexCache {
+    private static final String SUFFIX = ".sidx";
+
+    private final File directory;
+    private final long maxBytes;
+
+    public SeekIndexCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the stored index, possibly empty, or null if the song was never scanned, has changed, or was evicted
+     */
+    public synchronized SeekIndex get(long songId, long dateModified) {
+        File file = new File(directory, key(songId, dateModified) + SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            SeekIndex index = SeekIndex.read(in);
+            file.setLastModified(System.currentTimeMillis());
+            return index;
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Store an index and evict the oldest files if the directory is over budget
+     */
+    public synchronized void put(long songId, long dateModified, SeekIndex index) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        String key = key(songId, dateModified);
+        File file = new File(directory, key + SUFFIX);
+        File temp = new File(directory, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            index.writeTo(out);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        trim();
+    }
+
+    public synchronized long getDiskUsage() {
+        long total = 0;
+        for (File file : listFiles()) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    private void trim() {
+        File[] files = listFiles();
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private File[] listFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        return files != null ? files : new File[0];
+    }
+
+    private static String key(long songId, long dateModified) {
+        return songId + "_" + dateModified;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.devsound.analysis;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.devsound.models.Song;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans tracks for their seek index in the background, once per version of
+ * each track, and keeps the result on disk. Tracks that are not MPEG audio
+ * are remembered as such and not scanned again. Results are delivered on the
+ * main thread.
+ */
+public class SeekIndexLoader {
+    private static final String TAG = "SeekIndexLoader";
+    private static final String CACHE_DIR = "seekindex";
+    // A few kilobytes per hour of audio, so this holds a large library
+    private static final long MAX_DISK_BYTES = 4 * 1024 * 1024;
+
+    public interface Callback {
+        void onSeekIndexReady(Song song, SeekIndex index);
+    }
+
+    private final ContentResolver resolver;
+    private final SeekIndexCache cache;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Songs queued or being scanned, so repeated requests do not pile up
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    public SeekIndexLoader(Context context) {
+        resolver = context.getContentResolver();
+        cache = new SeekIndexCache(new File(context.getCacheDir(), CACHE_DIR), MAX_DISK_BYTES);
+        executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, TAG));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the index for the song, scanning it first if needed. The callback
+     * runs on the main thread, and only if the song has a usable index.
+     */
+    public void load(Song song, Callback callback) {
+        submit(song, callback);
+    }
+
+    /**
+     * Scan the song ahead of time, e.g. because it plays next
+     */
+    public void prefetch(Song song) {
+        submit(song, null);
+    }
+
+    public void shutdown() {
+        // Interrupts a running scan; finished indexes are already on disk
+        executor.shutdownNow();
+        queued.clear();
+    }
+
+    private void submit(Song song, Callback callback) {
+        if (song == null || song.getUri() == null || executor.isShutdown()) {
+            return;
+        }
+        if (callback == null && !queued.add(song.getId())) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                SeekIndex index = getOrBuild(song);
+                if (callback != null && index != null && !index.isEmpty()) {
+                    mainHandler.post(() -> callback.onSeekIndexReady(song, index));
+                }
+            } finally {
+                if (callback == null) {
+                    queued.remove(song.getId());
+                }
+            }
+        });
+    }
+
+    private SeekIndex getOrBuild(Song song) {
+        SeekIndex index = cache.get(song.getId(), song.getDateModified());
+        if (index != null) {
+            return index;
+        }
+        long start = SystemClock.elapsedRealtime();
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(song.getUri(), "r")) {
+            if (pfd == null) {
+                return null;
+            }
+            // The channel reads by position and shares the descriptor, which pfd closes
+            FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+            index = SeekIndexBuilder.build(in.getChannel(), SeekIndexBuilder.DEFAULT_INTERVAL_US);
+            if (index == null) {
+                index = SeekIndex.EMPTY;
+            }
+            cache.put(song.getId(), song.getDateModified(), index);
+            Log.d(TAG, "Indexed " + song.getTitle() + ": " + index.getEntryCount() + " entries in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+            return index;
+        } catch (InterruptedIOException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Seek index scan failed for " + song.getTitle(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.devsound.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Waveform envelopes on disk, one small file per song, plus the few most
+ * recently used ones in memory. Zoom pyramids sit next to them and are
+ * memory-mapped on load.
+ *
+ * Files are named after the song id and modification time, so an edited
+ * track simply misses. The directory is kept under a byte budget by deleting
+ * the least recently used files; reads refresh a file's timestamp.
+ */
+public class WaveformCache {
+    private static final int MAGIC = 0x57415645; // "WAVE"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".wf";
+    private static final String PYRAMID_SUFFIX = ".wfp";
+
+    private final File directory;
+    private final long maxBytes;
+    private final Map<String, WaveformData> memory;
+
+    public WaveformCache(File directory, long maxBytes, final int memoryEntries) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.memory = new LinkedHashMap<String, WaveformData>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, WaveformData> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the envelope if it is in memory; never touches the disk, so it is safe on the main thread
+     */
+    public synchronized WaveformData getFromMemory(long songId, long dateModified) {
+        return memory.get(key(songId, dateModified));
+    }
+
+    /**
+     * @return the stored envelope, or null if the song was never extracted, has changed, or was evicted
+     */
+    public synchronized WaveformData get(long songId, long dateModified) {
+        String key = key(songId, dateModified);
+        WaveformData data = memory.get(key);
+        if (data != null) {
+            return data;
+        }
+        File file = new File(directory, key + SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            data = read(file);
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        memory.put(key, data);
+        return data;
+    }
+
+    /**
+     * Store an envelope and evict the oldest files if the directory is over budget
+     */
+    public synchronized void put(long songId, long dateModified, WaveformData data) throws IOException {
+        String key = key(songId, dateModified);
+        memory.put(key, data);
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, key + SUFFIX);
+        File temp = new File(directory, key + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            write(out, data);
+        }
+        replace(temp, file);
+        trim();
+    }
+
+    /**
+     * @return the stored pyramid mapped into memory, or null if there is none for this version of the song
+     */
+    public synchronized WaveformPyramid getPyramid(long songId, long dateModified) {
+        File file = new File(directory, key(songId, dateModified) + PYRAMID_SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            WaveformPyramid pyramid = WaveformPyramid.map(file);
+            file.setLastModified(System.currentTimeMillis());
+            return pyramid;
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    public synchronized void putPyramid(long songId, long dateModified, WaveformPyramid pyramid) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        String key = key(songId, dateModified);
+        File file = new File(directory, key + PYRAMID_SUFFIX);
+        File temp = new File(directory, key + ".tmp");
+        try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            pyramid.writeTo(out);
+        }
+        replace(temp, file);
+        trim();
+    }
+
+    public synchronized long getDiskUsage() {
+        long total = 0;
+        for (File file : listFiles()) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    private void trim() {
+        File[] files = listFiles();
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            // A mapped pyramid stays readable after its file is deleted
+            if (file.delete()) {
+                total -= length;
+                String name = file.getName();
+                if (name.endsWith(SUFFIX)) {
+                    memory.remove(name.substring(0, name.length() - SUFFIX.length()));
+                }
+            }
+        }
+    }
+
+    private File[] listFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX) || name.endsWith(PYRAMID_SUFFIX));
+        return files != null ? files : new File[0];
+    }
+
+    private static void replace(File temp, File file) throws IOException {
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static String key(long songId, long dateModified) {
+        return songId + "_" + dateModified;
+    }
+
+    // Values are quantized to a byte each: far finer than a bar on screen
+    private static void write(DataOutputStream out, WaveformData data) throws IOException {
+        int points = data.getPointCount();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(points);
+        for (int i = 0; i < points; i++) {
+            out.writeByte(quantize(data.getPeak(i)));
+        }
+        for (int i = 0; i < points; i++) {
+            out.writeByte(quantize(data.getRms(i)));
+        }
+    }
+
+    private static WaveformData read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown waveform format");
+            }
+            int points = in.readInt();
+            if (points <= 0 || points > 1 << 16) {
+                throw new IOException("Bad point count " + points);
+            }
+            float[] peaks = new float[points];
+            float[] rms = new float[points];
+            for (int i = 0; i < points; i++) {
+                peaks[i] = in.readUnsignedByte() / 255f;
+            }
+            for (int i = 0; i < points; i++) {
+                rms[i] = in.readUnsignedByte() / 255f;
+            }
+            return new WaveformData(peaks, rms);
+        }
+    }
+
+    private static int quantize(float value) {
+        return Math.round(Math.max(0f, Math.min(1f, value)) * 255);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.devsound.analysis;
+
+import com.example.devsound.dsp.EnvelopeBuilder;
+
+/**
+ * Peak and RMS envelope of one track, evenly spaced over its duration.
+ * Values are linear amplitudes in [0, 1].
+ */
+public class WaveformData {
+    // Enough for a full-width view on any phone; 1 KB on disk
+    public static final int DEFAULT_POINTS = 512;
+
+    private final float[] peaks;
+    private final float[] rms;
+
+    public WaveformData(float[] peaks, float[] rms) {
+        if (peaks.length != rms.length) {
+            throw new IllegalArgumentException("Peak and RMS lengths differ");
+        }
+        this.peaks = peaks;
+        this.rms = rms;
+    }
+
+    public static WaveformData from(EnvelopeBuilder builder, int points) {
+        float[] peaks = new float[points];
+        float[] rms = new float[points];
+        builder.resample(points, peaks, rms);
+        return new WaveformData(peaks, rms);
+    }
+
+    public int getPointCount() {
+        return peaks.length;
+    }
+
+    public float getPeak(int index) {
+        return peaks[index];
+    }
+
+    public float getRms(int index) {
+        return rms[index];
+    }
+
+    public float getMaxPeak() {
+        float max = 0;
+        for (float p : peaks) {
+            max = Math.max(max, p);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.devsound.analysis;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.devsound.dsp.EnvelopeBuilder;
+import com.example.devsound.models.Song;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extracts waveform envelopes in the background and hands them to the UI.
+ *
+ * Each track is decoded once into an overview envelope and a zoom pyramid;
+ * both are kept on disk and served from there afterwards. Requests for the
+ * track on screen run before prefetches of the next track, and the newest
+ * request of each kind runs first. Results are delivered on the main thread.
+ */
+public class WaveformLoader {
+    private static final String TAG = "WaveformLoader";
+    private static final String CACHE_DIR = "waveforms";
+    // Room for a few hours of audio at full pyramid resolution
+    private static final long MAX_DISK_BYTES = 16 * 1024 * 1024;
+    private static final int MEMORY_ENTRIES = 8;
+
+    private static final int PRIORITY_NEXT = 0;
+    private static final int PRIORITY_CURRENT = 1;
+
+    private static WaveformLoader instance;
+
+    public interface Callback {
+        void onWaveformLoaded(Song song, WaveformData data);
+    }
+
+    public interface PyramidCallback {
+        void onPyramidLoaded(Song song, WaveformPyramid pyramid);
+    }
+
+    private final PcmDecoder decoder;
+    private final WaveformCache cache;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Guarded by waiting: callbacks waiting per song, and the priority each song is queued at
+    private final Map<Long, List<Callback>> waiting = new HashMap<>();
+    private final Map<Long, List<PyramidCallback>> waitingPyramids = new HashMap<>();
+    private final Map<Long, Integer> queued = new HashMap<>();
+
+    private static final class Extraction {
+        final WaveformData data;
+        final WaveformPyramid pyramid;
+
+        Extraction(WaveformData data, WaveformPyramid pyramid) {
+            this.data = data;
+            this.pyramid = pyramid;
+        }
+    }
+
+    private final class ExtractionTask implements Runnable, Comparable<ExtractionTask> {
+        final Song song;
+        final int priority;
+        final long order = sequence.getAndIncrement();
+
+        ExtractionTask(Song song, int priority) {
+            this.song = song;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(ExtractionTask other) {
+            if (priority != other.priority) {
+                return other.priority - priority;
+            }
+            return Long.compare(other.order, order);
+        }
+
+        @Override
+        public void run() {
+            synchronized (waiting) {
+                Integer queuedPriority = queued.get(song.getId());
+                if (queuedPriority == null || queuedPriority != priority) {
+                    // Superseded by a higher-priority task that already ran or will run
+                    return;
+                }
+                queued.remove(song.getId());
+            }
+            WaveformData data = cache.get(song.getId(), song.getDateModified());
+            WaveformPyramid pyramid = cache.getPyramid(song.getId(), song.getDateModified());
+            if (data == null || pyramid == null) {
+                Extraction extracted = extract(song);
+                if (extracted != null) {
+                    data = extracted.data;
+                    pyramid = extracted.pyramid;
+                }
+            }
+            deliver(song, data, pyramid);
+        }
+    }
+
+    private WaveformLoader(Context context) {
+        decoder = new PcmDecoder(context.getContentResolver());
+        cache = new WaveformCache(new File(context.getCacheDir(), CACHE_DIR), MAX_DISK_BYTES, MEMORY_ENTRIES);
+
+        // One thread: the loudness scan already keeps the other cores busy
+        executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, TAG));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized WaveformLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new WaveformLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @return the envelope if it is already in memory, without blocking
+     */
+    public WaveformData getCached(Song song) {
+        return song != null ? cache.getFromMemory(song.getId(), song.getDateModified()) : null;
+    }
+
+    /**
+     * Load the envelope for the track on screen. The callback runs on the main
+     * thread, once, unless cancelled first.
+     */
+    public void load(Song song, Callback callback) {
+        if (song == null) {
+            return;
+        }
+        synchronized (waiting) {
+            addWaiting(waiting, song, callback);
+        }
+        enqueue(song, PRIORITY_CURRENT);
+    }
+
+    /**
+     * Load the zoom pyramid for the track on screen, mapped from disk. The
+     * callback runs on the main thread, once, unless cancelled first.
+     */
+    public void loadPyramid(Song song, PyramidCallback callback) {
+        if (song == null) {
+            return;
+        }
+        synchronized (waiting) {
+            addWaiting(waitingPyramids, song, callback);
+        }
+        enqueue(song, PRIORITY_CURRENT);
+    }
+
+    private static <T> void addWaiting(Map<Long, List<T>> map, Song song, T callback) {
+        List<T> callbacks = map.get(song.getId());
+        if (callbacks == null) {
+            callbacks = new ArrayList<>();
+            map.put(song.getId(), callbacks);
+        }
+        callbacks.add(callback);
+    }
+
+    /**
+     * Extract the envelope ahead of time, e.g. for the track that plays next
+     */
+    public void prefetch(Song song) {
+        if (song != null && getCached(song) == null) {
+            enqueue(song, PRIORITY_NEXT);
+        }
+    }
+
+    /**
+     * Stop delivering to the callback; extraction itself carries on so the result is cached
+     */
+    public void cancel(Callback callback) {
+        synchronized (waiting) {
+            for (List<Callback> callbacks : waiting.values()) {
+                callbacks.remove(callback);
+            }
+        }
+    }
+
+    public void cancel(PyramidCallback callback) {
+        synchronized (waiting) {
+            for (List<PyramidCallback> callbacks : waitingPyramids.values()) {
+                callbacks.remove(callback);
+            }
+        }
+    }
+
+    private void enqueue(Song song, int priority) {
+        synchronized (waiting) {
+            Integer current = queued.get(song.getId());
+            if (current != null && current >= priority) {
+                return;
+            }
+            queued.put(song.getId(), priority);
+        }
+        executor.execute(new ExtractionTask(song, priority));
+    }
+
+    private void deliver(Song song, WaveformData data, WaveformPyramid pyramid) {
+        final List<Callback> callbacks;
+        final List<PyramidCallback> pyramidCallbacks;
+        synchronized (waiting) {
+            callbacks = waiting.remove(song.getId());
+            pyramidCallbacks = waitingPyramids.remove(song.getId());
+        }
+        if (callbacks != null && !callbacks.isEmpty() && data != null) {
+            mainHandler.post(() -> {
+                for (Callback callback : callbacks) {
+                    callback.onWaveformLoaded(song, data);
+                }
+            });
+        }
+        if (pyramidCallbacks != null && !pyramidCallbacks.isEmpty() && pyramid != null) {
+            mainHandler.post(() -> {
+                for (PyramidCallback callback : pyramidCallbacks) {
+                    callback.onPyramidLoaded(song, pyramid);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the envelope and the pyramid, or null if the track could not be decoded
+     */
+    private Extraction extract(Song song) {
+        long start = SystemClock.elapsedRealtime();
+        final EnvelopeBuilder[] builder = new EnvelopeBuilder[1];
+        final int[] sampleRate = new int[1];
+        try {
+            decoder.decode(song, new PcmDecoder.Sink() {
+                @Override
+                public void onFormat(int rate, int channelCount, long durationUs) {
+                    if (builder[0] == null) {
+                        builder[0] = new EnvelopeBuilder(channelCount);
+                        sampleRate[0] = rate;
+                    }
+                }
+
+                @Override
+                public void onPcm(ByteBuffer pcm, int offset, int size) {
+                    builder[0].addPcm16(pcm, offset, size);
+                }
+            });
+            builder[0].finish();
+
+            WaveformData data = WaveformData.from(builder[0], WaveformData.DEFAULT_POINTS);
+            WaveformPyramid pyramid = WaveformPyramid.build(builder[0], sampleRate[0]);
+            cache.put(song.getId(), song.getDateModified(), data);
+            cache.putPyramid(song.getId(), song.getDateModified(), pyramid);
+            Log.d(TAG, "Extracted waveform for " + song.getTitle() + " in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms, pyramid "
+                    + pyramid.getByteSize() + " bytes");
+            return new Extraction(data, pyramid);
+        } catch (InterruptedIOException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Waveform extraction failed for " + song.getTitle(), e);
+            return null;
+        }
+    }
+}
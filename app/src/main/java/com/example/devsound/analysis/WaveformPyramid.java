@@ -0,0 +1,228 @@
+package com.example.devsound.analysis;
+
+import com.example.devsound.dsp.EnvelopeBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Min/max envelope of a track at successively halved resolutions, for
+ * drawing it at any zoom level. Level 0 holds one entry per envelope block;
+ * each level above merges pairs of the one below. A view picks the level
+ * whose blocks are just finer than a bar, so a frame costs a couple of
+ * entries per visible bar however long the track is.
+ *
+ * The in-memory form is the file format, so a stored pyramid is memory-mapped
+ * rather than parsed:
+ *
+ * <pre>
+ *   int magic, int version, int sampleRate, int baseBlockFrames,
+ *   long totalFrames, int levelCount,
+ *   levelCount x (int entryCount, int byteOffset),
+ *   per level: entryCount x (byte min, byte max), samples scaled by 127
+ * </pre>
+ */
+public class WaveformPyramid {
+    private static final int MAGIC = 0x57505952; // "WPYR"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 28;
+    private static final int LEVEL_BYTES = 8;
+    private static final int MAX_LEVELS = 32;
+
+    private final ByteBuffer buffer;
+    private final int sampleRate;
+    private final int baseBlockFrames;
+    private final long totalFrames;
+    private final int levelCount;
+
+    private WaveformPyramid(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unknown waveform pyramid format");
+        }
+        this.buffer = buffer;
+        sampleRate = buffer.getInt(8);
+        baseBlockFrames = buffer.getInt(12);
+        totalFrames = buffer.getLong(16);
+        levelCount = buffer.getInt(24);
+        if (sampleRate <= 0 || baseBlockFrames <= 0 || levelCount < 0 || levelCount > MAX_LEVELS
+                || buffer.capacity() < HEADER_BYTES + levelCount * LEVEL_BYTES) {
+            throw new IOException("Corrupt waveform pyramid header");
+        }
+        for (int level = 0; level < levelCount; level++) {
+            long end = (long) levelOffset(level) + 2L * getLevelSize(level);
+            if (levelOffset(level) < 0 || getLevelSize(level) < 0 || end > buffer.capacity()) {
+                throw new IOException("Truncated waveform pyramid");
+            }
+        }
+    }
+
+    /**
+     * Build the pyramid from a finished envelope
+     */
+    public static WaveformPyramid build(EnvelopeBuilder envelope, int sampleRate) {
+        int base = envelope.getBlockCount();
+        int levels = 0;
+        long dataBytes = 0;
+        for (int size = base; size > 0; size = (size + 1) / 2) {
+            levels++;
+            dataBytes += 2L * size;
+            if (size == 1) {
+                break;
+            }
+        }
+        int headerBytes = HEADER_BYTES + levels * LEVEL_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (headerBytes + dataBytes));
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, sampleRate);
+        buffer.putInt(12, envelope.getBlockFrames());
+        buffer.putLong(16, envelope.getFrameCount());
+        buffer.putInt(24, levels);
+
+        int offset = headerBytes;
+        int size = base;
+        for (int level = 0; level < levels; level++) {
+            buffer.putInt(HEADER_BYTES + level * LEVEL_BYTES, size);
+            buffer.putInt(HEADER_BYTES + level * LEVEL_BYTES + 4, offset);
+            if (level == 0) {
+                for (int i = 0; i < size; i++) {
+                    buffer.put(offset + 2 * i, quantize(envelope.getBlockMin(i)));
+                    buffer.put(offset + 2 * i + 1, quantize(envelope.getBlockMax(i)));
+                }
+            } else {
+                int below = buffer.getInt(HEADER_BYTES + (level - 1) * LEVEL_BYTES + 4);
+                int belowSize = buffer.getInt(HEADER_BYTES + (level - 1) * LEVEL_BYTES);
+                for (int i = 0; i < size; i++) {
+                    int a = below + 4 * i;
+                    int b = 2 * i + 1 < belowSize ? a + 2 : a;
+                    buffer.put(offset + 2 * i, (byte) Math.min(buffer.get(a), buffer.get(b)));
+                    buffer.put(offset + 2 * i + 1, (byte) Math.max(buffer.get(a + 1), buffer.get(b + 1)));
+                }
+            }
+            offset += 2 * size;
+            size = (size + 1) / 2;
+        }
+        try {
+            return new WaveformPyramid(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Map a stored pyramid read-only; pages are loaded as the view touches them
+     */
+    public static WaveformPyramid map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            return new WaveformPyramid(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static WaveformPyramid wrap(ByteBuffer buffer) throws IOException {
+        return new WaveformPyramid(buffer);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer copy = buffer.duplicate();
+        copy.clear();
+        byte[] chunk = new byte[8192];
+        while (copy.hasRemaining()) {
+            int n = Math.min(chunk.length, copy.remaining());
+            copy.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+
+    public int getByteSize() {
+        return buffer.capacity();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    public long getDurationMs() {
+        return totalFrames * 1000 / sampleRate;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    public int getLevelSize(int level) {
+        return buffer.getInt(HEADER_BYTES + level * LEVEL_BYTES);
+    }
+
+    public long getBlockFrames(int level) {
+        return (long) baseBlockFrames << level;
+    }
+
+    /**
+     * @return the coarsest level whose blocks are no wider than a bar
+     */
+    public int chooseLevel(double framesPerBar) {
+        int level = 0;
+        while (level + 1 < levelCount && getBlockFrames(level + 1) <= framesPerBar) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Fill the extremes of consecutive bars starting at the given frame.
+     * Bars outside the track are zero. Allocation-free.
+     */
+    public void fillBars(double startFrame, double framesPerBar, int bars, float[] minsOut, float[] maxsOut) {
+        if (levelCount == 0) {
+            for (int bar = 0; bar < bars; bar++) {
+                minsOut[bar] = 0;
+                maxsOut[bar] = 0;
+            }
+            return;
+        }
+        int level = chooseLevel(framesPerBar);
+        double blockFrames = getBlockFrames(level);
+        int size = getLevelSize(level);
+        int offset = levelOffset(level);
+        for (int bar = 0; bar < bars; bar++) {
+            double from = startFrame + bar * framesPerBar;
+            double to = from + framesPerBar;
+            int first = (int) Math.max(0, Math.floor(from / blockFrames));
+            int last = (int) Math.min(size, Math.ceil(to / blockFrames));
+            if (to <= 0 || from >= totalFrames || first >= size) {
+                minsOut[bar] = 0;
+                maxsOut[bar] = 0;
+                continue;
+            }
+            if (last <= first) {
+                last = first + 1;
+            }
+            int min = Byte.MAX_VALUE;
+            int max = Byte.MIN_VALUE;
+            for (int i = first; i < last; i++) {
+                min = Math.min(min, buffer.get(offset + 2 * i));
+                max = Math.max(max, buffer.get(offset + 2 * i + 1));
+            }
+            minsOut[bar] = min / 127f;
+            maxsOut[bar] = max / 127f;
+        }
+    }
+
+    private int levelOffset(int level) {
+        return buffer.getInt(HEADER_BYTES + level * LEVEL_BYTES + 4);
+    }
+
+    private static byte quantize(float value) {
+        return (byte) Math.round(Math.max(-1f, Math.min(1f, value)) * 127);
+    }
+}
@@ -0,0 +1,540 @@
+package com.example.devsound.art;
+
+import android.content.ComponentCallbacks2;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+
+import com.example.devsound.R;
+import com.example.devsound.models.Song;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads album art into image views without touching the main thread.
+ *
+ * Art is decoded in the background, scaled to one of two sizes (list rows
+ * or the player screen) and kept in a memory cache shared by every list and
+ * screen, keyed by album id and size. The scaled art is also written to a
+ * thumbnail cache on disk, which is read before going back to the media
+ * provider, so art is quick again after a restart. Views showing the same
+ * album share one decode. Albums without any art, in the provider or
+ * embedded in their tracks, are remembered on disk and in memory, and later
+ * binds show the default art without queueing anything.
+ *
+ * Bitmaps that leave the memory cache and are no longer shown by any view
+ * go to a pool, and thumbnails are decoded into pooled bitmaps, so scrolling
+ * does not allocate a new bitmap per row. Views must therefore be handed
+ * back with {@link #release} when they stop showing their art.
+ *
+ * The newest request runs first, so while a list scrolls the rows on screen
+ * win over the ones that already left it; a row that is recycled cancels its
+ * request. Prefetches for rows about to scroll in run after every visible
+ * request.
+ *
+ * All methods must be called on the main thread.
+ */
+public class AlbumArtLoader {
+    private static final String TAG = "AlbumArtLoader";
+    private static final int DECODE_THREADS = 2;
+    // Share of the heap the decoded bitmaps may use
+    private static final int MEMORY_FRACTION = 8;
+    // Share of the heap kept as reusable bitmaps
+    private static final int POOL_FRACTION = 32;
+    private static final String CACHE_DIR = "albumart";
+    // A few thousand albums at list size plus the recently played ones at full size
+    private static final long MAX_DISK_BYTES = 24 * 1024 * 1024;
+    // The suggestion cards; list rows are smaller
+    private static final int LIST_SIZE_DP = 120;
+    private static final int THUMBNAIL_QUALITY = 90;
+
+    private static final int PRIORITY_PREFETCH = 0;
+    private static final int PRIORITY_VISIBLE = 1;
+
+    private static AlbumArtLoader instance;
+
+    /**
+     * A view that draws album art itself instead of through an ImageView
+     */
+    public interface Target {
+        /**
+         * @param art the art to draw, or null for the default art
+         */
+        void setArt(Bitmap art);
+
+        /**
+         * @return the size the art is drawn at, in pixels
+         */
+        int getArtSize();
+    }
+
+    private final ArtworkResolver resolver;
+    private final LruCache<String, Bitmap> memory;
+    private final BitmapPool pool;
+    private final ThumbnailCache thumbnails;
+    private final int listSizePx;
+    private final int nowPlayingSizePx;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Decodes queued or running, by cache key, and the decode each view waits for
+    private final Map<String, DecodeTask> pending = new HashMap<>();
+    // Views are ImageViews or Targets
+    private final Map<Object, DecodeTask> bound = new WeakHashMap<>();
+    // Decodes queued by prefetch, which the next prefetch call may drop
+    private final Set<DecodeTask> prefetching = new HashSet<>();
+    // Bitmaps in the memory cache and the bitmap each view shows; anything in neither may be pooled
+    private final Set<Bitmap> cached = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<Object, Bitmap> shown = new WeakHashMap<>();
+    // Albums known to have no art, with the track modification time they were checked at
+    private final Map<Long, Long> missing = new ConcurrentHashMap<>();
+
+    private final class DecodeTask implements Runnable, Comparable<DecodeTask> {
+        final String key;
+        final Song song;
+        final long albumId;
+        final long sourceModified;
+        final int bucket;
+        // Changed on the main thread only, and only while the task is out of the queue
+        int priority;
+        long order = sequence.getAndIncrement();
+        // Touched on the main thread only
+        final List<Object> targets = new ArrayList<>();
+        volatile boolean cancelled;
+
+        DecodeTask(String key, Song song, long albumId, int bucket, int priority) {
+            this.key = key;
+            this.song = song;
+            this.albumId = albumId;
+            this.sourceModified = song.getDateModified();
+            this.bucket = bucket;
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(DecodeTask other) {
+            if (priority != other.priority) {
+                return other.priority - priority;
+            }
+            return Long.compare(other.order, order);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            Bitmap bitmap = readThumbnail(this);
+            if (bitmap == null && !isMissing(this)) {
+                bitmap = resolver.resolve(song, bucket == ArtSize.BUCKET_LIST ? listSizePx : nowPlayingSizePx);
+                if (bitmap != null) {
+                    writeThumbnail(this, bitmap);
+                } else {
+                    markMissing(this);
+                }
+            }
+            Bitmap result = bitmap;
+            mainHandler.post(() -> finish(this, result));
+        }
+    }
+
+    private AlbumArtLoader(Context context) {
+        resolver = new ArtworkResolver(context);
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        memory = new LruCache<String, Bitmap>((int) (maxMemory / 1024 / MEMORY_FRACTION)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount() / 1024;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    cached.remove(oldValue);
+                    recycleIfUnused(oldValue);
+                }
+            }
+        };
+        pool = new BitmapPool(maxMemory / POOL_FRACTION);
+        thumbnails = new ThumbnailCache(new File(context.getCacheDir(), CACHE_DIR), MAX_DISK_BYTES);
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        listSizePx = Math.round(LIST_SIZE_DP * metrics.density);
+        nowPlayingSizePx = Math.max(listSizePx, Math.min(metrics.widthPixels, metrics.heightPixels));
+        executor = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS, 10, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, TAG));
+        executor.allowCoreThreadTimeOut(true);
+
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(TRIM_MEMORY_COMPLETE);
+            }
+        });
+    }
+
+    public static synchronized AlbumArtLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlbumArtLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Show the song's album art in the view, at the size that fits it. Shows the
+     * default art until the decode finishes, and keeps it if there is none.
+     */
+    public void load(Song song, ImageView view) {
+        loadInto(song, view);
+    }
+
+    /**
+     * Same as {@link #load(Song, ImageView)}, for a view that draws the art itself
+     */
+    public void load(Song song, Target target) {
+        loadInto(song, target);
+    }
+
+    private void loadInto(Song song, Object view) {
+        cancelFor(view);
+        long albumId = albumId(song);
+        if (albumId < 0) {
+            showDefault(view);
+            return;
+        }
+        if (isKnownMissing(albumId, song)) {
+            showDefault(view);
+            return;
+        }
+        int bucket = ArtSize.bucketFor(targetSize(view), listSizePx);
+        String key = albumId + "@" + bucket;
+        Bitmap hit = memory.get(key);
+        if (hit != null) {
+            show(view, hit);
+            return;
+        }
+        showDefault(view);
+
+        DecodeTask task = pending.get(key);
+        if (task == null) {
+            task = new DecodeTask(key, song, albumId, bucket, PRIORITY_VISIBLE);
+            pending.put(key, task);
+            executor.execute(task);
+        } else if (task.priority == PRIORITY_PREFETCH && executor.remove(task)) {
+            // Prefetched too late; the row is on screen now
+            task.priority = PRIORITY_VISIBLE;
+            task.order = sequence.getAndIncrement();
+            executor.execute(task);
+        }
+        task.targets.add(view);
+        bound.put(view, task);
+    }
+
+    /**
+     * Decode list-sized art for these songs, nearest first, at low priority
+     * ahead of their rows scrolling in. Replaces the previous prefetch:
+     * songs that were prefetched before but are not in this list are dropped
+     * if their decode has not started.
+     */
+    public void prefetch(List<Song> songs) {
+        Set<String> wanted = new HashSet<>();
+        // Newest runs first, so the nearest song goes in last
+        for (int i = songs.size() - 1; i >= 0; i--) {
+            Song song = songs.get(i);
+            long albumId = albumId(song);
+            if (albumId < 0 || isKnownMissing(albumId, song)) {
+                continue;
+            }
+            String key = albumId + "@" + ArtSize.BUCKET_LIST;
+            wanted.add(key);
+            if (pending.containsKey(key) || memory.get(key) != null) {
+                continue;
+            }
+            DecodeTask task = new DecodeTask(key, song, albumId, ArtSize.BUCKET_LIST, PRIORITY_PREFETCH);
+            pending.put(key, task);
+            prefetching.add(task);
+            executor.execute(task);
+        }
+        Iterator<DecodeTask> iterator = prefetching.iterator();
+        while (iterator.hasNext()) {
+            DecodeTask task = iterator.next();
+            if (!wanted.contains(task.key) && task.targets.isEmpty()) {
+                iterator.remove();
+                drop(task);
+            }
+        }
+    }
+
+    /**
+     * Drop every prefetch that has not started yet
+     */
+    public void cancelPrefetch() {
+        prefetch(Collections.emptyList());
+    }
+
+    /**
+     * Stop loading into the view. The decode itself is dropped once no other
+     * view waits for it.
+     */
+    public void cancel(ImageView view) {
+        cancelFor(view);
+    }
+
+    public void cancel(Target target) {
+        cancelFor(target);
+    }
+
+    private void cancelFor(Object view) {
+        DecodeTask task = bound.remove(view);
+        if (task == null) {
+            return;
+        }
+        task.targets.remove(view);
+        if (task.targets.isEmpty()) {
+            prefetching.remove(task);
+            drop(task);
+        }
+    }
+
+    private void drop(DecodeTask task) {
+        task.cancelled = true;
+        if (pending.get(task.key) == task) {
+            pending.remove(task.key);
+        }
+        executor.remove(task);
+    }
+
+    /**
+     * Stop loading into the view and hand back the bitmap it shows, e.g.
+     * because its row was recycled. The view shows the default art after.
+     */
+    public void release(ImageView view) {
+        cancelFor(view);
+        showDefault(view);
+    }
+
+    public void release(Target target) {
+        cancelFor(target);
+        showDefault(target);
+    }
+
+    /**
+     * Give memory back, from the bitmap pool first and then from the cache
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            memory.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            memory.trimToSize(memory.maxSize() / 2);
+        } else {
+            return;
+        }
+        pool.clear();
+        Log.d(TAG, "Trimmed at level " + level + "; pool had " + pool.getHits() + " hits, "
+                + pool.getMisses() + " misses");
+    }
+
+    public BitmapPool getBitmapPool() {
+        return pool;
+    }
+
+    private void finish(DecodeTask task, Bitmap bitmap) {
+        if (pending.get(task.key) == task) {
+            pending.remove(task.key);
+        }
+        prefetching.remove(task);
+        for (Object view : task.targets) {
+            bound.remove(view);
+            if (bitmap != null) {
+                show(view, bitmap);
+            }
+        }
+        task.targets.clear();
+        // After showing it, so a bitmap too large to cache is not pooled while on screen
+        if (bitmap != null) {
+            cached.add(bitmap);
+            memory.put(task.key, bitmap);
+        }
+    }
+
+    private void show(Object view, Bitmap bitmap) {
+        if (view instanceof Target) {
+            ((Target) view).setArt(bitmap);
+        } else {
+            ((ImageView) view).setImageBitmap(bitmap);
+        }
+        Bitmap previous = shown.put(view, bitmap);
+        if (previous != null && previous != bitmap) {
+            recycleIfUnused(previous);
+        }
+    }
+
+    private void showDefault(Object view) {
+        if (view instanceof Target) {
+            ((Target) view).setArt(null);
+        } else {
+            ((ImageView) view).setImageResource(R.drawable.default_album_art);
+        }
+        Bitmap previous = shown.remove(view);
+        if (previous != null) {
+            recycleIfUnused(previous);
+        }
+    }
+
+    private void recycleIfUnused(Bitmap bitmap) {
+        if (!cached.contains(bitmap) && !shown.containsValue(bitmap)) {
+            pool.put(bitmap);
+        }
+    }
+
+    /**
+     * Runs on a decode thread
+     *
+     * @return the stored thumbnail, or null if there is none for this version of the art
+     */
+    private Bitmap readThumbnail(DecodeTask task) {
+        File file = thumbnails.get(task.albumId, task.bucket, task.sourceModified);
+        if (file == null) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = pool.get(options.outWidth, options.outHeight, options.inPreferredConfig);
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused after all
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+
+    /**
+     * Runs on a decode thread
+     */
+    private void writeThumbnail(DecodeTask task, Bitmap bitmap) {
+        try {
+            thumbnails.put(task.albumId, task.bucket, task.sourceModified, out -> {
+                if (!bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out)) {
+                    throw new IOException("Could not encode thumbnail");
+                }
+            });
+        } catch (IOException e) {
+            Log.w(TAG, "Could not store thumbnail for album " + task.albumId, e);
+        }
+    }
+
+    private boolean isKnownMissing(long albumId, Song song) {
+        Long checked = missing.get(albumId);
+        return checked != null && checked >= song.getDateModified();
+    }
+
+    /**
+     * Runs on a decode thread
+     */
+    private boolean isMissing(DecodeTask task) {
+        if (thumbnails.isMissing(task.albumId, task.sourceModified)) {
+            missing.put(task.albumId, task.sourceModified);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs on a decode thread
+     */
+    private void markMissing(DecodeTask task) {
+        missing.put(task.albumId, task.sourceModified);
+        try {
+            thumbnails.markMissing(task.albumId, task.sourceModified);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not record missing art for album " + task.albumId, e);
+        }
+    }
+
+    /**
+     * @return the album id behind the song's art URI, or -1 if it has none
+     */
+    private static long albumId(Song song) {
+        if (song == null || song.getAlbumArtUri() == null) {
+            return -1;
+        }
+        try {
+            return ContentUris.parseId(song.getAlbumArtUri());
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The longer side of the view in pixels. A row that has not been laid out
+     * yet is measured from its own or its parent's fixed layout size.
+     */
+    private static int targetSize(Object target) {
+        if (target instanceof Target) {
+            return ((Target) target).getArtSize();
+        }
+        ImageView view = (ImageView) target;
+        int size = Math.max(view.getWidth(), view.getHeight());
+        View current = view;
+        for (int depth = 0; size <= 0 && current != null && depth < 2; depth++) {
+            ViewGroup.LayoutParams params = current.getLayoutParams();
+            if (params != null) {
+                size = Math.max(params.width, params.height);
+            }
+            current = current.getParent() instanceof View ? (View) current.getParent() : null;
+        }
+        if (size <= 0) {
+            size = view.getResources().getDisplayMetrics().widthPixels;
+        }
+        return size;
+    }
+}
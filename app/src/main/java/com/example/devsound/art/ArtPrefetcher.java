@@ -0,0 +1,109 @@
+package com.example.devsound.art;
+
+import android.view.Display;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.devsound.models.Song;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Prefetches album art for the rows a list is about to show. While the list
+ * scrolls, the rows ahead in the direction of travel are queued at low
+ * priority, more of them the faster it goes; rows that fall off the
+ * predicted path are dropped before they decode. While scroll frames run
+ * over the display's frame budget nothing is prefetched at all.
+ */
+public class ArtPrefetcher extends RecyclerView.OnScrollListener {
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+
+    private final RecyclerView recyclerView;
+    private final LinearLayoutManager layoutManager;
+    private final IntFunction<Song> songs;
+    private final AlbumArtLoader loader;
+    private final PrefetchPlanner planner;
+    // Range handed to the loader last, so an unchanged prediction is not re-sent every frame
+    private int plannedFrom = -1;
+    private int plannedTo = -1;
+
+    private ArtPrefetcher(RecyclerView recyclerView, LinearLayoutManager layoutManager, IntFunction<Song> songs) {
+        this.recyclerView = recyclerView;
+        this.layoutManager = layoutManager;
+        this.songs = songs;
+        loader = AlbumArtLoader.getInstance(recyclerView.getContext());
+        Display display = recyclerView.getDisplay();
+        float refreshRate = display != null && display.getRefreshRate() > 0 ? display.getRefreshRate()
+                : DEFAULT_REFRESH_RATE;
+        planner = new PrefetchPlanner((long) (1e9f / refreshRate));
+    }
+
+    /**
+     * Start prefetching for a list laid out by a LinearLayoutManager
+     *
+     * @param songs the song at each adapter position
+     */
+    public static ArtPrefetcher attach(RecyclerView recyclerView, IntFunction<Song> songs) {
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            throw new IllegalArgumentException("Prefetching needs a LinearLayoutManager");
+        }
+        ArtPrefetcher prefetcher = new ArtPrefetcher(recyclerView,
+                (LinearLayoutManager) recyclerView.getLayoutManager(), songs);
+        recyclerView.addOnScrollListener(prefetcher);
+        return prefetcher;
+    }
+
+    public void detach() {
+        recyclerView.removeOnScrollListener(this);
+        loader.cancelPrefetch();
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            planner.onIdle();
+            update();
+        }
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        planner.onScrolled(dy, System.nanoTime());
+        update();
+    }
+
+    private void update() {
+        if (planner.isBudgetTight()) {
+            plannedFrom = plannedTo = -1;
+            loader.cancelPrefetch();
+            return;
+        }
+        RecyclerView.Adapter<?> adapter = recyclerView.getAdapter();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (adapter == null || first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        View row = layoutManager.findViewByPosition(first);
+        int[] range = planner.plan(first, last, adapter.getItemCount(), row != null ? row.getHeight() : 0);
+        if (range[0] == plannedFrom && range[1] == plannedTo) {
+            return;
+        }
+        plannedFrom = range[0];
+        plannedTo = range[1];
+
+        List<Song> ahead = new ArrayList<>(range[1] - range[0]);
+        for (int position = range[0]; position < range[1]; position++) {
+            Song song = songs.apply(position);
+            if (song != null) {
+                ahead.add(song);
+            }
+        }
+        loader.prefetch(ahead);
+    }
+}
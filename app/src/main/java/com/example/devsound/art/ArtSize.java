@@ -0,0 +1,48 @@
+package com.example.devsound.art;
+
+/**
+ * Size arithmetic for decoding album art no larger than the view it goes in.
+ */
+public final class ArtSize {
+    /** Rows and cards in lists */
+    public static final int BUCKET_LIST = 0;
+    /** The large art on the player screen */
+    public static final int BUCKET_NOW_PLAYING = 1;
+
+    private ArtSize() {
+    }
+
+    /**
+     * The largest power-of-two subsampling that still leaves the image at
+     * least as large as the target in both dimensions. The decoder only
+     * honours powers of two, so anything in between would be rounded down.
+     */
+    public static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (width <= 0 || height <= 0 || targetWidth <= 0 || targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * @return the bucket whose thumbnails are large enough for a view of the given size
+     */
+    public static int bucketFor(int sizePx, int listSizePx) {
+        return sizePx <= listSizePx ? BUCKET_LIST : BUCKET_NOW_PLAYING;
+    }
+
+    /**
+     * @return the factor that scales the image down until its shorter side matches the target, at most 1
+     */
+    public static float scaleToFill(int width, int height, int targetPx) {
+        int shorter = Math.min(width, height);
+        if (shorter <= targetPx || targetPx <= 0) {
+            return 1f;
+        }
+        return targetPx / (float) shorter;
+    }
+}
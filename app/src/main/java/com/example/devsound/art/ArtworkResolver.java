@@ -0,0 +1,113 @@
+package com.example.devsound.art;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.devsound.models.Song;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Finds the art for a song and decodes it at a given size. The media
+ * provider's album art is tried first; many files only carry their art as
+ * a picture embedded in their tags, so that is read next. Blocks, so it is
+ * only used from the art loader's threads.
+ */
+class ArtworkResolver {
+    private static final String TAG = "ArtworkResolver";
+
+    private final Context context;
+
+    ArtworkResolver(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * @return the art scaled down until its shorter side matches the given size, or null if the song has none
+     */
+    Bitmap resolve(Song song, int sizePx) {
+        Bitmap bitmap = decodeAlbumArt(song.getAlbumArtUri(), sizePx);
+        if (bitmap == null && song.getUri() != null) {
+            bitmap = decodeEmbedded(song.getUri(), sizePx);
+        }
+        return bitmap != null ? scale(bitmap, sizePx) : null;
+    }
+
+    private Bitmap decodeAlbumArt(Uri uri, int sizePx) {
+        if (uri == null) {
+            return null;
+        }
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                BitmapFactory.decodeStream(in, null, options);
+            }
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = ArtSize.sampleSize(options.outWidth, options.outHeight, sizePx, sizePx);
+            // So the bitmap can go to the pool later
+            options.inMutable = true;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                return BitmapFactory.decodeStream(in, null, options);
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing behind the provider's URI
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Could not decode album art " + uri, e);
+            return null;
+        }
+    }
+
+    private Bitmap decodeEmbedded(Uri uri, int sizePx) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            byte[] picture = retriever.getEmbeddedPicture();
+            if (picture == null) {
+                return null;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = ArtSize.sampleSize(options.outWidth, options.outHeight, sizePx, sizePx);
+            options.inMutable = true;
+            return BitmapFactory.decodeByteArray(picture, 0, picture.length, options);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not read embedded art from " + uri, e);
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Error releasing retriever", e);
+            }
+        }
+    }
+
+    private static Bitmap scale(Bitmap bitmap, int sizePx) {
+        float scale = ArtSize.scaleToFill(bitmap.getWidth(), bitmap.getHeight(), sizePx);
+        if (scale >= 1f) {
+            return bitmap;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.round(bitmap.getWidth() * scale),
+                Math.round(bitmap.getHeight() * scale), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+}
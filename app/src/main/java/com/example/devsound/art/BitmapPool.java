@@ -0,0 +1,68 @@
+package com.example.devsound.art;
+
+import android.graphics.Bitmap;
+
+/**
+ * Bitmaps that no view or cache holds any more, kept for the decoder to
+ * reuse through inBitmap instead of allocating a new one for every row that
+ * scrolls in. Thread-safe.
+ */
+public class BitmapPool {
+    private final SizeBucketPool<Bitmap> pool;
+
+    public BitmapPool(long maxBytes) {
+        pool = new SizeBucketPool<>(new SizeBucketPool.Sizer<Bitmap>() {
+            @Override
+            public int sizeOf(Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            public void discard(Bitmap bitmap) {
+                bitmap.recycle();
+            }
+        }, maxBytes);
+    }
+
+    /**
+     * @return a mutable bitmap large enough to decode an image of this size into, or null
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        return pool.get(width * height * bytesPerPixel(config));
+    }
+
+    /**
+     * Offer a bitmap that is no longer drawn or cached anywhere
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap != null && bitmap.isMutable() && !bitmap.isRecycled()) {
+            pool.put(bitmap);
+        }
+    }
+
+    public void clear() {
+        pool.trimTo(0);
+    }
+
+    public long getBytes() {
+        return pool.getBytes();
+    }
+
+    public long getHits() {
+        return pool.getHits();
+    }
+
+    public long getMisses() {
+        return pool.getMisses();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
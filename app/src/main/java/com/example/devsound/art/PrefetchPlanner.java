@@ -0,0 +1,82 @@
+package com.example.devsound.art;
+
+/**
+ * Decides which rows of a scrolling list to prefetch art for. Tracks the
+ * scroll velocity and the time between scroll frames; while scrolling, it
+ * looks ahead in the direction of travel, further the faster the list
+ * moves, and it calls for a pause while frames take noticeably longer than
+ * the display's frame budget, so prefetching never competes with drawing.
+ */
+final class PrefetchPlanner {
+    // How far ahead to look, in seconds of travel at the current velocity
+    private static final float LOOKAHEAD_SECONDS = 0.5f;
+    static final int MIN_ROWS = 3;
+    static final int MAX_ROWS = 30;
+    // Frames this much over budget, on average, mean the list is already struggling
+    private static final float TIGHT_BUDGET_FACTOR = 1.5f;
+    private static final float SMOOTHING = 0.3f;
+    // A gap this long between scroll frames starts a new gesture
+    private static final long GESTURE_GAP_NS = 100000000L;
+
+    private final long frameBudgetNs;
+    private long lastScrollNs;
+    private float velocity; // pixels per second, positive towards the end of the list
+    private float frameNs;
+
+    PrefetchPlanner(long frameBudgetNs) {
+        this.frameBudgetNs = frameBudgetNs;
+    }
+
+    void onScrolled(int dy, long nowNs) {
+        long elapsed = nowNs - lastScrollNs;
+        if (lastScrollNs != 0 && elapsed > 0 && elapsed < GESTURE_GAP_NS) {
+            float instant = dy * 1e9f / elapsed;
+            if (frameNs == 0) {
+                velocity = instant;
+                frameNs = elapsed;
+            } else {
+                velocity += SMOOTHING * (instant - velocity);
+                frameNs += SMOOTHING * (elapsed - frameNs);
+            }
+        } else {
+            velocity = 0;
+            frameNs = 0;
+        }
+        lastScrollNs = nowNs;
+    }
+
+    /**
+     * The list came to rest
+     */
+    void onIdle() {
+        lastScrollNs = 0;
+        velocity = 0;
+        frameNs = 0;
+    }
+
+    boolean isBudgetTight() {
+        return frameNs > frameBudgetNs * TIGHT_BUDGET_FACTOR;
+    }
+
+    float getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * @return the first and one past the last position to prefetch; empty when there is nothing to do
+     */
+    int[] plan(int firstVisible, int lastVisible, int itemCount, int rowHeightPx) {
+        if (firstVisible < 0 || lastVisible < firstVisible || itemCount <= 0) {
+            return new int[] { 0, 0 };
+        }
+        int rows = MIN_ROWS;
+        if (rowHeightPx > 0) {
+            float rowsAhead = Math.abs(velocity) * LOOKAHEAD_SECONDS / rowHeightPx;
+            rows = (int) Math.min(MAX_ROWS, Math.max(MIN_ROWS, Math.ceil(rowsAhead)));
+        }
+        if (velocity < 0) {
+            return new int[] { Math.max(0, firstVisible - rows), firstVisible };
+        }
+        return new int[] { Math.min(itemCount, lastVisible + 1), Math.min(itemCount, lastVisible + 1 + rows) };
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.devsound.art;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * Reusable buffers grouped by their size in bytes. A request is served from
+ * the smallest bucket that fits it, as long as that is not wastefully
+ * large. The pool holds at most a byte budget; the items returned longest
+ * ago are dropped first. Counts hits and misses so the budget can be tuned.
+ */
+final class SizeBucketPool<T> {
+    // Largest item handed out for a request, as a multiple of the request
+    private static final int MAX_OVERSIZE = 2;
+
+    interface Sizer<T> {
+        int sizeOf(T item);
+
+        /**
+         * Called for items that leave the pool without being reused
+         */
+        void discard(T item);
+    }
+
+    private final Sizer<T> sizer;
+    private final long maxBytes;
+    private final TreeMap<Integer, ArrayDeque<T>> buckets = new TreeMap<>();
+    // All pooled items, least recently returned first
+    private final ArrayDeque<T> returned = new ArrayDeque<>();
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    SizeBucketPool(Sizer<T> sizer, long maxBytes) {
+        this.sizer = sizer;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return an item of at least the given size, removed from the pool, or null
+     */
+    synchronized T get(int minBytes) {
+        Integer size = buckets.ceilingKey(minBytes);
+        if (size == null || size > (long) minBytes * MAX_OVERSIZE) {
+            misses++;
+            return null;
+        }
+        ArrayDeque<T> bucket = buckets.get(size);
+        T item = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            buckets.remove(size);
+        }
+        returned.removeLastOccurrence(item);
+        bytes -= size;
+        hits++;
+        return item;
+    }
+
+    /**
+     * Offer an item that nothing uses any more
+     */
+    synchronized void put(T item) {
+        int size = sizer.sizeOf(item);
+        if (size > maxBytes) {
+            sizer.discard(item);
+            return;
+        }
+        ArrayDeque<T> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addLast(item);
+        returned.addLast(item);
+        bytes += size;
+        trimTo(maxBytes);
+    }
+
+    /**
+     * Drop the least recently returned items until the pool holds at most the given number of bytes
+     */
+    synchronized void trimTo(long targetBytes) {
+        Iterator<T> iterator = returned.iterator();
+        while (bytes > targetBytes && iterator.hasNext()) {
+            T item = iterator.next();
+            iterator.remove();
+            int size = sizer.sizeOf(item);
+            ArrayDeque<T> bucket = buckets.get(size);
+            bucket.removeFirstOccurrence(item);
+            if (bucket.isEmpty()) {
+                buckets.remove(size);
+            }
+            bytes -= size;
+            sizer.discard(item);
+        }
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.devsound.art;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pre-scaled album art on disk, one file per album and size bucket, so art
+ * can be read straight from a file after a restart instead of going through
+ * the media provider and a full-size decode.
+ *
+ * Each file records the modification time of the track it was made from. A
+ * lookup for a track modified later than that misses, so new art replaces
+ * the old one, while the other tracks of the album keep hitting. Files are
+ * written under a temporary name and renamed into place, and the directory
+ * is kept under a byte budget by deleting the least recently used files.
+ * Albums found to have no art at all are remembered the same way, with an
+ * empty file, so they are not looked up again until one of their tracks
+ * changes.
+ */
+public class ThumbnailCache {
+    private static final String SUFFIX = ".thumb";
+    // Reserved bucket for albums without art
+    private static final int NO_ART = -1;
+
+    public interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    // Source modification time of each stored file, by album and bucket; read from the file names on first use
+    private Map<String, Long> versions;
+
+    public ThumbnailCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the file to decode, or null if there is none at least as new as the source
+     */
+    public synchronized File get(long albumId, int bucket, long sourceModified) {
+        String key = key(albumId, bucket);
+        Long version = versions().get(key);
+        if (version == null) {
+            return null;
+        }
+        File file = file(key, version);
+        if (version < sourceModified || !file.exists()) {
+            file.delete();
+            versions.remove(key);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Store a thumbnail, replacing any older one, and evict the oldest files if the directory is over budget
+     */
+    public synchronized void put(long albumId, int bucket, long sourceModified, Writer writer) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        String key = key(albumId, bucket);
+        File file = file(key, sourceModified);
+        File temp = new File(directory, key + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            writer.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+        Long previous = versions().put(key, sourceModified);
+        if (previous != null && previous != sourceModified) {
+            file(key, previous).delete();
+        }
+        trim();
+    }
+
+    /**
+     * @return true if the album was found to have no art and no track has changed since
+     */
+    public synchronized boolean isMissing(long albumId, long sourceModified) {
+        return get(albumId, NO_ART, sourceModified) != null;
+    }
+
+    public synchronized void markMissing(long albumId, long sourceModified) throws IOException {
+        put(albumId, NO_ART, sourceModified, out -> {
+        });
+    }
+
+    public synchronized long getDiskUsage() {
+        long total = 0;
+        for (File file : listFiles()) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    private void trim() {
+        File[] files = listFiles();
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+                String name = file.getName();
+                versions.remove(name.substring(0, name.lastIndexOf('_')));
+            }
+        }
+    }
+
+    private Map<String, Long> versions() {
+        if (versions == null) {
+            versions = new HashMap<>();
+            for (File file : listFiles()) {
+                String name = file.getName();
+                int separator = name.lastIndexOf('_');
+                try {
+                    String key = name.substring(0, separator);
+                    long version = Long.parseLong(name.substring(separator + 1, name.length() - SUFFIX.length()));
+                    Long other = versions.put(key, version);
+                    if (other != null) {
+                        // Left behind by an interrupted replace; keep the newer one
+                        versions.put(key, Math.max(other, version));
+                        file(key, Math.min(other, version)).delete();
+                    }
+                } catch (RuntimeException e) {
+                    file.delete();
+                }
+            }
+        }
+        return versions;
+    }
+
+    private File[] listFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        return files != null ? files : new File[0];
+    }
+
+    private File file(String key, long version) {
+        return new File(directory, key + "_" + version + SUFFIX);
+    }
+
+    private static String key(long albumId, int bucket) {
+        return albumId + "_" + bucket;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.devsound.dsp;
+
+/**
+ * Biquad coefficient design after the RBJ audio EQ cookbook.
+ * Each design writes five normalized coefficients (b0, b1, b2, a1, a2) into
+ * the destination array so callers can keep whole filter banks in one flat
+ * array.
+ */
+public final class Biquad {
+    public static final int COEFFICIENT_COUNT = 5;
+
+    public static final int TYPE_PEAKING = 0;
+    public static final int TYPE_LOW_SHELF = 1;
+    public static final int TYPE_HIGH_SHELF = 2;
+    public static final int TYPE_HIGH_PASS = 3;
+    public static final int TYPE_LOW_PASS = 4;
+
+    private Biquad() {
+    }
+
+    public static void design(int type, double sampleRate, double frequency, double q, double gainDb,
+            double[] out, int offset) {
+        switch (type) {
+            case TYPE_PEAKING:
+                peaking(sampleRate, frequency, q, gainDb, out, offset);
+                break;
+            case TYPE_LOW_SHELF:
+                lowShelf(sampleRate, frequency, q, gainDb, out, offset);
+                break;
+            case TYPE_HIGH_SHELF:
+                highShelf(sampleRate, frequency, q, gainDb, out, offset);
+                break;
+            case TYPE_HIGH_PASS:
+                highPass(sampleRate, frequency, q, out, offset);
+                break;
+            case TYPE_LOW_PASS:
+                lowPass(sampleRate, frequency, q, out, offset);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown filter type: " + type);
+        }
+    }
+
+    public static void peaking(double sampleRate, double frequency, double q, double gainDb,
+            double[] out, int offset) {
+        double a = Math.pow(10, gainDb / 40);
+        double w0 = omega(sampleRate, frequency);
+        double alpha = Math.sin(w0) / (2 * q);
+        double cos = Math.cos(w0);
+        store(out, offset,
+                1 + alpha * a, -2 * cos, 1 - alpha * a,
+                1 + alpha / a, -2 * cos, 1 - alpha / a);
+    }
+
+    public static void lowShelf(double sampleRate, double frequency, double q, double gainDb,
+            double[] out, int offset) {
+        double a = Math.pow(10, gainDb / 40);
+        double w0 = omega(sampleRate, frequency);
+        double cos = Math.cos(w0);
+        double beta = 2 * Math.sqrt(a) * Math.sin(w0) / (2 * q);
+        store(out, offset,
+                a * ((a + 1) - (a - 1) * cos + beta),
+                2 * a * ((a - 1) - (a + 1) * cos),
+                a * ((a + 1) - (a - 1) * cos - beta),
+                (a + 1) + (a - 1) * cos + beta,
+                -2 * ((a - 1) + (a + 1) * cos),
+                (a + 1) + (a - 1) * cos - beta);
+    }
+
+    public static void highShelf(double sampleRate, double frequency, double q, double gainDb,
+            double[] out, int offset) {
+        double a = Math.pow(10, gainDb / 40);
+        double w0 = omega(sampleRate, frequency);
+        double cos = Math.cos(w0);
+        double beta = 2 * Math.sqrt(a) * Math.sin(w0) / (2 * q);
+        store(out, offset,
+                a * ((a + 1) + (a - 1) * cos + beta),
+                -2 * a * ((a - 1) + (a + 1) * cos),
+                a * ((a + 1) + (a - 1) * cos - beta),
+                (a + 1) - (a - 1) * cos + beta,
+                2 * ((a - 1) - (a + 1) * cos),
+                (a + 1) - (a - 1) * cos - beta);
+    }
+
+    public static void highPass(double sampleRate, double frequency, double q, double[] out, int offset) {
+        double w0 = omega(sampleRate, frequency);
+        double alpha = Math.sin(w0) / (2 * q);
+        double cos = Math.cos(w0);
+        store(out, offset,
+                (1 + cos) / 2, -(1 + cos), (1 + cos) / 2,
+                1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    public static void lowPass(double sampleRate, double frequency, double q, double[] out, int offset) {
+        double w0 = omega(sampleRate, frequency);
+        double alpha = Math.sin(w0) / (2 * q);
+        double cos = Math.cos(w0);
+        store(out, offset,
+                (1 - cos) / 2, 1 - cos, (1 - cos) / 2,
+                1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /**
+     * Magnitude response in dB of one normalized section at the given frequency
+     */
+    public static double magnitudeDb(double[] c, int offset, double sampleRate, double frequency) {
+        double w = omega(sampleRate, frequency);
+        double cos1 = Math.cos(w), sin1 = Math.sin(w);
+        double cos2 = Math.cos(2 * w), sin2 = Math.sin(2 * w);
+        double numRe = c[offset] + c[offset + 1] * cos1 + c[offset + 2] * cos2;
+        double numIm = -(c[offset + 1] * sin1 + c[offset + 2] * sin2);
+        double denRe = 1 + c[offset + 3] * cos1 + c[offset + 4] * cos2;
+        double denIm = -(c[offset + 3] * sin1 + c[offset + 4] * sin2);
+        double num = numRe * numRe + numIm * numIm;
+        double den = denRe * denRe + denIm * denIm;
+        return 10 * Math.log10(num / den);
+    }
+
+    private static double omega(double sampleRate, double frequency) {
+        // Keep the center below Nyquist so high bands stay stable at low sample rates
+        double f = Math.min(frequency, sampleRate * 0.45);
+        return 2 * Math.PI * f / sampleRate;
+    }
+
+    private static void store(double[] out, int offset, double b0, double b1, double b2,
+            double a0, double a1, double a2) {
+        out[offset] = b0 / a0;
+        out[offset + 1] = b1 / a0;
+        out[offset + 2] = b2 / a0;
+        out[offset + 3] = a1 / a0;
+        out[offset + 4] = a2 / a0;
+    }
+}
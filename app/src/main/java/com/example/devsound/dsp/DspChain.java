@@ -0,0 +1,391 @@
+package com.example.devsound.dsp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * In-place audio processing for the PCM path: preamp plus per-track
+ * normalization gain, a 10-band graphic EQ, up to four parametric bands and
+ * a peak limiter.
+ *
+ * Settings can be changed from any thread. Every change builds a new
+ * immutable Coefficients snapshot and publishes it with a single volatile
+ * write; the processing thread picks it up at the start of its next buffer,
+ * so a buffer is never filtered with half-updated coefficients. The process
+ * methods and reset() belong to one processing thread and allocate nothing.
+ */
+public class DspChain {
+    public static final float[] GRAPHIC_FREQUENCIES = {
+            31, 62, 125, 250, 500, 1000, 2000, 4000, 8000, 16000
+    };
+    public static final int GRAPHIC_BAND_COUNT = GRAPHIC_FREQUENCIES.length;
+    public static final int MAX_PARAMETRIC_BANDS = 4;
+    public static final int MAX_CHANNELS = 2;
+
+    public static final float MIN_GAIN_DB = -12f;
+    public static final float MAX_GAIN_DB = 12f;
+    public static final float LIMITER_THRESHOLD_DB = -1f;
+    public static final float MIN_TRACK_GAIN_DB = -24f;
+
+    // One octave per graphic band
+    private static final double GRAPHIC_Q = 1.41;
+    private static final double LIMITER_RELEASE_SECONDS = 0.05;
+    private static final int SLOT_COUNT = GRAPHIC_BAND_COUNT + MAX_PARAMETRIC_BANDS;
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
+
+    /**
+     * Everything the processing thread needs for one buffer. Never modified
+     * after it is published.
+     */
+    static final class Coefficients {
+        final int sampleRate;
+        final boolean active;
+        final double preampGain;
+        final boolean limiterEnabled;
+        final double limiterThreshold;
+        final double limiterRelease;
+        // Filter slots that are not flat, in processing order
+        final int[] slots;
+        // Five coefficients per entry of slots
+        final double[] coefficients;
+
+        Coefficients(int sampleRate, boolean active, double preampGain, boolean limiterEnabled,
+                double limiterThreshold, double limiterRelease, int[] slots, double[] coefficients) {
+            this.sampleRate = sampleRate;
+            this.active = active;
+            this.preampGain = preampGain;
+            this.limiterEnabled = limiterEnabled;
+            this.limiterThreshold = limiterThreshold;
+            this.limiterRelease = limiterRelease;
+            this.slots = slots;
+            this.coefficients = coefficients;
+        }
+    }
+
+    // Settings, guarded by this
+    private boolean enabled = true;
+    private int sampleRate = DEFAULT_SAMPLE_RATE;
+    private float preampDb;
+    private float trackGainDb;
+    private boolean limiterEnabled = true;
+    private final float[] graphicGains = new float[GRAPHIC_BAND_COUNT];
+    private final boolean[] parametricEnabled = new boolean[MAX_PARAMETRIC_BANDS];
+    private final int[] parametricTypes = new int[MAX_PARAMETRIC_BANDS];
+    private final float[] parametricFrequencies = new float[MAX_PARAMETRIC_BANDS];
+    private final float[] parametricQs = new float[MAX_PARAMETRIC_BANDS];
+    private final float[] parametricGains = new float[MAX_PARAMETRIC_BANDS];
+
+    private volatile Coefficients current;
+
+    // Processing thread only: two delay elements per slot and channel
+    private final double[] filterState = new double[SLOT_COUNT * MAX_CHANNELS * 2];
+    private final double[] frame = new double[MAX_CHANNELS];
+    private double limiterGain = 1.0;
+    private int stateSampleRate;
+
+    public DspChain() {
+        rebuild();
+    }
+
+    // Settings
+
+    /**
+     * Sample rate of the PCM that will be processed; recomputes all coefficients
+     */
+    public synchronized void setSampleRate(int rate) {
+        if (rate > 0 && rate != sampleRate) {
+            sampleRate = rate;
+            rebuild();
+        }
+    }
+
+    public synchronized int getSampleRate() {
+        return sampleRate;
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        rebuild();
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void setPreampDb(float db) {
+        preampDb = clampGain(db);
+        rebuild();
+    }
+
+    public synchronized float getPreampDb() {
+        return preampDb;
+    }
+
+    /**
+     * Loudness normalization gain for the current track, applied on top of the preamp
+     */
+    public synchronized void setTrackGainDb(float db) {
+        trackGainDb = Math.max(MIN_TRACK_GAIN_DB, Math.min(MAX_GAIN_DB, db));
+        rebuild();
+    }
+
+    public synchronized float getTrackGainDb() {
+        return trackGainDb;
+    }
+
+    public synchronized void setLimiterEnabled(boolean enabled) {
+        limiterEnabled = enabled;
+        rebuild();
+    }
+
+    public synchronized boolean isLimiterEnabled() {
+        return limiterEnabled;
+    }
+
+    public synchronized void setGraphicBandGain(int band, float db) {
+        graphicGains[band] = clampGain(db);
+        rebuild();
+    }
+
+    public synchronized float getGraphicBandGain(int band) {
+        return graphicGains[band];
+    }
+
+    /**
+     * Set every graphic band at once, e.g. from a preset, with one coefficient swap
+     */
+    public synchronized void setGraphicBandGains(float[] gains) {
+        for (int i = 0; i < GRAPHIC_BAND_COUNT; i++) {
+            graphicGains[i] = i < gains.length ? clampGain(gains[i]) : 0f;
+        }
+        rebuild();
+    }
+
+    /**
+     * @param type one of the Biquad TYPE_* constants
+     */
+    public synchronized void setParametricBand(int index, int type, float frequencyHz, float q, float gainDb) {
+        if (frequencyHz <= 0 || q <= 0) {
+            throw new IllegalArgumentException("Frequency and Q must be positive");
+        }
+        parametricEnabled[index] = true;
+        parametricTypes[index] = type;
+        parametricFrequencies[index] = frequencyHz;
+        parametricQs[index] = q;
+        parametricGains[index] = clampGain(gainDb);
+        rebuild();
+    }
+
+    public synchronized void clearParametricBand(int index) {
+        parametricEnabled[index] = false;
+        rebuild();
+    }
+
+    /**
+     * Return every setting to flat
+     */
+    public synchronized void resetSettings() {
+        preampDb = 0f;
+        limiterEnabled = true;
+        for (int i = 0; i < GRAPHIC_BAND_COUNT; i++) {
+            graphicGains[i] = 0f;
+        }
+        for (int i = 0; i < MAX_PARAMETRIC_BANDS; i++) {
+            parametricEnabled[i] = false;
+        }
+        rebuild();
+    }
+
+    private static float clampGain(float db) {
+        return Math.max(MIN_GAIN_DB, Math.min(MAX_GAIN_DB, db));
+    }
+
+    private void rebuild() {
+        int[] slots = new int[SLOT_COUNT];
+        double[] coefficients = new double[SLOT_COUNT * Biquad.COEFFICIENT_COUNT];
+        int count = 0;
+
+        for (int i = 0; i < GRAPHIC_BAND_COUNT; i++) {
+            if (graphicGains[i] != 0f) {
+                Biquad.peaking(sampleRate, GRAPHIC_FREQUENCIES[i], GRAPHIC_Q, graphicGains[i],
+                        coefficients, count * Biquad.COEFFICIENT_COUNT);
+                slots[count++] = i;
+            }
+        }
+        for (int i = 0; i < MAX_PARAMETRIC_BANDS; i++) {
+            boolean passFilter = parametricTypes[i] == Biquad.TYPE_HIGH_PASS
+                    || parametricTypes[i] == Biquad.TYPE_LOW_PASS;
+            if (parametricEnabled[i] && (passFilter || parametricGains[i] != 0f)) {
+                Biquad.design(parametricTypes[i], sampleRate, parametricFrequencies[i], parametricQs[i],
+                        parametricGains[i], coefficients, count * Biquad.COEFFICIENT_COUNT);
+                slots[count++] = GRAPHIC_BAND_COUNT + i;
+            }
+        }
+
+        int[] activeSlots = new int[count];
+        System.arraycopy(slots, 0, activeSlots, 0, count);
+        double[] activeCoefficients = new double[count * Biquad.COEFFICIENT_COUNT];
+        System.arraycopy(coefficients, 0, activeCoefficients, 0, activeCoefficients.length);
+
+        // Flat settings bypass the chain entirely; the limiter alone never changes an in-range signal
+        float gainDb = preampDb + trackGainDb;
+        boolean active = enabled && (count > 0 || gainDb != 0f);
+        current = new Coefficients(sampleRate, active, Math.pow(10, gainDb / 20), limiterEnabled,
+                Math.pow(10, LIMITER_THRESHOLD_DB / 20),
+                Math.exp(-1.0 / (LIMITER_RELEASE_SECONDS * sampleRate)),
+                activeSlots, activeCoefficients);
+    }
+
+    Coefficients getCoefficients() {
+        return current;
+    }
+
+    // Processing
+
+    /**
+     * Forget filter history, e.g. after a seek. Processing thread only.
+     */
+    public void reset() {
+        for (int i = 0; i < filterState.length; i++) {
+            filterState[i] = 0;
+        }
+        limiterGain = 1.0;
+    }
+
+    /**
+     * @return true if processing currently changes the signal
+     */
+    public boolean isActive() {
+        return current.active;
+    }
+
+    /**
+     * Process interleaved float samples in [-1, 1] in place
+     */
+    public void process(float[] samples, int offset, int frames, int channels) {
+        Coefficients c = begin(channels);
+        if (c == null) {
+            return;
+        }
+        int index = offset;
+        for (int f = 0; f < frames; f++) {
+            for (int ch = 0; ch < channels; ch++) {
+                frame[ch] = samples[index + ch];
+            }
+            processFrame(c, channels);
+            for (int ch = 0; ch < channels; ch++) {
+                samples[index + ch] = (float) frame[ch];
+            }
+            index += channels;
+        }
+    }
+
+    /**
+     * Process interleaved 16-bit samples in place
+     */
+    public void process(short[] samples, int offset, int frames, int channels) {
+        Coefficients c = begin(channels);
+        if (c == null) {
+            return;
+        }
+        int index = offset;
+        for (int f = 0; f < frames; f++) {
+            for (int ch = 0; ch < channels; ch++) {
+                frame[ch] = samples[index + ch] * (1.0 / 32768);
+            }
+            processFrame(c, channels);
+            for (int ch = 0; ch < channels; ch++) {
+                samples[index + ch] = toPcm16(frame[ch]);
+            }
+            index += channels;
+        }
+    }
+
+    /**
+     * Process interleaved 16-bit PCM in place, in the buffer's byte order.
+     * Uses absolute reads and writes, so the buffer's position and limit are
+     * left untouched.
+     */
+    public void process(ByteBuffer pcm, int byteOffset, int byteCount, int channels) {
+        Coefficients c = begin(channels);
+        if (c == null) {
+            return;
+        }
+        int frameBytes = 2 * channels;
+        int frames = byteCount / frameBytes;
+        int index = byteOffset;
+        for (int f = 0; f < frames; f++) {
+            for (int ch = 0; ch < channels; ch++) {
+                frame[ch] = pcm.getShort(index + 2 * ch) * (1.0 / 32768);
+            }
+            processFrame(c, channels);
+            for (int ch = 0; ch < channels; ch++) {
+                pcm.putShort(index + 2 * ch, toPcm16(frame[ch]));
+            }
+            index += frameBytes;
+        }
+    }
+
+    /**
+     * Snapshot the coefficients for one buffer, or null to leave it untouched
+     */
+    private Coefficients begin(int channels) {
+        Coefficients c = current;
+        if (!c.active || channels < 1 || channels > MAX_CHANNELS) {
+            return null;
+        }
+        if (c.sampleRate != stateSampleRate) {
+            // History from another rate would ring through the new filters
+            reset();
+            stateSampleRate = c.sampleRate;
+        }
+        return c;
+    }
+
+    private void processFrame(Coefficients c, int channels) {
+        double[] coefficients = c.coefficients;
+        int[] slots = c.slots;
+        double peak = 0;
+
+        for (int ch = 0; ch < channels; ch++) {
+            double x = frame[ch] * c.preampGain;
+            // Transposed direct form II, one pair of delay elements per slot and channel
+            for (int s = 0; s < slots.length; s++) {
+                int k = s * Biquad.COEFFICIENT_COUNT;
+                int z = (slots[s] * MAX_CHANNELS + ch) * 2;
+                double y = coefficients[k] * x + filterState[z];
+                filterState[z] = coefficients[k + 1] * x - coefficients[k + 3] * y + filterState[z + 1];
+                filterState[z + 1] = coefficients[k + 2] * x - coefficients[k + 4] * y;
+                x = y;
+            }
+            frame[ch] = x;
+            double magnitude = Math.abs(x);
+            if (magnitude > peak) {
+                peak = magnitude;
+            }
+        }
+
+        if (c.limiterEnabled) {
+            // Instant attack, exponential release, channels linked so the image does not shift
+            double target = peak > c.limiterThreshold ? c.limiterThreshold / peak : 1.0;
+            if (target < limiterGain) {
+                limiterGain = target;
+            } else {
+                limiterGain = target + (limiterGain - target) * c.limiterRelease;
+            }
+            for (int ch = 0; ch < channels; ch++) {
+                frame[ch] *= limiterGain;
+            }
+        }
+    }
+
+    private static short toPcm16(double sample) {
+        double scaled = sample * 32767;
+        if (scaled > 32767) {
+            return 32767;
+        }
+        if (scaled < -32768) {
+            return -32768;
+        }
+        return (short) Math.round(scaled);
+    }
+}
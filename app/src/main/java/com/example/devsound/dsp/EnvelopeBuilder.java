@@ -0,0 +1,166 @@
+package com.example.devsound.dsp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reduces decoded PCM to a peak and RMS envelope. Samples are folded into
+ * fixed blocks as they arrive, so the track length does not need to be known
+ * up front; resample() then spreads the blocks over any number of points.
+ * The signed extremes of each block are kept too, for the zoomable pyramid.
+ */
+public class EnvelopeBuilder {
+    public static final int DEFAULT_BLOCK_FRAMES = 512;
+
+    private final int channels;
+    private final int blockFrames;
+
+    // Per block over all channels: lowest and highest sample, and mean square
+    private float[] blockMins = new float[4096];
+    private float[] blockMaxs = new float[4096];
+    private float[] blockMeanSquares = new float[4096];
+    private int blockCount;
+    private long frameCount;
+
+    private float currentMin;
+    private float currentMax;
+    private double currentSum;
+    private int currentFrames;
+
+    public EnvelopeBuilder(int channels) {
+        this(channels, DEFAULT_BLOCK_FRAMES);
+    }
+
+    public EnvelopeBuilder(int channels, int blockFrames) {
+        if (channels <= 0 || blockFrames <= 0) {
+            throw new IllegalArgumentException("Invalid envelope format");
+        }
+        this.channels = channels;
+        this.blockFrames = blockFrames;
+    }
+
+    /**
+     * Add interleaved 16-bit PCM in the buffer's byte order; position and limit are not changed
+     */
+    public void addPcm16(ByteBuffer pcm, int byteOffset, int byteCount) {
+        int frameBytes = 2 * channels;
+        int frames = byteCount / frameBytes;
+        int index = byteOffset;
+        for (int f = 0; f < frames; f++) {
+            for (int ch = 0; ch < channels; ch++) {
+                addSample(pcm.getShort(index + 2 * ch) * (1f / 32768));
+            }
+            endFrame();
+            index += frameBytes;
+        }
+    }
+
+    /**
+     * Add interleaved float samples in [-1, 1]
+     */
+    public void addFloat(float[] samples, int offset, int frames) {
+        int index = offset;
+        for (int f = 0; f < frames; f++) {
+            for (int ch = 0; ch < channels; ch++) {
+                addSample(samples[index + ch]);
+            }
+            endFrame();
+            index += channels;
+        }
+    }
+
+    private void addSample(float x) {
+        if (x < currentMin) {
+            currentMin = x;
+        }
+        if (x > currentMax) {
+            currentMax = x;
+        }
+        currentSum += x * x;
+    }
+
+    private void endFrame() {
+        frameCount++;
+        if (++currentFrames == blockFrames) {
+            closeBlock();
+        }
+    }
+
+    private void closeBlock() {
+        if (blockCount == blockMins.length) {
+            blockMins = grow(blockMins);
+            blockMaxs = grow(blockMaxs);
+            blockMeanSquares = grow(blockMeanSquares);
+        }
+        blockMins[blockCount] = currentMin;
+        blockMaxs[blockCount] = currentMax;
+        blockMeanSquares[blockCount] = (float) (currentSum / ((long) currentFrames * channels));
+        blockCount++;
+        currentMin = 0;
+        currentMax = 0;
+        currentSum = 0;
+        currentFrames = 0;
+    }
+
+    private static float[] grow(float[] values) {
+        float[] grown = new float[values.length * 2];
+        System.arraycopy(values, 0, grown, 0, values.length);
+        return grown;
+    }
+
+    /**
+     * Close the partial last block; call once after the last PCM
+     */
+    public void finish() {
+        if (currentFrames > 0) {
+            closeBlock();
+        }
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    public float getBlockMin(int block) {
+        return blockMins[block];
+    }
+
+    public float getBlockMax(int block) {
+        return blockMaxs[block];
+    }
+
+    /**
+     * Spread the blocks over the given number of points. Each point takes the
+     * highest peak and the RMS of the blocks it covers. Tracks shorter than the
+     * point count repeat blocks rather than leave gaps.
+     */
+    public void resample(int points, float[] peaksOut, float[] rmsOut) {
+        for (int i = 0; i < points; i++) {
+            if (blockCount == 0) {
+                peaksOut[i] = 0;
+                rmsOut[i] = 0;
+                continue;
+            }
+            int from = (int) ((long) i * blockCount / points);
+            int to = (int) ((long) (i + 1) * blockCount / points);
+            if (to <= from) {
+                to = from + 1;
+            }
+            float peak = 0;
+            double sum = 0;
+            for (int b = from; b < to; b++) {
+                peak = Math.max(peak, Math.max(-blockMins[b], blockMaxs[b]));
+                sum += blockMeanSquares[b];
+            }
+            peaksOut[i] = Math.min(1f, peak);
+            rmsOut[i] = (float) Math.min(1.0, Math.sqrt(sum / (to - from)));
+        }
+    }
+}
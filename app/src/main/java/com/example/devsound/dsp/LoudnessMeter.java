@@ -0,0 +1,247 @@
+package com.example.devsound.dsp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Integrated loudness and true peak of a whole track, after ITU-R BS.1770 /
+ * EBU R128: K-weighting, 400 ms blocks with 75% overlap, an absolute gate at
+ * -70 LUFS and a relative gate 10 LU below the ungated mean. True peak is
+ * measured on a 4x oversampled signal.
+ *
+ * Meant for offline analysis on a background thread; feed it the decoded PCM
+ * of one track, then read the results.
+ */
+public class LoudnessMeter {
+    public static final double ABSOLUTE_GATE_LUFS = -70.0;
+    public static final double RELATIVE_GATE_LU = -10.0;
+
+    private static final int OVERSAMPLING = 4;
+    private static final int TAPS_PER_PHASE = 12;
+    // Four 100 ms steps make one 400 ms gating block
+    private static final int STEPS_PER_BLOCK = 4;
+
+    private static final double[][] INTERPOLATION_PHASES = designInterpolator();
+
+    private final int channels;
+    private final int stepFrames;
+
+    // K-weighting: a high shelf then a high pass, per channel
+    private final double[] shelf = new double[Biquad.COEFFICIENT_COUNT];
+    private final double[] highPass = new double[Biquad.COEFFICIENT_COUNT];
+    private final double[] filterState;
+
+    // Sum of squared weighted samples for the current step and the last few steps
+    private double stepEnergy;
+    private int stepFrameCount;
+    private final double[] recentSteps = new double[STEPS_PER_BLOCK];
+    private int completedSteps;
+
+    // Mean square of every 400 ms block
+    private double[] blockEnergies = new double[1024];
+    private int blockCount;
+
+    // Oversampling history, TAPS_PER_PHASE samples per channel
+    private final double[] history;
+    private int historyPosition;
+    private double truePeak;
+
+    public LoudnessMeter(int sampleRate, int channels) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Invalid format: " + sampleRate + " Hz, " + channels + " ch");
+        }
+        this.channels = channels;
+        this.stepFrames = Math.max(1, sampleRate / 10);
+        designKWeighting(sampleRate, shelf, highPass);
+        filterState = new double[channels * 4];
+        history = new double[channels * TAPS_PER_PHASE];
+    }
+
+    /**
+     * Add interleaved 16-bit PCM in the buffer's byte order; position and limit are not changed
+     */
+    public void addPcm16(ByteBuffer pcm, int byteOffset, int byteCount) {
+        int frameBytes = 2 * channels;
+        int frames = byteCount / frameBytes;
+        int index = byteOffset;
+        for (int f = 0; f < frames; f++) {
+            for (int ch = 0; ch < channels; ch++) {
+                addSample(ch, pcm.getShort(index + 2 * ch) * (1.0 / 32768));
+            }
+            endFrame();
+            index += frameBytes;
+        }
+    }
+
+    /**
+     * Add interleaved float samples in [-1, 1]
+     */
+    public void addFloat(float[] samples, int offset, int frames) {
+        int index = offset;
+        for (int f = 0; f < frames; f++) {
+            for (int ch = 0; ch < channels; ch++) {
+                addSample(ch, samples[index + ch]);
+            }
+            endFrame();
+            index += channels;
+        }
+    }
+
+    private void addSample(int ch, double x) {
+        // K-weighting, transposed direct form II
+        int z = ch * 4;
+        double y = shelf[0] * x + filterState[z];
+        filterState[z] = shelf[1] * x - shelf[3] * y + filterState[z + 1];
+        filterState[z + 1] = shelf[2] * x - shelf[4] * y;
+        double w = highPass[0] * y + filterState[z + 2];
+        filterState[z + 2] = highPass[1] * y - highPass[3] * w + filterState[z + 3];
+        filterState[z + 3] = highPass[2] * y - highPass[4] * w;
+        stepEnergy += w * w;
+
+        updateTruePeak(ch, x);
+    }
+
+    private void updateTruePeak(int ch, double x) {
+        int base = ch * TAPS_PER_PHASE;
+        history[base + historyPosition] = x;
+        double magnitude = Math.abs(x);
+        if (magnitude > truePeak) {
+            truePeak = magnitude;
+        }
+        // The even-length filter puts every phase between input samples
+        for (int phase = 0; phase < OVERSAMPLING; phase++) {
+            double[] taps = INTERPOLATION_PHASES[phase];
+            double sum = 0;
+            int h = historyPosition;
+            for (int t = 0; t < TAPS_PER_PHASE; t++) {
+                sum += taps[t] * history[base + h];
+                h = h == 0 ? TAPS_PER_PHASE - 1 : h - 1;
+            }
+            magnitude = Math.abs(sum);
+            if (magnitude > truePeak) {
+                truePeak = magnitude;
+            }
+        }
+    }
+
+    private void endFrame() {
+        historyPosition = historyPosition + 1 == TAPS_PER_PHASE ? 0 : historyPosition + 1;
+        if (++stepFrameCount < stepFrames) {
+            return;
+        }
+        recentSteps[completedSteps % STEPS_PER_BLOCK] = stepEnergy;
+        completedSteps++;
+        stepEnergy = 0;
+        stepFrameCount = 0;
+
+        if (completedSteps >= STEPS_PER_BLOCK) {
+            double sum = 0;
+            for (double step : recentSteps) {
+                sum += step;
+            }
+            addBlock(sum / (STEPS_PER_BLOCK * (double) stepFrames));
+        }
+    }
+
+    private void addBlock(double meanSquare) {
+        if (blockCount == blockEnergies.length) {
+            double[] grown = new double[blockEnergies.length * 2];
+            System.arraycopy(blockEnergies, 0, grown, 0, blockCount);
+            blockEnergies = grown;
+        }
+        blockEnergies[blockCount++] = meanSquare;
+    }
+
+    /**
+     * @return gated integrated loudness in LUFS, or negative infinity for silence
+     *         or input shorter than one block
+     */
+    public double getIntegratedLoudness() {
+        double absoluteGate = energyOf(ABSOLUTE_GATE_LUFS);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blockEnergies[i] > absoluteGate) {
+                sum += blockEnergies[i];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        double relativeGate = energyOf(loudnessOf(sum / count) + RELATIVE_GATE_LU);
+        double gatedSum = 0;
+        int gatedCount = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blockEnergies[i] > absoluteGate && blockEnergies[i] > relativeGate) {
+                gatedSum += blockEnergies[i];
+                gatedCount++;
+            }
+        }
+        return gatedCount == 0 ? Double.NEGATIVE_INFINITY : loudnessOf(gatedSum / gatedCount);
+    }
+
+    /**
+     * @return highest absolute sample value of the 4x oversampled signal, 1.0 = full scale
+     */
+    public double getTruePeak() {
+        return truePeak;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    private static double loudnessOf(double meanSquare) {
+        return -0.691 + 10 * Math.log10(meanSquare);
+    }
+
+    private static double energyOf(double lufs) {
+        return Math.pow(10, (lufs + 0.691) / 10);
+    }
+
+    /**
+     * BS.1770 K-weighting for any sample rate, from the analog prototype of
+     * the 48 kHz reference filters
+     */
+    static void designKWeighting(double sampleRate, double[] shelf, double[] highPass) {
+        double f0 = 1681.974450955533;
+        double gainDb = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10, gainDb / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        shelf[0] = (vh + vb * k / q + k * k) / a0;
+        shelf[1] = 2 * (k * k - vh) / a0;
+        shelf[2] = (vh - vb * k / q + k * k) / a0;
+        shelf[3] = 2 * (k * k - 1) / a0;
+        shelf[4] = (1 - k / q + k * k) / a0;
+
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1 + k / q + k * k;
+        highPass[0] = 1;
+        highPass[1] = -2;
+        highPass[2] = 1;
+        highPass[3] = 2 * (k * k - 1) / a0;
+        highPass[4] = (1 - k / q + k * k) / a0;
+    }
+
+    /**
+     * Hann-windowed sinc interpolator split into OVERSAMPLING polyphase branches
+     */
+    private static double[][] designInterpolator() {
+        int length = OVERSAMPLING * TAPS_PER_PHASE;
+        double center = (length - 1) / 2.0;
+        double[][] phases = new double[OVERSAMPLING][TAPS_PER_PHASE];
+        for (int n = 0; n < length; n++) {
+            double t = (n - center) / OVERSAMPLING;
+            double sinc = t == 0 ? 1 : Math.sin(Math.PI * t) / (Math.PI * t);
+            double window = 0.5 - 0.5 * Math.cos(2 * Math.PI * (n + 0.5) / length);
+            phases[n % OVERSAMPLING][n / OVERSAMPLING] = sinc * window;
+        }
+        return phases;
+    }
+}
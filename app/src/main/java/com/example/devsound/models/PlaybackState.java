@@ -0,0 +1,58 @@
+package com.example.devsound.models;
+
+/**
+ * Immutable snapshot of what the music service is currently playing.
+ * The service is the only writer; every transition it publishes carries a
+ * higher version so observers can drop stale or duplicate updates.
+ */
+public final class PlaybackState {
+    public static final PlaybackState IDLE = new PlaybackState(0, -1, null, false);
+
+    private final long version;
+    private final int songIndex;
+    private final Song song;
+    private final boolean playing;
+
+    private PlaybackState(long version, int songIndex, Song song, boolean playing) {
+        this.version = version;
+        this.songIndex = songIndex;
+        this.song = song;
+        this.playing = playing;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSongIndex() {
+        return songIndex;
+    }
+
+    public Song getSong() {
+        return song;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Next state after the service moved to another track
+     */
+    public PlaybackState withSong(int songIndex, Song song) {
+        return new PlaybackState(version + 1, songIndex, song, playing);
+    }
+
+    /**
+     * Next state after playback was started or paused
+     */
+    public PlaybackState withPlaying(boolean playing) {
+        return new PlaybackState(version + 1, songIndex, song, playing);
+    }
+
+    @Override
+    public String toString() {
+        return "PlaybackState{version=" + version + ", songIndex=" + songIndex +
+                ", song=" + (song != null ? song.getTitle() : "null") + ", playing=" + playing + "}";
+    }
+}
@@ -10,8 +10,20 @@ public class Song {
     private long duration;
     private Uri uri;
     private Uri albumArtUri;
+    private String dataPath; // File path from MediaStore DATA, null when unavailable
+    private long dateModified; // MediaStore DATE_MODIFIED in seconds, 0 when unknown
 
     public Song(long id, String title, String artist, String album, long duration, Uri uri, Uri albumArtUri) {
+        this(id, title, artist, album, duration, uri, albumArtUri, null);
+    }
+
+    public Song(long id, String title, String artist, String album, long duration, Uri uri, Uri albumArtUri,
+            String dataPath) {
+        this(id, title, artist, album, duration, uri, albumArtUri, dataPath, 0);
+    }
+
+    public Song(long id, String title, String artist, String album, long duration, Uri uri, Uri albumArtUri,
+            String dataPath, long dateModified) {
         this.id = id;
         this.title = title;
         this.artist = artist;
@@ -19,6 +31,8 @@ public class Song {
         this.duration = duration;
         this.uri = uri;
         this.albumArtUri = albumArtUri;
+        this.dataPath = dataPath;
+        this.dateModified = dateModified;
     }
 
     public long getId() {
@@ -49,6 +63,14 @@ public class Song {
         return albumArtUri;
     }
 
+    public String getDataPath() {
+        return dataPath;
+    }
+
+    public long getDateModified() {
+        return dateModified;
+    }
+
     public String getFormattedDuration() {
         long seconds = duration / 1000;
         long minutes = seconds / 60;
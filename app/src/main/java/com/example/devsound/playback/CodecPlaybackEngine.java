@@ -0,0 +1,1093 @@
+package com.example.devsound.playback;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.example.devsound.analysis.SeekIndex;
+import com.example.devsound.dsp.DspChain;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PlaybackEngine that decodes with MediaExtractor and MediaCodec in async
+ * callback mode and plays the PCM through an AudioTrack.
+ *
+ * The decoder thread copies codec output into pooled direct buffers and hands
+ * them to a dedicated output thread through a lock-free ring; the output
+ * thread writes them to the AudioTrack. An optional DspChain processes each
+ * chunk in place on the decoder thread. Nothing is allocated per buffer once
+ * the engine is constructed.
+ *
+ * MP3 tracks can be given a SeekIndex. Seeks then jump straight to the
+ * indexed frame and feed the codec from the file with an Mp3FrameReader,
+ * since MediaExtractor estimates VBR offsets from the average bitrate when
+ * the file has no seek table.
+ *
+ * A track can also be given a pre-roll: its opening seconds, already
+ * decoded. The engine then reports prepared at once and plays the cached PCM
+ * while the extractor and codec are set up behind it. The codec starts a
+ * little before the end of the pre-roll, so the MP3 bit reservoir is full by
+ * the splice, and its output up to the splice is dropped; the two join
+ * without a gap or a damaged frame.
+ */
+public class CodecPlaybackEngine implements PlaybackEngine {
+    private static final String TAG = "CodecPlaybackEngine";
+
+    public static final int DEFAULT_RING_DEPTH = 32;
+    public static final int DEFAULT_CHUNK_BYTES = 16 * 1024;
+    public static final int DEFAULT_TRACK_BUFFER_FACTOR = 4;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_INITIALIZED = 1;
+    private static final int STATE_PREPARING = 2;
+    private static final int STATE_PREPARED = 3;
+    private static final int STATE_STARTED = 4;
+    private static final int STATE_PAUSED = 5;
+    private static final int STATE_COMPLETED = 6;
+    private static final int STATE_ERROR = 7;
+    private static final int STATE_RELEASED = 8;
+
+    // How often the output thread looks again at a playing track it is waiting on; otherwise it
+    // sleeps until woken
+    private static final long IDLE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long RESET_TIMEOUT_MS = 2000;
+    // Start indexed precise seeks this far early so the MP3 bit reservoir is filled by the target
+    private static final long RESERVOIR_PREROLL_US = 60000;
+
+    /**
+     * One block of decoded PCM travelling from the decoder to the output
+     */
+    private static final class PcmChunk {
+        final ByteBuffer data;
+        int generation;
+        boolean endOfStream;
+        // Format of the PCM, so the output thread switches tracks exactly where it changes
+        int sampleRate;
+        int channelCount;
+
+        PcmChunk(int capacity) {
+            // Codec PCM is in native order; the DSP reads samples through this view
+            data = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Codec output buffer that is still being copied into chunks
+     */
+    private static final class PendingOutput {
+        int index;
+        int offset;
+        int size;
+        boolean endOfStream;
+        int sampleRate;
+        int channelCount;
+    }
+
+    private final int trackBufferFactor;
+    private final boolean lowLatency;
+    private final PowerManager.WakeLock wakeLock;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread decoderThread;
+    private final Handler decoderHandler;
+
+    // Decoded chunks: decoder thread produces, output thread consumes
+    private final SpscRingBuffer<PcmChunk> filledChunks;
+    // Empty chunks: output thread produces, decoder thread consumes
+    private final SpscRingBuffer<PcmChunk> freeChunks;
+
+    // Decoder thread only
+    private int decoderGeneration;
+    private final ArrayDeque<PendingOutput> pendingOutputs = new ArrayDeque<>();
+    private final ArrayDeque<PendingOutput> sparePendingOutputs = new ArrayDeque<>();
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    private final Runnable drainRunnable = () -> {
+        drainRequested.set(false);
+        drainOutputs();
+    };
+
+    private Listener listener;
+    private volatile DspChain dspChain;
+    // Kept across resets so ducking and normalization apply to the next track too
+    private volatile float volume = 1.0f;
+    private volatile int state = STATE_IDLE;
+    // Bumped on every seek and reset; chunks from older generations are dropped
+    private volatile int generation;
+
+    private FileDescriptor sourceFd;
+    private String sourcePath;
+    private MediaExtractor extractor;
+    private MediaCodec codec;
+    private final OutputTrack<AudioTrack> outputTrack = new OutputTrack<>(new AudioTracks());
+    private volatile OutputThread outputThread;
+    private boolean codecStarted;
+    private boolean inputDone;
+    // After a precise seek, decoded audio before this time is dropped; -1 when not skipping
+    private long skipUntilUs = -1;
+
+    // Indexed seeking: the file read by position, and the frame reader in use since the last indexed seek
+    private volatile SeekIndex seekIndex;
+    private FileChannel fileChannel;
+    private RandomAccessFile ownedFile;
+    private boolean mpegAudio;
+    private Mp3FrameReader frameReader;
+    private boolean readingFrames;
+
+    // Pre-roll: set before prepareAsync; the rest is decoder thread only
+    private volatile PrerollCache.Entry preroll;
+    private boolean startedFromPreroll;
+    private ByteBuffer prerollPcm;
+
+    // Format the codec currently outputs; decoder thread only
+    private int sampleRate;
+    private int channelCount;
+    // Rate the DSP chain is configured for; decoder thread only
+    private int dspSampleRate;
+    private volatile long durationUs;
+    // Media time of the first frame written after the last flush
+    private volatile long positionBaseUs;
+
+    public CodecPlaybackEngine(Context context) {
+        this(context, DEFAULT_RING_DEPTH, DEFAULT_CHUNK_BYTES, DEFAULT_TRACK_BUFFER_FACTOR, false);
+    }
+
+    /**
+     * @param ringDepth         number of pooled PCM chunks between decoder and output
+     * @param chunkBytes        size of each pooled chunk
+     * @param trackBufferFactor AudioTrack buffer size as a multiple of the minimum
+     * @param lowLatency        request the low-latency AudioTrack performance mode
+     */
+    public CodecPlaybackEngine(Context context, int ringDepth, int chunkBytes, int trackBufferFactor,
+            boolean lowLatency) {
+        this.trackBufferFactor = Math.max(1, trackBufferFactor);
+        this.lowLatency = lowLatency;
+
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "DevSound:CodecPlayback");
+        wakeLock.setReferenceCounted(false);
+
+        filledChunks = new SpscRingBuffer<>(ringDepth);
+        freeChunks = new SpscRingBuffer<>(ringDepth);
+        for (int i = 0; i < ringDepth; i++) {
+            freeChunks.offer(new PcmChunk(chunkBytes));
+        }
+
+        decoderThread = new HandlerThread("CodecDecoder", Process.THREAD_PRIORITY_AUDIO);
+        decoderThread.start();
+        decoderHandler = new Handler(decoderThread.getLooper());
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Process decoded PCM through the given chain, or pass it through untouched if null
+     */
+    public void setDspChain(DspChain chain) {
+        dspChain = chain;
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd) throws IOException {
+        checkState(STATE_IDLE, "setDataSource");
+        // The extractor is opened on the decoder thread, since probing the file is slow
+        sourceFd = fd;
+        // Positional reads leave the descriptor's offset alone; the owner closes it
+        fileChannel = new FileInputStream(fd).getChannel();
+        state = STATE_INITIALIZED;
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        checkState(STATE_IDLE, "setDataSource");
+        sourcePath = path;
+        try {
+            ownedFile = new RandomAccessFile(path, "r");
+            fileChannel = ownedFile.getChannel();
+        } catch (IOException e) {
+            // Only indexed seeking needs it
+            Log.w(TAG, "Cannot open " + path + " for indexed seeking", e);
+        }
+        state = STATE_INITIALIZED;
+    }
+
+    /**
+     * Use the index for seeks in the current track, which must be the file it
+     * was built from. Cleared by reset().
+     */
+    public void setSeekIndex(SeekIndex index) {
+        seekIndex = index;
+    }
+
+    /**
+     * Start the next prepare from this decoded opening of the track, which
+     * must be the data source just set. Cleared by reset().
+     */
+    public void setPreroll(PrerollCache.Entry entry) {
+        checkState(STATE_INITIALIZED, "setPreroll");
+        preroll = entry;
+    }
+
+    @Override
+    public void prepareAsync() {
+        checkState(STATE_INITIALIZED, "prepareAsync");
+        state = STATE_PREPARING;
+        final int gen = generation;
+        final PrerollCache.Entry entry = preroll;
+        if (entry != null) {
+            decoderHandler.post(() -> startFromPreroll(gen, entry));
+        }
+        decoderHandler.post(() -> prepareInternal(gen));
+    }
+
+    @Override
+    public void start() {
+        int current = state;
+        if (current == STATE_STARTED) {
+            return;
+        }
+        if (current == STATE_PREPARED) {
+            decoderHandler.post(this::startCodec);
+            outputThread = new OutputThread();
+            outputThread.start();
+        } else if (current == STATE_COMPLETED) {
+            seekTo(0, true);
+        } else if (current != STATE_PAUSED) {
+            throw new IllegalStateException("start() called in state " + current);
+        }
+
+        state = STATE_STARTED;
+        AudioTrack track = outputTrack.get();
+        if (track != null) {
+            track.play();
+        }
+        wakeOutput();
+        wakeLock.acquire();
+    }
+
+    @Override
+    public void pause() {
+        if (state != STATE_STARTED) {
+            return;
+        }
+        state = STATE_PAUSED;
+        AudioTrack track = outputTrack.get();
+        if (track != null) {
+            track.pause();
+        }
+        wakeLock.release();
+    }
+
+    @Override
+    public void stop() {
+        pause();
+    }
+
+    @Override
+    public void seekTo(int positionMs, boolean precise) {
+        int current = state;
+        if (current < STATE_PREPARED || current >= STATE_ERROR) {
+            return;
+        }
+        final long targetUs = Math.max(0, positionMs) * 1000L;
+        final int gen = ++generation;
+        if (current == STATE_COMPLETED) {
+            state = STATE_PAUSED;
+        }
+        decoderHandler.post(() -> seekInternal(gen, targetUs, precise));
+    }
+
+    /**
+     * Returns at once; the codec and the old track are released on the decoder
+     * thread, ahead of anything the next prepare posts there.
+     */
+    @Override
+    public void reset() {
+        generation++;
+        OutputThread thread = outputThread;
+        outputThread = null;
+        if (thread != null) {
+            thread.shutdown();
+        }
+        // Taken under the track's lock, so the output thread cannot swap in another one now
+        AudioTrack track = outputTrack.take();
+        RandomAccessFile file = ownedFile;
+        // The next data source may be set before the decoder thread gets to the cleanup
+        sourceFd = null;
+        sourcePath = null;
+        fileChannel = null;
+        ownedFile = null;
+        preroll = null;
+        seekIndex = null;
+        durationUs = 0;
+        positionBaseUs = 0;
+        decoderHandler.post(() -> {
+            joinOutputThread(thread);
+            releaseDecoder(track, file);
+        });
+        wakeLock.release();
+        state = STATE_IDLE;
+    }
+
+    @Override
+    public void release() {
+        reset();
+        decoderThread.quitSafely();
+        state = STATE_RELEASED;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return state == STATE_STARTED;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        AudioTrack track = outputTrack.get();
+        int rate = outputTrack.getSampleRate();
+        long positionUs = positionBaseUs;
+        if (track != null && rate > 0) {
+            // Head position wraps as an unsigned 32-bit frame count
+            long frames = track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+            positionUs += frames * 1000000L / rate;
+        }
+        if (durationUs > 0) {
+            positionUs = Math.min(positionUs, durationUs);
+        }
+        return (int) (positionUs / 1000);
+    }
+
+    @Override
+    public int getDuration() {
+        return (int) (durationUs / 1000);
+    }
+
+    @Override
+    public void setVolume(float left, float right) {
+        volume = Math.max(left, right);
+        AudioTrack track = outputTrack.get();
+        if (track != null) {
+            track.setVolume(Math.max(left, right));
+        }
+    }
+
+    // Decoder thread
+
+    private void prepareInternal(int gen) {
+        if (gen != generation) {
+            return;
+        }
+        decoderGeneration = gen;
+        try {
+            extractor = new MediaExtractor();
+            if (sourceFd != null) {
+                extractor.setDataSource(sourceFd);
+            } else {
+                extractor.setDataSource(sourcePath);
+            }
+            int trackIndex = selectAudioTrack(extractor);
+            if (trackIndex < 0) {
+                throw new IOException("No audio track found");
+            }
+            extractor.selectTrack(trackIndex);
+            MediaFormat format = extractor.getTrackFormat(trackIndex);
+
+            if (format.containsKey(MediaFormat.KEY_DURATION)) {
+                durationUs = format.getLong(MediaFormat.KEY_DURATION);
+            }
+            mpegAudio = "audio/mpeg".equals(format.getString(MediaFormat.KEY_MIME));
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.setCallback(new DecoderCallback(), decoderHandler);
+            codec.configure(format, null, null, 0);
+            inputDone = false;
+
+            if (startedFromPreroll) {
+                // Already prepared and maybe playing: decode on from where the pre-roll ends.
+                // Every MP3 frame is a sync frame, so decoding from the splice itself would
+                // start without the bit reservoir and damage the first frame; start early
+                // and drop the decoded audio up to the splice, as a precise seek does.
+                long prerollEndUs = preroll.getEndUs();
+                extractor.seekTo(Math.max(0, prerollEndUs - RESERVOIR_PREROLL_US),
+                        MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                skipUntilUs = prerollEndUs;
+                Log.d(TAG, "Decoder caught up with pre-roll of " + prerollEndUs / 1000 + " ms");
+                return;
+            }
+
+            sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            outputTrack.set(createAudioTrack(sampleRate, channelCount), sampleRate, channelCount);
+            configureDsp(sampleRate);
+            positionBaseUs = 0;
+
+            if (gen != generation) {
+                return;
+            }
+            state = STATE_PREPARED;
+            Log.d(TAG, "Prepared: " + sampleRate + " Hz, " + channelCount + " ch, " + durationUs / 1000 + " ms");
+            mainHandler.post(() -> {
+                if (gen == generation && listener != null) {
+                    listener.onPrepared(this);
+                }
+            });
+        } catch (IOException | IllegalArgumentException e) {
+            fail(gen, ERROR_UNSUPPORTED, e);
+        } catch (Exception e) {
+            fail(gen, ERROR_UNKNOWN, e);
+        }
+    }
+
+    /**
+     * Report prepared straight away and queue the cached opening of the
+     * track for the output thread; prepareInternal follows with the codec
+     */
+    private void startFromPreroll(int gen, PrerollCache.Entry entry) {
+        if (gen != generation) {
+            return;
+        }
+        decoderGeneration = gen;
+        try {
+            sampleRate = entry.getSampleRate();
+            channelCount = entry.getChannelCount();
+            durationUs = entry.getTrackDurationUs();
+            outputTrack.set(createAudioTrack(sampleRate, channelCount), sampleRate, channelCount);
+        } catch (Exception e) {
+            // Prepare the usual way instead
+            Log.w(TAG, "Cannot start from pre-roll", e);
+            return;
+        }
+        configureDsp(sampleRate);
+        positionBaseUs = 0;
+        startedFromPreroll = true;
+        prerollPcm = ByteBuffer.wrap(entry.getPcm()).asReadOnlyBuffer();
+        drainOutputs();
+
+        state = STATE_PREPARED;
+        Log.d(TAG, "Prepared from pre-roll: " + sampleRate + " Hz, " + channelCount + " ch");
+        mainHandler.post(() -> {
+            if (gen == generation && listener != null) {
+                listener.onPrepared(this);
+            }
+        });
+    }
+
+    private void startCodec() {
+        if (codec != null && !codecStarted) {
+            codec.start();
+            codecStarted = true;
+        }
+    }
+
+    private void seekInternal(int gen, long targetUs, boolean precise) {
+        if (gen != generation || codec == null) {
+            return;
+        }
+        decoderGeneration = gen;
+        try {
+            // Flushing returns all codec buffers, including ones we were still copying
+            recyclePendingOutputs();
+            prerollPcm = null;
+            if (codecStarted) {
+                codec.flush();
+            }
+            // A precise seek decodes from the sync frame before the target and drops
+            // the audio up to it; a fast one starts playing at the nearest sync frame
+            long landedUs;
+            SeekIndex index = seekIndex;
+            if (index != null && !index.isEmpty() && mpegAudio && fileChannel != null
+                    && index.getSampleRate() == sampleRate) {
+                int entry = precise ? index.find(Math.max(0, targetUs - RESERVOIR_PREROLL_US))
+                        : index.findNearest(targetUs);
+                if (frameReader == null) {
+                    frameReader = new Mp3FrameReader(fileChannel);
+                }
+                frameReader.seek(index.getOffset(entry), index.getTimeUs(entry));
+                readingFrames = true;
+                landedUs = precise ? targetUs : index.getTimeUs(entry);
+            } else {
+                extractor.seekTo(targetUs, precise
+                        ? MediaExtractor.SEEK_TO_PREVIOUS_SYNC : MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                readingFrames = false;
+                landedUs = precise ? targetUs : Math.max(0, extractor.getSampleTime());
+            }
+            skipUntilUs = precise ? targetUs : -1;
+            inputDone = false;
+            DspChain chain = dspChain;
+            if (chain != null) {
+                chain.reset();
+            }
+            OutputThread thread = outputThread;
+            if (thread != null) {
+                thread.requestFlush(landedUs);
+            } else {
+                positionBaseUs = landedUs;
+            }
+            if (codecStarted) {
+                // Async mode needs start() after flush to hand out input buffers again
+                codec.start();
+            }
+            mainHandler.post(() -> {
+                if (gen == generation && listener != null) {
+                    listener.onSeekComplete(this);
+                }
+            });
+        } catch (Exception e) {
+            fail(gen, ERROR_UNKNOWN, e);
+        }
+    }
+
+    private void drainOutputs() {
+        // Pre-roll PCM goes out first; decoded output queues up behind it
+        if (prerollPcm != null && !drainPreroll()) {
+            return;
+        }
+        while (!pendingOutputs.isEmpty()) {
+            PendingOutput pending = pendingOutputs.peek();
+            ByteBuffer output = codec.getOutputBuffer(pending.index);
+
+            while (pending.size > 0) {
+                PcmChunk chunk = freeChunks.poll();
+                if (chunk == null) {
+                    // Output thread will request another drain when it frees a chunk
+                    return;
+                }
+                int count = Math.min(pending.size, chunk.data.capacity());
+                output.limit(pending.offset + count);
+                output.position(pending.offset);
+                chunk.data.clear();
+                chunk.data.put(output);
+                chunk.data.flip();
+                DspChain chain = dspChain;
+                if (chain != null) {
+                    if (pending.sampleRate != dspSampleRate) {
+                        // First output in a new format; the outputs before it were processed at the old rate
+                        configureDsp(pending.sampleRate);
+                    }
+                    chain.process(chunk.data, 0, count, pending.channelCount);
+                }
+                chunk.generation = decoderGeneration;
+                chunk.endOfStream = false;
+                chunk.sampleRate = pending.sampleRate;
+                chunk.channelCount = pending.channelCount;
+                queueChunk(chunk);
+                pending.offset += count;
+                pending.size -= count;
+            }
+
+            if (pending.endOfStream) {
+                PcmChunk marker = freeChunks.poll();
+                if (marker == null) {
+                    return;
+                }
+                marker.data.clear();
+                marker.data.flip();
+                marker.generation = decoderGeneration;
+                marker.endOfStream = true;
+                marker.sampleRate = pending.sampleRate;
+                marker.channelCount = pending.channelCount;
+                queueChunk(marker);
+            }
+
+            codec.releaseOutputBuffer(pending.index, false);
+            sparePendingOutputs.push(pendingOutputs.poll());
+        }
+    }
+
+    /**
+     * Hand a filled chunk to the output thread, waking it if it waits for one
+     */
+    private void queueChunk(PcmChunk chunk) {
+        filledChunks.offer(chunk);
+        wakeOutput();
+    }
+
+    private void wakeOutput() {
+        OutputThread thread = outputThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return true once all pre-roll PCM is queued, false if the ring is full
+     */
+    private boolean drainPreroll() {
+        while (prerollPcm.hasRemaining()) {
+            PcmChunk chunk = freeChunks.poll();
+            if (chunk == null) {
+                return false;
+            }
+            int count = Math.min(prerollPcm.remaining(), chunk.data.capacity());
+            int end = prerollPcm.position() + count;
+            ByteBuffer source = prerollPcm;
+            int limit = source.limit();
+            source.limit(end);
+            chunk.data.clear();
+            chunk.data.put(source);
+            chunk.data.flip();
+            source.limit(limit);
+            DspChain chain = dspChain;
+            if (chain != null) {
+                // In the pre-roll's format, which the track was created for
+                chain.process(chunk.data, 0, count, outputTrack.getChannelCount());
+            }
+            chunk.generation = decoderGeneration;
+            chunk.endOfStream = false;
+            chunk.sampleRate = outputTrack.getSampleRate();
+            chunk.channelCount = outputTrack.getChannelCount();
+            queueChunk(chunk);
+        }
+        prerollPcm = null;
+        return true;
+    }
+
+    private void recyclePendingOutputs() {
+        while (!pendingOutputs.isEmpty()) {
+            sparePendingOutputs.push(pendingOutputs.poll());
+        }
+    }
+
+    /**
+     * Decoder thread, once the output thread has stopped
+     */
+    private void releaseDecoder(AudioTrack track, RandomAccessFile file) {
+        recyclePendingOutputs();
+        if (codec != null) {
+            try {
+                if (codecStarted) {
+                    codec.stop();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error stopping codec", e);
+            }
+            codec.release();
+            codec = null;
+        }
+        codecStarted = false;
+        if (extractor != null) {
+            extractor.release();
+            extractor = null;
+        }
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing data source", e);
+            }
+        }
+        prerollPcm = null;
+        startedFromPreroll = false;
+        frameReader = null;
+        readingFrames = false;
+        mpegAudio = false;
+        skipUntilUs = -1;
+        releaseTrack(track);
+
+        // The output thread is gone, so this thread may consume the filled ring
+        PcmChunk chunk;
+        while ((chunk = filledChunks.poll()) != null) {
+            freeChunks.offer(chunk);
+        }
+    }
+
+    private void fail(int gen, int what, Exception e) {
+        Log.e(TAG, "Playback error " + what, e);
+        if (gen != generation) {
+            return;
+        }
+        state = STATE_ERROR;
+        wakeLock.release();
+        mainHandler.post(() -> {
+            if (gen != generation || listener == null) {
+                return;
+            }
+            if (!listener.onError(this, what, 0)) {
+                listener.onCompletion(this);
+            }
+        });
+    }
+
+    private class DecoderCallback extends MediaCodec.Callback {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec mc, int index) {
+            if (mc != codec || inputDone) {
+                return;
+            }
+            try {
+                ByteBuffer input = mc.getInputBuffer(index);
+                if (readingFrames) {
+                    int size = input != null ? frameReader.readFrame(input) : -1;
+                    if (size < 0) {
+                        mc.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        mc.queueInputBuffer(index, 0, size, frameReader.getFrameTimeUs(), 0);
+                    }
+                    return;
+                }
+                int size = input != null ? extractor.readSampleData(input, 0) : -1;
+                if (size < 0) {
+                    mc.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                    inputDone = true;
+                } else {
+                    mc.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                    extractor.advance();
+                }
+            } catch (Exception e) {
+                fail(decoderGeneration, ERROR_MALFORMED, e);
+            }
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec mc, int index, @NonNull MediaCodec.BufferInfo info) {
+            if (mc != codec) {
+                return;
+            }
+            PendingOutput pending = sparePendingOutputs.isEmpty() ? new PendingOutput() : sparePendingOutputs.pop();
+            pending.index = index;
+            pending.offset = info.offset;
+            pending.size = info.size;
+            pending.endOfStream = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            pending.sampleRate = sampleRate;
+            pending.channelCount = channelCount;
+            if (skipUntilUs >= 0) {
+                trimBeforeSeekTarget(pending, info.presentationTimeUs);
+            }
+            pendingOutputs.add(pending);
+            drainOutputs();
+        }
+
+        private void trimBeforeSeekTarget(PendingOutput pending, long presentationTimeUs) {
+            int frameBytes = 2 * Math.max(1, channelCount);
+            long skipFrames = (skipUntilUs - presentationTimeUs) * sampleRate / 1000000L;
+            if (skipFrames > 0) {
+                int skipBytes = (int) Math.min(pending.size, skipFrames * frameBytes);
+                pending.offset += skipBytes;
+                pending.size -= skipBytes;
+            }
+            if (pending.size > 0 || pending.endOfStream) {
+                skipUntilUs = -1;
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec mc, @NonNull MediaCodec.CodecException e) {
+            if (mc == codec) {
+                fail(decoderGeneration, ERROR_MALFORMED, e);
+            }
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec mc, @NonNull MediaFormat format) {
+            if (mc != codec) {
+                return;
+            }
+            int newRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int newChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            if (newRate == sampleRate && newChannels == channelCount) {
+                return;
+            }
+            Log.d(TAG, "Output format changed to " + newRate + " Hz, " + newChannels + " ch");
+            // Outputs from here on carry the new format; the output thread switches
+            // tracks when the first of them reaches it, after the old PCM has played
+            sampleRate = newRate;
+            channelCount = newChannels;
+        }
+    }
+
+    // Output thread
+
+    private class OutputThread extends Thread {
+        private volatile boolean running = true;
+        private volatile boolean flushRequested;
+        private volatile long flushPositionUs;
+        private long framesWritten;
+
+        OutputThread() {
+            super("CodecOutput");
+        }
+
+        void requestFlush(long positionUs) {
+            flushPositionUs = positionUs;
+            flushRequested = true;
+            LockSupport.unpark(this);
+        }
+
+        void shutdown() {
+            running = false;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            while (running) {
+                if (flushRequested) {
+                    flushTrack();
+                }
+                if (state != STATE_STARTED) {
+                    // Until start(), a seek or a reset
+                    LockSupport.park();
+                    continue;
+                }
+
+                PcmChunk chunk = filledChunks.poll();
+                if (chunk == null) {
+                    // Until the decoder queues a chunk
+                    LockSupport.park();
+                    continue;
+                }
+
+                if (chunk.generation == generation) {
+                    if (chunk.endOfStream) {
+                        finishPlayback(chunk.generation);
+                    } else if (switchTrackIfNeeded(chunk)) {
+                        writeChunk(chunk);
+                    }
+                }
+                freeChunks.offer(chunk);
+                if (drainRequested.compareAndSet(false, true)) {
+                    decoderHandler.post(drainRunnable);
+                }
+            }
+        }
+
+        private void flushTrack() {
+            flushRequested = false;
+            AudioTrack track = outputTrack.get();
+            if (track != null) {
+                track.pause();
+                track.flush();
+                if (state == STATE_STARTED) {
+                    track.play();
+                }
+            }
+            framesWritten = 0;
+            positionBaseUs = flushPositionUs;
+        }
+
+        /**
+         * Move to a new AudioTrack when the chunk's format differs from the current track's
+         *
+         * @return false if the chunk should not be written: no track can play it, or the
+         * engine was reset or flushed meanwhile
+         */
+        private boolean switchTrackIfNeeded(PcmChunk chunk) {
+            if (outputTrack.hasFormat(chunk.sampleRate, chunk.channelCount)) {
+                return true;
+            }
+            int oldRate = outputTrack.getSampleRate();
+            long played;
+            try {
+                // The old track plays out its PCM first; a reset or seek meanwhile abandons the switch
+                played = outputTrack.switchTo(chunk.sampleRate, chunk.channelCount, framesWritten,
+                        () -> !running || chunk.generation != generation || flushRequested,
+                        () -> state == STATE_STARTED,
+                        this::idle);
+            } catch (Exception e) {
+                fail(chunk.generation, ERROR_UNSUPPORTED, e);
+                return false;
+            }
+            if (played < 0) {
+                return false;
+            }
+            // Count the old track's PCM at its own rate
+            positionBaseUs = positionBaseUs + (oldRate > 0 ? played * 1000000L / oldRate : 0);
+            framesWritten = 0;
+            return true;
+        }
+
+        private void writeChunk(PcmChunk chunk) {
+            AudioTrack track = outputTrack.get();
+            if (track == null) {
+                // Reset meanwhile
+                return;
+            }
+            ByteBuffer data = chunk.data;
+            int frameBytes = 2 * Math.max(1, chunk.channelCount);
+            while (running && data.hasRemaining() && chunk.generation == generation && !flushRequested) {
+                if (state != STATE_STARTED) {
+                    LockSupport.park();
+                    continue;
+                }
+                int written = track.write(data, data.remaining(), AudioTrack.WRITE_NON_BLOCKING);
+                if (written < 0) {
+                    fail(chunk.generation, ERROR_IO, new IOException("AudioTrack write failed: " + written));
+                    return;
+                }
+                if (written == 0) {
+                    LockSupport.parkNanos(IDLE_PARK_NS);
+                } else {
+                    framesWritten += written / frameBytes;
+                }
+            }
+        }
+
+        private void finishPlayback(int gen) {
+            // Let the AudioTrack play out what it already holds
+            AudioTrack track = outputTrack.get();
+            while (running && gen == generation && track != null
+                    && (track.getPlaybackHeadPosition() & 0xFFFFFFFFL) < framesWritten) {
+                idle();
+            }
+            if (!running || gen != generation) {
+                return;
+            }
+            state = STATE_COMPLETED;
+            wakeLock.release();
+            mainHandler.post(() -> {
+                if (gen == generation && listener != null) {
+                    listener.onCompletion(CodecPlaybackEngine.this);
+                }
+            });
+        }
+
+        /**
+         * Wait while the track plays out: a moment at a time while playing, until woken while paused
+         */
+        private void idle() {
+            if (state == STATE_STARTED) {
+                LockSupport.parkNanos(IDLE_PARK_NS);
+            } else {
+                LockSupport.park();
+            }
+        }
+    }
+
+    // Helpers
+
+    private AudioTrack createAudioTrack(int rate, int channels) throws IOException {
+        int channelMask;
+        if (channels == 1) {
+            channelMask = AudioFormat.CHANNEL_OUT_MONO;
+        } else if (channels == 2) {
+            channelMask = AudioFormat.CHANNEL_OUT_STEREO;
+        } else {
+            throw new IOException("Unsupported channel count: " + channels);
+        }
+
+        int minBuffer = AudioTrack.getMinBufferSize(rate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBuffer <= 0) {
+            throw new IOException("Unsupported output format: " + rate + " Hz, " + channels + " ch");
+        }
+        int bufferBytes = lowLatency ? minBuffer : minBuffer * trackBufferFactor;
+
+        AudioTrack.Builder builder = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(rate)
+                        .setChannelMask(channelMask)
+                        .build())
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setBufferSizeInBytes(bufferBytes);
+        if (lowLatency && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+        }
+        AudioTrack track = builder.build();
+        track.setVolume(volume);
+        return track;
+    }
+
+    private void configureDsp(int rate) {
+        dspSampleRate = rate;
+        DspChain chain = dspChain;
+        if (chain != null) {
+            chain.setSampleRate(rate);
+            chain.reset();
+        }
+    }
+
+    private static int selectAudioTrack(MediaExtractor extractor) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private class AudioTracks implements OutputTrack.Tracks<AudioTrack> {
+        @Override
+        public AudioTrack create(int sampleRate, int channelCount) throws IOException {
+            return createAudioTrack(sampleRate, channelCount);
+        }
+
+        @Override
+        public long playedFrames(AudioTrack track) {
+            return track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void play(AudioTrack track) {
+            track.play();
+        }
+
+        @Override
+        public void release(AudioTrack track) {
+            releaseTrack(track);
+        }
+    }
+
+    private static void releaseTrack(AudioTrack track) {
+        if (track == null) {
+            return;
+        }
+        try {
+            track.stop();
+        } catch (IllegalStateException e) {
+            // Never started
+        }
+        track.release();
+    }
+
+    private static void joinOutputThread(OutputThread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(RESET_TIMEOUT_MS);
+            if (thread.isAlive()) {
+                Log.w(TAG, "Timed out waiting for output thread");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkState(int expected, String method) {
+        if (state != expected) {
+            throw new IllegalStateException(method + "() called in state " + state);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.devsound.playback;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.os.Build;
+import android.os.PowerManager;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * PlaybackEngine backed by the platform MediaPlayer
+ */
+public class MediaPlayerEngine implements PlaybackEngine,
+        MediaPlayer.OnPreparedListener,
+        MediaPlayer.OnErrorListener,
+        MediaPlayer.OnCompletionListener,
+        MediaPlayer.OnSeekCompleteListener {
+
+    private final MediaPlayer player;
+    private Listener listener;
+
+    public MediaPlayerEngine(Context context) {
+        player = new MediaPlayer();
+        player.setWakeMode(context.getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
+        player.setAudioAttributes(new AudioAttributes.Builder()
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .build());
+
+        player.setOnPreparedListener(this);
+        player.setOnCompletionListener(this);
+        player.setOnErrorListener(this);
+        player.setOnSeekCompleteListener(this);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd) throws IOException {
+        player.setDataSource(fd);
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        player.setDataSource(path);
+    }
+
+    @Override
+    public void prepareAsync() {
+        player.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        player.start();
+    }
+
+    @Override
+    public void pause() {
+        player.pause();
+    }
+
+    @Override
+    public void stop() {
+        player.stop();
+    }
+
+    @Override
+    public void seekTo(int positionMs, boolean precise) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            player.seekTo(positionMs, precise ? MediaPlayer.SEEK_CLOSEST : MediaPlayer.SEEK_CLOSEST_SYNC);
+        } else {
+            player.seekTo(positionMs);
+        }
+    }
+
+    @Override
+    public void reset() {
+        player.reset();
+    }
+
+    @Override
+    public void release() {
+        player.release();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return player.isPlaying();
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return player.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        return player.getDuration();
+    }
+
+    @Override
+    public void setVolume(float left, float right) {
+        player.setVolume(left, right);
+    }
+
+    @Override
+    public void onPrepared(MediaPlayer mp) {
+        if (listener != null) {
+            listener.onPrepared(this);
+        }
+    }
+
+    @Override
+    public void onCompletion(MediaPlayer mp) {
+        if (listener != null) {
+            listener.onCompletion(this);
+        }
+    }
+
+    @Override
+    public boolean onError(MediaPlayer mp, int what, int extra) {
+        return listener != null && listener.onError(this, what, extra);
+    }
+
+    @Override
+    public void onSeekComplete(MediaPlayer mp) {
+        if (listener != null) {
+            listener.onSeekComplete(this);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.devsound.playback;
+
+import com.example.devsound.analysis.Mp3FrameHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads whole MPEG audio frames from a file, starting at an offset taken
+ * from a seek index, and timestamps them by counting samples. Used in place
+ * of MediaExtractor after an indexed seek, so a VBR file resumes at the
+ * exact frame instead of at a bitrate estimate.
+ *
+ * Reads are positional and never move the descriptor's own offset.
+ */
+final class Mp3FrameReader {
+    // Junk between frames worth skipping before calling the stream over
+    private static final int MAX_RESYNC_BYTES = 8 * 1024;
+
+    private final FileChannel channel;
+    private final Mp3FrameHeader header = new Mp3FrameHeader();
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(Mp3FrameHeader.HEADER_BYTES);
+    private long position;
+    private long startUs;
+    private long samples;
+    private int sampleRate;
+    private long frameTimeUs;
+
+    Mp3FrameReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Continue reading at the frame at the given offset, which starts at the given time
+     */
+    void seek(long offset, long timeUs) {
+        position = offset;
+        startUs = timeUs;
+        samples = 0;
+        sampleRate = 0;
+    }
+
+    /**
+     * Copy the next frame, header included, into the buffer
+     *
+     * @return the frame size, or -1 at the end of the stream
+     */
+    int readFrame(ByteBuffer out) throws IOException {
+        long limit = position + MAX_RESYNC_BYTES;
+        while (true) {
+            int word = readHeader(position);
+            if (word == -1 && position >= channel.size() - Mp3FrameHeader.HEADER_BYTES) {
+                return -1;
+            }
+            if (header.parse(word) && (sampleRate == 0 || header.getSampleRate() == sampleRate)) {
+                break;
+            }
+            if (++position > limit) {
+                return -1;
+            }
+        }
+        int frameBytes = header.getFrameBytes();
+        if (frameBytes > out.capacity()) {
+            return -1;
+        }
+        out.clear();
+        out.limit(frameBytes);
+        while (out.hasRemaining()) {
+            if (channel.read(out, position + out.position()) < 0) {
+                // Truncated last frame
+                return -1;
+            }
+        }
+        out.flip();
+
+        sampleRate = header.getSampleRate();
+        frameTimeUs = startUs + samples * 1000000L / sampleRate;
+        samples += header.getSamplesPerFrame();
+        position += frameBytes;
+        return frameBytes;
+    }
+
+    /**
+     * @return presentation time of the frame returned by the last readFrame
+     */
+    long getFrameTimeUs() {
+        return frameTimeUs;
+    }
+
+    private int readHeader(long at) throws IOException {
+        headerBuffer.clear();
+        while (headerBuffer.hasRemaining()) {
+            if (channel.read(headerBuffer, at + headerBuffer.position()) < 0) {
+                return -1;
+            }
+        }
+        return headerBuffer.getInt(0);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.devsound.playback;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The track a codec engine's output thread writes to, with its format. The
+ * output thread swaps it when the decoded format changes and reset() takes
+ * it away for teardown; both happen under one lock, so no track is swapped
+ * in after a reset has taken the old one, and none is released twice.
+ * Generic over the track so the hand-over can be tested without an
+ * AudioTrack.
+ */
+final class OutputTrack<T> {
+
+    interface Tracks<T> {
+        T create(int sampleRate, int channelCount) throws IOException;
+
+        /**
+         * @return frames the track has played since it was created or flushed
+         */
+        long playedFrames(T track);
+
+        void play(T track);
+
+        void release(T track);
+    }
+
+    private final Tracks<T> tracks;
+    private volatile T track;
+    private volatile int sampleRate;
+    private volatile int channelCount;
+
+    OutputTrack(Tracks<T> tracks) {
+        this.tracks = tracks;
+    }
+
+    T get() {
+        return track;
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    int getChannelCount() {
+        return channelCount;
+    }
+
+    boolean hasFormat(int sampleRate, int channelCount) {
+        return this.sampleRate == sampleRate && this.channelCount == channelCount;
+    }
+
+    /**
+     * Use a new track, when a track is prepared; any previous one must have been taken
+     */
+    synchronized void set(T track, int sampleRate, int channelCount) {
+        this.sampleRate = sampleRate;
+        this.channelCount = channelCount;
+        this.track = track;
+    }
+
+    /**
+     * @return the current track, now owned by the caller, or null
+     */
+    synchronized T take() {
+        T taken = track;
+        track = null;
+        return taken;
+    }
+
+    /**
+     * Switch to a new track for PCM in another format, once the current one
+     * has played everything written to it
+     *
+     * @param written   frames written to the current track
+     * @param cancelled true once the switch no longer applies: the engine was
+     *                  reset or the output flushed
+     * @param playing   whether the new track should start playing
+     * @param idle      waits a moment while the current track plays out
+     * @return frames the old track played, or -1 if the switch was abandoned,
+     * in which case the new track has been released again
+     */
+    long switchTo(int sampleRate, int channelCount, long written, BooleanSupplier cancelled,
+            BooleanSupplier playing, Runnable idle) throws IOException {
+        T old = track;
+        T replacement = tracks.create(sampleRate, channelCount);
+        while (old != null && !cancelled.getAsBoolean() && tracks.playedFrames(old) < written) {
+            idle.run();
+        }
+        synchronized (this) {
+            if (cancelled.getAsBoolean() || track != old) {
+                // A reset took the old track, or is about to
+                tracks.release(replacement);
+                return -1;
+            }
+            long played = old != null ? tracks.playedFrames(old) : 0;
+            set(replacement, sampleRate, channelCount);
+            if (playing.getAsBoolean()) {
+                tracks.play(replacement);
+            }
+            if (old != null) {
+                tracks.release(old);
+            }
+            return played;
+        }
+    }
+}
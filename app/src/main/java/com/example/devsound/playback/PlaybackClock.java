@@ -0,0 +1,76 @@
+package com.example.devsound.playback;
+
+/**
+ * Immutable description of where playback is: the position at an anchor
+ * time, and how fast it moves from there. The controller publishes a new
+ * clock only when playback jumps or changes speed (start, pause, seek, track
+ * change), so observers can compute the current position themselves on every
+ * frame instead of asking the engine.
+ *
+ * Anchor times are on the controller's Scheduler clock, which on the device
+ * is SystemClock.elapsedRealtime().
+ */
+public final class PlaybackClock {
+    public static final PlaybackClock STOPPED = new PlaybackClock(-1, 0, 0, 0f, 0);
+
+    private final long songId;
+    private final long anchorPositionMs;
+    private final long anchorTimeMs;
+    private final float rate;
+    private final long durationMs;
+
+    public PlaybackClock(long songId, long anchorPositionMs, long anchorTimeMs, float rate, long durationMs) {
+        this.songId = songId;
+        this.anchorPositionMs = anchorPositionMs;
+        this.anchorTimeMs = anchorTimeMs;
+        this.rate = rate;
+        this.durationMs = durationMs;
+    }
+
+    public long getSongId() {
+        return songId;
+    }
+
+    public long getAnchorPositionMs() {
+        return anchorPositionMs;
+    }
+
+    public long getAnchorTimeMs() {
+        return anchorTimeMs;
+    }
+
+    /**
+     * @return playback speed; 0 while paused or loading
+     */
+    public float getRate() {
+        return rate;
+    }
+
+    /**
+     * @return track duration, or 0 if not known yet
+     */
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public boolean isRunning() {
+        return rate != 0f;
+    }
+
+    /**
+     * Extrapolated position at the given time, held within the track
+     */
+    public long getPositionMs(long nowMs) {
+        long position = anchorPositionMs + (long) ((nowMs - anchorTimeMs) * rate);
+        if (durationMs > 0 && position > durationMs) {
+            position = durationMs;
+        }
+        return Math.max(0, position);
+    }
+
+    @Override
+    public String toString() {
+        return "PlaybackClock{song=" + songId + ", position=" + anchorPositionMs + "@" + anchorTimeMs
+                + ", rate=" + rate + ", duration=" + durationMs + "}";
+    }
+}
@@ -0,0 +1,469 @@
+package com.example.devsound.playback;
+
+import com.example.devsound.models.PlaybackState;
+import com.example.devsound.models.Song;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The command pipeline between user actions and a PlaybackEngine.
+ * Owns the queue position and the published PlaybackState, issues prepares,
+ * coalesces track switches that arrive while a prepare is in flight,
+ * funnels seeks through a SeekCoordinator and drives error recovery through
+ * a PlaybackErrorPolicy. Alongside the state it publishes a PlaybackClock
+ * whenever the position jumps or starts or stops moving, so observers never
+ * have to poll the engine for the position.
+ *
+ * It has no Android dependencies: the host supplies data sources and audio
+ * focus, and a Scheduler supplies delays, so the whole pipeline can run
+ * against a simulated engine in a JVM test. All methods must be called on
+ * the thread that delivers engine callbacks.
+ */
+public class PlaybackController implements PlaybackEngine.Listener {
+
+    public interface Host {
+        /**
+         * Set the data source for the song on the engine
+         */
+        void loadDataSource(PlaybackEngine engine, Song song) throws IOException;
+
+        /**
+         * The engine was reset and no longer reads the previous data source
+         */
+        void onEngineReset();
+
+        boolean requestAudioFocus();
+
+        void onStateChanged(PlaybackState state);
+
+        void onClockChanged(PlaybackClock clock);
+
+        /**
+         * A track is ready and playing; nextSong is the likely next one, or null
+         */
+        void onTrackPrepared(Song song, Song nextSong);
+
+        void onPlaybackError(Song song, int what, int extra, PlaybackErrorPolicy.Decision decision);
+    }
+
+    public interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+
+        /**
+         * Monotonic time in milliseconds, used to anchor the playback clock
+         */
+        long now();
+    }
+
+    private final Host host;
+    private final Scheduler scheduler;
+    private final PlaybackErrorPolicy errorPolicy;
+    private final SeekCoordinator seeks;
+
+    private PlaybackEngine engine;
+    private List<Song> songs = new ArrayList<>();
+    private PlaybackState state = PlaybackState.IDLE;
+    private PlaybackClock clock = PlaybackClock.STOPPED;
+
+    // Index whose data source is currently in the engine
+    private int loadedIndex = -1;
+    private boolean preparing;
+    private boolean prepared;
+    private Runnable pendingRecovery;
+
+    // Counters for monitoring and tests
+    private long userCommands;
+    private long preparesIssued;
+    private long preparesCompleted;
+    private long coalescedSwitches;
+
+    public PlaybackController(PlaybackEngine engine, Host host, Scheduler scheduler,
+            PlaybackErrorPolicy errorPolicy) {
+        this.host = host;
+        this.scheduler = scheduler;
+        this.errorPolicy = errorPolicy;
+        this.seeks = new SeekCoordinator(this::issueSeek, scheduler);
+        setEngine(engine);
+    }
+
+    /**
+     * Swap the engine. The caller releases the old one; call reloadCurrent()
+     * to resume on the new engine.
+     */
+    public void setEngine(PlaybackEngine newEngine) {
+        if (engine != null) {
+            engine.setListener(null);
+        }
+        engine = newEngine;
+        engine.setListener(this);
+        loadedIndex = -1;
+        preparing = false;
+        prepared = false;
+        seeks.reset();
+        if (state.isPlaying()) {
+            publish(state.withPlaying(false));
+        }
+        publishClock(0, false);
+    }
+
+    public PlaybackEngine getEngine() {
+        return engine;
+    }
+
+    public void setSongs(List<Song> songList) {
+        songs = songList != null ? songList : new ArrayList<>();
+    }
+
+    public List<Song> getSongs() {
+        return songs;
+    }
+
+    public PlaybackState getState() {
+        return state;
+    }
+
+    public PlaybackErrorPolicy getErrorPolicy() {
+        return errorPolicy;
+    }
+
+    public PlaybackClock getClock() {
+        return clock;
+    }
+
+    // User commands
+
+    /**
+     * Switch to the song at the given index and play it
+     */
+    public void playSongAt(int index) {
+        if (index < 0 || index >= songs.size()) {
+            return;
+        }
+        onUserCommand();
+        switchTo(index);
+    }
+
+    public void skipToNext() {
+        if (songs.isEmpty()) {
+            return;
+        }
+        onUserCommand();
+        switchTo(nextIndex(state.getSongIndex()));
+    }
+
+    public void skipToPrevious() {
+        if (songs.isEmpty()) {
+            return;
+        }
+        onUserCommand();
+        int index = state.getSongIndex() - 1;
+        switchTo(index < 0 ? songs.size() - 1 : index);
+    }
+
+    /**
+     * Resume the current song, loading it first if the engine does not have it
+     */
+    public void start() {
+        onUserCommand();
+        if (prepared) {
+            if (!engine.isPlaying() && host.requestAudioFocus()) {
+                engine.start();
+                publish(state.withPlaying(true));
+                publishClock(currentPosition(), true);
+            }
+        } else if (!preparing && state.getSong() != null) {
+            load();
+        }
+    }
+
+    public void pause() {
+        if (prepared && engine.isPlaying()) {
+            engine.pause();
+            publish(state.withPlaying(false));
+            publishClock(currentPosition(), false);
+        }
+    }
+
+    /**
+     * Prepare the current song again, e.g. after switching engines
+     */
+    public void reloadCurrent() {
+        if (state.getSong() != null) {
+            cancelPendingRecovery();
+            load();
+        }
+    }
+
+    /**
+     * Seek exactly to the position, e.g. when the user lets go of the slider
+     */
+    public void seekTo(int positionMs) {
+        requestSeek(positionMs, false);
+    }
+
+    /**
+     * Follow a drag: seek quickly to a sync frame near the position. Calls
+     * are coalesced, so this can be called for every touch event; finish
+     * with seekTo() at the release position.
+     */
+    public void scrubTo(int positionMs) {
+        requestSeek(positionMs, true);
+    }
+
+    private void requestSeek(int positionMs, boolean dragging) {
+        if (prepared && !seeks.requestSeek(positionMs, dragging)) {
+            // Anchor at the target so the UI does not jump back while the engine catches up
+            publishClock(positionMs, engine.isPlaying());
+        }
+    }
+
+    public void setVolume(float left, float right) {
+        engine.setVolume(left, right);
+    }
+
+    public boolean isPrepared() {
+        return prepared;
+    }
+
+    public boolean isPlaying() {
+        return prepared && engine.isPlaying();
+    }
+
+    public int getCurrentPosition() {
+        return prepared ? currentPosition() : 0;
+    }
+
+    /**
+     * @return engine duration, or 0 while no track is prepared
+     */
+    public int getDuration() {
+        return prepared ? engine.getDuration() : 0;
+    }
+
+    public void release() {
+        cancelPendingRecovery();
+        engine.setListener(null);
+        engine.release();
+        seeks.reset();
+        host.onEngineReset();
+        preparing = false;
+        prepared = false;
+        loadedIndex = -1;
+    }
+
+    // Counters
+
+    public long getUserCommands() {
+        return userCommands;
+    }
+
+    public long getPreparesIssued() {
+        return preparesIssued;
+    }
+
+    public long getPreparesCompleted() {
+        return preparesCompleted;
+    }
+
+    public long getCoalescedSwitches() {
+        return coalescedSwitches;
+    }
+
+    public SeekCoordinator getSeekCoordinator() {
+        return seeks;
+    }
+
+    // Engine callbacks
+
+    @Override
+    public void onPrepared(PlaybackEngine source) {
+        if (source != engine) {
+            return;
+        }
+        preparing = false;
+
+        // The user moved on while this track was preparing; load the latest target instead
+        if (loadedIndex != state.getSongIndex()) {
+            load();
+            return;
+        }
+
+        prepared = true;
+        preparesCompleted++;
+        Song song = state.getSong();
+        errorPolicy.onSuccess(song.getId());
+
+        boolean started = host.requestAudioFocus();
+        if (started) {
+            engine.start();
+            publish(state.withPlaying(true));
+        }
+        publishClock(currentPosition(), started);
+        host.onTrackPrepared(song, songs.size() > 1 ? songs.get(nextIndex(state.getSongIndex())) : null);
+    }
+
+    @Override
+    public void onCompletion(PlaybackEngine source) {
+        if (source != engine) {
+            return;
+        }
+        advance();
+    }
+
+    @Override
+    public void onSeekComplete(PlaybackEngine source) {
+        if (source == engine) {
+            seeks.onSeekComplete();
+        }
+    }
+
+    @Override
+    public boolean onError(PlaybackEngine source, int what, int extra) {
+        if (source != engine) {
+            return false;
+        }
+        preparing = false;
+        prepared = false;
+
+        // A stale track failed after the user already picked another one
+        if (loadedIndex != state.getSongIndex()) {
+            load();
+            return true;
+        }
+        handleFailure(what, extra);
+        return true;
+    }
+
+    // Internals
+
+    private void onUserCommand() {
+        userCommands++;
+        cancelPendingRecovery();
+        errorPolicy.onUserAction();
+    }
+
+    private void switchTo(int index) {
+        publish(state.withSong(index, songs.get(index)));
+        if (preparing) {
+            // onPrepared or onError picks up the new target; no extra prepare now
+            coalescedSwitches++;
+            return;
+        }
+        load();
+    }
+
+    /**
+     * Move on automatically after a completion or a skip decision
+     */
+    private void advance() {
+        if (songs.isEmpty()) {
+            return;
+        }
+        // Step over tracks that already failed all their retries
+        int index = state.getSongIndex();
+        for (int i = 0; i < songs.size(); i++) {
+            index = nextIndex(index);
+            if (!errorPolicy.isKnownBad(songs.get(index).getId())) {
+                break;
+            }
+        }
+        switchTo(index);
+    }
+
+    private void load() {
+        Song song = state.getSong();
+        if (song == null) {
+            return;
+        }
+        if (!host.requestAudioFocus()) {
+            return;
+        }
+
+        engine.reset();
+        seeks.reset();
+        host.onEngineReset();
+        prepared = false;
+        loadedIndex = state.getSongIndex();
+        publishClock(0, false);
+
+        try {
+            host.loadDataSource(engine, song);
+        } catch (Exception e) {
+            handleFailure(PlaybackEngine.ERROR_IO, 0);
+            return;
+        }
+
+        preparing = true;
+        preparesIssued++;
+        engine.prepareAsync();
+    }
+
+    private void handleFailure(int what, int extra) {
+        Song song = state.getSong();
+        engine.reset();
+        seeks.reset();
+        host.onEngineReset();
+        publishClock(0, false);
+
+        PlaybackErrorPolicy.Decision decision = errorPolicy.onError(song.getId());
+        host.onPlaybackError(song, what, extra, decision);
+
+        cancelPendingRecovery();
+        switch (decision.action) {
+            case RETRY:
+                pendingRecovery = this::load;
+                break;
+            case SKIP:
+                pendingRecovery = this::advance;
+                break;
+            case STOP:
+                if (state.isPlaying()) {
+                    publish(state.withPlaying(false));
+                }
+                return;
+        }
+        scheduler.postDelayed(pendingRecovery, decision.delayMs);
+    }
+
+    private void cancelPendingRecovery() {
+        if (pendingRecovery != null) {
+            scheduler.cancel(pendingRecovery);
+            pendingRecovery = null;
+        }
+    }
+
+    private void issueSeek(int positionMs, boolean precise) {
+        engine.seekTo(positionMs, precise);
+        // A coalesced seek goes out later than it was asked for; re-anchor where the engine starts from
+        publishClock(positionMs, engine.isPlaying());
+    }
+
+    /**
+     * Engine position, or the seek target while a seek is still being carried out
+     */
+    private int currentPosition() {
+        int target = seeks.getTargetPositionMs();
+        return target >= 0 ? target : engine.getCurrentPosition();
+    }
+
+    private int nextIndex(int index) {
+        int next = index + 1;
+        return next >= songs.size() ? 0 : next;
+    }
+
+    private void publish(PlaybackState newState) {
+        state = newState;
+        host.onStateChanged(newState);
+    }
+
+    private void publishClock(long positionMs, boolean running) {
+        Song song = state.getSong();
+        clock = new PlaybackClock(song != null ? song.getId() : -1, positionMs, scheduler.now(),
+                running ? 1f : 0f, prepared ? engine.getDuration() : 0);
+        host.onClockChanged(clock);
+    }
+}
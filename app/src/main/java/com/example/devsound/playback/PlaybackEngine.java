@@ -0,0 +1,69 @@
+package com.example.devsound.playback;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * Something that can decode and play one track at a time.
+ * The lifecycle mirrors MediaPlayer: set a data source, prepare
+ * asynchronously, then start/pause/seek until reset or release. Listener
+ * callbacks are delivered on the main thread.
+ */
+public interface PlaybackEngine {
+    // Error codes use MediaPlayer's MEDIA_ERROR_* values so callers can treat all engines alike
+    int ERROR_UNKNOWN = 1;
+    int ERROR_IO = -1004;
+    int ERROR_MALFORMED = -1007;
+    int ERROR_UNSUPPORTED = -1010;
+
+    interface Listener {
+        void onPrepared(PlaybackEngine engine);
+
+        void onCompletion(PlaybackEngine engine);
+
+        /**
+         * @return true if the error was handled; otherwise onCompletion follows
+         */
+        boolean onError(PlaybackEngine engine, int what, int extra);
+
+        /**
+         * The last seek has been carried out; not called for seeks dropped by a reset
+         */
+        void onSeekComplete(PlaybackEngine engine);
+    }
+
+    void setListener(Listener listener);
+
+    void setDataSource(FileDescriptor fd) throws IOException;
+
+    void setDataSource(String path) throws IOException;
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    void stop();
+
+    /**
+     * @param precise true to land exactly on the position; false to jump to a
+     *                nearby sync frame, which is much cheaper and suits scrubbing
+     */
+    void seekTo(int positionMs, boolean precise);
+
+    /**
+     * Return to the idle state so a new data source can be set
+     */
+    void reset();
+
+    void release();
+
+    boolean isPlaying();
+
+    int getCurrentPosition();
+
+    int getDuration();
+
+    void setVolume(float left, float right);
+}
@@ -0,0 +1,159 @@
+package com.example.devsound.playback;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides what the music service does after a playback error.
+ * Remembers failures per track, backs off exponentially between attempts and
+ * opens a circuit breaker after too many consecutive failures so a missing
+ * volume or broken codec cannot spin through the whole library. Only a
+ * successful prepare or an explicit user action closes the breaker again.
+ */
+public class PlaybackErrorPolicy {
+    public static final int DEFAULT_MAX_RETRIES_PER_TRACK = 1;
+    public static final int DEFAULT_BREAKER_THRESHOLD = 5;
+    public static final long DEFAULT_BASE_DELAY_MS = 250;
+    public static final long DEFAULT_MAX_DELAY_MS = 8000;
+
+    public enum Action {
+        RETRY, // Prepare the same track again
+        SKIP, // Move on to the next track
+        STOP // Breaker is open, stay stopped until the user acts
+    }
+
+    public static final class Decision {
+        public final Action action;
+        public final long delayMs;
+
+        Decision(Action action, long delayMs) {
+            this.action = action;
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public String toString() {
+            return action + " after " + delayMs + " ms";
+        }
+    }
+
+    private final int maxRetriesPerTrack;
+    private final int breakerThreshold;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    // Failures per song id since that song last prepared successfully
+    private final Map<Long, Integer> trackFailures = new HashMap<>();
+    private int consecutiveFailures = 0;
+    private boolean breakerOpen = false;
+
+    // Counters for monitoring
+    private long totalErrors = 0;
+    private long retries = 0;
+    private long skips = 0;
+    private long breakerTrips = 0;
+
+    public PlaybackErrorPolicy() {
+        this(DEFAULT_MAX_RETRIES_PER_TRACK, DEFAULT_BREAKER_THRESHOLD, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    }
+
+    public PlaybackErrorPolicy(int maxRetriesPerTrack, int breakerThreshold, long baseDelayMs, long maxDelayMs) {
+        this.maxRetriesPerTrack = Math.max(0, maxRetriesPerTrack);
+        this.breakerThreshold = Math.max(1, breakerThreshold);
+        this.baseDelayMs = Math.max(0, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+    }
+
+    /**
+     * Record a failure of the given song and decide what to do next
+     */
+    public synchronized Decision onError(long songId) {
+        totalErrors++;
+        consecutiveFailures++;
+
+        Integer previous = trackFailures.get(songId);
+        int failures = (previous != null ? previous : 0) + 1;
+        trackFailures.put(songId, failures);
+
+        if (breakerOpen || consecutiveFailures >= breakerThreshold) {
+            if (!breakerOpen) {
+                breakerOpen = true;
+                breakerTrips++;
+            }
+            return new Decision(Action.STOP, 0);
+        }
+
+        long delay = backoffDelay(consecutiveFailures);
+        if (failures <= maxRetriesPerTrack) {
+            retries++;
+            return new Decision(Action.RETRY, delay);
+        }
+        skips++;
+        return new Decision(Action.SKIP, delay);
+    }
+
+    /**
+     * A track prepared successfully: forget its failures and reset the streak
+     */
+    public synchronized void onSuccess(long songId) {
+        trackFailures.remove(songId);
+        consecutiveFailures = 0;
+        breakerOpen = false;
+    }
+
+    /**
+     * The user asked for playback explicitly; give it a fresh chance
+     */
+    public synchronized void onUserAction() {
+        consecutiveFailures = 0;
+        breakerOpen = false;
+    }
+
+    /**
+     * @return true if the song has already used up its retries
+     */
+    public synchronized boolean isKnownBad(long songId) {
+        Integer failures = trackFailures.get(songId);
+        return failures != null && failures > maxRetriesPerTrack;
+    }
+
+    public synchronized boolean isBreakerOpen() {
+        return breakerOpen;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getTotalErrors() {
+        return totalErrors;
+    }
+
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    public synchronized long getSkips() {
+        return skips;
+    }
+
+    public synchronized long getBreakerTrips() {
+        return breakerTrips;
+    }
+
+    long backoffDelay(int attempt) {
+        if (attempt <= 1) {
+            return baseDelayMs;
+        }
+        // Cap the shift so long streaks cannot overflow
+        long delay = baseDelayMs << Math.min(attempt - 1, 20);
+        return Math.min(delay, maxDelayMs);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PlaybackErrorPolicy{errors=" + totalErrors + ", retries=" + retries + ", skips=" + skips +
+                ", breakerTrips=" + breakerTrips + ", consecutive=" + consecutiveFailures +
+                ", breakerOpen=" + breakerOpen + "}";
+    }
+}
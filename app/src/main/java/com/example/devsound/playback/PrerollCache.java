@@ -0,0 +1,134 @@
+package com.example.devsound.playback;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The opening seconds of recently and likely played tracks as decoded PCM,
+ * so playback can start before the decoder for the track is even open.
+ * Held in memory under a byte budget; the least recently used entries go
+ * first. Entries are keyed by song id and checked against the modification
+ * time, so an edited track misses.
+ */
+public class PrerollCache {
+
+    public static final class Entry {
+        private final long songId;
+        private final long dateModified;
+        private final int sampleRate;
+        private final int channelCount;
+        private final long trackDurationUs;
+        private final byte[] pcm;
+
+        /**
+         * @param pcm interleaved 16-bit samples in native byte order, starting at the beginning of the track
+         */
+        public Entry(long songId, long dateModified, int sampleRate, int channelCount, long trackDurationUs,
+                byte[] pcm) {
+            this.songId = songId;
+            this.dateModified = dateModified;
+            this.sampleRate = sampleRate;
+            this.channelCount = channelCount;
+            this.trackDurationUs = trackDurationUs;
+            this.pcm = pcm;
+        }
+
+        public long getSongId() {
+            return songId;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public int getChannelCount() {
+            return channelCount;
+        }
+
+        /**
+         * @return duration of the whole track as reported when it was decoded, or 0 if unknown
+         */
+        public long getTrackDurationUs() {
+            return trackDurationUs;
+        }
+
+        /**
+         * The PCM itself; callers must not modify it
+         */
+        public byte[] getPcm() {
+            return pcm;
+        }
+
+        /**
+         * @return media time at which the cached audio ends
+         */
+        public long getEndUs() {
+            return (long) (pcm.length / (2 * channelCount)) * 1000000L / sampleRate;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    public PrerollCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the entry for this version of the song, or null
+     */
+    public synchronized Entry get(long songId, long dateModified) {
+        Entry entry = entries.get(songId);
+        if (entry != null && entry.dateModified != dateModified) {
+            remove(songId);
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized boolean contains(long songId, long dateModified) {
+        Entry entry = entries.get(songId);
+        return entry != null && entry.dateModified == dateModified;
+    }
+
+    /**
+     * Add or replace an entry and evict the least recently used ones over the budget
+     */
+    public synchronized void put(Entry entry) {
+        if (entry.pcm.length > maxBytes) {
+            return;
+        }
+        remove(entry.songId);
+        entries.put(entry.songId, entry);
+        bytes += entry.pcm.length;
+
+        Iterator<Map.Entry<Long, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            bytes -= eldest.pcm.length;
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void remove(long songId) {
+        Entry old = entries.remove(songId);
+        if (old != null) {
+            bytes -= old.pcm.length;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.devsound.playback;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.devsound.analysis.PcmDecoder;
+import com.example.devsound.models.Song;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills a PrerollCache in the background with the opening seconds of the
+ * tracks around the current one and of the most played tracks. Play counts
+ * are kept in preferences so the favourites can be warmed after a restart.
+ */
+public class PrerollLoader {
+    private static final String TAG = "PrerollLoader";
+    private static final String PREFS_NAME = "preroll_play_counts";
+
+    public static final long PREROLL_US = 3000000L;
+    // About fifteen stereo 44.1 kHz tracks
+    public static final long MAX_BYTES = 8 * 1024 * 1024;
+
+    private final PcmDecoder decoder;
+    private final PrerollCache cache = new PrerollCache(MAX_BYTES);
+    private final SharedPreferences playCounts;
+    private final ThreadPoolExecutor executor;
+    // Songs queued or being decoded, so repeated requests do not pile up
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+    public PrerollLoader(Context context) {
+        decoder = new PcmDecoder(context.getContentResolver());
+        playCounts = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, TAG));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the cached opening of the song, or null; never blocks
+     */
+    public PrerollCache.Entry get(Song song) {
+        return song != null ? cache.get(song.getId(), song.getDateModified()) : null;
+    }
+
+    /**
+     * Decode the openings of the tracks around the given index, nearest first
+     */
+    public void prefetchAround(List<Song> songs, int index, int radius) {
+        if (songs == null || songs.isEmpty()) {
+            return;
+        }
+        for (int distance = 1; distance <= radius; distance++) {
+            prefetch(songs.get(Math.floorMod(index + distance, songs.size())));
+            prefetch(songs.get(Math.floorMod(index - distance, songs.size())));
+        }
+    }
+
+    /**
+     * Decode the openings of the most played songs in the library
+     */
+    public void prefetchMostPlayed(List<Song> songs, int count) {
+        if (songs == null) {
+            return;
+        }
+        List<Song> played = new ArrayList<>();
+        for (Song song : songs) {
+            if (playCounts.getInt(key(song), 0) > 0) {
+                played.add(song);
+            }
+        }
+        Collections.sort(played, (a, b) -> playCounts.getInt(key(b), 0) - playCounts.getInt(key(a), 0));
+        for (int i = 0; i < Math.min(count, played.size()); i++) {
+            prefetch(played.get(i));
+        }
+    }
+
+    public void recordPlay(Song song) {
+        String key = key(song);
+        playCounts.edit().putInt(key, playCounts.getInt(key, 0) + 1).apply();
+    }
+
+    public void prefetch(Song song) {
+        if (song == null || song.getUri() == null || executor.isShutdown()
+                || cache.contains(song.getId(), song.getDateModified()) || !queued.add(song.getId())) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                if (!cache.contains(song.getId(), song.getDateModified())) {
+                    decodeOpening(song);
+                }
+            } finally {
+                queued.remove(song.getId());
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        queued.clear();
+        cache.clear();
+    }
+
+    /**
+     * Drop everything except what is needed right now, e.g. on memory pressure
+     */
+    public void trimMemory() {
+        cache.clear();
+    }
+
+    private void decodeOpening(Song song) {
+        long start = SystemClock.elapsedRealtime();
+        final int[] format = new int[3]; // sample rate, channels, bytes filled
+        final long[] trackDurationUs = new long[1];
+        final byte[][] pcm = new byte[1][];
+        try {
+            decoder.decode(song, new PcmDecoder.Sink() {
+                @Override
+                public void onFormat(int sampleRate, int channelCount, long durationUs) {
+                    if (format[2] > 0 && (sampleRate != format[0] || channelCount != format[1])) {
+                        // A mid-stream format change cannot be spliced into one buffer
+                        throw new IllegalStateException("Format changed during pre-roll");
+                    }
+                    format[0] = sampleRate;
+                    format[1] = channelCount;
+                    trackDurationUs[0] = durationUs;
+                }
+
+                @Override
+                public void onPcm(ByteBuffer buffer, int offset, int size) {
+                    if (pcm[0] == null) {
+                        // Sized from the output format, which can differ from the container's
+                        pcm[0] = new byte[(int) (PREROLL_US * format[0] / 1000000L) * 2 * format[1]];
+                    }
+                    int count = Math.min(size, pcm[0].length - format[2]);
+                    ByteBuffer source = buffer.duplicate();
+                    source.position(offset);
+                    source.get(pcm[0], format[2], count);
+                    format[2] += count;
+                }
+            }, PREROLL_US);
+            if (format[2] == 0) {
+                return;
+            }
+            byte[] data = format[2] == pcm[0].length ? pcm[0] : Arrays.copyOf(pcm[0], format[2]);
+            cache.put(new PrerollCache.Entry(song.getId(), song.getDateModified(), format[0], format[1],
+                    trackDurationUs[0], data));
+            Log.d(TAG, "Pre-rolled " + song.getTitle() + " in " + (SystemClock.elapsedRealtime() - start)
+                    + " ms; cache " + cache.getBytes() / 1024 + " KB in " + cache.size() + " tracks");
+        } catch (InterruptedIOException e) {
+            // Shut down
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Pre-roll failed for " + song.getTitle(), e);
+        }
+    }
+
+    private static String key(Song song) {
+        return Long.toString(song.getId());
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.devsound.playback;
+
+/**
+ * Keeps at most one seek in flight against an engine. Seeks requested while
+ * one is running replace each other, and only the latest is issued once the
+ * running one completes, so a fast drag costs a handful of seeks rather than
+ * one per touch event.
+ *
+ * Drag positions are issued as fast sync-frame seeks; the release position
+ * is issued as a precise seek, so playback resumes exactly where the user
+ * let go. A watchdog gives up on completions that never arrive so a lost
+ * callback cannot wedge seeking.
+ */
+public class SeekCoordinator {
+    static final long COMPLETION_TIMEOUT_MS = 1000;
+
+    public interface Target {
+        void seek(int positionMs, boolean precise);
+    }
+
+    private final Target target;
+    private final PlaybackController.Scheduler scheduler;
+    private final Runnable timeout = this::onSeekComplete;
+
+    private boolean inFlight;
+    private boolean hasPending;
+    private int pendingPositionMs;
+    private boolean pendingPrecise;
+    // Where playback will be once everything requested so far has been carried out
+    private int targetPositionMs = -1;
+
+    // Counters for monitoring and tests
+    private long requested;
+    private long issued;
+
+    public SeekCoordinator(Target target, PlaybackController.Scheduler scheduler) {
+        this.target = target;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param dragging true while the user is still moving the thumb; the
+     *                 final position should be requested with false
+     * @return true if the seek was issued now, false if it waits for the one in flight
+     */
+    public boolean requestSeek(int positionMs, boolean dragging) {
+        requested++;
+        targetPositionMs = positionMs;
+        if (!inFlight) {
+            issue(positionMs, !dragging);
+            return true;
+        }
+        pendingPrecise = !dragging;
+        pendingPositionMs = positionMs;
+        hasPending = true;
+        return false;
+    }
+
+    /**
+     * The engine finished the seek in flight; issue the latest pending one, if any
+     */
+    public void onSeekComplete() {
+        scheduler.cancel(timeout);
+        inFlight = false;
+        if (hasPending) {
+            hasPending = false;
+            issue(pendingPositionMs, pendingPrecise);
+        } else {
+            targetPositionMs = -1;
+        }
+    }
+
+    /**
+     * Forget everything in flight, e.g. when the engine is reset for another track
+     */
+    public void reset() {
+        scheduler.cancel(timeout);
+        inFlight = false;
+        hasPending = false;
+        targetPositionMs = -1;
+    }
+
+    public boolean isSeeking() {
+        return inFlight;
+    }
+
+    /**
+     * @return the position of the latest request while seeking, or -1 when idle
+     */
+    public int getTargetPositionMs() {
+        return targetPositionMs;
+    }
+
+    public long getRequested() {
+        return requested;
+    }
+
+    public long getIssued() {
+        return issued;
+    }
+
+    private void issue(int positionMs, boolean precise) {
+        inFlight = true;
+        issued++;
+        scheduler.postDelayed(timeout, COMPLETION_TIMEOUT_MS);
+        target.seek(positionMs, precise);
+    }
+}
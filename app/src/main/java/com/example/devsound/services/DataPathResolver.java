@@ -0,0 +1,90 @@
+package com.example.devsound.services;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import com.example.devsound.models.Song;
+
+/**
+ * Resolves songs to direct file paths for the playback fallback.
+ * Results are cached by song id, including misses, so a track that fails and
+ * is retried never hits the media provider again. Paths captured during the
+ * library scan cost no query at all. The cache is cleared whenever a new
+ * library list arrives.
+ */
+public class DataPathResolver {
+    private static final String TAG = "DataPathResolver";
+
+    // Cached marker for songs known to have no usable path
+    private static final String NO_PATH = "";
+
+    private final ContentResolver resolver;
+    private final LongSparseArray<String> paths = new LongSparseArray<>();
+
+    public DataPathResolver(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return file path for the song, or null if it has none
+     */
+    public synchronized String resolve(Song song) {
+        if (song == null) {
+            return null;
+        }
+
+        String cached = paths.get(song.getId());
+        if (cached == null) {
+            cached = lookup(song);
+            paths.put(song.getId(), cached != null ? cached : NO_PATH);
+        }
+        return NO_PATH.equals(cached) ? null : cached;
+    }
+
+    /**
+     * Forget every resolved path and miss, e.g. after the library was rescanned
+     */
+    public synchronized void clear() {
+        paths.clear();
+    }
+
+    private String lookup(Song song) {
+        // Captured by MusicLibrary during the scan
+        if (song.getDataPath() != null && !song.getDataPath().isEmpty()) {
+            return song.getDataPath();
+        }
+
+        Uri uri = song.getUri();
+        if (uri == null) {
+            return null;
+        }
+        if ("file".equals(uri.getScheme())) {
+            return uri.getPath();
+        }
+        if (!"content".equals(uri.getScheme())) {
+            return null;
+        }
+
+        // Only reached for songs built without a scanned path
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, new String[] { MediaStore.Audio.Media.DATA }, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                String path = cursor.getString(0);
+                Log.d(TAG, "Queried file path for " + song.getTitle() + ": " + path);
+                return path;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error querying file path for URI: " + uri, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.devsound.services;
+
+import android.content.ContentResolver;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.example.devsound.models.Song;
+
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Owns the file descriptors handed to the media player.
+ * Each track is opened once; the descriptor stays open while the player uses
+ * it and is closed when the player is reset or released. The next track can
+ * be opened ahead of time so switching to it skips the provider round trip.
+ */
+public class DataSourceManager {
+    private static final String TAG = "DataSourceManager";
+
+    private final ContentResolver resolver;
+
+    // Descriptor currently set on the player
+    private ParcelFileDescriptor current;
+    private long currentSongId = -1;
+
+    // Descriptor opened ahead of time for the next track
+    private ParcelFileDescriptor preloaded;
+    private long preloadedSongId = -1;
+
+    public DataSourceManager(ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Open the given song for playback and make it the current data source.
+     * Any previous current descriptor is closed; a matching preloaded one is
+     * reused instead of opening the URI again.
+     *
+     * @return descriptor to pass to MediaPlayer.setDataSource
+     */
+    public synchronized FileDescriptor open(Song song) throws IOException {
+        if (song == null || song.getUri() == null) {
+            throw new FileNotFoundException("Song or URI is null");
+        }
+
+        releaseCurrent();
+
+        if (preloaded != null && preloadedSongId == song.getId()) {
+            current = preloaded;
+            preloaded = null;
+            preloadedSongId = -1;
+            Log.d(TAG, "Using preloaded descriptor for: " + song.getTitle());
+        } else {
+            current = openDescriptor(song);
+            Log.d(TAG, "Opened descriptor for: " + song.getTitle());
+        }
+        currentSongId = song.getId();
+        return current.getFileDescriptor();
+    }
+
+    /**
+     * Open the descriptor for a song that is likely to play next.
+     * Failures are only logged; open() will simply try again later.
+     */
+    public synchronized void preload(Song song) {
+        if (song == null || song.getUri() == null) {
+            return;
+        }
+        if (song.getId() == currentSongId || song.getId() == preloadedSongId) {
+            return;
+        }
+
+        closeQuietly(preloaded);
+        preloaded = null;
+        preloadedSongId = -1;
+
+        try {
+            preloaded = openDescriptor(song);
+            preloadedSongId = song.getId();
+            Log.d(TAG, "Preloaded descriptor for: " + song.getTitle());
+        } catch (Exception e) {
+            Log.w(TAG, "Could not preload descriptor for: " + song.getTitle() + " - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Close the descriptor of the current track. Call after the player has
+     * been reset or released so it no longer reads from it.
+     */
+    public synchronized void releaseCurrent() {
+        if (current != null) {
+            closeQuietly(current);
+            Log.d(TAG, "Closed descriptor for song id: " + currentSongId);
+        }
+        current = null;
+        currentSongId = -1;
+    }
+
+    /**
+     * Close every descriptor this manager owns
+     */
+    public synchronized void releaseAll() {
+        releaseCurrent();
+        closeQuietly(preloaded);
+        preloaded = null;
+        preloadedSongId = -1;
+    }
+
+    private ParcelFileDescriptor openDescriptor(Song song) throws IOException {
+        ParcelFileDescriptor pfd = resolver.openFileDescriptor(song.getUri(), "r");
+        if (pfd == null) {
+            throw new FileNotFoundException("No descriptor for URI: " + song.getUri());
+        }
+        return pfd;
+    }
+
+    private void closeQuietly(ParcelFileDescriptor pfd) {
+        if (pfd == null) {
+            return;
+        }
+        try {
+            pfd.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing descriptor", e);
+        }
+    }
+}
@@ -5,19 +5,20 @@ import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
-import android.content.ContentUris;
-import android.content.ContentResolver;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.media.AudioAttributes;
 import android.media.AudioFocusRequest;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
-import android.os.PowerManager;
-import android.provider.MediaStore;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -26,32 +27,89 @@ import androidx.core.app.NotificationCompat;
 
 import com.example.devsound.MainActivity;
 import com.example.devsound.R;
+import com.example.devsound.analysis.LoudnessAnalyzer;
+import com.example.devsound.analysis.LoudnessCache;
+import com.example.devsound.analysis.SeekIndex;
+import com.example.devsound.analysis.SeekIndexLoader;
+import com.example.devsound.analysis.WaveformLoader;
+import com.example.devsound.dsp.DspChain;
+import com.example.devsound.models.PlaybackState;
 import com.example.devsound.models.Song;
-
-import java.io.File;
-import java.util.ArrayList;
+import com.example.devsound.playback.CodecPlaybackEngine;
+import com.example.devsound.playback.MediaPlayerEngine;
+import com.example.devsound.playback.PlaybackClock;
+import com.example.devsound.playback.PlaybackController;
+import com.example.devsound.playback.PlaybackEngine;
+import com.example.devsound.playback.PrerollCache;
+import com.example.devsound.playback.PrerollLoader;
+import com.example.devsound.playback.PlaybackErrorPolicy;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
 import java.util.List;
-import android.net.Uri;
-import android.database.Cursor;
 import com.example.devsound.utils.PlayerManager;
 
 public class MusicService extends Service implements
-        MediaPlayer.OnPreparedListener,
-        MediaPlayer.OnErrorListener,
-        MediaPlayer.OnCompletionListener,
+        PlaybackController.Host,
         AudioManager.OnAudioFocusChangeListener {
 
     private static final String TAG = "MusicService";
     private static final int NOTIFICATION_ID = 1;
     private static final String CHANNEL_ID = "DevSound_Channel";
 
-    // Media Player
-    private MediaPlayer player;
-    private List<Song> songs;
-    private int songIndex = -1;
-    private boolean isInitialized = false;
+    // Playback engines selectable at runtime
+    public static final String ENGINE_MEDIA_PLAYER = "media_player";
+    public static final String ENGINE_CODEC = "codec";
+    private static final String PREFS_NAME = "playback_settings";
+    private static final String KEY_ENGINE = "engine";
+    private static final String KEY_NORMALIZE = "normalize_volume";
+
+    // Playback: the controller owns the queue position and drives the engine
+    private PlaybackController controller;
+    private String engineType = ENGINE_MEDIA_PLAYER;
+    // EQ, preamp and limiter; kept here so settings survive engine switches
+    private final DspChain dspChain = new DspChain();
+
+    // Loudness normalization
+    private LoudnessAnalyzer loudnessAnalyzer;
+    private boolean normalizeVolume = true;
+    // Per-track volume for engines without a DSP stage, and the audio focus duck level
+    private float trackVolume = 1.0f;
+    private float duckVolume = 1.0f;
+
+    // Frame-exact seek tables for MP3s, used by the codec engine
+    private SeekIndexLoader seekIndexLoader;
+    private final SeekIndexLoader.Callback seekIndexCallback = this::onSeekIndexReady;
+
+    // Decoded openings of nearby and favourite tracks, so the codec engine starts instantly
+    private static final int PREROLL_NEIGHBOURS = 2;
+    private static final int PREROLL_MOST_PLAYED = 5;
+    private PrerollLoader prerollLoader;
     private final IBinder musicBinder = new MusicBinder();
 
+    // File descriptors handed to the player
+    private DataSourceManager dataSources;
+    private DataPathResolver pathResolver;
+
+    // Error recovery delays run on the main thread, where engine callbacks arrive
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PlaybackController.Scheduler scheduler = new PlaybackController.Scheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            handler.postDelayed(task, delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+
+        @Override
+        public long now() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
     // Audio Focus
     private boolean audioFocusGranted = false;
     private AudioFocusRequest audioFocusRequest;
@@ -66,75 +124,95 @@ public class MusicService extends Service implements
 
             Log.d(TAG, "Music service created");
 
-            // Initialize the song list
-            songs = new ArrayList<>();
+            dataSources = new DataSourceManager(getContentResolver());
+            pathResolver = new DataPathResolver(getContentResolver());
+            engineType = getPlaybackPreferences().getString(KEY_ENGINE, ENGINE_MEDIA_PLAYER);
+            normalizeVolume = getPlaybackPreferences().getBoolean(KEY_NORMALIZE, true);
+            loudnessAnalyzer = new LoudnessAnalyzer(getApplicationContext());
+            seekIndexLoader = new SeekIndexLoader(getApplicationContext());
+            prerollLoader = new PrerollLoader(getApplicationContext());
 
             // Initialize the player
-            initMediaPlayer();
+            controller = new PlaybackController(createEngine(), this, scheduler, new PlaybackErrorPolicy());
+            Log.d(TAG, "Playback engine initialized: " + engineType);
 
             // Create notification channel for Android 8.0+
             createNotificationChannel();
+
+            // Route song selections through this service
+            PlayerManager.getInstance().attachService(this);
         } catch (Exception e) {
             Log.e(TAG, "Error creating music service", e);
         }
     }
 
-    public void initMediaPlayer() {
+    private PlaybackEngine createEngine() {
+        if (ENGINE_CODEC.equals(engineType)) {
+            CodecPlaybackEngine engine = new CodecPlaybackEngine(getApplicationContext());
+            engine.setDspChain(dspChain);
+            return engine;
+        }
+        return new MediaPlayerEngine(getApplicationContext());
+    }
+
+    private SharedPreferences getPlaybackPreferences() {
+        return getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+    }
+
+    public String getPlaybackEngineType() {
+        return engineType;
+    }
+
+    public boolean isVolumeNormalizationEnabled() {
+        return normalizeVolume;
+    }
+
+    /**
+     * Turn ReplayGain-style volume normalization on or off. Takes effect from
+     * the next track so the current one does not jump in volume.
+     */
+    public void setVolumeNormalizationEnabled(boolean enabled) {
+        normalizeVolume = enabled;
+        getPlaybackPreferences().edit().putBoolean(KEY_NORMALIZE, enabled).apply();
+    }
+
+    /**
+     * Equalizer and limiter settings. They only affect the codec engine,
+     * which owns the PCM path; MediaPlayer output is not processed.
+     */
+    public DspChain getDspChain() {
+        return dspChain;
+    }
+
+    /**
+     * Switch between the MediaPlayer and MediaCodec engines. The choice is
+     * persisted; a song that was playing restarts on the new engine.
+     */
+    public void setPlaybackEngine(String type) {
+        if (!ENGINE_MEDIA_PLAYER.equals(type) && !ENGINE_CODEC.equals(type)) {
+            Log.e(TAG, "Unknown playback engine: " + type);
+            return;
+        }
+        if (type.equals(engineType)) {
+            return;
+        }
+
         try {
-            if (player == null) {
-                player = new MediaPlayer();
-
-                // Set player properties
-                player.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
-                player.setAudioAttributes(new AudioAttributes.Builder()
-                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                        .setUsage(AudioAttributes.USAGE_MEDIA)
-                        .build());
-
-                // Set listeners
-                player.setOnPreparedListener(this);
-                player.setOnCompletionListener(this);
-                player.setOnErrorListener(this);
-
-                isInitialized = true;
-                Log.d(TAG, "Media player initialized");
-            } else {
-                // Reset the player if it exists
-                try {
-                    player.reset();
-                    Log.d(TAG, "Media player reset");
-                } catch (Exception e) {
-                    Log.e(TAG, "Error resetting player", e);
-                    // If reset fails, release and create a new one
-                    releaseMediaPlayer();
-                    player = new MediaPlayer();
-
-                    // Set player properties again
-                    player.setWakeMode(getApplicationContext(), PowerManager.PARTIAL_WAKE_LOCK);
-                    player.setAudioAttributes(new AudioAttributes.Builder()
-                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                            .setUsage(AudioAttributes.USAGE_MEDIA)
-                            .build());
-
-                    // Set listeners again
-                    player.setOnPreparedListener(this);
-                    player.setOnCompletionListener(this);
-                    player.setOnErrorListener(this);
-                }
+            boolean wasPlaying = isPlaying();
+            getPlaybackPreferences().edit().putString(KEY_ENGINE, type).apply();
+            engineType = type;
 
-                isInitialized = true;
+            PlaybackEngine oldEngine = controller.getEngine();
+            controller.setEngine(createEngine());
+            oldEngine.release();
+            dataSources.releaseCurrent();
+            Log.d(TAG, "Switched playback engine to " + type);
+
+            if (wasPlaying) {
+                controller.reloadCurrent();
             }
         } catch (Exception e) {
-            isInitialized = false;
-            Log.e(TAG, "Error initializing media player", e);
-            if (player != null) {
-                try {
-                    player.release();
-                } catch (Exception re) {
-                    Log.e(TAG, "Error releasing player during init failure", re);
-                }
-                player = null;
-            }
+            Log.e(TAG, "Error switching playback engine", e);
         }
     }
 
@@ -161,10 +239,36 @@ public class MusicService extends Service implements
         return super.onUnbind(intent);
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Pre-roll PCM is the largest thing this service holds and is cheap to rebuild
+        boolean lowMemory = level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+        if (lowMemory && prerollLoader != null) {
+            prerollLoader.trimMemory();
+        }
+    }
+
     @Override
     public void onDestroy() {
         try {
-            releaseMediaPlayer();
+            PlayerManager.getInstance().detachService(this);
+            if (controller != null) {
+                controller.release();
+            }
+            if (dataSources != null) {
+                dataSources.releaseAll();
+            }
+            if (loudnessAnalyzer != null) {
+                loudnessAnalyzer.shutdown();
+            }
+            if (seekIndexLoader != null) {
+                seekIndexLoader.shutdown();
+            }
+            if (prerollLoader != null) {
+                prerollLoader.shutdown();
+            }
             abandonAudioFocus();
             super.onDestroy();
         } catch (Exception e) {
@@ -172,200 +276,88 @@ public class MusicService extends Service implements
         }
     }
 
-    // Methods for controlling playback
-    public void playSong() {
-        try {
-            // Reset the player
-            if (player != null) {
-                player.reset();
-                isInitialized = true;
-            } else {
-                initMediaPlayer();
-            }
-
-            // Check if we have a valid index and song list
-            if (!isInitialized || songs == null || songs.isEmpty() || songIndex < 0 || songIndex >= songs.size()) {
-                Log.e(TAG, "Cannot play song: Invalid state. Initialized: " + isInitialized +
-                        ", Songs null: " + (songs == null) +
-                        ", Songs size: " + (songs != null ? songs.size() : 0) +
-                        ", Song index: " + songIndex);
-                return;
-            }
+    public PlaybackState getPlaybackState() {
+        return controller.getState();
+    }
 
-            // Get the song at the current index
-            Song currentSong = songs.get(songIndex);
-            if (currentSong == null || currentSong.getUri() == null) {
-                Log.e(TAG, "Cannot play song: Song or URI is null");
-                return;
-            }
+    /**
+     * Latest position clock; extrapolate it with SystemClock.elapsedRealtime()
+     */
+    public PlaybackClock getPlaybackClock() {
+        return controller.getClock();
+    }
 
-            // Log song details including duration from metadata
-            Log.d(TAG, "Preparing to play: " + currentSong.getTitle() +
-                    " by " + currentSong.getArtist() +
-                    " (Duration from metadata: " + currentSong.getDuration() + " ms)" +
-                    " from URI " + currentSong.getUri() +
-                    " at index " + songIndex);
+    /**
+     * Error counters and breaker state, for monitoring
+     */
+    public PlaybackErrorPolicy getErrorPolicy() {
+        return controller.getErrorPolicy();
+    }
 
-            // Request audio focus before playing
-            if (!requestAudioFocus()) {
-                Log.e(TAG, "Audio focus not granted, cannot play");
-                return;
-            }
+    /**
+     * Command pipeline counters (commands, prepares, coalesced switches)
+     */
+    public PlaybackController getPlaybackController() {
+        return controller;
+    }
 
-            boolean uriAccessible = false;
-
-            try {
-                // Verify the URI is accessible
-                ContentResolver resolver = getContentResolver();
-                try {
-                    // Try to open the file to check if it's accessible
-                    resolver.openFileDescriptor(currentSong.getUri(), "r");
-                    Log.d(TAG, "File access check passed for URI: " + currentSong.getUri());
-                    uriAccessible = true;
-                } catch (Exception e) {
-                    Log.e(TAG, "Cannot access file at URI: " + currentSong.getUri(), e);
-                    Toast.makeText(getApplicationContext(), "Cannot access audio file via ContentProvider",
-                            Toast.LENGTH_SHORT).show();
-                }
+    // Methods for controlling playback
 
-                if (uriAccessible) {
-                    // Set data source and prepare asynchronously
-                    player.setDataSource(getApplicationContext(), currentSong.getUri());
-
-                    // Set OnPreparedListener again just to be safe
-                    player.setOnPreparedListener(this);
-                    player.setOnErrorListener(this);
-                    player.setOnCompletionListener(this);
-
-                    // Start async preparation
-                    player.prepareAsync();
-                    Log.d(TAG, "Started async preparation for: " + currentSong.getTitle());
-                } else {
-                    // Try to get the file path from the URI as a fallback
-                    String filePath = getFilePathFromUri(currentSong.getUri());
-                    if (filePath != null) {
-                        Log.d(TAG, "Trying fallback with direct file path: " + filePath);
-                        playFromFilePath(filePath);
-                    } else {
-                        Log.e(TAG, "Could not get file path from URI");
-                        Toast.makeText(getApplicationContext(), "Cannot access audio file", Toast.LENGTH_SHORT).show();
-                    }
-                }
-            } catch (SecurityException se) {
-                Log.e(TAG, "Security exception setting data source", se);
-                isInitialized = false;
-                Toast.makeText(getApplicationContext(), "Permission denied to access media", Toast.LENGTH_SHORT).show();
-            } catch (Exception e) {
-                Log.e(TAG, "Error setting data source", e);
-                isInitialized = false;
-                Toast.makeText(getApplicationContext(), "Error playing song: " + e.getMessage(), Toast.LENGTH_SHORT)
-                        .show();
-                // Try to recover by reinitializing the player
-                releaseMediaPlayer();
-                initMediaPlayer();
+    /**
+     * Switch to the song at the given index and prepare it. One call, at
+     * most one prepare; switches made while a prepare is in flight collapse
+     * into the latest one.
+     */
+    public void playSongAt(int index) {
+        try {
+            List<Song> songs = controller.getSongs();
+            if (index < 0 || index >= songs.size()) {
+                Log.e(TAG, "Invalid song index: " + index);
+                return;
             }
-
+            Log.d(TAG, "Playing song at index " + index + " - " + songs.get(index).getTitle());
+            controller.playSongAt(index);
         } catch (Exception e) {
             Log.e(TAG, "Error playing song", e);
-            isInitialized = false;
             Toast.makeText(getApplicationContext(), "Error playing song", Toast.LENGTH_SHORT).show();
-            // Try to recover
-            releaseMediaPlayer();
-            initMediaPlayer();
         }
     }
 
     /**
-     * Helper method to get a file path from a content URI
+     * Prepare the current song again from the start
      */
-    private String getFilePathFromUri(Uri uri) {
-        try {
-            String filePath = null;
-            String scheme = uri.getScheme();
-
-            if (scheme != null && scheme.equals("content")) {
-                Cursor cursor = getContentResolver().query(uri, null, null, null, null);
-                if (cursor != null) {
-                    try {
-                        if (cursor.moveToFirst()) {
-                            int columnIndex = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DATA);
-                            if (columnIndex >= 0) {
-                                filePath = cursor.getString(columnIndex);
-                                Log.d(TAG, "Found file path from URI: " + filePath);
-                            }
-                        }
-                    } finally {
-                        cursor.close();
-                    }
-                }
-            } else if (scheme != null && scheme.equals("file")) {
-                filePath = uri.getPath();
-                Log.d(TAG, "URI is already a file path: " + filePath);
-            }
-
-            // Check if file exists and is readable
-            if (filePath != null) {
-                File file = new File(filePath);
-                if (!file.exists() || !file.canRead()) {
-                    Log.e(TAG, "File doesn't exist or can't be read: " + filePath);
-                    return null;
-                }
-            }
-
-            return filePath;
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting file path from URI", e);
-            return null;
-        }
-    }
-
-    public void setSong(int index) {
+    public void playSong() {
         try {
-            if (songs != null && !songs.isEmpty() && index >= 0 && index < songs.size()) {
-                songIndex = index;
-                Log.d(TAG, "Song index set to " + index + " - " + songs.get(index).getTitle());
-            } else {
-                Log.e(TAG, "Invalid song index: " + index);
-            }
+            controller.reloadCurrent();
         } catch (Exception e) {
-            Log.e(TAG, "Error setting song index", e);
+            Log.e(TAG, "Error playing song", e);
+            Toast.makeText(getApplicationContext(), "Error playing song", Toast.LENGTH_SHORT).show();
         }
     }
 
     public Song getCurrentSong() {
-        if (songs != null && songIndex >= 0 && songIndex < songs.size()) {
-            return songs.get(songIndex);
-        }
-        return null;
+        return controller.getState().getSong();
     }
 
     public void setSongs(List<Song> songList) {
         try {
-            if (songList != null) {
-                this.songs = songList;
-                Log.d(TAG, "Set song list with " + songList.size() + " songs");
-            } else {
-                this.songs = new ArrayList<>();
-                Log.d(TAG, "Set empty song list");
-            }
+            controller.setSongs(songList);
+            // A rescan may have moved files, or made readable ones that failed before
+            pathResolver.clear();
+            // Measure loudness in the background; results persist across restarts
+            loudnessAnalyzer.analyzeAll(controller.getSongs());
+            if (ENGINE_CODEC.equals(engineType)) {
+                prerollLoader.prefetchMostPlayed(controller.getSongs(), PREROLL_MOST_PLAYED);
+            }
+            Log.d(TAG, "Set song list with " + controller.getSongs().size() + " songs");
         } catch (Exception e) {
             Log.e(TAG, "Error setting song list", e);
-            this.songs = new ArrayList<>();
         }
     }
 
     public void playPrev() {
         try {
-            if (songs == null || songs.isEmpty()) {
-                return;
-            }
-
-            songIndex--;
-            if (songIndex < 0) {
-                songIndex = songs.size() - 1;
-            }
-            Log.d(TAG, "Playing previous song at index " + songIndex);
-            playSong();
+            controller.skipToPrevious();
         } catch (Exception e) {
             Log.e(TAG, "Error playing previous song", e);
         }
@@ -373,16 +365,7 @@ public class MusicService extends Service implements
 
     public void playNext() {
         try {
-            if (songs == null || songs.isEmpty()) {
-                return;
-            }
-
-            songIndex++;
-            if (songIndex >= songs.size()) {
-                songIndex = 0;
-            }
-            Log.d(TAG, "Playing next song at index " + songIndex);
-            playSong();
+            controller.skipToNext();
         } catch (Exception e) {
             Log.e(TAG, "Error playing next song", e);
         }
@@ -390,62 +373,7 @@ public class MusicService extends Service implements
 
     public void start() {
         try {
-            if (isInitialized && player != null) {
-                if (player.isPlaying()) {
-                    Log.d(TAG, "Player is already playing, no need to start");
-                    return;
-                }
-
-                if (requestAudioFocus()) {
-                    // Try to start playback
-                    player.start();
-
-                    // Verify playback started
-                    if (player.isPlaying()) {
-                        Log.d(TAG, "Player started successfully");
-
-                        // Notify player manager about playback state change
-                        PlayerManager playerManager = PlayerManager.getInstance();
-                        playerManager.setPlaybackState(true);
-                    } else {
-                        Log.w(TAG, "Player.start() called but isPlaying() returned false");
-
-                        // If the player is in an error state, try to reset and prepare again
-                        try {
-                            Log.d(TAG, "Attempting to reset and prepare player");
-                            player.reset();
-
-                            // Get current song
-                            Song currentSong = getCurrentSong();
-                            if (currentSong != null && currentSong.getUri() != null) {
-                                player.setDataSource(getApplicationContext(), currentSong.getUri());
-                                player.prepare(); // Use synchronous prepare here
-                                player.start();
-                                Log.d(TAG, "Player recovery successful");
-
-                                // Notify player manager about playback state change after recovery
-                                PlayerManager playerManager = PlayerManager.getInstance();
-                                playerManager.setPlaybackState(true);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error during player recovery", e);
-                        }
-                    }
-
-                    updateNotification();
-                } else {
-                    Log.e(TAG, "Cannot start playback: Audio focus not granted");
-                    Toast.makeText(getApplicationContext(), "Cannot get audio focus", Toast.LENGTH_SHORT).show();
-                }
-            } else {
-                Log.d(TAG, "Cannot start: Player null, not initialized, or already playing");
-
-                // If we have a song selected but player isn't initialized, try to play it
-                if (songs != null && !songs.isEmpty() && songIndex >= 0 && songIndex < songs.size()) {
-                    Log.d(TAG, "Attempting to play selected song");
-                    playSong();
-                }
-            }
+            controller.start();
         } catch (Exception e) {
             Log.e(TAG, "Error starting playback", e);
             Toast.makeText(getApplicationContext(), "Error starting playback", Toast.LENGTH_SHORT).show();
@@ -454,18 +382,7 @@ public class MusicService extends Service implements
 
     public void pausePlayer() {
         try {
-            if (isInitialized && player != null && player.isPlaying()) {
-                player.pause();
-                Log.d(TAG, "Player paused");
-
-                // Notify player manager about playback state change
-                PlayerManager playerManager = PlayerManager.getInstance();
-                playerManager.setPlaybackState(false);
-
-                updateNotification();
-            } else {
-                Log.d(TAG, "Cannot pause: Player null, not initialized, or not playing");
-            }
+            controller.pause();
         } catch (Exception e) {
             Log.e(TAG, "Error pausing playback", e);
         }
@@ -473,7 +390,7 @@ public class MusicService extends Service implements
 
     public boolean isPlaying() {
         try {
-            return isInitialized && player != null && player.isPlaying();
+            return controller != null && controller.isPlaying();
         } catch (Exception e) {
             Log.e(TAG, "Error checking if playing", e);
             return false;
@@ -482,10 +399,7 @@ public class MusicService extends Service implements
 
     public int getCurrentPosition() {
         try {
-            if (isInitialized && player != null) {
-                return player.getCurrentPosition();
-            }
-            return 0;
+            return controller.getCurrentPosition();
         } catch (Exception e) {
             Log.e(TAG, "Error getting current position", e);
             return 0;
@@ -494,32 +408,28 @@ public class MusicService extends Service implements
 
     public int getDuration() {
         try {
-            if (isInitialized && player != null) {
-                int duration = player.getDuration();
-
-                // Log the duration value for debugging
-                Log.d(TAG, "MediaPlayer duration: " + duration + " ms");
-
-                // If duration is invalid (0 or negative), try to get it from the current song
-                if (duration <= 0 && songs != null && songIndex >= 0 && songIndex < songs.size()) {
-                    Song currentSong = songs.get(songIndex);
-                    if (currentSong != null) {
-                        long songDuration = currentSong.getDuration();
-                        if (songDuration > 0) {
-                            Log.d(TAG, "Using song metadata duration instead: " + songDuration + " ms");
-                            return (int) songDuration;
-                        }
+            if (!controller.isPrepared()) {
+                return 0;
+            }
+            int duration = controller.getDuration();
+
+            // If duration is invalid (0 or negative), try to get it from the current song.
+            // No logging here: this is called for every progress update.
+            if (duration <= 0) {
+                Song currentSong = getCurrentSong();
+                if (currentSong != null) {
+                    long songDuration = currentSong.getDuration();
+                    if (songDuration > 0) {
+                        return (int) songDuration;
                     }
-
-                    // If we still don't have a valid duration, use a default value
-                    // This allows the UI to at least show something and enables seeking
-                    Log.w(TAG, "Using default duration as fallback");
-                    return 180000; // Default to 3 minutes (180 seconds)
                 }
 
-                return duration;
+                // If we still don't have a valid duration, use a default value
+                // This allows the UI to at least show something and enables seeking
+                return 180000; // Default to 3 minutes (180 seconds)
             }
-            return 0;
+
+            return duration;
         } catch (Exception e) {
             Log.e(TAG, "Error getting duration", e);
             return 0;
@@ -528,16 +438,194 @@ public class MusicService extends Service implements
 
     public void seek(int position) {
         try {
-            if (isInitialized && player != null) {
-                player.seekTo(position);
-                Log.d(TAG, "Seek to position: " + position);
-            }
+            controller.seekTo(position);
+            Log.d(TAG, "Seek to position: " + position);
         } catch (Exception e) {
             Log.e(TAG, "Error seeking", e);
         }
     }
 
-    private boolean requestAudioFocus() {
+    /**
+     * Follow a drag with cheap approximate seeks; finish with seek() on release
+     */
+    public void scrub(int position) {
+        try {
+            controller.scrubTo(position);
+        } catch (Exception e) {
+            Log.e(TAG, "Error scrubbing", e);
+        }
+    }
+
+    // PlaybackController.Host
+
+    @Override
+    public void loadDataSource(PlaybackEngine engine, Song song) throws IOException {
+        if (song.getUri() == null) {
+            throw new IOException("Song URI is null: " + song.getTitle());
+        }
+
+        // Log song details including duration from metadata
+        Log.d(TAG, "Preparing to play: " + song.getTitle() +
+                " by " + song.getArtist() +
+                " (Duration from metadata: " + song.getDuration() + " ms)" +
+                " from URI " + song.getUri());
+
+        // Open the track once; the same descriptor feeds the player
+        FileDescriptor fd = null;
+        try {
+            fd = dataSources.open(song);
+        } catch (SecurityException se) {
+            Log.e(TAG, "Permission denied for URI: " + song.getUri(), se);
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot access file at URI: " + song.getUri(), e);
+        }
+
+        if (fd != null) {
+            engine.setDataSource(fd);
+        } else {
+            // Fall back to the file path, resolved once per song and kept for retries
+            String filePath = pathResolver.resolve(song);
+            if (filePath == null) {
+                throw new IOException("Cannot access audio file: " + song.getTitle());
+            }
+            Log.d(TAG, "Trying fallback with direct file path: " + filePath);
+            engine.setDataSource(filePath);
+        }
+
+        applyTrackGain(song);
+        if (engine instanceof CodecPlaybackEngine) {
+            PrerollCache.Entry preroll = prerollLoader.get(song);
+            if (preroll != null) {
+                ((CodecPlaybackEngine) engine).setPreroll(preroll);
+            }
+            seekIndexLoader.load(song, seekIndexCallback);
+        }
+    }
+
+    private void onSeekIndexReady(Song song, SeekIndex index) {
+        // The engine may have moved on while the track was scanned
+        Song current = controller.getState().getSong();
+        PlaybackEngine engine = controller.getEngine();
+        if (current != null && current.getId() == song.getId() && engine instanceof CodecPlaybackEngine) {
+            ((CodecPlaybackEngine) engine).setSeekIndex(index);
+        }
+    }
+
+    /**
+     * Set the normalization gain for a track before it starts. The codec
+     * engine applies it in its DSP stage, with the limiter catching peaks;
+     * MediaPlayer can only be turned down, so boosts are dropped there.
+     */
+    private void applyTrackGain(Song song) {
+        float gainDb = 0f;
+        if (normalizeVolume) {
+            LoudnessCache.Entry loudness = loudnessAnalyzer.getResult(song);
+            if (loudness != null) {
+                gainDb = loudness.getGainDb(LoudnessAnalyzer.TARGET_LUFS);
+            } else {
+                // Not measured yet: play at unity now, have it ready next time
+                loudnessAnalyzer.prioritize(song);
+            }
+        }
+
+        if (ENGINE_CODEC.equals(engineType)) {
+            dspChain.setTrackGainDb(gainDb);
+            trackVolume = 1.0f;
+        } else {
+            dspChain.setTrackGainDb(0f);
+            trackVolume = (float) Math.min(1.0, Math.pow(10, gainDb / 20));
+        }
+        applyVolume();
+        Log.d(TAG, "Track gain for " + song.getTitle() + ": " + gainDb + " dB");
+    }
+
+    private void applyVolume() {
+        float volume = trackVolume * duckVolume;
+        controller.setVolume(volume, volume);
+    }
+
+    @Override
+    public void onEngineReset() {
+        // The engine no longer reads the previous descriptor
+        dataSources.releaseCurrent();
+    }
+
+    @Override
+    public void onStateChanged(PlaybackState newState) {
+        Log.d(TAG, "Publishing " + newState);
+        PlayerManager.getInstance().onServiceStateChanged(newState);
+        updateNotification();
+    }
+
+    @Override
+    public void onClockChanged(PlaybackClock clock) {
+        PlayerManager.getInstance().onServiceClockChanged(clock);
+    }
+
+    @Override
+    public void onTrackPrepared(Song song, Song nextSong) {
+        Log.d(TAG, "Now playing: " + song.getTitle() + " at index " + controller.getState().getSongIndex());
+
+        // Open the next track's descriptor, measure its loudness, extract its
+        // waveform and index its frames while this one plays
+        WaveformLoader.getInstance(this).prefetch(song);
+        prerollLoader.recordPlay(song);
+        if (ENGINE_CODEC.equals(engineType)) {
+            prerollLoader.prefetchAround(controller.getSongs(), controller.getState().getSongIndex(),
+                    PREROLL_NEIGHBOURS);
+        }
+        if (nextSong != null) {
+            dataSources.preload(nextSong);
+            loudnessAnalyzer.prioritize(nextSong);
+            WaveformLoader.getInstance(this).prefetch(nextSong);
+            if (ENGINE_CODEC.equals(engineType)) {
+                seekIndexLoader.prefetch(nextSong);
+            }
+        }
+    }
+
+    @Override
+    public void onPlaybackError(Song song, int what, int extra, PlaybackErrorPolicy.Decision decision) {
+        String engineName = controller.getEngine().getClass().getSimpleName();
+        Log.e(TAG, engineName + " error: " + what + ", " + extra);
+
+        // Log more detailed error information
+        String errorType = "Unknown";
+        switch (what) {
+            case MediaPlayer.MEDIA_ERROR_SERVER_DIED:
+                errorType = "Server died";
+                break;
+            case MediaPlayer.MEDIA_ERROR_UNKNOWN:
+                errorType = "Unknown error";
+                break;
+            case MediaPlayer.MEDIA_ERROR_NOT_VALID_FOR_PROGRESSIVE_PLAYBACK:
+                errorType = "Not valid for progressive playback";
+                break;
+            case MediaPlayer.MEDIA_ERROR_IO:
+                errorType = "IO error";
+                break;
+            case MediaPlayer.MEDIA_ERROR_MALFORMED:
+                errorType = "Malformed media";
+                break;
+            case MediaPlayer.MEDIA_ERROR_UNSUPPORTED:
+                errorType = "Unsupported media";
+                break;
+            case MediaPlayer.MEDIA_ERROR_TIMED_OUT:
+                errorType = "Timed out";
+                break;
+        }
+        Log.e(TAG, engineName + " error details: " + errorType + ", extra: " + extra);
+        Log.w(TAG, "Recovery for " + song.getTitle() + ": " + decision + ", " + controller.getErrorPolicy());
+
+        if (decision.action == PlaybackErrorPolicy.Action.STOP) {
+            Log.e(TAG, "Too many consecutive playback errors, stopping");
+            Toast.makeText(getApplicationContext(), "Playback stopped after repeated errors",
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public boolean requestAudioFocus() {
         try {
             AudioManager audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
             if (audioManager == null) {
@@ -613,11 +701,7 @@ public class MusicService extends Service implements
 
     private void updateNotification() {
         try {
-            if (songs == null || songs.isEmpty() || songIndex < 0 || songIndex >= songs.size()) {
-                return;
-            }
-
-            Song currentSong = songs.get(songIndex);
+            Song currentSong = getCurrentSong();
             if (currentSong == null) {
                 return;
             }
@@ -645,186 +729,6 @@ public class MusicService extends Service implements
         }
     }
 
-    private void releaseMediaPlayer() {
-        try {
-            if (player != null) {
-                if (player.isPlaying()) {
-                    player.stop();
-                }
-                player.reset();
-                player.release();
-                player = null;
-                isInitialized = false;
-                Log.d(TAG, "Media player released");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error releasing media player", e);
-        }
-    }
-
-    /**
-     * Alternative method to play a song using a direct file path
-     * This can help in cases where ContentProvider access is failing
-     */
-    public void playFromFilePath(String filePath) {
-        try {
-            if (player != null) {
-                player.reset();
-                isInitialized = true;
-            } else {
-                initMediaPlayer();
-            }
-
-            if (!isInitialized) {
-                Log.e(TAG, "Player not initialized");
-                return;
-            }
-
-            Log.d(TAG, "Attempting to play from direct file path: " + filePath);
-
-            // Check if file exists
-            File file = new File(filePath);
-            if (!file.exists() || !file.canRead()) {
-                Log.e(TAG, "File doesn't exist or can't be read: " + filePath);
-                Toast.makeText(getApplicationContext(), "File not found or can't be read", Toast.LENGTH_SHORT).show();
-                return;
-            }
-
-            // Request audio focus
-            if (!requestAudioFocus()) {
-                Log.e(TAG, "Audio focus not granted, cannot play");
-                return;
-            }
-
-            try {
-                // Set data source directly from file path
-                player.setDataSource(filePath);
-
-                // Set listeners
-                player.setOnPreparedListener(this);
-                player.setOnErrorListener(this);
-                player.setOnCompletionListener(this);
-
-                // Prepare and play
-                player.prepareAsync();
-                Log.d(TAG, "Started async preparation for file: " + filePath);
-            } catch (Exception e) {
-                Log.e(TAG, "Error setting data source from file path", e);
-                isInitialized = false;
-                Toast.makeText(getApplicationContext(), "Error playing file: " + e.getMessage(), Toast.LENGTH_SHORT)
-                        .show();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error in playFromFilePath", e);
-            Toast.makeText(getApplicationContext(), "Error playing file", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    // MediaPlayer Listeners
-    @Override
-    public void onPrepared(MediaPlayer mp) {
-        try {
-            isInitialized = true;
-            Log.d(TAG, "MediaPlayer prepared successfully for song at index: " + songIndex);
-            
-            if (songs != null && songIndex >= 0 && songIndex < songs.size()) {
-                Song currentSong = songs.get(songIndex);
-                Log.d(TAG, "Now playing: " + currentSong.getTitle() + " at index " + songIndex);
-            }
-
-            // Start playback
-            if (requestAudioFocus()) {
-                mp.start();
-                
-                // Verify playback started
-                if (mp.isPlaying()) {
-                    Log.d(TAG, "Playback started successfully");
-                    
-                    // Notify player manager about playback state change
-                    PlayerManager playerManager = PlayerManager.getInstance();
-                    playerManager.setPlaybackState(true);
-                } else {
-                    Log.w(TAG, "MediaPlayer.start() called but isPlaying() returned false");
-                }
-                
-                updateNotification();
-            } else {
-                Log.e(TAG, "Cannot start playback: Audio focus not granted");
-                Toast.makeText(getApplicationContext(), "Cannot get audio focus", Toast.LENGTH_SHORT).show();
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error in onPrepared", e);
-            Toast.makeText(getApplicationContext(), "Error starting playback", Toast.LENGTH_SHORT).show();
-        }
-    }
-
-    @Override
-    public boolean onError(MediaPlayer mp, int what, int extra) {
-        try {
-            Log.e(TAG, "MediaPlayer error: " + what + ", " + extra);
-            isInitialized = false;
-
-            // Log more detailed error information
-            String errorType = "Unknown";
-            switch (what) {
-                case MediaPlayer.MEDIA_ERROR_SERVER_DIED:
-                    errorType = "Server died";
-                    break;
-                case MediaPlayer.MEDIA_ERROR_UNKNOWN:
-                    errorType = "Unknown error";
-                    break;
-                case MediaPlayer.MEDIA_ERROR_NOT_VALID_FOR_PROGRESSIVE_PLAYBACK:
-                    errorType = "Not valid for progressive playback";
-                    break;
-                case MediaPlayer.MEDIA_ERROR_IO:
-                    errorType = "IO error";
-                    break;
-                case MediaPlayer.MEDIA_ERROR_MALFORMED:
-                    errorType = "Malformed media";
-                    break;
-                case MediaPlayer.MEDIA_ERROR_UNSUPPORTED:
-                    errorType = "Unsupported media";
-                    break;
-                case MediaPlayer.MEDIA_ERROR_TIMED_OUT:
-                    errorType = "Timed out";
-                    break;
-            }
-            Log.e(TAG, "MediaPlayer error details: " + errorType + ", extra: " + extra);
-
-            // Reset the player
-            try {
-                mp.reset();
-            } catch (Exception e) {
-                Log.e(TAG, "Error resetting player after error", e);
-            }
-
-            // Re-initialize the player
-            releaseMediaPlayer();
-            initMediaPlayer();
-
-            // Try to play the next song if available
-            if (songs != null && !songs.isEmpty()) {
-                playNext();
-            }
-
-            return true; // true means we handled the error
-        } catch (Exception e) {
-            Log.e(TAG, "Error handling MediaPlayer error", e);
-            return false;
-        }
-    }
-
-    @Override
-    public void onCompletion(MediaPlayer mp) {
-        try {
-            Log.d(TAG, "Song completed, playing next");
-            // Play the next song
-            playNext();
-        } catch (Exception e) {
-            Log.e(TAG, "Error in onCompletion", e);
-        }
-    }
-
     @Override
     public void onAudioFocusChange(int focusChange) {
         try {
@@ -844,14 +748,16 @@ public class MusicService extends Service implements
                     break;
                 case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
                     // Lost focus for a short time, but can duck (lower volume)
-                    if (isPlaying() && player != null) {
-                        player.setVolume(0.3f, 0.3f);
+                    if (isPlaying()) {
+                        duckVolume = 0.3f;
+                        applyVolume();
                     }
                     break;
                 case AudioManager.AUDIOFOCUS_GAIN:
                     // Regained focus, resume playback or raise volume
-                    if (player != null) {
-                        player.setVolume(1.0f, 1.0f);
+                    if (controller != null) {
+                        duckVolume = 1.0f;
+                        applyVolume();
                     }
                     break;
             }
@@ -895,4 +801,4 @@ public class MusicService extends Service implements
             return MusicService.this;
         }
     }
-}
\ No newline at end of file
+}
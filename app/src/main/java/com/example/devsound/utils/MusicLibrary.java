@@ -39,7 +39,9 @@ public class MusicLibrary {
                     MediaStore.Audio.Media.ARTIST,
                     MediaStore.Audio.Media.ALBUM,
                     MediaStore.Audio.Media.DURATION,
-                    MediaStore.Audio.Media.ALBUM_ID
+                    MediaStore.Audio.Media.ALBUM_ID,
+                    MediaStore.Audio.Media.DATA,
+                    MediaStore.Audio.Media.DATE_MODIFIED
             };
 
             // Log the query parameters
@@ -60,6 +62,10 @@ public class MusicLibrary {
                     int albumColumn = musicCursor.getColumnIndex(MediaStore.Audio.Media.ALBUM);
                     int durationColumn = musicCursor.getColumnIndex(MediaStore.Audio.Media.DURATION);
                     int albumIdColumn = musicCursor.getColumnIndex(MediaStore.Audio.Media.ALBUM_ID);
+                    // Optional: lets playback fall back to the file path without another query
+                    int dataColumn = musicCursor.getColumnIndex(MediaStore.Audio.Media.DATA);
+                    // Optional: invalidates cached analysis when the file changes
+                    int dateModifiedColumn = musicCursor.getColumnIndex(MediaStore.Audio.Media.DATE_MODIFIED);
 
                     // Check if any columns are missing
                     if (idColumn < 0 || titleColumn < 0 || artistColumn < 0 ||
@@ -79,6 +85,8 @@ public class MusicLibrary {
                             String album = musicCursor.getString(albumColumn);
                             long duration = musicCursor.getLong(durationColumn);
                             long albumId = musicCursor.getLong(albumIdColumn);
+                            String dataPath = dataColumn >= 0 ? musicCursor.getString(dataColumn) : null;
+                            long dateModified = dateModifiedColumn >= 0 ? musicCursor.getLong(dateModifiedColumn) : 0;
 
                             // Handle null values for better stability
                             if (title == null)
@@ -113,7 +121,8 @@ public class MusicLibrary {
                             }
 
                             if (fileAccessible) {
-                                Song song = new Song(id, title, artist, album, duration, contentUri, albumArtUri);
+                                Song song = new Song(id, title, artist, album, duration, contentUri, albumArtUri,
+                                        dataPath, dateModified);
                                 songs.add(song);
 
                                 // Log each song found with duration
@@ -1,10 +1,10 @@
 package com.example.devsound.utils;
 
-import android.content.Context;
-import android.content.Intent;
 import android.util.Log;
 
+import com.example.devsound.models.PlaybackState;
 import com.example.devsound.models.Song;
+import com.example.devsound.playback.PlaybackClock;
 import com.example.devsound.services.MusicService;
 
 import java.util.ArrayList;
@@ -20,9 +20,11 @@ public class PlayerManager {
     private static PlayerManager instance;
 
     private List<Song> songs;
-    private int currentSongIndex = -1;
-    private boolean isPlaying = false;
+    private PlaybackState state = PlaybackState.IDLE;
+    private MusicService service;
     private List<PlayerCallback> callbacks = new ArrayList<>();
+    private PlaybackClock clock = PlaybackClock.STOPPED;
+    private final List<ClockListener> clockListeners = new ArrayList<>();
 
     // Interface for callbacks
     public interface PlayerCallback {
@@ -31,6 +33,13 @@ public class PlayerManager {
         void onPlaybackStateChanged(boolean isPlaying);
     }
 
+    /**
+     * Hears about every new position clock, on the main thread
+     */
+    public interface ClockListener {
+        void onClockChanged(PlaybackClock clock);
+    }
+
     private PlayerManager() {
         songs = new ArrayList<>();
     }
@@ -42,6 +51,30 @@ public class PlayerManager {
         return instance;
     }
 
+    /**
+     * Called by the music service when it is created. Selections are forwarded
+     * to the attached service, which owns the playback state.
+     */
+    public void attachService(MusicService musicService) {
+        service = musicService;
+        // A new service numbers its states from IDLE again
+        changeState(PlaybackState.IDLE);
+        if (service != null && songs != null && !songs.isEmpty()) {
+            service.setSongs(songs);
+        }
+        Log.d(TAG, "Music service attached");
+    }
+
+    public void detachService(MusicService musicService) {
+        if (service == musicService) {
+            service = null;
+            // Nothing is playing any more, and the next service starts over from version 0
+            changeState(PlaybackState.IDLE);
+            onServiceClockChanged(PlaybackClock.STOPPED);
+            Log.d(TAG, "Music service detached");
+        }
+    }
+
     public void setSongs(List<Song> songs) {
         if (songs != null) {
             this.songs = songs;
@@ -50,6 +83,11 @@ public class PlayerManager {
             this.songs = new ArrayList<>();
             Log.d(TAG, "Songs list set to empty");
         }
+
+        // Keep the service on the same list so indices always agree
+        if (service != null) {
+            service.setSongs(this.songs);
+        }
     }
 
     public List<Song> getSongs() {
@@ -61,29 +99,19 @@ public class PlayerManager {
             Log.e(TAG, "Invalid song selection: position=" + position);
             return;
         }
+        if (service == null) {
+            Log.e(TAG, "Cannot select song, music service not attached: position=" + position);
+            return;
+        }
 
         Log.d(TAG, "Song selected: position=" + position + ", title=" + songs.get(position).getTitle());
 
-        // Store the previous index to check if it actually changed
-        int previousIndex = currentSongIndex;
-        currentSongIndex = position;
-        isPlaying = true;
-
-        // Only notify callbacks if the song actually changed or if we're forcing a
-        // replay
-        if (previousIndex != position) {
-            Log.d(TAG, "Song changed from index " + previousIndex + " to " + position + ", notifying callbacks");
-            // Notify callbacks
-            for (PlayerCallback callback : callbacks) {
-                callback.onSongSelected(songs.get(position), position);
-                callback.onPlaybackStateChanged(true);
-            }
+        // Selecting the current song only resumes it; anything else is a new track
+        if (state.getSongIndex() == position) {
+            Log.d(TAG, "Song index unchanged (" + position + "), just resuming playback");
+            service.start();
         } else {
-            Log.d(TAG, "Song index unchanged (" + position + "), just updating playback state");
-            // Just update playback state if the song didn't change
-            for (PlayerCallback callback : callbacks) {
-                callback.onPlaybackStateChanged(true);
-            }
+            service.playSongAt(position);
         }
     }
 
@@ -96,38 +124,92 @@ public class PlayerManager {
             Log.e(TAG, "Invalid song selection: position=" + position);
             return;
         }
+        if (service == null) {
+            Log.e(TAG, "Cannot select song, music service not attached: position=" + position);
+            return;
+        }
 
         Log.d(TAG, "Force selecting song: position=" + position + ", title=" + songs.get(position).getTitle());
-        currentSongIndex = position;
-        isPlaying = true;
+        service.playSongAt(position);
+    }
 
-        // Always notify callbacks when forcing selection
-        for (PlayerCallback callback : callbacks) {
-            callback.onSongSelected(songs.get(position), position);
-            callback.onPlaybackStateChanged(true);
+    /**
+     * Called by the music service whenever it publishes a new playback state.
+     * Stale versions are ignored; callbacks only hear about what changed.
+     * Versions are only compared within one service's lifetime; attaching or
+     * detaching a service resets the state to IDLE.
+     */
+    public void onServiceStateChanged(PlaybackState newState) {
+        if (newState == null || newState.getVersion() <= state.getVersion()) {
+            return;
         }
+        changeState(newState);
     }
 
-    public Song getCurrentSong() {
-        if (currentSongIndex >= 0 && currentSongIndex < songs.size()) {
-            return songs.get(currentSongIndex);
+    private void changeState(PlaybackState newState) {
+        PlaybackState previous = state;
+        state = newState;
+
+        boolean songChanged = previous.getSongIndex() != newState.getSongIndex()
+                || previous.getSong() != newState.getSong();
+        boolean playingChanged = previous.isPlaying() != newState.isPlaying();
+
+        // Copy so callbacks can unregister themselves while being notified
+        for (PlayerCallback callback : new ArrayList<>(callbacks)) {
+            if (songChanged && newState.getSong() != null) {
+                callback.onSongSelected(newState.getSong(), newState.getSongIndex());
+            }
+            if (playingChanged) {
+                callback.onPlaybackStateChanged(newState.isPlaying());
+            }
         }
-        return null;
     }
 
-    public int getCurrentSongIndex() {
-        return currentSongIndex;
+    public PlaybackState getPlaybackState() {
+        return state;
+    }
+
+    /**
+     * Called by the music service whenever playback starts, stops or jumps
+     */
+    public void onServiceClockChanged(PlaybackClock newClock) {
+        if (newClock == null) {
+            return;
+        }
+        clock = newClock;
+        for (ClockListener listener : new ArrayList<>(clockListeners)) {
+            listener.onClockChanged(newClock);
+        }
     }
 
-    public void setPlaybackState(boolean isPlaying) {
-        this.isPlaying = isPlaying;
-        for (PlayerCallback callback : callbacks) {
-            callback.onPlaybackStateChanged(isPlaying);
+    public PlaybackClock getPlaybackClock() {
+        return clock;
+    }
+
+    /**
+     * Register for clock updates; the listener hears the current clock right away
+     */
+    public void registerClockListener(ClockListener listener) {
+        if (listener != null && !clockListeners.contains(listener)) {
+            clockListeners.add(listener);
+            listener.onClockChanged(clock);
         }
     }
 
+    public void unregisterClockListener(ClockListener listener) {
+        clockListeners.remove(listener);
+    }
+
+    public Song getCurrentSong() {
+        return state.getSong();
+    }
+
+    public int getCurrentSongIndex() {
+        return state.getSongIndex();
+    }
+
     public boolean isPlaying() {
-        return isPlaying;
+        return state.isPlaying();
     }
 
     public void registerCallback(PlayerCallback callback) {
@@ -136,9 +218,9 @@ public class PlayerManager {
             Log.d(TAG, "Callback registered, total callbacks: " + callbacks.size());
 
             // If a song is already selected, update the new callback
-            if (currentSongIndex >= 0 && currentSongIndex < songs.size()) {
-                callback.onSongSelected(songs.get(currentSongIndex), currentSongIndex);
-                callback.onPlaybackStateChanged(isPlaying);
+            if (state.getSong() != null) {
+                callback.onSongSelected(state.getSong(), state.getSongIndex());
+                callback.onPlaybackStateChanged(state.isPlaying());
             }
         }
     }
@@ -168,6 +250,7 @@ public class PlayerManager {
         List<Song> availableSongs = new ArrayList<>(songs);
 
         // Remove the current song if requested
+        int currentSongIndex = state.getSongIndex();
         if (excludeCurrentSong && currentSongIndex >= 0 && currentSongIndex < availableSongs.size()) {
             availableSongs.remove(currentSongIndex);
         }
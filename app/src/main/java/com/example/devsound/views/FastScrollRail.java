@@ -0,0 +1,233 @@
+package com.example.devsound.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.example.devsound.R;
+import com.example.devsound.adapters.SectionIndex;
+
+/**
+ * A strip of section letters along the right edge of a list. Touching or
+ * dragging along it jumps straight to the section under the finger and
+ * shows its letter in a bubble beside the finger. The section is worked
+ * out from the touch position alone, through a {@link SectionIndex} built
+ * beforehand, so a drag never walks the list.
+ *
+ * The view is wider than the strip to leave room for the bubble; touches
+ * outside the strip go through to the list underneath.
+ */
+public class FastScrollRail extends View {
+    private static final float RAIL_WIDTH_DP = 24;
+    private static final float LABEL_SP = 11;
+    private static final float BUBBLE_RADIUS_DP = 28;
+    private static final float BUBBLE_GAP_DP = 8;
+    private static final float BUBBLE_LABEL_SP = 24;
+    // Extra room on the strip's inner edge for the finger
+    private static final float TOUCH_SLOP_DP = 8;
+
+    private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint currentLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint bubblePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint bubbleLabelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private float railWidth;
+    private float bubbleRadius;
+    private float bubbleGap;
+    private float touchSlop;
+    // From a label's center to its baseline
+    private float labelBaselineOffset;
+    private float bubbleBaselineOffset;
+
+    private SectionIndex index = SectionIndex.empty();
+    // Sections between drawn labels, when there is not room for all of them
+    private int labelStep = 1;
+    private int currentSection = -1;
+    private boolean dragging;
+    private float touchY;
+    private SectionListener sectionListener;
+
+    public interface SectionListener {
+        /**
+         * @param position the first row of the section touched
+         */
+        void onSectionSelected(int position);
+    }
+
+    public FastScrollRail(Context context) {
+        super(context);
+        init();
+    }
+
+    public FastScrollRail(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public FastScrollRail(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        railWidth = dp(RAIL_WIDTH_DP);
+        bubbleRadius = dp(BUBBLE_RADIUS_DP);
+        bubbleGap = dp(BUBBLE_GAP_DP);
+        touchSlop = dp(TOUCH_SLOP_DP);
+
+        labelPaint.setTextAlign(Paint.Align.CENTER);
+        labelPaint.setTextSize(sp(LABEL_SP));
+        labelPaint.setColor(ContextCompat.getColor(getContext(), R.color.colorTextSecondary));
+        currentLabelPaint.set(labelPaint);
+        currentLabelPaint.setFakeBoldText(true);
+        currentLabelPaint.setColor(ContextCompat.getColor(getContext(), R.color.colorAccent));
+        bubblePaint.setColor(ContextCompat.getColor(getContext(), R.color.colorAccent));
+        bubbleLabelPaint.setTextAlign(Paint.Align.CENTER);
+        bubbleLabelPaint.setTextSize(sp(BUBBLE_LABEL_SP));
+        bubbleLabelPaint.setColor(ContextCompat.getColor(getContext(), R.color.white));
+
+        labelBaselineOffset = baselineOffset(labelPaint);
+        bubbleBaselineOffset = baselineOffset(bubbleLabelPaint);
+    }
+
+    public void setSectionListener(SectionListener listener) {
+        sectionListener = listener;
+    }
+
+    /**
+     * Show the sections of a new list; hidden while there are fewer than two
+     */
+    public void setSectionIndex(SectionIndex index) {
+        this.index = index != null ? index : SectionIndex.empty();
+        currentSection = -1;
+        updateLabelStep();
+        setVisibility(this.index.getSectionCount() > 1 ? VISIBLE : GONE);
+        invalidate();
+    }
+
+    /**
+     * Highlight the section the list is showing; call as the list scrolls
+     */
+    public void setCurrentPosition(int position) {
+        if (dragging) {
+            return;
+        }
+        int section = index.getSectionForPosition(position);
+        if (section != currentSection) {
+            currentSection = section;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateLabelStep();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                if (index.getSectionCount() == 0 || event.getX() < getWidth() - railWidth - touchSlop) {
+                    // Not on the strip; let the list have it
+                    return false;
+                }
+                dragging = true;
+                // Keep the list from taking the drag over as a scroll
+                getParent().requestDisallowInterceptTouchEvent(true);
+                select(event.getY(), true);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (dragging) {
+                    select(event.getY(), false);
+                }
+                return dragging;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (dragging) {
+                    dragging = false;
+                    invalidate();
+                }
+                return true;
+            default:
+                return dragging;
+        }
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        int count = index.getSectionCount();
+        if (count == 0) {
+            return;
+        }
+        float slot = railHeight() / count;
+        float x = getWidth() - railWidth / 2f;
+        for (int section = 0; section < count; section += labelStep) {
+            float y = getPaddingTop() + (section + 0.5f) * slot;
+            canvas.drawText(index.getLabel(section), x, y + labelBaselineOffset,
+                    section == currentSection ? currentLabelPaint : labelPaint);
+        }
+        // The current section is always labelled, even between steps
+        if (currentSection >= 0 && currentSection % labelStep != 0) {
+            float y = getPaddingTop() + (currentSection + 0.5f) * slot;
+            canvas.drawText(index.getLabel(currentSection), x, y + labelBaselineOffset, currentLabelPaint);
+        }
+
+        if (dragging && currentSection >= 0) {
+            float cx = getWidth() - railWidth - bubbleGap - bubbleRadius;
+            float cy = Math.max(bubbleRadius, Math.min(getHeight() - bubbleRadius, touchY));
+            canvas.drawCircle(cx, cy, bubbleRadius, bubblePaint);
+            canvas.drawText(index.getLabel(currentSection), cx, cy + bubbleBaselineOffset, bubbleLabelPaint);
+        }
+    }
+
+    private void select(float y, boolean always) {
+        touchY = y;
+        int count = index.getSectionCount();
+        int section = (int) ((y - getPaddingTop()) / railHeight() * count);
+        section = Math.max(0, Math.min(count - 1, section));
+        if ((section != currentSection || always) && sectionListener != null) {
+            sectionListener.onSectionSelected(index.getPosition(section));
+        }
+        currentSection = section;
+        // The bubble follows the finger
+        invalidate();
+    }
+
+    private void updateLabelStep() {
+        int count = index.getSectionCount();
+        float lineHeight = labelPaint.getFontSpacing();
+        if (count == 0 || getHeight() == 0) {
+            labelStep = 1;
+            return;
+        }
+        labelStep = Math.max(1, (int) Math.ceil(lineHeight * count / railHeight()));
+    }
+
+    private float railHeight() {
+        return Math.max(1, getHeight() - getPaddingTop() - getPaddingBottom());
+    }
+
+    private static float baselineOffset(Paint paint) {
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        return -(metrics.ascent + metrics.descent) / 2f;
+    }
+
+    private float dp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+    }
+
+    private float sp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, value, getResources().getDisplayMetrics());
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.devsound.views;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.TypedValue;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.example.devsound.R;
+import com.example.devsound.art.AlbumArtLoader;
+
+/**
+ * A song row drawn by a single view: album art, title, artist and duration,
+ * with no child views to measure or lay out. Its height is fixed, so new
+ * text never requests a layout pass. Title and artist are laid out into
+ * StaticLayouts that are kept until the text or the width changes, and the
+ * art is one bitmap draw. Changing the selection only swaps colors and
+ * redraws. Matches the look of item_song.
+ */
+public class SongRowView extends View implements AlbumArtLoader.Target {
+    private static final float PADDING_DP = 16;
+    private static final float ART_DP = 48;
+    private static final float ART_RADIUS_DP = 4;
+    private static final float ART_GAP_DP = 16;
+    private static final float DURATION_GAP_DP = 8;
+    private static final float TITLE_SP = 16;
+    private static final float SECONDARY_SP = 14;
+
+    private final TextPaint titlePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint secondaryPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint artPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Drawable defaultArt;
+    private final int padding;
+    private final int artSize;
+    private final int artGap;
+    private final int durationGap;
+    private final float artRadius;
+    private final int rowHeight;
+    // From the vertical center to the duration's baseline
+    private final float durationBaselineOffset;
+
+    private final RectF artBounds = new RectF();
+    private final Rect artSource = new Rect();
+    private final Path artClip = new Path();
+
+    private CharSequence title = "";
+    private CharSequence artist = "";
+    private String duration = "";
+    private float durationWidth;
+    private StaticLayout titleLayout;
+    private StaticLayout artistLayout;
+    private Bitmap art;
+
+    private boolean rowSelected;
+    private int colorPrimary;
+    private int colorSecondary;
+    private int colorAccent;
+    private int colorSelectedBackground;
+
+    public SongRowView(Context context) {
+        super(context);
+        padding = dp(PADDING_DP);
+        artSize = dp(ART_DP);
+        artGap = dp(ART_GAP_DP);
+        durationGap = dp(DURATION_GAP_DP);
+        artRadius = dp(ART_RADIUS_DP);
+        titlePaint.setTextSize(sp(TITLE_SP));
+        secondaryPaint.setTextSize(sp(SECONDARY_SP));
+        rowHeight = Math.max(artSize, textBlockHeight()) + 2 * padding;
+        Paint.FontMetrics metrics = secondaryPaint.getFontMetrics();
+        durationBaselineOffset = -(metrics.ascent + metrics.descent) / 2f;
+
+        defaultArt = ContextCompat.getDrawable(context, R.drawable.default_album_art);
+        setColors(ContextCompat.getColor(context, R.color.colorTextPrimary),
+                ContextCompat.getColor(context, R.color.colorTextSecondary),
+                ContextCompat.getColor(context, R.color.colorAccent),
+                ContextCompat.getColor(context, R.color.colorSelectedItem));
+
+        TypedValue ripple = new TypedValue();
+        if (context.getTheme().resolveAttribute(android.R.attr.selectableItemBackground, ripple, true)) {
+            // Foreground, so the selection background does not replace the ripple
+            setForeground(ContextCompat.getDrawable(context, ripple.resourceId));
+        }
+        setClickable(true);
+        setFocusable(true);
+    }
+
+    /**
+     * Colors for the normal and the selected state; resolved once by the adapter
+     */
+    public void setColors(int primary, int secondary, int accent, int selectedBackground) {
+        colorPrimary = primary;
+        colorSecondary = secondary;
+        colorAccent = accent;
+        colorSelectedBackground = selectedBackground;
+        applySelection();
+    }
+
+    public void setTexts(CharSequence title, CharSequence artist, String duration) {
+        boolean durationChanged = !duration.equals(this.duration);
+        if (!durationChanged && TextUtils.equals(title, this.title) && TextUtils.equals(artist, this.artist)) {
+            return;
+        }
+        this.title = title;
+        this.artist = artist;
+        if (durationChanged) {
+            this.duration = duration;
+            durationWidth = secondaryPaint.measureText(duration);
+        }
+        titleLayout = null;
+        artistLayout = null;
+        buildLayouts();
+        invalidate();
+    }
+
+    /**
+     * Recolor for the selection state; no layout and no text work
+     */
+    public void setRowSelected(boolean selected) {
+        if (selected != rowSelected) {
+            rowSelected = selected;
+            applySelection();
+        }
+    }
+
+    @Override
+    public void setArt(Bitmap art) {
+        if (art == this.art) {
+            return;
+        }
+        this.art = art;
+        if (art != null) {
+            // Center crop into the square
+            int side = Math.min(art.getWidth(), art.getHeight());
+            int left = (art.getWidth() - side) / 2;
+            int top = (art.getHeight() - side) / 2;
+            artSource.set(left, top, left + side, top + side);
+        }
+        invalidate();
+    }
+
+    @Override
+    public int getArtSize() {
+        return artSize;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                resolveSize(rowHeight, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float top = (h - artSize) / 2f;
+        artBounds.set(padding, top, padding + artSize, top + artSize);
+        artClip.reset();
+        artClip.addRoundRect(artBounds, artRadius, artRadius, Path.Direction.CW);
+        defaultArt.setBounds(Math.round(artBounds.left), Math.round(artBounds.top), Math.round(artBounds.right),
+                Math.round(artBounds.bottom));
+        titleLayout = null;
+        artistLayout = null;
+        buildLayouts();
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        int save = canvas.save();
+        canvas.clipPath(artClip);
+        if (art != null && !art.isRecycled()) {
+            canvas.drawBitmap(art, artSource, artBounds, artPaint);
+        } else {
+            defaultArt.draw(canvas);
+        }
+        canvas.restoreToCount(save);
+
+        if (titleLayout == null || artistLayout == null) {
+            return;
+        }
+        float textLeft = artBounds.right + artGap;
+        float textTop = (getHeight() - titleLayout.getHeight() - artistLayout.getHeight()) / 2f;
+        save = canvas.save();
+        canvas.translate(textLeft, textTop);
+        titleLayout.draw(canvas);
+        canvas.translate(0, titleLayout.getHeight());
+        artistLayout.draw(canvas);
+        canvas.restoreToCount(save);
+
+        canvas.drawText(duration, getWidth() - padding - durationWidth, getHeight() / 2f + durationBaselineOffset,
+                secondaryPaint);
+    }
+
+    private void buildLayouts() {
+        int textWidth = (int) (getWidth() - 2 * padding - artSize - artGap - durationGap - durationWidth);
+        if (textWidth <= 0) {
+            return;
+        }
+        titleLayout = singleLine(title, titlePaint, textWidth);
+        artistLayout = singleLine(artist, secondaryPaint, textWidth);
+    }
+
+    private static StaticLayout singleLine(CharSequence text, TextPaint paint, int width) {
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                .setAlignment(Layout.Alignment.ALIGN_NORMAL)
+                .setIncludePad(false)
+                .setMaxLines(1)
+                .setEllipsize(TextUtils.TruncateAt.END)
+                .build();
+    }
+
+    private void applySelection() {
+        // The layouts draw with these paints, so recoloring them is enough
+        titlePaint.setColor(rowSelected ? colorAccent : colorPrimary);
+        secondaryPaint.setColor(rowSelected ? colorAccent : colorSecondary);
+        setBackgroundColor(rowSelected ? colorSelectedBackground : Color.TRANSPARENT);
+        invalidate();
+    }
+
+    private int textBlockHeight() {
+        Paint.FontMetricsInt title = titlePaint.getFontMetricsInt();
+        Paint.FontMetricsInt secondary = secondaryPaint.getFontMetricsInt();
+        return title.descent - title.ascent + secondary.descent - secondary.ascent;
+    }
+
+    private int dp(float value) {
+        return Math.round(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value,
+                getResources().getDisplayMetrics()));
+    }
+
+    private float sp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, value, getResources().getDisplayMetrics());
+    }
+}
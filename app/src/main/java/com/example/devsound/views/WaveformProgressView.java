@@ -1,39 +1,73 @@
 package com.example.devsound.views;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.os.Build;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.core.content.ContextCompat;
 
 import com.example.devsound.R;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import com.example.devsound.analysis.WaveformData;
+import com.example.devsound.analysis.WaveformLoader;
+import com.example.devsound.models.Song;
 
 /**
- * Custom view that displays an audio waveform with progress
+ * Custom view that displays an audio waveform with progress. The bars come
+ * from the track's decoded envelope; a flat placeholder is shown until it has
+ * been extracted.
+ *
+ * The bars are recorded once per size or waveform into an active and an
+ * inactive layer (render nodes where available, bitmaps otherwise). A frame
+ * only draws both layers clipped at the progress boundary, so progress can
+ * move smoothly within a bar at constant cost and without allocating.
  */
 public class WaveformProgressView extends View {
     private static final String TAG = "WaveformProgressView";
     private static final int BAR_COUNT = 60; // Number of bars to display
+    private static final float PLACEHOLDER_HEIGHT = 0.08f;
 
     private final Paint activePaint = new Paint();
     private final Paint inactivePaint = new Paint();
 
-    private final List<Float> barHeights = new ArrayList<>();
-    private int progress = 0; // Progress as a percentage (0-100)
-    private int activeBarCount = 0;
+    // Bar heights as a fraction of the tallest bar, and their rectangles (left, top, right, bottom)
+    private final float[] barHeights = new float[BAR_COUNT];
+    private final float[] barRects = new float[BAR_COUNT * 4];
+    private float barsLeft;
+    private float barsRight;
+
+    private float progress = 0; // Progress as a fraction (0-1)
     private WaveformSeekListener seekListener;
+    private boolean dragging;
+
+    // Recorded layers; re-recorded when the bars or the size change
+    private boolean layersDirty = true;
+    private NodeLayers nodeLayers;
+    private Bitmap activeBitmap;
+    private Bitmap inactiveBitmap;
+
+    private Song song;
+    private final WaveformLoader.Callback loadCallback = (loadedSong, data) -> {
+        if (song != null && song.getId() == loadedSong.getId()) {
+            setWaveform(data);
+        }
+    };
 
     public interface WaveformSeekListener {
-        void onSeek(int progressPercent);
+        /**
+         * @param fraction position from 0 to 1
+         * @param finished true once the finger is lifted
+         */
+        void onSeek(float fraction, boolean finished);
     }
 
     public void setSeekListener(WaveformSeekListener listener) {
@@ -58,54 +92,148 @@ public class WaveformProgressView extends View {
     private void init() {
         // Set up paints
         activePaint.setColor(ContextCompat.getColor(getContext(), R.color.colorWaveformActive));
-        activePaint.setStrokeCap(Paint.Cap.ROUND);
         activePaint.setStyle(Paint.Style.FILL);
 
         inactivePaint.setColor(ContextCompat.getColor(getContext(), R.color.colorWaveformInactive));
-        inactivePaint.setStrokeCap(Paint.Cap.ROUND);
         inactivePaint.setStyle(Paint.Style.FILL);
 
-        // Generate random bar heights
-        generateRandomBars();
+        showPlaceholder();
     }
 
-    private void generateRandomBars() {
-        barHeights.clear();
+    private void showPlaceholder() {
+        for (int i = 0; i < BAR_COUNT; i++) {
+            barHeights[i] = PLACEHOLDER_HEIGHT;
+        }
+        onBarsChanged();
+    }
 
-        Random random = new Random();
+    /**
+     * Show the waveform of the given song, loading it in the background if needed
+     */
+    public void setSong(Song song) {
+        if (song == null || (this.song != null && this.song.getId() == song.getId()
+                && this.song.getDateModified() == song.getDateModified())) {
+            return;
+        }
+        this.song = song;
+        if (isInEditMode()) {
+            return;
+        }
+        WaveformLoader loader = WaveformLoader.getInstance(getContext());
+        loader.cancel(loadCallback);
+        WaveformData cached = loader.getCached(song);
+        if (cached != null) {
+            setWaveform(cached);
+        } else {
+            showPlaceholder();
+            loader.load(song, loadCallback);
+        }
+    }
+
+    /**
+     * Show the given envelope, one bar per slice of the track. Bars are scaled
+     * to the loudest peak so quiet recordings still show their shape.
+     */
+    public void setWaveform(WaveformData data) {
+        int points = data.getPointCount();
+        float maxPeak = data.getMaxPeak();
+        if (points == 0 || maxPeak <= 0) {
+            showPlaceholder();
+            return;
+        }
         for (int i = 0; i < BAR_COUNT; i++) {
-            // Generate a value between 0.2 and 1.0 for bar height
-            float height = 0.2f + random.nextFloat() * 0.8f;
-            barHeights.add(height);
+            int from = i * points / BAR_COUNT;
+            int to = Math.max(from + 1, (i + 1) * points / BAR_COUNT);
+            float peak = 0;
+            for (int p = from; p < to; p++) {
+                peak = Math.max(peak, data.getPeak(p));
+            }
+            barHeights[i] = PLACEHOLDER_HEIGHT + (1 - PLACEHOLDER_HEIGHT) * peak / maxPeak;
         }
+        onBarsChanged();
+    }
+
+    private void onBarsChanged() {
+        updateGeometry(getWidth(), getHeight());
+        layersDirty = true;
+        invalidate();
     }
 
     @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        if (event.getAction() == MotionEvent.ACTION_DOWN ||
-                event.getAction() == MotionEvent.ACTION_MOVE) {
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateGeometry(w, h);
+        if (activeBitmap != null) {
+            activeBitmap.recycle();
+            inactiveBitmap.recycle();
+            activeBitmap = null;
+            inactiveBitmap = null;
+        }
+        layersDirty = true;
+    }
 
-            float touchX = event.getX();
-            float width = getWidth();
+    private void updateGeometry(int width, int height) {
+        // Use 90% of the width for bars, each followed by a gap of the same width
+        float totalBarSpace = width * 0.9f;
+        float barWidth = totalBarSpace / (BAR_COUNT * 2 - 1);
+        barsLeft = width * 0.05f;
+        barsRight = barsLeft + totalBarSpace;
 
-            if (width > 0) {
-                // Calculate progress percentage based on touch position
-                int newProgress = (int) ((touchX / width) * 100);
-                newProgress = Math.max(0, Math.min(100, newProgress));
+        for (int i = 0; i < BAR_COUNT; i++) {
+            float barHeight = barHeights[i] * height * 0.8f; // Use 80% of height max
+            float left = barsLeft + i * barWidth * 2;
+            barRects[4 * i] = left;
+            barRects[4 * i + 1] = height / 2f - barHeight / 2f;
+            barRects[4 * i + 2] = left + barWidth;
+            barRects[4 * i + 3] = height / 2f + barHeight / 2f;
+        }
+    }
 
-                // Update progress
-                setProgress(newProgress);
+    private void drawBars(Canvas canvas, Paint paint) {
+        for (int i = 0; i < BAR_COUNT; i++) {
+            canvas.drawRect(barRects[4 * i], barRects[4 * i + 1], barRects[4 * i + 2], barRects[4 * i + 3], paint);
+        }
+    }
 
-                // Notify listener
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        if (getWidth() <= 0 || barsRight <= barsLeft) {
+            return super.onTouchEvent(event);
+        }
+        switch (action) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+            case MotionEvent.ACTION_UP:
+                float fraction = (event.getX() - barsLeft) / (barsRight - barsLeft);
+                fraction = Math.max(0f, Math.min(1f, fraction));
+                setProgressFraction(fraction);
+
+                // Drag positions are previews; the position on release is the real seek
+                boolean finished = action == MotionEvent.ACTION_UP;
+                dragging = !finished;
                 if (seekListener != null) {
-                    seekListener.onSeek(newProgress);
+                    seekListener.onSeek(fraction, finished);
                 }
-
                 return true;
-            }
+            case MotionEvent.ACTION_CANCEL:
+                if (dragging) {
+                    dragging = false;
+                    if (seekListener != null) {
+                        seekListener.onSeek(progress, true);
+                    }
+                }
+                return true;
+            default:
+                return super.onTouchEvent(event);
         }
+    }
 
-        return super.onTouchEvent(event);
+    /**
+     * @return true while a finger is on the view
+     */
+    public boolean isDragging() {
+        return dragging;
     }
 
     @Override
@@ -119,54 +247,135 @@ public class WaveformProgressView extends View {
             return;
         }
 
-        // Calculate the number of active bars based on progress
-        activeBarCount = (int) (BAR_COUNT * (progress / 100f));
+        boolean useNodes = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && canvas.isHardwareAccelerated();
+        if (layersDirty || useNodes != (nodeLayers != null)) {
+            recordLayers(useNodes, width, height);
+        }
 
-        // Calculate bar width and spacing
-        float totalBarSpace = width * 0.9f; // Use 90% of width for bars
-        float barWidth = totalBarSpace / (BAR_COUNT * 2 - 1); // Bar width with spacing
-        float startX = width * 0.05f; // Start from 5% offset
+        float boundary = progressToX(progress);
+        int saveCount = canvas.save();
+        canvas.clipRect(0, 0, boundary, height);
+        drawLayer(canvas, true);
+        canvas.restoreToCount(saveCount);
 
-        // Draw the bars
-        for (int i = 0; i < BAR_COUNT; i++) {
-            float barHeight = barHeights.get(i) * height * 0.8f; // Use 80% of height max
-            float barTop = height / 2f - barHeight / 2f;
-            float barLeft = startX + i * barWidth * 2; // Multiply by 2 to account for spacing
+        saveCount = canvas.save();
+        canvas.clipRect(boundary, 0, width, height);
+        drawLayer(canvas, false);
+        canvas.restoreToCount(saveCount);
+    }
 
-            // Choose paint based on whether the bar is active or not
-            Paint paint = i < activeBarCount ? activePaint : inactivePaint;
+    private void recordLayers(boolean useNodes, int width, int height) {
+        layersDirty = false;
+        if (useNodes && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            if (nodeLayers == null) {
+                nodeLayers = new NodeLayers();
+            }
+            nodeLayers.record(this, width, height);
+            return;
+        }
+        nodeLayers = null;
+        if (activeBitmap == null) {
+            activeBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            inactiveBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        activeBitmap.eraseColor(Color.TRANSPARENT);
+        inactiveBitmap.eraseColor(Color.TRANSPARENT);
+        drawBars(new Canvas(activeBitmap), activePaint);
+        drawBars(new Canvas(inactiveBitmap), inactivePaint);
+    }
 
-            // Draw the bar
-            canvas.drawRect(barLeft, barTop, barLeft + barWidth, barTop + barHeight, paint);
+    private void drawLayer(Canvas canvas, boolean active) {
+        if (nodeLayers != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            canvas.drawRenderNode(active ? nodeLayers.active : nodeLayers.inactive);
+        } else {
+            canvas.drawBitmap(active ? activeBitmap : inactiveBitmap, 0, 0, null);
+        }
+    }
+
+    private float progressToX(float fraction) {
+        return barsLeft + fraction * (barsRight - barsLeft);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private static final class NodeLayers {
+        final RenderNode active = new RenderNode("waveformActive");
+        final RenderNode inactive = new RenderNode("waveformInactive");
+
+        void record(WaveformProgressView view, int width, int height) {
+            active.setPosition(0, 0, width, height);
+            RecordingCanvas canvas = active.beginRecording();
+            view.drawBars(canvas, view.activePaint);
+            active.endRecording();
+
+            inactive.setPosition(0, 0, width, height);
+            canvas = inactive.beginRecording();
+            view.drawBars(canvas, view.inactivePaint);
+            inactive.endRecording();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (!isInEditMode()) {
+            WaveformLoader.getInstance(getContext()).cancel(loadCallback);
+        }
+        // Bitmaps are recreated on the next draw
+        if (activeBitmap != null) {
+            activeBitmap.recycle();
+            inactiveBitmap.recycle();
+            activeBitmap = null;
+            inactiveBitmap = null;
+        }
+        nodeLayers = null;
+        layersDirty = true;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // Pick up a result that arrived while detached
+        Song current = song;
+        if (current != null && !isInEditMode()) {
+            song = null;
+            setSong(current);
         }
     }
 
     /**
      * Set the current progress of the waveform
-     * 
+     *
      * @param progress progress percentage (0-100)
      */
     public void setProgress(int progress) {
-        if (this.progress != progress) {
-            this.progress = Math.min(100, Math.max(0, progress));
-            invalidate();
-        }
+        setProgressFraction(progress / 100f);
     }
 
     /**
-     * Get the current progress
-     * 
-     * @return progress percentage (0-100)
+     * Set the current progress with sub-bar precision. Only the strip between
+     * the old and new boundary is invalidated.
+     *
+     * @param fraction progress from 0 to 1
      */
-    public int getProgress() {
-        return progress;
+    public void setProgressFraction(float fraction) {
+        fraction = Math.min(1f, Math.max(0f, fraction));
+        if (this.progress == fraction) {
+            return;
+        }
+        float oldX = progressToX(this.progress);
+        float newX = progressToX(fraction);
+        this.progress = fraction;
+        // Hardware rendering redraws the whole view anyway, which is two layer draws
+        invalidate((int) Math.floor(Math.min(oldX, newX)) - 1, 0,
+                (int) Math.ceil(Math.max(oldX, newX)) + 1, getHeight());
     }
 
     /**
-     * Regenerate the random bar heights
+     * Get the current progress
+     *
+     * @return progress percentage (0-100)
      */
-    public void regenerateBars() {
-        generateRandomBars();
-        invalidate();
+    public int getProgress() {
+        return Math.round(progress * 100);
     }
-}
\ No newline at end of file
+}
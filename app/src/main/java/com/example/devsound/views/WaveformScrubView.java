@@ -0,0 +1,274 @@
+package com.example.devsound.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.example.devsound.R;
+import com.example.devsound.analysis.WaveformLoader;
+import com.example.devsound.analysis.WaveformPyramid;
+import com.example.devsound.models.Song;
+
+/**
+ * Zoomable close-up of the waveform around the playback position, for long
+ * tracks. The playhead stays in the middle: dragging moves the track under it
+ * and pinching zooms around it. Bars are read from the track's
+ * {@link WaveformPyramid} at the level that matches the zoom, so drawing costs
+ * the same at any zoom; onDraw does not allocate.
+ */
+public class WaveformScrubView extends View {
+    private static final int INITIAL_VISIBLE_SECONDS = 30;
+
+    private final Paint playedPaint = new Paint();
+    private final Paint unplayedPaint = new Paint();
+    private final Paint playheadPaint = new Paint();
+
+    private float barWidth;
+    private float barStride;
+    private int barCount;
+    private float[] mins = new float[0];
+    private float[] maxs = new float[0];
+    private float[] lines = new float[0];
+
+    private Song song;
+    private WaveformPyramid pyramid;
+    private long positionMs;
+    private double framesPerPixel;
+    private boolean dragging;
+    private boolean scaling;
+    private ScrubListener scrubListener;
+
+    private ScaleGestureDetector scaleDetector;
+    private GestureDetector gestureDetector;
+
+    private final WaveformLoader.PyramidCallback loadCallback = (loadedSong, loaded) -> {
+        if (song != null && song.getId() == loadedSong.getId()) {
+            setPyramid(loaded);
+        }
+    };
+
+    public interface ScrubListener {
+        /**
+         * @param positionMs position under the playhead
+         * @param finished   true once the finger is lifted
+         */
+        void onScrub(long positionMs, boolean finished);
+    }
+
+    public WaveformScrubView(Context context) {
+        super(context);
+        init();
+    }
+
+    public WaveformScrubView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public WaveformScrubView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        float density = getResources().getDisplayMetrics().density;
+        barWidth = 2 * density;
+        barStride = 3 * density;
+
+        playedPaint.setColor(ContextCompat.getColor(getContext(), R.color.colorWaveformActive));
+        playedPaint.setStrokeWidth(barWidth);
+        unplayedPaint.setColor(ContextCompat.getColor(getContext(), R.color.colorWaveformInactive));
+        unplayedPaint.setStrokeWidth(barWidth);
+        playheadPaint.setColor(ContextCompat.getColor(getContext(), R.color.colorAccent));
+        playheadPaint.setStrokeWidth(density);
+
+        scaleDetector = new ScaleGestureDetector(getContext(), new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(@NonNull ScaleGestureDetector detector) {
+                scaling = true;
+                return pyramid != null;
+            }
+
+            @Override
+            public boolean onScale(@NonNull ScaleGestureDetector detector) {
+                setFramesPerPixel(framesPerPixel / detector.getScaleFactor());
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(getContext(), new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(@NonNull MotionEvent e) {
+                return pyramid != null;
+            }
+
+            @Override
+            public boolean onScroll(@Nullable MotionEvent e1, @NonNull MotionEvent e2, float dx, float dy) {
+                if (scaling || pyramid == null) {
+                    return false;
+                }
+                dragging = true;
+                long delta = (long) (dx * framesPerPixel * 1000 / pyramid.getSampleRate());
+                positionMs = Math.max(0, Math.min(pyramid.getDurationMs(), positionMs + delta));
+                if (scrubListener != null) {
+                    scrubListener.onScrub(positionMs, false);
+                }
+                postInvalidateOnAnimation();
+                return true;
+            }
+        });
+    }
+
+    public void setScrubListener(ScrubListener listener) {
+        this.scrubListener = listener;
+    }
+
+    /**
+     * Show the given song, loading its pyramid in the background
+     */
+    public void setSong(Song song) {
+        if (song == null || (this.song != null && this.song.getId() == song.getId()
+                && this.song.getDateModified() == song.getDateModified())) {
+            return;
+        }
+        this.song = song;
+        pyramid = null;
+        invalidate();
+        if (!isInEditMode()) {
+            WaveformLoader loader = WaveformLoader.getInstance(getContext());
+            loader.cancel(loadCallback);
+            loader.loadPyramid(song, loadCallback);
+        }
+    }
+
+    public void setPyramid(WaveformPyramid pyramid) {
+        this.pyramid = pyramid;
+        framesPerPixel = 0;
+        if (getWidth() > 0) {
+            setFramesPerPixel((double) pyramid.getSampleRate() * INITIAL_VISIBLE_SECONDS / getWidth());
+        }
+        invalidate();
+    }
+
+    /**
+     * Move the playhead, unless the user is dragging it
+     */
+    public void setPosition(long positionMs) {
+        if (!dragging && this.positionMs != positionMs) {
+            this.positionMs = positionMs;
+            postInvalidateOnAnimation();
+        }
+    }
+
+    public boolean isDragging() {
+        return dragging;
+    }
+
+    private void setFramesPerPixel(double value) {
+        if (pyramid == null || getWidth() <= 0) {
+            return;
+        }
+        // From one level-0 block per bar to the whole track on screen
+        double finest = pyramid.getBlockFrames(0) / barStride;
+        double coarsest = Math.max(finest, (double) pyramid.getTotalFrames() / getWidth());
+        double clamped = Math.max(finest, Math.min(coarsest, value));
+        if (clamped != framesPerPixel) {
+            framesPerPixel = clamped;
+            postInvalidateOnAnimation();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        barCount = (int) Math.ceil(w / barStride) + 1;
+        mins = new float[barCount];
+        maxs = new float[barCount];
+        lines = new float[barCount * 4];
+        if (pyramid != null) {
+            setFramesPerPixel(framesPerPixel > 0 ? framesPerPixel
+                    : (double) pyramid.getSampleRate() * INITIAL_VISIBLE_SECONDS / w);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (pyramid == null) {
+            return super.onTouchEvent(event);
+        }
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            // Keep the scroll container from taking over horizontal drags
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        scaleDetector.onTouchEvent(event);
+        gestureDetector.onTouchEvent(event);
+
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            scaling = false;
+            if (dragging) {
+                dragging = false;
+                if (scrubListener != null) {
+                    scrubListener.onScrub(positionMs, true);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        float middle = getHeight() / 2f;
+        float center = width / 2f;
+
+        if (pyramid == null || framesPerPixel <= 0 || barCount == 0) {
+            canvas.drawLine(0, middle, width, middle, unplayedPaint);
+            canvas.drawLine(center, 0, center, getHeight(), playheadPaint);
+            return;
+        }
+
+        // Align bars to the track rather than the screen so they do not shimmer while scrolling
+        double framesPerBar = barStride * framesPerPixel;
+        double centerFrame = (double) positionMs * pyramid.getSampleRate() / 1000;
+        double startFrame = centerFrame - center * framesPerPixel;
+        double firstBar = Math.floor(startFrame / framesPerBar);
+        float offset = (float) ((firstBar * framesPerBar - startFrame) / framesPerPixel);
+        pyramid.fillBars(firstBar * framesPerBar, framesPerBar, barCount, mins, maxs);
+
+        float halfHeight = middle * 0.9f;
+        int played = 0;
+        for (int i = 0; i < barCount; i++) {
+            float x = offset + i * barStride + barWidth / 2;
+            float top = middle - Math.max(maxs[i] * halfHeight, 0.5f);
+            float bottom = middle - Math.min(mins[i] * halfHeight, -0.5f);
+            lines[4 * i] = x;
+            lines[4 * i + 1] = top;
+            lines[4 * i + 2] = x;
+            lines[4 * i + 3] = bottom;
+            if (x < center) {
+                played = i + 1;
+            }
+        }
+        canvas.drawLines(lines, 0, played * 4, playedPaint);
+        canvas.drawLines(lines, played * 4, (barCount - played) * 4, unplayedPaint);
+        canvas.drawLine(center, 0, center, getHeight(), playheadPaint);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (!isInEditMode()) {
+            WaveformLoader.getInstance(getContext()).cancel(loadCallback);
+        }
+    }
+}
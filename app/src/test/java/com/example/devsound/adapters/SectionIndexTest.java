@@ -0,0 +1,89 @@
+package com.example.devsound.adapters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SectionIndexTest {
+
+    @Test
+    public void labels_foldCaseAndAccentsAndSkipLeadingPunctuation() {
+        assertEquals("A", SectionIndex.labelOf("abba"));
+        assertEquals("E", SectionIndex.labelOf("\u00c9milie"));
+        assertEquals("O", SectionIndex.labelOf("(ode) to joy"));
+        assertEquals("#", SectionIndex.labelOf("99 Luftballons"));
+        assertEquals("#", SectionIndex.labelOf("..."));
+        assertEquals("#", SectionIndex.labelOf(""));
+        assertEquals("#", SectionIndex.labelOf(null));
+    }
+
+    @Test
+    public void sections_startAtTheFirstRowOfEachLetter() {
+        SectionIndex index = SectionIndex.build(Arrays.asList(
+                "1999", "Africa", "alone", "Bad", "Believer", "Bohemian", "Creep", "Zombie"));
+
+        assertEquals(5, index.getSectionCount());
+        assertEquals(8, index.getItemCount());
+        String[] labels = { "#", "A", "B", "C", "Z" };
+        int[] positions = { 0, 1, 3, 6, 7 };
+        for (int section = 0; section < labels.length; section++) {
+            assertEquals(labels[section], index.getLabel(section));
+            assertEquals(positions[section], index.getPosition(section));
+        }
+    }
+
+    @Test
+    public void sectionForPosition_isTheLastSectionStartingAtOrBeforeIt() {
+        SectionIndex index = SectionIndex.build(Arrays.asList("a", "a", "b", "c", "c", "c"));
+
+        int[] expected = { 0, 0, 1, 2, 2, 2 };
+        for (int position = 0; position < expected.length; position++) {
+            assertEquals(expected[position], index.getSectionForPosition(position));
+        }
+        assertEquals(-1, SectionIndex.empty().getSectionForPosition(0));
+    }
+
+    @Test
+    public void letterSeenAgain_keepsItsFirstSection() {
+        // Collation that sorts the accented title after the plain letters
+        SectionIndex index = SectionIndex.build(Arrays.asList("Echo", "Fade", "\u00c9toile", "Gold"));
+
+        assertEquals(3, index.getSectionCount());
+        assertEquals("E", index.getLabel(0));
+        assertEquals(0, index.getPosition(0));
+        assertEquals("G", index.getLabel(2));
+        assertEquals(3, index.getPosition(2));
+    }
+
+    @Test
+    public void uncasedScripts_areGroupedPerScript() {
+        SectionIndex index = SectionIndex.build(Arrays.asList("Zoo", "\u6771\u4eac", "\u591c\u306b\u99c6\u3051\u308b", "\u3055\u304f\u3089", "\u3042\u308a\u304c\u3068\u3046"));
+
+        assertEquals(3, index.getSectionCount());
+        assertEquals("\u6771", index.getLabel(1));
+        assertEquals(1, index.getPosition(1));
+        assertEquals("\u3055", index.getLabel(2));
+        assertEquals(3, index.getPosition(2));
+    }
+
+    @Test
+    public void largeLibrary_positionsAscendAndCoverEverySection() {
+        List<String> titles = new ArrayList<>();
+        for (char c = 'A'; c <= 'Z'; c++) {
+            for (int i = 0; i < 2000; i++) {
+                titles.add(c + " song " + i);
+            }
+        }
+        SectionIndex index = SectionIndex.build(titles);
+
+        assertEquals(26, index.getSectionCount());
+        for (int section = 0; section < 26; section++) {
+            assertEquals(section * 2000, index.getPosition(section));
+            assertEquals(section, index.getSectionForPosition(section * 2000 + 1999));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.devsound.adapters;
+
+import com.example.devsound.models.Song;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SongRowTextsTest {
+
+    private static Song song(long id, String title, long durationMs, long modified) {
+        return new Song(id, title, "Artist", "Album", durationMs, null, null, null, modified);
+    }
+
+    @Test
+    public void duration_matchesSongFormatting() {
+        SongRowTexts texts = new SongRowTexts(10);
+        for (long ms : new long[] { 0, 999, 5000, 59999, 60000, 61000, 3599000, 3600000, 36000000 }) {
+            assertEquals(song(1, "t", ms, 0).getFormattedDuration(), texts.formatDuration(ms));
+        }
+        // Cached, not rebuilt
+        assertSame(texts.formatDuration(61000), texts.formatDuration(61400));
+    }
+
+    @Test
+    public void plainRow_isReplacedByMeasuredAndDroppedWhenTheFileChanges() {
+        SongRowTexts texts = new SongRowTexts(10);
+        Song song = song(1, null, 61000, 100);
+
+        SongRowTexts.Row plain = texts.getOrPlain(song);
+        assertEquals("Unknown Title", plain.title);
+        assertEquals("1:01", plain.duration);
+        assertFalse(plain.measured);
+        // Nothing to measure with yet
+        assertSame(plain, texts.measure(song));
+
+        texts.setMeasurer((text, field) -> (field == SongRowTexts.FIELD_TITLE ? "T:" : "A:") + text);
+        SongRowTexts.Row measured = texts.measure(song);
+        assertTrue(measured.measured);
+        assertEquals("T:Unknown Title", measured.title.toString());
+        assertEquals("A:Artist", measured.artist.toString());
+        assertSame(measured, texts.getOrPlain(song));
+
+        assertNull(texts.get(song(1, "Edited", 61000, 200)));
+    }
+
+    @Test
+    public void rows_areBoundedLeastRecentlyUsedFirst() {
+        SongRowTexts texts = new SongRowTexts(2);
+        Song first = song(1, "a", 1000, 0);
+        texts.getOrPlain(first);
+        texts.getOrPlain(song(2, "b", 1000, 0));
+        texts.get(first);
+        texts.getOrPlain(song(3, "c", 1000, 0));
+
+        assertNotNull(texts.get(first));
+        assertNull(texts.get(song(2, "b", 1000, 0)));
+    }
+
+    @Test
+    public void preparedRow_isReusedAcrossBindsWithoutReformatting() {
+        SongRowTexts texts = new SongRowTexts(10);
+        Song song = song(1, "Title", 61000, 0);
+
+        SongRowTexts.Row row = texts.getOrPlain(song);
+        for (int bind = 0; bind < 100; bind++) {
+            SongRowTexts.Row again = texts.getOrPlain(song);
+            assertSame(row, again);
+            assertSame(row.title, again.title);
+            assertSame(row.artist, again.artist);
+            assertSame(row.duration, again.duration);
+        }
+        // Rows of the same length share one formatted duration
+        assertSame(row.duration, texts.getOrPlain(song(2, "Other", 61000, 0)).duration);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.devsound.analysis;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LoudnessCacheTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("loudness", ".cache");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void results_surviveReload() throws IOException {
+        LoudnessCache cache = new LoudnessCache(file);
+        cache.put(new LoudnessCache.Entry(1, 100, -14.5f, 0.98f));
+        cache.put(new LoudnessCache.Entry(2, 200, -9.0f, 1.1f));
+
+        LoudnessCache reloaded = new LoudnessCache(file);
+
+        assertEquals(2, reloaded.size());
+        assertEquals(-14.5f, reloaded.get(1, 100).integratedLufs, 0f);
+        assertEquals(1.1f, reloaded.get(2, 200).truePeak, 0f);
+    }
+
+    @Test
+    public void changedFile_isAMiss() throws IOException {
+        LoudnessCache cache = new LoudnessCache(file);
+        cache.put(new LoudnessCache.Entry(1, 100, -14.5f, 0.98f));
+
+        assertNull(cache.get(1, 101));
+        assertFalse(new LoudnessCache(file).contains(1, 101));
+    }
+
+    @Test
+    public void truncatedRecord_isDroppedAndAppendsStillWork() throws IOException {
+        LoudnessCache cache = new LoudnessCache(file);
+        cache.put(new LoudnessCache.Entry(1, 100, -14.5f, 0.98f));
+        // Simulate a crash halfway through the next append
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{1, 2, 3, 4, 5});
+        }
+
+        LoudnessCache afterCrash = new LoudnessCache(file);
+        assertEquals(1, afterCrash.size());
+        afterCrash.put(new LoudnessCache.Entry(3, 300, -20f, 0.5f));
+
+        LoudnessCache reloaded = new LoudnessCache(file);
+        assertEquals(2, reloaded.size());
+        assertNotNull(reloaded.get(3, 300));
+    }
+
+    @Test
+    public void supersededRecords_areCompacted() throws IOException {
+        LoudnessCache cache = new LoudnessCache(file);
+        for (int i = 0; i < 500; i++) {
+            cache.put(new LoudnessCache.Entry(i % 5, i, -10f - i % 5, 0.9f));
+        }
+
+        assertTrue("File has " + file.length() + " bytes", file.length() < 100 * 24);
+        LoudnessCache reloaded = new LoudnessCache(file);
+        assertEquals(5, reloaded.size());
+        assertNotNull(reloaded.get(4, 499));
+    }
+
+    @Test
+    public void gain_reachesTargetButNeverClips() {
+        LoudnessCache.Entry quiet = new LoudnessCache.Entry(1, 0, -24f, 0.25f);
+        assertEquals(6f, quiet.getGainDb(-18f), 0.01f);
+
+        // Needs +10 dB but the true peak only leaves about 3.5 dB of headroom
+        LoudnessCache.Entry peaky = new LoudnessCache.Entry(2, 0, -28f, 0.67f);
+        assertEquals(-20 * Math.log10(0.67), peaky.getGainDb(-18f), 0.01);
+
+        LoudnessCache.Entry loud = new LoudnessCache.Entry(3, 0, -8f, 1.2f);
+        assertEquals(-10f, loud.getGainDb(-18f), 0.01f);
+
+        LoudnessCache.Entry failed = new LoudnessCache.Entry(4, 0, Float.NaN, 0f);
+        assertEquals(0f, failed.getGainDb(-18f), 0f);
+    }
+}
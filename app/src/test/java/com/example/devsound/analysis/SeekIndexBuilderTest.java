@@ -0,0 +1,164 @@
+package com.example.devsound.analysis;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scans synthetic VBR MP3 files: frames of varying size with silent payloads,
+ * wrapped in the tags and junk that real files carry.
+ */
+public class SeekIndexBuilderTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int SAMPLES_PER_FRAME = 1152;
+    // MPEG 1 layer III bitrate indexes for 32, 128 and 320 kbps
+    private static final int[] BITRATE_INDEXES = {1, 9, 14};
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("seekindex", ".mp3");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * MPEG 1 layer III, 44.1 kHz, stereo
+     */
+    static int header(int bitrateIndex) {
+        return 0xFFFB0000 | (bitrateIndex << 12);
+    }
+
+    static int frameBytes(int bitrateIndex) {
+        int[] kbps = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+        return 144 * kbps[bitrateIndex] * 1000 / SAMPLE_RATE;
+    }
+
+    static void writeFrame(ByteArrayOutputStream out, int bitrateIndex, String tag) throws IOException {
+        byte[] frame = new byte[frameBytes(bitrateIndex)];
+        int header = header(bitrateIndex);
+        for (int i = 0; i < 4; i++) {
+            frame[i] = (byte) (header >>> (24 - 8 * i));
+        }
+        if (tag != null) {
+            // Xing/Info tags sit after the side information: 32 bytes for MPEG 1 stereo
+            byte[] ascii = tag.getBytes("US-ASCII");
+            System.arraycopy(ascii, 0, frame, 4 + 32, ascii.length);
+        }
+        out.write(frame);
+    }
+
+    /**
+     * @return byte offset of every audio frame written
+     */
+    private long[] writeFile(int frames, boolean id3, boolean xing, boolean junk) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (id3) {
+            // ID3v2.4 header with a syncsafe size of 300 bytes
+            out.write(new byte[]{'I', 'D', '3', 4, 0, 0, 0, 0, 2, 44});
+            out.write(new byte[300]);
+        }
+        if (xing) {
+            writeFrame(out, 9, "Xing");
+        }
+        long[] offsets = new long[frames];
+        for (int i = 0; i < frames; i++) {
+            if (junk && i == frames / 2) {
+                out.write(new byte[]{0x12, 0x34, (byte) 0xFF, 0x00, 0x56});
+            }
+            offsets[i] = out.size();
+            writeFrame(out, BITRATE_INDEXES[(i * 7) % BITRATE_INDEXES.length], null);
+        }
+        // ID3v1 tag at the end
+        out.write("TAG".getBytes("US-ASCII"));
+        out.write(new byte[125]);
+        try (FileOutputStream fileOut = new FileOutputStream(file)) {
+            fileOut.write(out.toByteArray());
+        }
+        return offsets;
+    }
+
+    private SeekIndex build() throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return SeekIndexBuilder.build(in.getChannel(), SeekIndexBuilder.DEFAULT_INTERVAL_US);
+        }
+    }
+
+    @Test
+    public void indexesVbrFramesAtEachInterval() throws IOException {
+        int frames = 500;
+        long[] offsets = writeFile(frames, true, true, true);
+        SeekIndex index = build();
+
+        assertNotNull(index);
+        assertEquals(SAMPLE_RATE, index.getSampleRate());
+        assertEquals((long) frames * SAMPLES_PER_FRAME * 1000000L / SAMPLE_RATE, index.getDurationUs());
+        // One entry per second, starting at the first audio frame after the tags
+        assertEquals((frames * SAMPLES_PER_FRAME + SAMPLE_RATE - 1) / SAMPLE_RATE, index.getEntryCount());
+        for (int i = 0; i < index.getEntryCount(); i++) {
+            long timeUs = index.getTimeUs(i);
+            int frame = (int) ((index.getTimeUs(i) * SAMPLE_RATE / 1000000L + SAMPLES_PER_FRAME - 1)
+                    / SAMPLES_PER_FRAME);
+            assertEquals("entry " + i, offsets[frame], index.getOffset(i));
+            assertTrue(timeUs >= i * 1000000L && timeUs < i * 1000000L + 30000);
+        }
+    }
+
+    @Test
+    public void findsTheEntryAtOrBeforeATime() throws IOException {
+        writeFile(500, false, false, false);
+        SeekIndex index = build();
+
+        assertEquals(0, index.find(0));
+        assertEquals(0, index.find(999000));
+        assertEquals(3, index.find(3500000));
+        assertEquals(index.getEntryCount() - 1, index.find(Long.MAX_VALUE / SAMPLE_RATE));
+        assertEquals(4, index.findNearest(3700000));
+        assertEquals(3, index.findNearest(3200000));
+    }
+
+    @Test
+    public void roundTripsCompactly() throws IOException {
+        writeFile(2000, true, false, false);
+        SeekIndex index = build();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        assertTrue("bytes: " + bytes.size(), bytes.size() <= 24 + 6 * index.getEntryCount());
+
+        SeekIndex read = SeekIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(index.getEntryCount(), read.getEntryCount());
+        assertEquals(index.getDurationUs(), read.getDurationUs());
+        for (int i = 0; i < index.getEntryCount(); i++) {
+            assertEquals(index.getOffset(i), read.getOffset(i));
+            assertEquals(index.getTimeUs(i), read.getTimeUs(i));
+        }
+    }
+
+    @Test
+    public void rejectsNonMpegFiles() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            byte[] data = new byte[20000];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) (i * 31);
+            }
+            out.write(data);
+        }
+        assertNull(build());
+    }
+}
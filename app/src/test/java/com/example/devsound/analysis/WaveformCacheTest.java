@@ -0,0 +1,110 @@
+package com.example.devsound.analysis;
+
+import com.example.devsound.dsp.EnvelopeBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class WaveformCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("waveforms", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static WaveformData ramp(int points) {
+        float[] peaks = new float[points];
+        float[] rms = new float[points];
+        for (int i = 0; i < points; i++) {
+            peaks[i] = i / (float) (points - 1);
+            rms[i] = peaks[i] / 2;
+        }
+        return new WaveformData(peaks, rms);
+    }
+
+    @Test
+    public void envelope_survivesReloadWithinQuantization() throws IOException {
+        new WaveformCache(directory, 1 << 20, 4).put(7, 100, ramp(512));
+
+        WaveformData loaded = new WaveformCache(directory, 1 << 20, 4).get(7, 100);
+
+        assertNotNull(loaded);
+        assertEquals(512, loaded.getPointCount());
+        for (int i = 0; i < 512; i++) {
+            assertEquals(i / 511f, loaded.getPeak(i), 1f / 255);
+            assertEquals(i / 1022f, loaded.getRms(i), 1f / 255);
+        }
+        assertNull(new WaveformCache(directory, 1 << 20, 4).get(7, 101));
+    }
+
+    @Test
+    public void diskBudget_evictsLeastRecentlyUsed() throws IOException {
+        // Each file is a 12-byte header plus 2 bytes per point
+        WaveformCache cache = new WaveformCache(directory, 3 * 1036, 0);
+        cache.put(1, 0, ramp(512));
+        new File(directory, "1_0.wf").setLastModified(1000000);
+        cache.put(2, 0, ramp(512));
+        new File(directory, "2_0.wf").setLastModified(2000000);
+        cache.put(3, 0, ramp(512));
+        new File(directory, "3_0.wf").setLastModified(3000000);
+
+        // Reading song 1 makes song 2 the oldest
+        assertNotNull(cache.get(1, 0));
+        cache.put(4, 0, ramp(512));
+
+        assertTrue(cache.getDiskUsage() <= 3 * 1036);
+        assertNull(cache.get(2, 0));
+        assertNotNull(cache.get(1, 0));
+        assertNotNull(cache.get(4, 0));
+    }
+
+    @Test
+    public void memoryHit_needsNoDisk() throws IOException {
+        WaveformCache cache = new WaveformCache(directory, 1 << 20, 4);
+        assertNull(cache.getFromMemory(1, 0));
+
+        cache.put(1, 0, ramp(64));
+
+        assertNotNull(cache.getFromMemory(1, 0));
+        assertNull(new WaveformCache(directory, 1 << 20, 4).getFromMemory(1, 0));
+    }
+
+    @Test
+    public void pyramid_isMappedBackFromDisk() throws IOException {
+        EnvelopeBuilder envelope = new EnvelopeBuilder(1, 16);
+        float[] samples = new float[1600];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (float) Math.sin(i * 0.1) * 0.5f;
+        }
+        envelope.addFloat(samples, 0, samples.length);
+        envelope.finish();
+        WaveformCache cache = new WaveformCache(directory, 1 << 20, 4);
+
+        cache.putPyramid(5, 50, WaveformPyramid.build(envelope, 8000));
+        WaveformPyramid mapped = new WaveformCache(directory, 1 << 20, 4).getPyramid(5, 50);
+
+        assertNotNull(mapped);
+        assertEquals(200, mapped.getDurationMs());
+        assertEquals(100, mapped.getLevelSize(0));
+        assertNull(cache.getPyramid(5, 51));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.devsound.analysis;
+
+import com.example.devsound.dsp.EnvelopeBuilder;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class WaveformPyramidTest {
+    private static final int SAMPLE_RATE = 44100;
+
+    /**
+     * Mono ramp of bursts: block b swings between -b/blocks and +b/(2 * blocks)
+     */
+    private static EnvelopeBuilder rampEnvelope(int blocks) {
+        EnvelopeBuilder builder = new EnvelopeBuilder(1, 64);
+        float[] samples = new float[64];
+        for (int b = 0; b < blocks; b++) {
+            float level = b / (float) blocks;
+            for (int i = 0; i < 64; i++) {
+                samples[i] = i % 2 == 0 ? -level : level / 2;
+            }
+            builder.addFloat(samples, 0, 64);
+        }
+        builder.finish();
+        return builder;
+    }
+
+    @Test
+    public void levels_halveUntilOneEntry() {
+        WaveformPyramid pyramid = WaveformPyramid.build(rampEnvelope(1000), SAMPLE_RATE);
+
+        assertEquals(11, pyramid.getLevelCount());
+        assertEquals(1000, pyramid.getLevelSize(0));
+        assertEquals(500, pyramid.getLevelSize(1));
+        assertEquals(1, pyramid.getLevelSize(10));
+        assertEquals(64000, pyramid.getTotalFrames());
+        assertEquals(64L << 3, pyramid.getBlockFrames(3));
+        // Two bytes per entry at every level: under twice the size of level 0
+        assertTrue(pyramid.getByteSize() < 200 + 4 * 1000);
+    }
+
+    @Test
+    public void everyZoomLevel_reportsTheSameExtremes() {
+        WaveformPyramid pyramid = WaveformPyramid.build(rampEnvelope(1000), SAMPLE_RATE);
+        float[] mins = new float[4];
+        float[] maxs = new float[4];
+
+        pyramid.fillBars(0, 64, 1, mins, maxs);
+        assertEquals(0f, mins[0], 0f);
+
+        for (double framesPerBar : new double[]{64, 100, 1000, 16000}) {
+            // The last bar before the end holds the loudest block
+            double lastBar = Math.floor(64000 / framesPerBar - 1) * framesPerBar;
+            pyramid.fillBars(lastBar, framesPerBar, 1, mins, maxs);
+            assertEquals("frames per bar " + framesPerBar, -0.999f, mins[0], 0.01f);
+            assertEquals("frames per bar " + framesPerBar, 0.4995f, maxs[0], 0.01f);
+        }
+    }
+
+    @Test
+    public void chooseLevel_picksBlocksJustFinerThanABar() {
+        WaveformPyramid pyramid = WaveformPyramid.build(rampEnvelope(1000), SAMPLE_RATE);
+
+        assertEquals(0, pyramid.chooseLevel(10));
+        assertEquals(0, pyramid.chooseLevel(127));
+        assertEquals(1, pyramid.chooseLevel(128));
+        assertEquals(4, pyramid.chooseLevel(1500));
+        assertEquals(10, pyramid.chooseLevel(1e9));
+    }
+
+    @Test
+    public void barsOutsideTheTrack_areEmpty() {
+        WaveformPyramid pyramid = WaveformPyramid.build(rampEnvelope(100), SAMPLE_RATE);
+        float[] mins = new float[3];
+        float[] maxs = new float[3];
+
+        pyramid.fillBars(-6400, 3200, 3, mins, maxs);
+
+        assertEquals(0f, mins[0], 0f);
+        assertEquals(0f, maxs[1], 0f);
+        assertTrue(mins[2] < 0);
+    }
+
+    @Test
+    public void mappedFile_matchesBuiltPyramid() throws IOException {
+        WaveformPyramid built = WaveformPyramid.build(rampEnvelope(777), SAMPLE_RATE);
+        File file = File.createTempFile("pyramid", ".wfp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                built.writeTo(out);
+            }
+            WaveformPyramid mapped = WaveformPyramid.map(file);
+
+            assertEquals(built.getLevelCount(), mapped.getLevelCount());
+            assertEquals(built.getDurationMs(), mapped.getDurationMs());
+            float[] a = new float[50];
+            float[] b = new float[50];
+            float[] c = new float[50];
+            float[] d = new float[50];
+            built.fillBars(1000, 700, 50, a, b);
+            mapped.fillBars(1000, 700, 50, c, d);
+            assertArrayEquals(a, c, 0f);
+            assertArrayEquals(b, d, 0f);
+
+            // A file cut short is rejected rather than read past its end
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(file.length() - 10);
+            }
+            try {
+                WaveformPyramid.map(file);
+                fail("Truncated pyramid was accepted");
+            } catch (IOException expected) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
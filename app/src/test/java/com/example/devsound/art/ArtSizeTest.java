@@ -0,0 +1,31 @@
+package com.example.devsound.art;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ArtSizeTest {
+
+    @Test
+    public void subsamplesWhileBothSidesStayAtLeastTheTarget() {
+        // 1000 / 8 = 125 still covers a 120 px row; 1000 / 16 would not
+        assertEquals(8, ArtSize.sampleSize(1000, 1000, 120, 120));
+        assertEquals(4, ArtSize.sampleSize(1000, 500, 120, 120));
+        assertEquals(1, ArtSize.sampleSize(200, 200, 120, 120));
+    }
+
+    @Test
+    public void neverUpscalesOrDividesByZero() {
+        assertEquals(1, ArtSize.sampleSize(64, 64, 500, 500));
+        assertEquals(1, ArtSize.sampleSize(0, 0, 120, 120));
+        assertEquals(1, ArtSize.sampleSize(1000, 1000, 0, 0));
+    }
+
+    @Test
+    public void scalesTheShorterSideDownToTheBucket() {
+        assertEquals(0.5f, ArtSize.scaleToFill(600, 400, 200), 1e-6f);
+        assertEquals(1f, ArtSize.scaleToFill(150, 150, 200), 1e-6f);
+        assertEquals(ArtSize.BUCKET_LIST, ArtSize.bucketFor(132, 330));
+        assertEquals(ArtSize.BUCKET_NOW_PLAYING, ArtSize.bucketFor(864, 330));
+    }
+}
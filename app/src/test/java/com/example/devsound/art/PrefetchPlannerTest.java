@@ -0,0 +1,51 @@
+package com.example.devsound.art;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrefetchPlannerTest {
+    private static final long FRAME_NS = 16666667L;
+
+    private static PrefetchPlanner scrolling(int dyPerFrame, long frameNs, int frames) {
+        PrefetchPlanner planner = new PrefetchPlanner(FRAME_NS);
+        long now = 1000000000L;
+        for (int i = 0; i < frames; i++) {
+            planner.onScrolled(dyPerFrame, now);
+            now += frameNs;
+        }
+        return planner;
+    }
+
+    @Test
+    public void fling_looksFurtherAheadInItsDirection() {
+        // 100 px per frame at 60 fps is 6000 px/s, 3000 px or 30 rows of 100 px in half a second
+        PrefetchPlanner down = scrolling(100, FRAME_NS, 10);
+        assertArrayEquals(new int[] { 21, 51 }, down.plan(10, 20, 1000, 100));
+
+        PrefetchPlanner slow = scrolling(5, FRAME_NS, 10);
+        assertArrayEquals(new int[] { 21, 21 + PrefetchPlanner.MIN_ROWS }, slow.plan(10, 20, 1000, 100));
+
+        PrefetchPlanner up = scrolling(-40, FRAME_NS, 10);
+        assertArrayEquals(new int[] { 0, 10 }, up.plan(10, 20, 1000, 100));
+    }
+
+    @Test
+    public void plan_staysInsideTheList() {
+        PrefetchPlanner down = scrolling(100, FRAME_NS, 10);
+        assertArrayEquals(new int[] { 995, 1000 }, down.plan(985, 994, 1000, 100));
+        assertArrayEquals(new int[] { 1000, 1000 }, down.plan(990, 999, 1000, 100));
+    }
+
+    @Test
+    public void slowFrames_pauseUntilTheListRests() {
+        assertFalse(scrolling(100, FRAME_NS, 10).isBudgetTight());
+
+        PrefetchPlanner janky = scrolling(100, 3 * FRAME_NS, 10);
+        assertTrue(janky.isBudgetTight());
+
+        janky.onIdle();
+        assertFalse(janky.isBudgetTight());
+        assertEquals(0f, janky.getVelocity(), 0f);
+    }
+}
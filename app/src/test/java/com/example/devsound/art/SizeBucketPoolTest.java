@@ -0,0 +1,64 @@
+package com.example.devsound.art;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SizeBucketPoolTest {
+    private final List<byte[]> discarded = new ArrayList<>();
+
+    private SizeBucketPool<byte[]> pool(long maxBytes) {
+        return new SizeBucketPool<>(new SizeBucketPool.Sizer<byte[]>() {
+            @Override
+            public int sizeOf(byte[] item) {
+                return item.length;
+            }
+
+            @Override
+            public void discard(byte[] item) {
+                discarded.add(item);
+            }
+        }, maxBytes);
+    }
+
+    @Test
+    public void request_isServedFromTheSmallestBucketThatFits() {
+        SizeBucketPool<byte[]> pool = pool(10000);
+        byte[] small = new byte[1000];
+        byte[] large = new byte[4000];
+        pool.put(large);
+        pool.put(small);
+
+        assertSame(small, pool.get(900));
+        // 4000 is more than twice 1500, so it is not handed out
+        assertNull(pool.get(1500));
+        assertSame(large, pool.get(3000));
+        assertNull(pool.get(100));
+
+        assertEquals(2, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        assertEquals(0, pool.getBytes());
+    }
+
+    @Test
+    public void budget_dropsTheLeastRecentlyReturned() {
+        SizeBucketPool<byte[]> pool = pool(2500);
+        byte[] first = new byte[1000];
+        byte[] second = new byte[1000];
+        byte[] third = new byte[1000];
+        pool.put(first);
+        pool.put(second);
+        pool.put(third);
+
+        assertEquals(1, discarded.size());
+        assertSame(first, discarded.get(0));
+        assertEquals(2000, pool.getBytes());
+
+        pool.trimTo(0);
+        assertEquals(3, discarded.size());
+        assertNull(pool.get(1000));
+    }
+}
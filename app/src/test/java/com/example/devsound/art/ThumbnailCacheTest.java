@@ -0,0 +1,108 @@
+package com.example.devsound.art;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailCacheTest {
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("thumbnails", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static ThumbnailCache.Writer bytes(int count) {
+        return out -> out.write(new byte[count]);
+    }
+
+    @Test
+    public void thumbnail_isReadDirectlyAfterReopening() throws IOException {
+        new ThumbnailCache(directory, 1 << 20).put(7, ArtSize.BUCKET_LIST, 100, bytes(300));
+
+        File file = new ThumbnailCache(directory, 1 << 20).get(7, ArtSize.BUCKET_LIST, 100);
+
+        assertNotNull(file);
+        assertEquals(300, Files.readAllBytes(file.toPath()).length);
+        assertNull(new ThumbnailCache(directory, 1 << 20).get(7, ArtSize.BUCKET_NOW_PLAYING, 100));
+    }
+
+    @Test
+    public void newerSource_missesAndReplacesTheOldFile() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(directory, 1 << 20);
+        cache.put(7, ArtSize.BUCKET_LIST, 100, bytes(10));
+
+        // Another track of the album, older than the art, still hits
+        assertNotNull(cache.get(7, ArtSize.BUCKET_LIST, 50));
+        assertNull(cache.get(7, ArtSize.BUCKET_LIST, 200));
+
+        cache.put(7, ArtSize.BUCKET_LIST, 200, bytes(20));
+        assertNotNull(cache.get(7, ArtSize.BUCKET_LIST, 200));
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void missingArt_isRememberedUntilATrackChanges() throws IOException {
+        new ThumbnailCache(directory, 1 << 20).markMissing(7, 100);
+
+        ThumbnailCache reopened = new ThumbnailCache(directory, 1 << 20);
+        assertTrue(reopened.isMissing(7, 100));
+        assertNull(reopened.get(7, ArtSize.BUCKET_LIST, 100));
+        assertFalse(reopened.isMissing(8, 100));
+        assertFalse(reopened.isMissing(7, 200));
+        assertFalse(reopened.isMissing(7, 100));
+    }
+
+    @Test
+    public void failedWrite_leavesNothingBehind() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(directory, 1 << 20);
+        cache.put(7, ArtSize.BUCKET_LIST, 100, bytes(10));
+        try {
+            cache.put(7, ArtSize.BUCKET_LIST, 200, out -> {
+                out.write(1);
+                throw new IOException("encoder failed");
+            });
+            fail();
+        } catch (IOException expected) {
+        }
+
+        assertNotNull(cache.get(7, ArtSize.BUCKET_LIST, 100));
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void diskBudget_evictsLeastRecentlyUsed() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(directory, 2500);
+        cache.put(1, ArtSize.BUCKET_LIST, 1, bytes(1000));
+        cache.put(2, ArtSize.BUCKET_LIST, 1, bytes(1000));
+        new File(directory, "1_0_1.thumb").setLastModified(System.currentTimeMillis() - 20000);
+        new File(directory, "2_0_1.thumb").setLastModified(System.currentTimeMillis() - 10000);
+        // Reading album 1 makes album 2 the oldest
+        assertNotNull(cache.get(1, ArtSize.BUCKET_LIST, 1));
+
+        cache.put(3, ArtSize.BUCKET_LIST, 1, bytes(1000));
+
+        assertNotNull(cache.get(1, ArtSize.BUCKET_LIST, 1));
+        assertNull(cache.get(2, ArtSize.BUCKET_LIST, 1));
+        assertNotNull(cache.get(3, ArtSize.BUCKET_LIST, 1));
+        assertTrue(cache.getDiskUsage() <= 2500);
+    }
+}
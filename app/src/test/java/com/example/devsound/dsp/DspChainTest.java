@@ -0,0 +1,253 @@
+package com.example.devsound.dsp;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the EQ/limiter chain for correct response, in-place processing
+ * without allocation, and throughput far above real time on one core.
+ */
+public class DspChainTest {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int BUFFER_FRAMES = 4096;
+
+    private DspChain chain;
+
+    @Before
+    public void setUp() {
+        chain = new DspChain();
+        chain.setSampleRate(SAMPLE_RATE);
+    }
+
+    private static float[] sine(double frequency, double amplitude, int frames) {
+        float[] samples = new float[frames * CHANNELS];
+        for (int f = 0; f < frames; f++) {
+            float v = (float) (amplitude * Math.sin(2 * Math.PI * frequency * f / SAMPLE_RATE));
+            for (int ch = 0; ch < CHANNELS; ch++) {
+                samples[f * CHANNELS + ch] = v;
+            }
+        }
+        return samples;
+    }
+
+    private static double rms(float[] samples, int fromFrame) {
+        double sum = 0;
+        int count = 0;
+        for (int i = fromFrame * CHANNELS; i < samples.length; i++) {
+            sum += samples[i] * samples[i];
+            count++;
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    private static double peak(float[] samples) {
+        double max = 0;
+        for (float s : samples) {
+            max = Math.max(max, Math.abs(s));
+        }
+        return max;
+    }
+
+    @Test
+    public void flatSettings_leaveSignalUntouched() {
+        float[] input = sine(1000, 0.5, BUFFER_FRAMES);
+        float[] output = input.clone();
+
+        assertFalse(chain.isActive());
+        chain.process(output, 0, BUFFER_FRAMES, CHANNELS);
+
+        assertArrayEquals(input, output, 0f);
+    }
+
+    @Test
+    public void graphicBand_boostsItsCenterFrequency() {
+        chain.setGraphicBandGain(5, 6f); // 1 kHz
+        float[] input = sine(1000, 0.1, SAMPLE_RATE);
+        float[] output = input.clone();
+
+        chain.process(output, 0, SAMPLE_RATE, CHANNELS);
+
+        // Skip the filter's settling time
+        double gainDb = 20 * Math.log10(rms(output, SAMPLE_RATE / 10) / rms(input, SAMPLE_RATE / 10));
+        assertEquals(6.0, gainDb, 0.5);
+    }
+
+    @Test
+    public void graphicBand_leavesDistantFrequenciesAlone() {
+        chain.setGraphicBandGain(0, 12f); // 31 Hz
+        float[] input = sine(8000, 0.1, SAMPLE_RATE / 4);
+        float[] output = input.clone();
+
+        chain.process(output, 0, SAMPLE_RATE / 4, CHANNELS);
+
+        double gainDb = 20 * Math.log10(rms(output, 1000) / rms(input, 1000));
+        assertEquals(0.0, gainDb, 0.1);
+    }
+
+    @Test
+    public void biquadDesigns_matchTheirNominalGain() {
+        double[] c = new double[Biquad.COEFFICIENT_COUNT];
+
+        Biquad.peaking(SAMPLE_RATE, 2000, 1.0, -9, c, 0);
+        assertEquals(-9.0, Biquad.magnitudeDb(c, 0, SAMPLE_RATE, 2000), 0.01);
+
+        Biquad.lowShelf(SAMPLE_RATE, 200, 0.707, 6, c, 0);
+        assertEquals(6.0, Biquad.magnitudeDb(c, 0, SAMPLE_RATE, 10), 0.1);
+        assertEquals(0.0, Biquad.magnitudeDb(c, 0, SAMPLE_RATE, 10000), 0.1);
+
+        Biquad.highShelf(SAMPLE_RATE, 5000, 0.707, -4, c, 0);
+        assertEquals(-4.0, Biquad.magnitudeDb(c, 0, SAMPLE_RATE, 20000), 0.2);
+
+        Biquad.highPass(SAMPLE_RATE, 80, 0.707, c, 0);
+        assertEquals(-3.0, Biquad.magnitudeDb(c, 0, SAMPLE_RATE, 80), 0.1);
+    }
+
+    @Test
+    public void limiter_keepsPeaksUnderThreshold() {
+        chain.setPreampDb(12f);
+        float[] samples = sine(440, 0.9, SAMPLE_RATE / 2);
+
+        chain.process(samples, 0, SAMPLE_RATE / 2, CHANNELS);
+
+        double threshold = Math.pow(10, DspChain.LIMITER_THRESHOLD_DB / 20);
+        assertTrue("Peak " + peak(samples), peak(samples) <= threshold + 1e-6);
+    }
+
+    @Test
+    public void pcm16Buffer_matchesShortArrayProcessing() {
+        chain.setGraphicBandGain(3, 4f);
+        chain.setParametricBand(0, Biquad.TYPE_HIGH_SHELF, 6000, 0.7f, -3f);
+
+        float[] source = sine(250, 0.4, BUFFER_FRAMES);
+        short[] shorts = new short[source.length];
+        ByteBuffer bytes = ByteBuffer.allocateDirect(source.length * 2).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < source.length; i++) {
+            shorts[i] = (short) (source[i] * 32767);
+            bytes.putShort(i * 2, shorts[i]);
+        }
+
+        chain.process(shorts, 0, BUFFER_FRAMES, CHANNELS);
+        chain.reset();
+        chain.process(bytes, 0, bytes.capacity(), CHANNELS);
+
+        assertEquals(0, bytes.position());
+        for (int i = 0; i < shorts.length; i++) {
+            assertEquals(shorts[i], bytes.getShort(i * 2));
+        }
+    }
+
+    @Test
+    public void coefficientSwap_isPickedUpOnTheNextBuffer() {
+        float[] first = sine(1000, 0.1, BUFFER_FRAMES);
+        chain.process(first, 0, BUFFER_FRAMES, CHANNELS);
+        DspChain.Coefficients before = chain.getCoefficients();
+
+        chain.setGraphicBandGain(5, -12f);
+
+        assertNotSame(before, chain.getCoefficients());
+        assertTrue(chain.isActive());
+        float[] second = sine(1000, 0.1, SAMPLE_RATE / 4);
+        chain.process(second, 0, SAMPLE_RATE / 4, CHANNELS);
+        assertTrue(rms(second, 2000) < 0.1 * 0.3);
+    }
+
+    @Test
+    public void concurrentSliderMoves_neverCorruptTheOutput() throws InterruptedException {
+        chain.setGraphicBandGain(2, 3f);
+        Thread ui = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                chain.setGraphicBandGain(i % DspChain.GRAPHIC_BAND_COUNT, (i % 25) - 12f);
+            }
+        });
+        ui.start();
+
+        float[] samples = new float[BUFFER_FRAMES * CHANNELS];
+        while (ui.isAlive()) {
+            float[] input = sine(300, 0.5, BUFFER_FRAMES);
+            System.arraycopy(input, 0, samples, 0, samples.length);
+            chain.process(samples, 0, BUFFER_FRAMES, CHANNELS);
+            for (float s : samples) {
+                assertFalse(Float.isNaN(s));
+                assertTrue(Math.abs(s) <= 1f);
+            }
+        }
+        ui.join();
+    }
+
+    @Test
+    public void processing_allocatesNothing() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+
+        configureAllBands();
+        float[] samples = sine(440, 0.5, BUFFER_FRAMES);
+        ByteBuffer pcm = ByteBuffer.allocateDirect(BUFFER_FRAMES * CHANNELS * 2).order(ByteOrder.nativeOrder());
+        // Warm up so the JIT has compiled the loops
+        for (int i = 0; i < 200; i++) {
+            chain.process(samples, 0, BUFFER_FRAMES, CHANNELS);
+            chain.process(pcm, 0, pcm.capacity(), CHANNELS);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            chain.process(samples, 0, BUFFER_FRAMES, CHANNELS);
+            chain.process(pcm, 0, pcm.capacity(), CHANNELS);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        // Allow for the measurement itself; a per-buffer allocation would be tens of KB here
+        assertTrue("Allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    @Test
+    public void processing_runsFarUnderRealTime() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isCurrentThreadCpuTimeSupported());
+        threads.setThreadCpuTimeEnabled(true);
+
+        configureAllBands();
+        float[] samples = sine(440, 0.3, BUFFER_FRAMES);
+        int seconds = 20;
+        int buffers = seconds * SAMPLE_RATE / BUFFER_FRAMES;
+        // Warm up so the JIT has compiled the loops
+        for (int i = 0; i < buffers; i++) {
+            chain.process(samples, 0, BUFFER_FRAMES, CHANNELS);
+        }
+
+        // CPU time of this thread alone, so a busy machine does not fail the test
+        long before = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < buffers; i++) {
+            chain.process(samples, 0, BUFFER_FRAMES, CHANNELS);
+        }
+        long cpuNs = threads.getCurrentThreadCpuTime() - before;
+
+        long audioNs = buffers * (long) BUFFER_FRAMES * 1_000_000_000L / SAMPLE_RATE;
+        // Far looser than the real margin; playback needs the chain well under real time
+        assertTrue("Took " + cpuNs / 1_000_000 + " ms of CPU for " + audioNs / 1_000_000 + " ms of audio",
+                cpuNs < audioNs / 10);
+    }
+
+    private void configureAllBands() {
+        float[] gains = new float[DspChain.GRAPHIC_BAND_COUNT];
+        for (int i = 0; i < gains.length; i++) {
+            gains[i] = (i % 2 == 0) ? 3f : -2f;
+        }
+        chain.setGraphicBandGains(gains);
+        chain.setParametricBand(0, Biquad.TYPE_HIGH_PASS, 30, 0.707f, 0f);
+        chain.setParametricBand(1, Biquad.TYPE_PEAKING, 3500, 2f, -4f);
+        chain.setParametricBand(2, Biquad.TYPE_LOW_SHELF, 120, 0.707f, 2f);
+        chain.setParametricBand(3, Biquad.TYPE_HIGH_SHELF, 10000, 0.707f, 1.5f);
+        chain.setPreampDb(-3f);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.devsound.dsp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class EnvelopeBuilderTest {
+
+    @Test
+    public void loudAndQuietHalves_showInTheEnvelope() {
+        EnvelopeBuilder builder = new EnvelopeBuilder(2, 100);
+        float[] samples = new float[2 * 10000];
+        for (int f = 0; f < 10000; f++) {
+            float amplitude = f < 5000 ? 0.8f : 0.1f;
+            float v = (float) (amplitude * Math.sin(2 * Math.PI * f / 50.0));
+            samples[2 * f] = v;
+            samples[2 * f + 1] = v;
+        }
+
+        builder.addFloat(samples, 0, 10000);
+        builder.finish();
+        float[] peaks = new float[10];
+        float[] rms = new float[10];
+        builder.resample(10, peaks, rms);
+
+        assertEquals(100, builder.getBlockCount());
+        assertEquals(0.8f, peaks[0], 0.01f);
+        assertEquals(0.8f / Math.sqrt(2), rms[4], 0.01f);
+        assertEquals(0.1f, peaks[9], 0.01f);
+        assertEquals(0.1f / Math.sqrt(2), rms[5], 0.01f);
+    }
+
+    @Test
+    public void partialBlock_isKeptAndShortTracksRepeatBlocks() {
+        EnvelopeBuilder builder = new EnvelopeBuilder(1, 512);
+        float[] samples = {0.5f, -0.25f, 0.1f};
+
+        builder.addFloat(samples, 0, samples.length);
+        builder.finish();
+        float[] peaks = new float[4];
+        float[] rms = new float[4];
+        builder.resample(4, peaks, rms);
+
+        assertEquals(1, builder.getBlockCount());
+        for (float peak : peaks) {
+            assertEquals(0.5f, peak, 0f);
+        }
+    }
+
+    @Test
+    public void pcm16Input_matchesFloatInput() {
+        int frames = 4096;
+        ByteBuffer pcm = ByteBuffer.allocateDirect(frames * 4).order(ByteOrder.nativeOrder());
+        float[] quantized = new float[frames * 2];
+        for (int i = 0; i < frames * 2; i++) {
+            short s = (short) Math.round(Math.sin(i * 0.01) * 20000);
+            pcm.putShort(i * 2, s);
+            quantized[i] = s / 32768f;
+        }
+
+        EnvelopeBuilder fromPcm = new EnvelopeBuilder(2);
+        fromPcm.addPcm16(pcm, 0, pcm.capacity());
+        fromPcm.finish();
+        EnvelopeBuilder fromFloat = new EnvelopeBuilder(2);
+        fromFloat.addFloat(quantized, 0, frames);
+        fromFloat.finish();
+
+        float[] a = new float[8];
+        float[] b = new float[8];
+        float[] ra = new float[8];
+        float[] rb = new float[8];
+        fromPcm.resample(8, a, ra);
+        fromFloat.resample(8, b, rb);
+        assertArrayEquals(b, a, 1e-6f);
+        assertArrayEquals(rb, ra, 1e-6f);
+        assertEquals(0, pcm.position());
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.devsound.dsp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reference signals from EBU Tech 3341 and simple true-peak cases.
+ */
+public class LoudnessMeterTest {
+    private static final int SAMPLE_RATE = 48000;
+
+    private static float[] stereoSine(double frequency, double amplitudeDb, double phase, double seconds) {
+        int frames = (int) (SAMPLE_RATE * seconds);
+        double amplitude = Math.pow(10, amplitudeDb / 20);
+        float[] samples = new float[frames * 2];
+        for (int f = 0; f < frames; f++) {
+            float v = (float) (amplitude * Math.sin(2 * Math.PI * frequency * f / SAMPLE_RATE + phase));
+            samples[2 * f] = v;
+            samples[2 * f + 1] = v;
+        }
+        return samples;
+    }
+
+    @Test
+    public void sineAtMinus23Dbfs_readsMinus23Lufs() {
+        LoudnessMeter meter = new LoudnessMeter(SAMPLE_RATE, 2);
+        float[] samples = stereoSine(1000, -23, 0, 20);
+
+        meter.addFloat(samples, 0, samples.length / 2);
+
+        assertEquals(-23.0, meter.getIntegratedLoudness(), 0.1);
+    }
+
+    @Test
+    public void kWeighting_isIndependentOfSampleRate() {
+        int rate = 44100;
+        LoudnessMeter meter = new LoudnessMeter(rate, 2);
+        int frames = rate * 10;
+        double amplitude = Math.pow(10, -20 / 20.0);
+        float[] samples = new float[frames * 2];
+        for (int f = 0; f < frames; f++) {
+            float v = (float) (amplitude * Math.sin(2 * Math.PI * 1000 * f / rate));
+            samples[2 * f] = v;
+            samples[2 * f + 1] = v;
+        }
+
+        meter.addFloat(samples, 0, frames);
+
+        assertEquals(-20.0, meter.getIntegratedLoudness(), 0.1);
+    }
+
+    @Test
+    public void relativeGate_ignoresQuietPassages() {
+        // Tech 3341 case 3: -36 dBFS for 10 s, -23 for 60 s, -36 for 10 s reads -23 LUFS
+        LoudnessMeter meter = new LoudnessMeter(SAMPLE_RATE, 2);
+        float[] quiet = stereoSine(1000, -36, 0, 10);
+        float[] loud = stereoSine(1000, -23, 0, 60);
+
+        meter.addFloat(quiet, 0, quiet.length / 2);
+        meter.addFloat(loud, 0, loud.length / 2);
+        meter.addFloat(quiet, 0, quiet.length / 2);
+
+        assertEquals(-23.0, meter.getIntegratedLoudness(), 0.1);
+    }
+
+    @Test
+    public void silence_hasNoLoudness() {
+        LoudnessMeter meter = new LoudnessMeter(SAMPLE_RATE, 2);
+        float[] silence = new float[SAMPLE_RATE * 2 * 5];
+
+        meter.addFloat(silence, 0, silence.length / 2);
+
+        assertTrue(Double.isInfinite(meter.getIntegratedLoudness()));
+        assertEquals(0.0, meter.getTruePeak(), 0.0);
+    }
+
+    @Test
+    public void truePeak_findsPeaksBetweenSamples() {
+        // A quarter-rate sine shifted 45 degrees never hits its crest on a sample
+        LoudnessMeter meter = new LoudnessMeter(SAMPLE_RATE, 2);
+        float[] samples = stereoSine(SAMPLE_RATE / 4.0, -3, Math.PI / 4, 1);
+        double samplePeak = 0;
+        for (float s : samples) {
+            samplePeak = Math.max(samplePeak, Math.abs(s));
+        }
+
+        meter.addFloat(samples, 0, samples.length / 2);
+
+        double amplitude = Math.pow(10, -3 / 20.0);
+        assertEquals(amplitude * Math.sqrt(0.5), samplePeak, 1e-3);
+        assertEquals(20 * Math.log10(amplitude), 20 * Math.log10(meter.getTruePeak()), 0.5);
+    }
+
+    @Test
+    public void pcm16Input_matchesFloatInput() {
+        float[] samples = stereoSine(440, -12, 0, 5);
+        ByteBuffer pcm = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        float[] quantized = new float[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            short s = (short) Math.round(samples[i] * 32767);
+            pcm.putShort(i * 2, s);
+            quantized[i] = s / 32768f;
+        }
+
+        LoudnessMeter fromPcm = new LoudnessMeter(SAMPLE_RATE, 2);
+        fromPcm.addPcm16(pcm, 0, pcm.capacity());
+        LoudnessMeter fromFloat = new LoudnessMeter(SAMPLE_RATE, 2);
+        fromFloat.addFloat(quantized, 0, quantized.length / 2);
+
+        assertEquals(fromFloat.getIntegratedLoudness(), fromPcm.getIntegratedLoudness(), 1e-9);
+        assertEquals(0, pcm.position());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.devsound.playback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class Mp3FrameReaderTest {
+    // MPEG 1 layer III, 44.1 kHz, stereo at 128 kbps: 417 bytes per frame
+    private static final int HEADER = 0xFFFB9000;
+    private static final int FRAME_BYTES = 417;
+
+    private File file;
+    private RandomAccessFile in;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("frames", ".mp3");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_BYTES);
+            for (int i = 0; i < 10; i++) {
+                frame.clear();
+                frame.putInt(HEADER);
+                frame.put((byte) i);
+                out.write(frame.array());
+                if (i == 4) {
+                    // Junk between frames
+                    out.write(new byte[]{1, 2, 3});
+                }
+            }
+        }
+        in = new RandomAccessFile(file, "r");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        in.close();
+        file.delete();
+    }
+
+    @Test
+    public void readsFramesFromAnOffsetWithTimestamps() throws IOException {
+        Mp3FrameReader reader = new Mp3FrameReader(in.getChannel());
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        reader.seek(2L * FRAME_BYTES, 5000000L);
+
+        int frames = 0;
+        while (reader.readFrame(buffer) == FRAME_BYTES) {
+            assertEquals(HEADER, buffer.getInt(0));
+            assertEquals(2 + frames, buffer.get(4));
+            assertEquals(5000000L + frames * 1152L * 1000000L / 44100, reader.getFrameTimeUs());
+            frames++;
+        }
+        assertEquals(8, frames);
+        assertEquals(-1, reader.readFrame(buffer));
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.devsound.playback;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class OutputTrackTest {
+    private static final long WRITTEN = 4096;
+
+    private static class FakeTrack {
+        final int sampleRate;
+        long played;
+        boolean playing;
+        int releases;
+
+        FakeTrack(int sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+    }
+
+    private static class FakeTracks implements OutputTrack.Tracks<FakeTrack> {
+        FakeTrack created;
+        boolean failCreate;
+
+        @Override
+        public FakeTrack create(int sampleRate, int channelCount) throws IOException {
+            if (failCreate) {
+                throw new IOException("Unsupported output format");
+            }
+            created = new FakeTrack(sampleRate);
+            return created;
+        }
+
+        @Override
+        public long playedFrames(FakeTrack track) {
+            return track.played;
+        }
+
+        @Override
+        public void play(FakeTrack track) {
+            track.playing = true;
+        }
+
+        @Override
+        public void release(FakeTrack track) {
+            track.playing = false;
+            track.releases++;
+        }
+    }
+
+    private final FakeTracks tracks = new FakeTracks();
+    private final OutputTrack<FakeTrack> output = new OutputTrack<>(tracks);
+    private final FakeTrack old = new FakeTrack(44100);
+    // Stands in for the engine's generation check
+    private boolean reset;
+    private FakeTrack taken;
+
+    @Before
+    public void setUp() {
+        old.playing = true;
+        output.set(old, 44100, 2);
+    }
+
+    @Test
+    public void switchesOnceOldTrackHasPlayedOut() throws IOException {
+        long played = output.switchTo(48000, 2, WRITTEN, () -> false, () -> true,
+                () -> old.played += 1024);
+
+        assertEquals(WRITTEN, played);
+        assertSame(tracks.created, output.get());
+        assertEquals(48000, output.getSampleRate());
+        assertTrue(output.hasFormat(48000, 2));
+        assertTrue(tracks.created.playing);
+        assertEquals(1, old.releases);
+    }
+
+    @Test
+    public void pausedSwitchLeavesNewTrackStopped() throws IOException {
+        old.played = WRITTEN;
+        output.switchTo(48000, 1, WRITTEN, () -> false, () -> false, () -> fail("Nothing to wait for"));
+
+        assertFalse(tracks.created.playing);
+        assertEquals(1, output.getChannelCount());
+        assertEquals(1, old.releases);
+    }
+
+    @Test
+    public void resetDuringSwitchReleasesOnlyTheNewTrack() throws IOException {
+        // The reset arrives while the old track is still playing out
+        long played = output.switchTo(48000, 2, WRITTEN, () -> reset, () -> true, () -> {
+            reset = true;
+            taken = output.take();
+        });
+
+        assertEquals(-1, played);
+        assertNull(output.get());
+        assertSame(old, taken);
+        // Releasing the old track is left to whoever took it
+        assertEquals(0, old.releases);
+        assertEquals(1, tracks.created.releases);
+        assertFalse(tracks.created.playing);
+    }
+
+    @Test
+    public void trackTakenBeforeCancellationIsSeenStillAbandonsSwitch() throws IOException {
+        long played = output.switchTo(48000, 2, WRITTEN, () -> false, () -> true, () -> {
+            taken = output.take();
+            old.played = WRITTEN;
+        });
+
+        assertEquals(-1, played);
+        assertNull(output.get());
+        assertEquals(0, old.releases);
+        assertEquals(1, tracks.created.releases);
+    }
+
+    @Test
+    public void resetBeforeTrackIsTakenAbandonsSwitch() throws IOException {
+        old.played = WRITTEN;
+        long played = output.switchTo(48000, 2, WRITTEN, () -> true, () -> true, () -> { });
+
+        assertEquals(-1, played);
+        // Still there for the reset to take and release
+        assertSame(old, output.take());
+        assertEquals(0, old.releases);
+        assertEquals(1, tracks.created.releases);
+    }
+
+    @Test
+    public void failedCreationKeepsCurrentTrack() {
+        tracks.failCreate = true;
+        try {
+            output.switchTo(48000, 2, WRITTEN, () -> false, () -> true, () -> { });
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // The caller reports it
+        }
+        assertSame(old, output.get());
+        assertTrue(old.playing);
+        assertEquals(0, old.releases);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.devsound.playback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PlaybackClockTest {
+
+    @Test
+    public void runningClock_extrapolatesFromItsAnchor() {
+        PlaybackClock clock = new PlaybackClock(1, 10_000, 500_000, 1f, 180_000);
+
+        assertEquals(10_000, clock.getPositionMs(500_000));
+        assertEquals(12_345, clock.getPositionMs(502_345));
+        assertTrue(clock.isRunning());
+    }
+
+    @Test
+    public void pausedClock_standsStill() {
+        PlaybackClock clock = new PlaybackClock(1, 42_000, 500_000, 0f, 180_000);
+
+        assertEquals(42_000, clock.getPositionMs(900_000));
+        assertFalse(clock.isRunning());
+    }
+
+    @Test
+    public void position_isHeldWithinTheTrack() {
+        PlaybackClock clock = new PlaybackClock(1, 179_000, 0, 1f, 180_000);
+        assertEquals(180_000, clock.getPositionMs(10_000));
+
+        // Unknown duration: no upper bound, but never negative
+        PlaybackClock unknown = new PlaybackClock(1, 0, 1_000, 1f, 0);
+        assertEquals(0, unknown.getPositionMs(0));
+        assertEquals(5_000, unknown.getPositionMs(6_000));
+    }
+}
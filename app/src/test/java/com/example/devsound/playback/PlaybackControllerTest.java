@@ -0,0 +1,340 @@
+package com.example.devsound.playback;
+
+import com.example.devsound.models.PlaybackState;
+import com.example.devsound.models.Song;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the playback command pipeline against a simulated engine on a
+ * virtual clock: counts prepares per user action, checks time to playing and
+ * bounds error recovery.
+ */
+public class PlaybackControllerTest {
+    private static final long PREPARE_LATENCY_MS = 120;
+    private static final int DURATION_MS = 200_000;
+    private static final int SONG_COUNT = 10;
+
+    private VirtualScheduler scheduler;
+    private SimulatedPlaybackEngine engine;
+    private RecordingHost host;
+    private PlaybackController controller;
+
+    private static class RecordingHost implements PlaybackController.Host {
+        final List<PlaybackState> states = new ArrayList<>();
+        final List<PlaybackClock> clocks = new ArrayList<>();
+        int resets;
+        int errors;
+        Song lastPrepared;
+
+        @Override
+        public void loadDataSource(PlaybackEngine engine, Song song) throws IOException {
+            engine.setDataSource(SimulatedPlaybackEngine.pathFor(song.getId()));
+        }
+
+        @Override
+        public void onEngineReset() {
+            resets++;
+        }
+
+        @Override
+        public boolean requestAudioFocus() {
+            return true;
+        }
+
+        @Override
+        public void onStateChanged(PlaybackState state) {
+            states.add(state);
+        }
+
+        @Override
+        public void onClockChanged(PlaybackClock clock) {
+            clocks.add(clock);
+        }
+
+        @Override
+        public void onTrackPrepared(Song song, Song nextSong) {
+            lastPrepared = song;
+        }
+
+        @Override
+        public void onPlaybackError(Song song, int what, int extra, PlaybackErrorPolicy.Decision decision) {
+            errors++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        engine = new SimulatedPlaybackEngine(scheduler, PREPARE_LATENCY_MS, DURATION_MS);
+        host = new RecordingHost();
+        controller = new PlaybackController(engine, host, scheduler, new PlaybackErrorPolicy());
+
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < SONG_COUNT; i++) {
+            songs.add(new Song(i, "Song " + i, "Artist", "Album", DURATION_MS, null, null));
+        }
+        controller.setSongs(songs);
+    }
+
+    @Test
+    public void singleSelection_issuesOnePrepare() {
+        controller.playSongAt(3);
+        scheduler.advanceBy(PREPARE_LATENCY_MS);
+
+        assertEquals(1, engine.getPrepareCount());
+        assertEquals(1, controller.getPreparesIssued());
+        assertEquals(3, controller.getState().getSongIndex());
+        assertTrue(controller.isPlaying());
+        assertEquals(3, engine.getLoadedSongId());
+    }
+
+    @Test
+    public void timeToPlaying_equalsPrepareLatency() {
+        controller.playSongAt(0);
+
+        scheduler.advanceBy(PREPARE_LATENCY_MS - 1);
+        assertFalse(controller.isPlaying());
+
+        scheduler.advanceBy(1);
+        assertTrue(controller.isPlaying());
+        assertTrue(controller.getState().isPlaying());
+    }
+
+    @Test
+    public void rapidSkips_coalesceIntoAtMostTwoPrepares() {
+        controller.playSongAt(0);
+        for (int i = 0; i < 99; i++) {
+            controller.skipToNext();
+        }
+        scheduler.runUntilIdle(100);
+
+        assertTrue(engine.getPrepareCount() <= 2);
+        assertEquals(99, controller.getCoalescedSwitches());
+        assertEquals(99 % SONG_COUNT, controller.getState().getSongIndex());
+        assertEquals(99 % SONG_COUNT, engine.getLoadedSongId());
+        assertTrue(controller.isPlaying());
+        assertEquals(1, controller.getPreparesCompleted());
+    }
+
+    @Test
+    public void rapidSkips_stateVersionsIncreaseMonotonically() {
+        controller.playSongAt(0);
+        for (int i = 0; i < 50; i++) {
+            controller.skipToPrevious();
+        }
+        scheduler.runUntilIdle(100);
+
+        long last = -1;
+        for (PlaybackState state : host.states) {
+            assertTrue(state.getVersion() > last);
+            last = state.getVersion();
+        }
+        assertEquals(host.states.get(host.states.size() - 1), controller.getState());
+    }
+
+    @Test
+    public void skipThroughput_isNotBoundByPrepares() {
+        controller.playSongAt(0);
+        int skips = 200_000;
+        long start = scheduler.now();
+        for (int i = 0; i < skips; i++) {
+            controller.skipToNext();
+        }
+        // Skipping takes no virtual time: no skip waits on a prepare
+        assertEquals(start, scheduler.now());
+        scheduler.runUntilIdle(100);
+
+        assertTrue(engine.getPrepareCount() <= 2);
+        assertEquals(skips, controller.getCoalescedSwitches());
+        assertEquals(1, controller.getPreparesCompleted());
+        assertEquals(skips % SONG_COUNT, controller.getState().getSongIndex());
+        // Playing after at most the prepare in flight and the one for the final track
+        assertTrue(scheduler.now() - start <= 2 * PREPARE_LATENCY_MS);
+        assertTrue(controller.isPlaying());
+    }
+
+    @Test
+    public void pauseAndResume_doNotPrepareAgain() {
+        controller.playSongAt(2);
+        scheduler.advanceBy(PREPARE_LATENCY_MS);
+
+        controller.pause();
+        assertFalse(controller.isPlaying());
+        controller.start();
+        assertTrue(controller.isPlaying());
+
+        assertEquals(1, engine.getPrepareCount());
+    }
+
+    @Test
+    public void failingTrack_isRetriedOnceThenSkipped() {
+        engine.failSong(4);
+        controller.playSongAt(4);
+        scheduler.runUntilIdle(100);
+
+        // First attempt, one retry, then the next track
+        assertEquals(3, engine.getPrepareCount());
+        assertEquals(5, controller.getState().getSongIndex());
+        assertTrue(controller.isPlaying());
+        assertEquals(1, controller.getErrorPolicy().getRetries());
+        assertEquals(1, controller.getErrorPolicy().getSkips());
+        assertTrue(controller.getErrorPolicy().isKnownBad(4));
+    }
+
+    @Test
+    public void completion_skipsKnownBadTracks() {
+        engine.failSong(6);
+        controller.playSongAt(6);
+        scheduler.runUntilIdle(100);
+        assertEquals(7, controller.getState().getSongIndex());
+
+        // Wrap around to 6 again: the bad track is stepped over without a prepare
+        controller.playSongAt(5);
+        scheduler.runUntilIdle(100);
+        int prepares = engine.getPrepareCount();
+        engine.complete();
+        scheduler.runUntilIdle(100);
+
+        assertEquals(7, controller.getState().getSongIndex());
+        assertEquals(prepares + 1, engine.getPrepareCount());
+    }
+
+    @Test
+    public void breaker_stopsAfterThresholdFailures() {
+        for (int i = 0; i < SONG_COUNT; i++) {
+            engine.failSong(i);
+        }
+        controller.playSongAt(0);
+        scheduler.runUntilIdle(1000);
+
+        assertTrue(controller.getErrorPolicy().isBreakerOpen());
+        assertEquals(PlaybackErrorPolicy.DEFAULT_BREAKER_THRESHOLD, engine.getPrepareCount());
+        assertEquals(0, scheduler.pendingTasks());
+        assertFalse(controller.getState().isPlaying());
+
+        // A user action closes the breaker and gets exactly one new attempt
+        controller.playSongAt(9);
+        assertFalse(controller.getErrorPolicy().isBreakerOpen());
+        assertEquals(PlaybackErrorPolicy.DEFAULT_BREAKER_THRESHOLD + 1, engine.getPrepareCount());
+    }
+
+    @Test
+    public void userAction_cancelsPendingRecovery() {
+        engine.failSong(1);
+        controller.playSongAt(1);
+        scheduler.advanceBy(PREPARE_LATENCY_MS);
+        assertEquals(1, scheduler.pendingTasks());
+
+        controller.playSongAt(8);
+        scheduler.runUntilIdle(100);
+
+        assertEquals(8, controller.getState().getSongIndex());
+        assertEquals(2, engine.getPrepareCount());
+        assertTrue(controller.isPlaying());
+    }
+
+    @Test
+    public void recoveryBackoff_runsOnTheScheduler() {
+        engine.failSong(0);
+        controller.playSongAt(0);
+        scheduler.advanceBy(PREPARE_LATENCY_MS);
+        assertEquals(1, engine.getPrepareCount());
+
+        // Nothing happens before the backoff delay elapses
+        scheduler.advanceBy(PlaybackErrorPolicy.DEFAULT_BASE_DELAY_MS - 1);
+        assertEquals(1, engine.getPrepareCount());
+        scheduler.advanceBy(1);
+        assertEquals(2, engine.getPrepareCount());
+    }
+
+    @Test
+    public void clock_tracksTheEngineWithoutPolling() {
+        controller.playSongAt(2);
+        scheduler.advanceBy(PREPARE_LATENCY_MS);
+        int clocksAfterStart = host.clocks.size();
+        PlaybackClock clock = controller.getClock();
+        assertTrue(clock.isRunning());
+        assertEquals(2, clock.getSongId());
+        assertEquals(DURATION_MS, clock.getDurationMs());
+
+        // Playing on needs no new clock; extrapolation matches the engine
+        scheduler.advanceBy(7_500);
+        assertEquals(clocksAfterStart, host.clocks.size());
+        assertEquals(engine.getCurrentPosition(), clock.getPositionMs(scheduler.now()));
+
+        controller.seekTo(60_000);
+        scheduler.advanceBy(1_000);
+        assertEquals(61_000, controller.getClock().getPositionMs(scheduler.now()));
+
+        controller.pause();
+        long pausedAt = controller.getClock().getPositionMs(scheduler.now());
+        scheduler.advanceBy(5_000);
+        assertFalse(controller.getClock().isRunning());
+        assertEquals(pausedAt, controller.getClock().getPositionMs(scheduler.now()));
+        assertEquals(engine.getCurrentPosition(), pausedAt);
+    }
+
+    @Test
+    public void clock_stopsWhileTheNextTrackLoads() {
+        controller.playSongAt(0);
+        scheduler.advanceBy(PREPARE_LATENCY_MS + 3_000);
+
+        controller.skipToNext();
+
+        PlaybackClock loading = controller.getClock();
+        assertFalse(loading.isRunning());
+        assertEquals(0, loading.getPositionMs(scheduler.now()));
+        assertEquals(1, loading.getSongId());
+        scheduler.advanceBy(PREPARE_LATENCY_MS);
+        assertTrue(controller.getClock().isRunning());
+    }
+
+    @Test
+    public void drag_coalescesSeeksAndEndsPrecise() {
+        engine.setSeekLatency(40);
+        controller.playSongAt(0);
+        scheduler.advanceBy(PREPARE_LATENCY_MS);
+
+        // A 100-event drag at 60 Hz across most of the track
+        for (int i = 0; i < 100; i++) {
+            controller.scrubTo(i * 1_500);
+            scheduler.advanceBy(16);
+        }
+        controller.seekTo(150_000);
+        scheduler.advanceBy(200);
+
+        assertEquals(1, engine.getMaxSeeksInFlight());
+        assertTrue("seeks issued: " + engine.getSeekCount(), engine.getSeekCount() <= 50);
+        assertEquals(1, engine.getPreciseSeekCount());
+        assertTrue(engine.wasLastSeekPrecise());
+        assertFalse(controller.getSeekCoordinator().isSeeking());
+        // The release waited for the last drag seek, then played on from exactly its position
+        int position = engine.getCurrentPosition();
+        assertTrue("position " + position, position > 150_000 && position <= 150_200);
+        assertEquals(position, controller.getClock().getPositionMs(scheduler.now()));
+    }
+
+    @Test
+    public void trackSwitch_dropsPendingSeeks() {
+        engine.setSeekLatency(40);
+        controller.playSongAt(0);
+        scheduler.advanceBy(PREPARE_LATENCY_MS);
+
+        controller.scrubTo(10_000);
+        controller.scrubTo(20_000);
+        controller.skipToNext();
+        scheduler.advanceBy(PREPARE_LATENCY_MS + 100);
+
+        assertEquals(1, engine.getSeekCount());
+        assertFalse(controller.getSeekCoordinator().isSeeking());
+        assertEquals(100, engine.getCurrentPosition());
+    }
+}
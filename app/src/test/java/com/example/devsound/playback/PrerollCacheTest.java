@@ -0,0 +1,58 @@
+package com.example.devsound.playback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrerollCacheTest {
+    private static final int RATE = 44100;
+    // One second of 16-bit stereo
+    private static final int SECOND_BYTES = RATE * 4;
+
+    private static PrerollCache.Entry entry(long id, long modified, int seconds) {
+        return new PrerollCache.Entry(id, modified, RATE, 2, 200_000_000L, new byte[seconds * SECOND_BYTES]);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() {
+        PrerollCache cache = new PrerollCache(3L * SECOND_BYTES);
+        cache.put(entry(1, 0, 1));
+        cache.put(entry(2, 0, 1));
+        cache.put(entry(3, 0, 1));
+        // Touch 1 so 2 is the oldest
+        assertNotNull(cache.get(1, 0));
+
+        cache.put(entry(4, 0, 1));
+
+        assertEquals(3, cache.size());
+        assertEquals(3L * SECOND_BYTES, cache.getBytes());
+        assertNull(cache.get(2, 0));
+        assertNotNull(cache.get(1, 0));
+        assertNotNull(cache.get(4, 0));
+    }
+
+    @Test
+    public void editedTrackMissesAndReplacingKeepsByteCount() {
+        PrerollCache cache = new PrerollCache(10L * SECOND_BYTES);
+        cache.put(entry(1, 100, 2));
+        assertNull(cache.get(1, 200));
+        assertEquals(0, cache.getBytes());
+
+        cache.put(entry(1, 200, 2));
+        cache.put(entry(1, 200, 3));
+        assertEquals(3L * SECOND_BYTES, cache.getBytes());
+        assertTrue(cache.contains(1, 200));
+    }
+
+    @Test
+    public void entryLargerThanBudgetIsNotKept() {
+        PrerollCache cache = new PrerollCache(SECOND_BYTES);
+        cache.put(entry(1, 0, 2));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void endTimeFollowsPcmLength() {
+        assertEquals(3_000_000L, entry(1, 0, 3).getEndUs());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.devsound.playback;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that seeks are coalesced to one in flight, that the release lands
+ * precisely and that a lost completion does not wedge the coordinator.
+ */
+public class SeekCoordinatorTest {
+    private VirtualScheduler scheduler;
+    private List<int[]> issued;
+    private SeekCoordinator seeks;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        issued = new ArrayList<>();
+        seeks = new SeekCoordinator((positionMs, precise) -> issued.add(new int[]{positionMs, precise ? 1 : 0}),
+                scheduler);
+    }
+
+    @Test
+    public void onlyLatestRequestIsIssuedAfterCompletion() {
+        seeks.requestSeek(1_000, true);
+        seeks.requestSeek(2_000, true);
+        seeks.requestSeek(3_000, true);
+        assertEquals(1, issued.size());
+        assertEquals(3_000, seeks.getTargetPositionMs());
+
+        seeks.onSeekComplete();
+        assertEquals(2, issued.size());
+        assertEquals(3_000, issued.get(1)[0]);
+        assertEquals(0, issued.get(1)[1]);
+
+        seeks.onSeekComplete();
+        assertFalse(seeks.isSeeking());
+        assertEquals(-1, seeks.getTargetPositionMs());
+        assertEquals(3, seeks.getRequested());
+        assertEquals(2, seeks.getIssued());
+    }
+
+    @Test
+    public void releaseIsPreciseEvenWhileDragSeekIsInFlight() {
+        seeks.requestSeek(5_000, true);
+        seeks.requestSeek(7_000, false);
+        seeks.onSeekComplete();
+
+        assertEquals(7_000, issued.get(1)[0]);
+        assertEquals(1, issued.get(1)[1]);
+    }
+
+    @Test
+    public void lostCompletionTimesOut() {
+        seeks.requestSeek(1_000, true);
+        seeks.requestSeek(4_000, false);
+        scheduler.advanceBy(SeekCoordinator.COMPLETION_TIMEOUT_MS);
+
+        assertEquals(2, issued.size());
+        assertEquals(4_000, issued.get(1)[0]);
+        assertTrue(seeks.isSeeking());
+
+        seeks.reset();
+        assertFalse(seeks.isSeeking());
+        assertEquals(0, scheduler.pendingTasks());
+    }
+}
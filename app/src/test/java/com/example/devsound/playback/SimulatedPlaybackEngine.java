@@ -0,0 +1,236 @@
+package com.example.devsound.playback;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deterministic PlaybackEngine for JVM tests. Data sources are "sim://<id>"
+ * paths; prepares complete (or fail, for ids marked as failing) after a fixed
+ * latency on the VirtualScheduler, and playback position follows its clock.
+ * Seeks take effect at once but report completion after a seek latency,
+ * and the engine records how many were ever outstanding together.
+ */
+class SimulatedPlaybackEngine implements PlaybackEngine {
+
+    static String pathFor(long songId) {
+        return "sim://" + songId;
+    }
+
+    private final VirtualScheduler scheduler;
+    private final long prepareLatencyMs;
+    private final int durationMs;
+    private final Set<Long> failingIds = new HashSet<>();
+
+    private Listener listener;
+    private long songId = -1;
+    private boolean prepared;
+    private boolean playing;
+    private int positionMs;
+    private long playingSinceMs;
+    private Runnable pendingPrepare;
+    private long seekLatencyMs;
+    private final List<Runnable> pendingSeeks = new ArrayList<>();
+
+    private int prepareCount;
+    private int resetCount;
+    private float volume = 1.0f;
+    private int seekCount;
+    private int preciseSeekCount;
+    private int maxSeeksInFlight;
+    private boolean lastSeekPrecise;
+
+    SimulatedPlaybackEngine(VirtualScheduler scheduler, long prepareLatencyMs, int durationMs) {
+        this.scheduler = scheduler;
+        this.prepareLatencyMs = prepareLatencyMs;
+        this.durationMs = durationMs;
+    }
+
+    void setSeekLatency(long latencyMs) {
+        seekLatencyMs = latencyMs;
+    }
+
+    int getSeekCount() {
+        return seekCount;
+    }
+
+    int getPreciseSeekCount() {
+        return preciseSeekCount;
+    }
+
+    int getMaxSeeksInFlight() {
+        return maxSeeksInFlight;
+    }
+
+    boolean wasLastSeekPrecise() {
+        return lastSeekPrecise;
+    }
+
+    void failSong(long id) {
+        failingIds.add(id);
+    }
+
+    int getPrepareCount() {
+        return prepareCount;
+    }
+
+    int getResetCount() {
+        return resetCount;
+    }
+
+    long getLoadedSongId() {
+        return songId;
+    }
+
+    float getVolume() {
+        return volume;
+    }
+
+    /**
+     * Play the loaded track to its end
+     */
+    void complete() {
+        playing = false;
+        positionMs = durationMs;
+        if (listener != null) {
+            listener.onCompletion(this);
+        }
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd) throws IOException {
+        throw new IOException("Simulated engine only accepts sim:// paths");
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        if (path == null || !path.startsWith("sim://")) {
+            throw new IOException("Not a simulated path: " + path);
+        }
+        songId = Long.parseLong(path.substring("sim://".length()));
+    }
+
+    @Override
+    public void prepareAsync() {
+        if (songId < 0) {
+            throw new IllegalStateException("No data source");
+        }
+        prepareCount++;
+        final long id = songId;
+        pendingPrepare = () -> {
+            pendingPrepare = null;
+            if (listener == null) {
+                return;
+            }
+            if (failingIds.contains(id)) {
+                listener.onError(this, PlaybackEngine.ERROR_MALFORMED, 0);
+            } else {
+                prepared = true;
+                positionMs = 0;
+                listener.onPrepared(this);
+            }
+        };
+        scheduler.postDelayed(pendingPrepare, prepareLatencyMs);
+    }
+
+    @Override
+    public void start() {
+        if (!prepared) {
+            throw new IllegalStateException("start() before prepare");
+        }
+        if (!playing) {
+            playing = true;
+            playingSinceMs = scheduler.now();
+        }
+    }
+
+    @Override
+    public void pause() {
+        positionMs = getCurrentPosition();
+        playing = false;
+    }
+
+    @Override
+    public void stop() {
+        pause();
+        prepared = false;
+    }
+
+    @Override
+    public void seekTo(int positionMs, boolean precise) {
+        this.positionMs = positionMs;
+        playingSinceMs = scheduler.now();
+        seekCount++;
+        if (precise) {
+            preciseSeekCount++;
+        }
+        lastSeekPrecise = precise;
+
+        Runnable completion = new Runnable() {
+            @Override
+            public void run() {
+                pendingSeeks.remove(this);
+                if (listener != null) {
+                    listener.onSeekComplete(SimulatedPlaybackEngine.this);
+                }
+            }
+        };
+        pendingSeeks.add(completion);
+        maxSeeksInFlight = Math.max(maxSeeksInFlight, pendingSeeks.size());
+        scheduler.postDelayed(completion, seekLatencyMs);
+    }
+
+    @Override
+    public void reset() {
+        resetCount++;
+        if (pendingPrepare != null) {
+            scheduler.cancel(pendingPrepare);
+            pendingPrepare = null;
+        }
+        for (Runnable completion : pendingSeeks) {
+            scheduler.cancel(completion);
+        }
+        pendingSeeks.clear();
+        songId = -1;
+        prepared = false;
+        playing = false;
+        positionMs = 0;
+    }
+
+    @Override
+    public void release() {
+        reset();
+        listener = null;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        if (!playing) {
+            return positionMs;
+        }
+        return (int) Math.min(durationMs, positionMs + (scheduler.now() - playingSinceMs));
+    }
+
+    @Override
+    public int getDuration() {
+        return prepared ? durationMs : 0;
+    }
+
+    @Override
+    public void setVolume(float left, float right) {
+        volume = left;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.devsound.playback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PlaybackController.Scheduler on a virtual clock. Tasks run only when the
+ * test advances time, in due-time order, so timing assertions are exact.
+ */
+class VirtualScheduler implements PlaybackController.Scheduler {
+
+    private static final class Task {
+        final Runnable runnable;
+        final long dueMs;
+        final long sequence;
+
+        Task(Runnable runnable, long dueMs, long sequence) {
+            this.runnable = runnable;
+            this.dueMs = dueMs;
+            this.sequence = sequence;
+        }
+    }
+
+    private final List<Task> tasks = new ArrayList<>();
+    private long nowMs;
+    private long sequence;
+
+    @Override
+    public long now() {
+        return nowMs;
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        tasks.add(new Task(task, nowMs + Math.max(0, delayMs), sequence++));
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        tasks.removeIf(t -> t.runnable == task);
+    }
+
+    int pendingTasks() {
+        return tasks.size();
+    }
+
+    /**
+     * Run everything due within the next delayMs, advancing the clock as tasks run
+     */
+    void advanceBy(long delayMs) {
+        long target = nowMs + delayMs;
+        Task next;
+        while ((next = earliest()) != null && next.dueMs <= target) {
+            tasks.remove(next);
+            nowMs = next.dueMs;
+            next.runnable.run();
+        }
+        nowMs = target;
+    }
+
+    /**
+     * Run tasks until none are left or the step limit is reached
+     */
+    void runUntilIdle(int maxSteps) {
+        Task next;
+        int steps = 0;
+        while (steps++ < maxSteps && (next = earliest()) != null) {
+            tasks.remove(next);
+            nowMs = Math.max(nowMs, next.dueMs);
+            next.runnable.run();
+        }
+    }
+
+    private Task earliest() {
+        Task best = null;
+        for (Task t : tasks) {
+            if (best == null || t.dueMs < best.dueMs
+                    || (t.dueMs == best.dueMs && t.sequence < best.sequence)) {
+                best = t;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.devsound.utils;
+
+import com.example.devsound.models.PlaybackState;
+import com.example.devsound.models.Song;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlayerManagerTest {
+    private final List<String> events = new ArrayList<>();
+    private final PlayerManager.PlayerCallback callback = new PlayerManager.PlayerCallback() {
+        @Override
+        public void onSongSelected(Song song, int position) {
+            events.add("song " + position);
+        }
+
+        @Override
+        public void onPlaybackStateChanged(boolean isPlaying) {
+            events.add(isPlaying ? "playing" : "paused");
+        }
+    };
+
+    private static Song song(long id) {
+        return new Song(id, "Song " + id, "Artist", "Album", 1000, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        PlayerManager manager = PlayerManager.getInstance();
+        manager.unregisterCallback(callback);
+        manager.detachService(null);
+    }
+
+    @Test
+    public void restartedService_isHeardFromItsFirstVersion() {
+        PlayerManager manager = PlayerManager.getInstance();
+        manager.attachService(null);
+        manager.registerCallback(callback);
+
+        // The first service gets well past version 1
+        PlaybackState state = PlaybackState.IDLE.withSong(0, song(1)).withPlaying(true);
+        for (int i = 0; i < 5; i++) {
+            state = state.withPlaying(false).withPlaying(true);
+        }
+        manager.onServiceStateChanged(state);
+        assertTrue(manager.getPlaybackState().getVersion() > 1);
+
+        manager.detachService(null);
+        assertEquals(PlaybackState.IDLE, manager.getPlaybackState());
+        assertFalse(manager.isPlaying());
+
+        manager.attachService(null);
+        events.clear();
+        PlaybackState restarted = PlaybackState.IDLE.withSong(3, song(4));
+        assertEquals(1, restarted.getVersion());
+        manager.onServiceStateChanged(restarted);
+
+        assertSame(restarted, manager.getPlaybackState());
+        assertEquals(3, manager.getCurrentSongIndex());
+        assertEquals(List.of("song 3"), events);
+    }
+
+    @Test
+    public void staleVersion_isStillIgnoredWithinOneService() {
+        PlayerManager manager = PlayerManager.getInstance();
+        manager.attachService(null);
+
+        PlaybackState first = PlaybackState.IDLE.withSong(0, song(1));
+        PlaybackState second = first.withPlaying(true);
+        manager.onServiceStateChanged(second);
+        manager.onServiceStateChanged(first);
+
+        assertSame(second, manager.getPlaybackState());
+    }
+}